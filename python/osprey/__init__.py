@@ -417,7 +417,7 @@ def ForcefieldParams(forcefield=None):
 	return c.energy.forcefield.ForcefieldParams()
 
 
-def EnergyCalculator(confSpace, ffparams, parallelism=None, type=None, isMinimizing=None, infiniteWellEnergy=None):
+def EnergyCalculator(confSpace, ffparams, parallelism=None, type=None, isMinimizing=None, infiniteWellEnergy=None, clashScreenOverlap=None):
 	'''
 	:java:classdoc:`.energy.EnergyCalculator`
 
@@ -428,6 +428,7 @@ def EnergyCalculator(confSpace, ffparams, parallelism=None, type=None, isMinimiz
 	:builder_option type .energy.EnergyCalculator$Builder#type:
 	:builder_option isMinimizing .energy.EnergyCalculator$Builder#isMinimizing:
 	:builder_option infiniteWellEnergy .energy.EnergyCalculator$Builder#infiniteWellEnergy:
+	:builder_option clashScreenOverlap .energy.EnergyCalculator$Builder#clashScreenOverlap:
 
 	:builder_return .energy.EnergyCalculator$Builder:
 	'''
@@ -445,6 +446,9 @@ def EnergyCalculator(confSpace, ffparams, parallelism=None, type=None, isMinimiz
 	if infiniteWellEnergy is not None:
 		builder.setInfiniteWellEnergy(jvm.boxDouble(infiniteWellEnergy))
 
+	if clashScreenOverlap is not None:
+		builder.setClashScreenOverlap(jvm.boxDouble(clashScreenOverlap))
+
 	return builder.build()
 
 
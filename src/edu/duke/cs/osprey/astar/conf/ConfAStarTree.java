@@ -50,7 +50,6 @@ import edu.duke.cs.osprey.astar.conf.scoring.mplp.EdgeUpdater;
 import edu.duke.cs.osprey.astar.conf.scoring.mplp.MPLPUpdater;
 import edu.duke.cs.osprey.astar.conf.scoring.mplp.NodeUpdater;
 import edu.duke.cs.osprey.confspace.ConfSearch;
-import edu.duke.cs.osprey.confspace.RCTuple;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
 import edu.duke.cs.osprey.externalMemory.EMConfAStarFactory;
@@ -523,9 +522,7 @@ public class ConfAStarTree implements ConfSearch {
 		}
 
 		// check triples
-		if (pmat.hasHigherOrderTuples()) {
-
-			RCTuple tuple = new RCTuple(0, 0, 0, 0, 0, 0);
+		if (pmat.hasPrunedTriples()) {
 
 			for (int i1=0; i1<confIndex.numDefined; i1++) {
 				int pos1 = confIndex.definedPos[i1];
@@ -537,10 +534,7 @@ public class ConfAStarTree implements ConfSearch {
 					int rc2 = confIndex.definedRCs[i2];
 					assert (pos2 != nextPos || rc2 != nextRc);
 
-					tuple.set(pos1, rc1, pos2, rc2, nextPos, nextRc);
-					tuple.sortPositions();
-
-					if (pmat.getTuple(tuple)) {
+					if (pmat.getTriple(pos1, rc1, pos2, rc2, nextPos, nextRc)) {
 						return true;
 					}
 				}
@@ -78,11 +78,18 @@ public class RCs {
 		int n = pruneMat.getNumPos();
 
 		// pack unpruned rotamers into an efficient lookup structure
+		// (without boxing the rcs into lists first)
 		unprunedRCsAtPos = new int[n][];
 		for (int pos=0; pos<n; pos++) {
-			unprunedRCsAtPos[pos] = pruneMat.unprunedRCsAtPos(pos).stream()
-					.mapToInt((i) -> i)
-					.toArray();
+			int numRCs = pruneMat.getNumConfAtPos(pos);
+			int[] rcs = new int[numRCs];
+			int numUnpruned = 0;
+			for (int rc=0; rc<numRCs; rc++) {
+				if (!pruneMat.isSinglePruned(pos, rc)) {
+					rcs[numUnpruned++] = rc;
+				}
+			}
+			unprunedRCsAtPos[pos] = numUnpruned == numRCs ? rcs : Arrays.copyOf(rcs, numUnpruned);
 		}
 	}
 
@@ -103,6 +103,18 @@ public class ConfDB implements AutoCleanable {
 		}
 	}
 
+	public static enum Backend {
+
+		/** store conformations in MapDB b-trees, in the same file as the sequence info */
+		MapDB,
+
+		/**
+		 * store conformations in append-only segment files, one per table,
+		 * in a directory next to the DB file (see {@link ConfSegmentStore})
+		 */
+		Segments
+	}
+
 	public static enum SortOrder {
 		Assignment,
 		Score,
@@ -154,7 +166,7 @@ public class ConfDB implements AutoCleanable {
 		}
 	}
 
-	private static class ConfInfo {
+	static class ConfInfo {
 
 		public double lowerEnergy;
 		public long lowerTimestampNs;
@@ -175,6 +187,16 @@ public class ConfDB implements AutoCleanable {
 			this.upperTimestampNs = upperTimestampNs;
 		}
 
+		public boolean lowerEquals(ConfInfo other) {
+			return lowerTimestampNs == other.lowerTimestampNs
+				&& Double.compare(lowerEnergy, other.lowerEnergy) == 0;
+		}
+
+		public boolean upperEquals(ConfInfo other) {
+			return upperTimestampNs == other.upperTimestampNs
+				&& Double.compare(upperEnergy, other.upperEnergy) == 0;
+		}
+
 		public Conf.Bound makeLowerBound() {
 			return makeBound(lowerEnergy, lowerTimestampNs);
 		}
@@ -320,13 +342,77 @@ public class ConfDB implements AutoCleanable {
 		}
 	}
 
-	public class ConfTable implements Iterable<Conf> {
+	/**
+	 * Storage for the conformations of one table.
+	 *
+	 * Implementations are responsible for keeping their lower and upper energy indices
+	 * consistent with the stored conformation info.
+	 */
+	interface TableStore {
+
+		ConfInfo get(int[] assignments);
+		void put(int[] assignments, ConfInfo info);
+		void remove(int[] assignments);
+
+		/** iterate confs in lexicographical order of the assignments */
+		Iterator<Map.Entry<int[],ConfInfo>> iterator();
+
+		/** iterate (energy,assignments) pairs in order of increasing lower bound */
+		Iterator<Map.Entry<Double,int[]>> lowerIterator();
+
+		/** iterate (energy,assignments) pairs in order of increasing upper bound */
+		Iterator<Map.Entry<Double,int[]>> upperIterator();
+
+		/** iterate the distinct lower bounds in increasing order */
+		Iterator<Double> lowerEnergies();
+
+		/** iterate the distinct upper bounds in increasing order */
+		Iterator<Double> upperEnergies();
+
+		/** returns null if no conformations have the lower bound */
+		List<int[]> getByLower(double energy);
+
+		/** returns null if no conformations have the upper bound */
+		List<int[]> getByUpper(double energy);
+
+		long size();
+		void flush();
+		void close();
+	}
+
+	static class EnergiedAssignments implements Map.Entry<Double,int[]> {
+
+		public final double energy;
+		public final int[] assignments;
+
+		public EnergiedAssignments(double energy, int[] assignments) {
+			this.energy = energy;
+			this.assignments = assignments;
+		}
+
+		@Override
+		public Double getKey() {
+			return energy;
+		}
+
+		@Override
+		public int[] getValue() {
+			return assignments;
+		}
+
+		@Override
+		public int[] setValue(int[] value) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private class MapDBStore implements TableStore {
 
 		private final BTreeMap<int[],ConfInfo> btree;
 		private final EnergyIndex lowerIndex;
 		private final EnergyIndex upperIndex;
 
-		public ConfTable(String id) {
+		public MapDBStore(String id) {
 
 			// MapDB serializer for ConfInfo
 			final int ConfInfoBytes = Double.BYTES*2 + Long.BYTES*2;
@@ -362,67 +448,150 @@ public class ConfDB implements AutoCleanable {
 			this.upperIndex = new EnergyIndex(id + "-upperEnergy");
 		}
 
-		public void setBounds(ConfSearch.EnergiedConf econf, long timestampNs) {
-			setBounds(econf.getAssignments(), econf.getScore(), econf.getEnergy(), timestampNs);
+		@Override
+		public ConfInfo get(int[] assignments) {
+			return btree.get(assignments);
 		}
 
-		public void setBounds(int[] assignments, double lowerEnergy, double upperEnergy, long timestampNs) {
+		@Override
+		public void put(int[] assignments, ConfInfo info) {
+
+			ConfInfo oldInfo = btree.get(assignments);
+			boolean lowerChanged = oldInfo == null || !oldInfo.lowerEquals(info);
+			boolean upperChanged = oldInfo == null || !oldInfo.upperEquals(info);
+
+			// remove old energy index entries if needed
+			if (oldInfo != null) {
+				if (lowerChanged && oldInfo.lowerTimestampNs != 0L) {
+					lowerIndex.remove(oldInfo.lowerEnergy, assignments);
+				}
+				if (upperChanged && oldInfo.upperTimestampNs != 0L) {
+					upperIndex.remove(oldInfo.upperEnergy, assignments);
+				}
+			}
+
+			btree.put(assignments, info);
+
+			if (lowerChanged && info.lowerTimestampNs != 0L) {
+				lowerIndex.add(info.lowerEnergy, assignments);
+			}
+			if (upperChanged && info.upperTimestampNs != 0L) {
+				upperIndex.add(info.upperEnergy, assignments);
+			}
+		}
+
+		@Override
+		public void remove(int[] assignments) {
 			ConfInfo info = btree.get(assignments);
-			if (info == null) {
-				info = new ConfInfo();
-			} else {
-				// remove old energy index entries if needed
+			if (info != null) {
 				if (info.lowerTimestampNs != 0L) {
 					lowerIndex.remove(info.lowerEnergy, assignments);
 				}
 				if (info.upperTimestampNs != 0L) {
 					upperIndex.remove(info.upperEnergy, assignments);
 				}
+				btree.remove(assignments);
+			}
+		}
+
+		@Override
+		public Iterator<Map.Entry<int[],ConfInfo>> iterator() {
+			return btree.entryIterator();
+		}
+
+		@Override
+		public Iterator<Map.Entry<Double,int[]>> lowerIterator() {
+			return lowerIndex.iterator();
+		}
+
+		@Override
+		public Iterator<Map.Entry<Double,int[]>> upperIterator() {
+			return upperIndex.iterator();
+		}
+
+		@Override
+		public Iterator<Double> lowerEnergies() {
+			return lowerIndex.btree.keyIterator();
+		}
+
+		@Override
+		public Iterator<Double> upperEnergies() {
+			return upperIndex.btree.keyIterator();
+		}
+
+		@Override
+		public List<int[]> getByLower(double energy) {
+			return lowerIndex.get(energy);
+		}
+
+		@Override
+		public List<int[]> getByUpper(double energy) {
+			return upperIndex.get(energy);
+		}
+
+		@Override
+		public long size() {
+			return btree.sizeLong();
+		}
+
+		@Override
+		public void flush() {
+			// the whole DB gets committed at once, nothing to do here
+		}
+
+		@Override
+		public void close() {
+			btree.close();
+		}
+	}
+
+	public class ConfTable implements Iterable<Conf> {
+
+		private final TableStore store;
+
+		public ConfTable(String id) {
+			this.store = openStore(id);
+		}
+
+		public void setBounds(ConfSearch.EnergiedConf econf, long timestampNs) {
+			setBounds(econf.getAssignments(), econf.getScore(), econf.getEnergy(), timestampNs);
+		}
+
+		public void setBounds(int[] assignments, double lowerEnergy, double upperEnergy, long timestampNs) {
+			ConfInfo info = store.get(assignments);
+			if (info == null) {
+				info = new ConfInfo();
 			}
 			info.lowerEnergy = lowerEnergy;
 			info.lowerTimestampNs = timestampNs;
 			info.upperEnergy = upperEnergy;
 			info.upperTimestampNs = timestampNs;
-			btree.put(assignments, info);
-			lowerIndex.add(lowerEnergy, assignments);
-			upperIndex.add(upperEnergy, assignments);
+			store.put(assignments, info);
 		}
 
 		public void setLowerBound(int[] assignments, double energy, long timestampNs) {
-			ConfInfo info = btree.get(assignments);
+			ConfInfo info = store.get(assignments);
 			if (info == null) {
 				info = new ConfInfo();
-			} else {
-				// remove old energy index entries if needed
-				if (info.lowerTimestampNs != 0L) {
-					lowerIndex.remove(info.lowerEnergy, assignments);
-				}
 			}
 			info.lowerEnergy = energy;
 			info.lowerTimestampNs = timestampNs;
-			btree.put(assignments, info);
-			lowerIndex.add(energy, assignments);
+			store.put(assignments, info);
 		}
 
 		public void setUpperBound(int[] assignments, double energy, long timestampNs) {
-			ConfInfo info = btree.get(assignments);
+			ConfInfo info = store.get(assignments);
 			if (info == null) {
 				info = new ConfInfo();
-			} else {
-				// remove old energy index entries if needed
-				if (info.upperTimestampNs != 0L) {
-					upperIndex.remove(info.upperEnergy, assignments);
-				}
 			}
 			info.upperEnergy = energy;
 			info.upperTimestampNs = timestampNs;
-			btree.put(assignments, info);
-			upperIndex.add(energy, assignments);
+			store.put(assignments, info);
 		}
 
 		public Conf get(int[] assignments) {
 
-			ConfInfo info = btree.get(assignments);
+			ConfInfo info = store.get(assignments);
 			if (info == null) {
 				return null;
 			}
@@ -432,7 +601,7 @@ public class ConfDB implements AutoCleanable {
 
 		public ConfSearch.ScoredConf getScored(int[] assignments) {
 
-			ConfInfo info = btree.get(assignments);
+			ConfInfo info = store.get(assignments);
 			if (info == null) {
 				return null;
 			}
@@ -445,7 +614,7 @@ public class ConfDB implements AutoCleanable {
 
 		public ConfSearch.EnergiedConf getEnergied(ConfSearch.ScoredConf conf) {
 
-			ConfInfo info = btree.get(conf.getAssignments());
+			ConfInfo info = store.get(conf.getAssignments());
 			if (info == null || info.upperTimestampNs == 0L) {
 				return null;
 			}
@@ -455,7 +624,7 @@ public class ConfDB implements AutoCleanable {
 
 		public ConfSearch.EnergiedConf getEnergied(int[] assignments) {
 
-			ConfInfo info = btree.get(assignments);
+			ConfInfo info = store.get(assignments);
 			if (info == null) {
 				return null;
 			}
@@ -468,21 +637,12 @@ public class ConfDB implements AutoCleanable {
 		}
 
 		public void remove(int[] assignments) {
-			ConfInfo info = btree.get(assignments);
-			if (info != null) {
-				if (info.lowerTimestampNs != 0L) {
-					lowerIndex.remove(info.lowerEnergy, assignments);
-				}
-				if (info.upperTimestampNs != 0L) {
-					upperIndex.remove(info.upperEnergy, assignments);
-				}
-				btree.remove(assignments);
-			}
+			store.remove(assignments);
 		}
 
 		@Override
 		public Iterator<Conf> iterator() {
-			return Streams.of(btree.entryIterator())
+			return Streams.of(store.iterator())
 					.map((entry) -> new Conf(
 									entry.getKey(),
 									entry.getValue()
@@ -500,12 +660,12 @@ public class ConfDB implements AutoCleanable {
 							.iterator();
 
 				case Score:
-					return () -> Streams.of(lowerIndex.iterator())
+					return () -> Streams.of(store.lowerIterator())
 							.map((entry) -> new ConfSearch.ScoredConf(entry.getValue(), entry.getKey()))
 							.iterator();
 
 				case Energy:
-					return () -> Streams.of(upperIndex.iterator())
+					return () -> Streams.of(store.upperIterator())
 							.map((entry) -> getScored(entry.getValue()))
 							.filter((conf) -> conf != null)
 							.iterator();
@@ -524,13 +684,13 @@ public class ConfDB implements AutoCleanable {
 							.iterator();
 
 				case Score:
-					return () -> Streams.of(lowerIndex.iterator())
+					return () -> Streams.of(store.lowerIterator())
 							.map((entry) -> getEnergied(entry.getValue()))
 							.filter((conf) -> conf != null)
 							.iterator();
 
 				case Energy:
-					return () -> Streams.of(upperIndex.iterator())
+					return () -> Streams.of(store.upperIterator())
 							.map((entry) -> getEnergied(entry.getValue()))
 							.filter((conf) -> conf != null)
 							.iterator();
@@ -541,15 +701,15 @@ public class ConfDB implements AutoCleanable {
 		}
 
 		public Iterable<Double> lowerBounds() {
-			return () -> lowerIndex.btree.keyIterator();
+			return () -> store.lowerEnergies();
 		}
 
 		public Iterable<Double> upperBounds() {
-			return () -> upperIndex.btree.keyIterator();
+			return () -> store.upperEnergies();
 		}
 
 		public List<Conf> getConfsByLowerBound(double energy) {
-			List<int[]> multiAssignments = lowerIndex.get(energy);
+			List<int[]> multiAssignments = store.getByLower(energy);
 			if (multiAssignments == null) {
 				return null;
 			}
@@ -559,7 +719,7 @@ public class ConfDB implements AutoCleanable {
 		}
 
 		public List<Conf> getConfsByUpperBound(double energy) {
-			List<int[]> multiAssignments = upperIndex.get(energy);
+			List<int[]> multiAssignments = store.getByUpper(energy);
 			if (multiAssignments == null) {
 				return null;
 			}
@@ -569,7 +729,7 @@ public class ConfDB implements AutoCleanable {
 		}
 
 		public long size() {
-			return btree.sizeLong();
+			return store.size();
 		}
 
 		public void flush() {
@@ -655,32 +815,6 @@ public class ConfDB implements AutoCleanable {
 			}
 		}
 
-		private class EnergiedAssignments implements Map.Entry<Double,int[]> {
-
-			public final double energy;
-			public final int[] assignments;
-
-			public EnergiedAssignments(double energy, int[] assignments) {
-				this.energy = energy;
-				this.assignments = assignments;
-			}
-
-			@Override
-			public Double getKey() {
-				return energy;
-			}
-
-			@Override
-			public int[] getValue() {
-				return assignments;
-			}
-
-			@Override
-			public int[] setValue(int[] value) {
-				throw new UnsupportedOperationException();
-			}
-		}
-
 		@Override
 		public Iterator<Map.Entry<Double,int[]>> iterator() {
 			return Streams.of(btree.entryIterator())
@@ -717,10 +851,12 @@ public class ConfDB implements AutoCleanable {
 
 	public final SimpleConfSpace confSpace;
 	public final File file;
+	public final Backend backend;
 
 	private final DB db;
 	private final HTreeMap<Sequence,SequenceInfo> sequences;
 	private final Map<Sequence,SequenceDB> sequenceDBs;
+	private final Map<String,TableStore> stores;
 	private final IntEncoding assignmentEncoding;
 
 	public ConfDB(SimpleConfSpace confSpace) {
@@ -728,9 +864,18 @@ public class ConfDB implements AutoCleanable {
 	}
 
 	public ConfDB(SimpleConfSpace confSpace, File file) {
+		this(confSpace, file, Backend.MapDB);
+	}
+
+	public ConfDB(SimpleConfSpace confSpace, File file, Backend backend) {
 
 		this.confSpace = confSpace;
 		this.file = file;
+		this.backend = backend;
+
+		if (backend == Backend.Segments && file == null) {
+			throw new IllegalArgumentException("the " + backend + " backend needs a file");
+		}
 
 		// determine conf encoding
 		int maxAssignment = 0;
@@ -821,6 +966,26 @@ public class ConfDB implements AutoCleanable {
 				.valueSerializer(infoSerializer)
 				.createOrOpen();
 		sequenceDBs = new HashMap<>();
+		stores = new HashMap<>();
+	}
+
+	/**
+	 * Directory where the {@link Backend#Segments} backend keeps its segment and index files
+	 */
+	public File getSegmentsDir() {
+		return new File(file.getPath() + ".segments");
+	}
+
+	private TableStore openStore(String id) {
+		synchronized (stores) {
+			return stores.computeIfAbsent(id, (key) -> {
+				switch (backend) {
+					case MapDB: return new MapDBStore(id);
+					case Segments: return new ConfSegmentStore(getSegmentsDir(), id, confSpace.positions.size(), assignmentEncoding);
+					default: throw new UnpossibleError();
+				}
+			});
+		}
 	}
 
 	private String getSequenceId(Sequence sequence) {
@@ -870,6 +1035,11 @@ public class ConfDB implements AutoCleanable {
 	}
 
 	public void flush() {
+		synchronized (stores) {
+			for (TableStore store : stores.values()) {
+				store.flush();
+			}
+		}
 		// In write-ahead mode, we don't actually have any transactions,
 		// so there's nothing to commit in the traditional sense.
 		// So in this case, "commit" flushes write caches to disk
@@ -878,8 +1048,11 @@ public class ConfDB implements AutoCleanable {
 
 	public void close() {
 		flush();
-		for (ConfTable sdb : sequenceDBs.values()) {
-			sdb.btree.close();
+		synchronized (stores) {
+			for (TableStore store : stores.values()) {
+				store.close();
+			}
+			stores.clear();
 		}
 		sequenceDBs.clear();
 		db.close();
@@ -0,0 +1,1038 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+package edu.duke.cs.osprey.confspace;
+
+import edu.duke.cs.osprey.tools.IntEncoding;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+
+/**
+ * Append-only conformation storage for a single {@link ConfDB} table.
+ *
+ * Every write appends a fixed-size record (packed assignments, lower bound, upper bound, timestamps)
+ * to the end of the segment file. Removals append a tombstone record. An in-memory open-addressing
+ * hash index maps assignments to the newest record, and is rebuilt by scanning the segment on open.
+ *
+ * Sorted lower/upper energy indices are written to separate files when the store is closed,
+ * or on demand when an energy-ordered iteration is requested after new writes.
+ * A stale index is brought up to date by merging the records written since it was built,
+ * rather than by rescanning the whole segment. Index files are written to a temp file and moved
+ * into place, so readers that still have the old index mapped never see it change underneath them.
+ * Both the segment and the energy indices are streamed through memory-mapped buffers.
+ */
+class ConfSegmentStore implements ConfDB.TableStore {
+
+	private static final int SegmentMagic = 0x4f534547; // OSEG
+	private static final int IndexMagic = 0x4f534958; // OSIX
+	private static final int Version = 1;
+
+	// magic, version, numPos, encoding bytes
+	private static final int SegmentHeaderBytes = Integer.BYTES*4;
+
+	// magic, version, num segment records at build time, num entries
+	private static final int IndexHeaderBytes = Integer.BYTES*2 + Long.BYTES*2;
+	private static final int IndexEntryBytes = Double.BYTES + Long.BYTES;
+
+	// keep mapped regions under the 2 GiB limit of a single MappedByteBuffer
+	private static final long MaxMappedBytes = 1L << 30;
+
+	private static final long TombstoneTimestamp = -1L;
+
+	public final File segmentFile;
+	public final File lowerFile;
+	public final File upperFile;
+
+	private final int numPos;
+	private final IntEncoding encoding;
+	private final int assignmentBytes;
+	private final int recordBytes;
+	private final FileChannel channel;
+	private final ByteBuffer recordBuf;
+	private final HashIndex index;
+
+	// records replaced by newer writes since the energy indices were built
+	private final Set<Long> supersededRecords = new HashSet<>();
+
+	private long numRecords;
+	private long numLive;
+	private long bufferedRecord = -1;
+	private EnergyIndex lowerIndex;
+	private EnergyIndex upperIndex;
+
+	public ConfSegmentStore(File dir, String id, int numPos, IntEncoding encoding) {
+
+		this.numPos = numPos;
+		this.encoding = encoding;
+		this.assignmentBytes = numPos*encoding.numBytes;
+		this.recordBytes = assignmentBytes + Double.BYTES*2 + Long.BYTES*2;
+		this.recordBuf = ByteBuffer.allocate(recordBytes);
+
+		dir.mkdirs();
+		String filename = encodeFilename(id);
+		segmentFile = new File(dir, filename + ".seg");
+		lowerFile = new File(dir, filename + ".lower.idx");
+		upperFile = new File(dir, filename + ".upper.idx");
+
+		try {
+
+			channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+			if (channel.size() < SegmentHeaderBytes) {
+				writeHeader();
+			} else {
+				checkHeader();
+			}
+
+			// drop any partially-written record at the end (eg, if the JVM died mid-write)
+			numRecords = (channel.size() - SegmentHeaderBytes)/recordBytes;
+			channel.truncate(SegmentHeaderBytes + numRecords*recordBytes);
+
+		} catch (IOException ex) {
+			throw new UncheckedIOException("can't open conf segment: " + segmentFile, ex);
+		}
+
+		// rebuild the hash index from the segment
+		index = new HashIndex();
+		numLive = 0;
+		RecordReader reader = new RecordReader();
+		for (long i=0; i<numRecords; i++) {
+			reader.seek(i);
+			int[] assignments = reader.readAssignments();
+			long oldRecord = index.put(assignments, i);
+			boolean isTombstone = reader.isTombstone();
+			if (oldRecord < 0) {
+				if (!isTombstone) {
+					numLive++;
+				}
+			} else {
+				boolean wasTombstone = readInfo(oldRecord) == null;
+				if (wasTombstone && !isTombstone) {
+					numLive++;
+				} else if (!wasTombstone && isTombstone) {
+					numLive--;
+				}
+			}
+		}
+
+		// reuse the energy indices if they're up to date with the segment
+		lowerIndex = EnergyIndex.openIfCurrent(lowerFile, numRecords);
+		upperIndex = EnergyIndex.openIfCurrent(upperFile, numRecords);
+	}
+
+	/** table ids can have any characters, so escape anything not safe for a filename */
+	private static String encodeFilename(String id) {
+		StringBuilder buf = new StringBuilder();
+		for (char c : id.toCharArray()) {
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-') {
+				buf.append(c);
+			} else {
+				buf.append(String.format("_%04x", (int)c));
+			}
+		}
+		return buf.toString();
+	}
+
+	private void writeHeader()
+	throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(SegmentHeaderBytes);
+		buf.putInt(SegmentMagic);
+		buf.putInt(Version);
+		buf.putInt(numPos);
+		buf.putInt(encoding.numBytes);
+		buf.flip();
+		channel.truncate(0);
+		writeFully(channel, buf, 0);
+	}
+
+	private void checkHeader()
+	throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(SegmentHeaderBytes);
+		readFully(channel, buf, 0);
+		buf.flip();
+		if (buf.getInt() != SegmentMagic) {
+			throw new IllegalStateException(segmentFile + " is not a conf segment");
+		}
+		int version = buf.getInt();
+		if (version != Version) {
+			throw new IllegalStateException(segmentFile + " has unsupported version " + version);
+		}
+		int fileNumPos = buf.getInt();
+		int fileEncodingBytes = buf.getInt();
+		if (fileNumPos != numPos || fileEncodingBytes != encoding.numBytes) {
+			throw new IllegalStateException(String.format("%s was written for a different conf space (%d positions, %d-byte assignments), expected (%d positions, %d-byte assignments)",
+				segmentFile, fileNumPos, fileEncodingBytes, numPos, encoding.numBytes
+			));
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf, long pos)
+	throws IOException {
+		while (buf.hasRemaining()) {
+			pos += channel.write(buf, pos);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buf, long pos)
+	throws IOException {
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf, pos);
+			if (n < 0) {
+				throw new IOException("unexpected end of file");
+			}
+			pos += n;
+		}
+	}
+
+	private long recordPos(long record) {
+		return SegmentHeaderBytes + record*recordBytes;
+	}
+
+	private static int hash(int[] assignments) {
+		// mix the bits a little, since assignments hash codes tend to be clustered
+		int h = Arrays.hashCode(assignments);
+		return h ^ (h >>> 16);
+	}
+
+	/** reads the record into the record buffer, positioned at the start of the record */
+	private void readRecord(long record) {
+
+		// hash lookups usually read the record we want next, so don't read it twice
+		if (record == bufferedRecord) {
+			recordBuf.rewind();
+			return;
+		}
+
+		bufferedRecord = -1;
+		recordBuf.clear();
+		try {
+			readFully(channel, recordBuf, recordPos(record));
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		recordBuf.flip();
+		bufferedRecord = record;
+	}
+
+	private boolean assignmentsMatch(long record, int[] assignments) {
+		readRecord(record);
+		for (int i=0; i<numPos; i++) {
+			if (encoding.read(recordBuf) != assignments[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int[] readAssignments(long record) {
+		readRecord(record);
+		int[] assignments = new int[numPos];
+		for (int i=0; i<numPos; i++) {
+			assignments[i] = encoding.read(recordBuf);
+		}
+		return assignments;
+	}
+
+	/** returns null for tombstones */
+	private ConfDB.ConfInfo readInfo(long record) {
+		readRecord(record);
+		recordBuf.position(assignmentBytes);
+		ConfDB.ConfInfo info = new ConfDB.ConfInfo(
+			recordBuf.getDouble(),
+			recordBuf.getLong(),
+			recordBuf.getDouble(),
+			recordBuf.getLong()
+		);
+		if (info.lowerTimestampNs == TombstoneTimestamp) {
+			return null;
+		}
+		return info;
+	}
+
+	private long append(int[] assignments, double lowerEnergy, long lowerTimestampNs, double upperEnergy, long upperTimestampNs) {
+
+		recordBuf.clear();
+		for (int i=0; i<numPos; i++) {
+			encoding.write(recordBuf, assignments[i]);
+		}
+		recordBuf.putDouble(lowerEnergy);
+		recordBuf.putLong(lowerTimestampNs);
+		recordBuf.putDouble(upperEnergy);
+		recordBuf.putLong(upperTimestampNs);
+		recordBuf.flip();
+
+		long record = numRecords;
+		bufferedRecord = -1;
+		try {
+			writeFully(channel, recordBuf, recordPos(record));
+		} catch (IOException ex) {
+			throw new UncheckedIOException("can't write to conf segment: " + segmentFile, ex);
+		}
+		bufferedRecord = record;
+		numRecords++;
+
+		// NOTE: any writes make the energy indices stale, but keep them open so we can merge into them later
+
+		return record;
+	}
+
+	private void invalidateEnergyIndices() {
+		if (lowerIndex != null) {
+			lowerIndex.close();
+			lowerIndex = null;
+		}
+		if (upperIndex != null) {
+			upperIndex.close();
+			upperIndex = null;
+		}
+	}
+
+	@Override
+	public synchronized ConfDB.ConfInfo get(int[] assignments) {
+		long record = index.get(assignments);
+		if (record < 0) {
+			return null;
+		}
+		return readInfo(record);
+	}
+
+	@Override
+	public synchronized void put(int[] assignments, ConfDB.ConfInfo info) {
+		int slot = index.find(assignments);
+		long oldRecord = index.getRecord(slot);
+		if (oldRecord < 0 || readInfo(oldRecord) == null) {
+			numLive++;
+		}
+		if (oldRecord >= 0) {
+			supersededRecords.add(oldRecord);
+		}
+		long record = append(assignments, info.lowerEnergy, info.lowerTimestampNs, info.upperEnergy, info.upperTimestampNs);
+		index.put(slot, assignments, record);
+	}
+
+	@Override
+	public synchronized void remove(int[] assignments) {
+		int slot = index.find(assignments);
+		long oldRecord = index.getRecord(slot);
+		if (oldRecord < 0 || readInfo(oldRecord) == null) {
+			return;
+		}
+		supersededRecords.add(oldRecord);
+		long record = append(assignments, 0.0, TombstoneTimestamp, 0.0, TombstoneTimestamp);
+		index.put(slot, assignments, record);
+		numLive--;
+	}
+
+	/** returns the record indices of all live confs, in lexicographical order of the assignments */
+	private synchronized long[] getLiveRecordsByAssignments() {
+
+		// collect the live records
+		RecordReader reader = new RecordReader();
+		int[][] liveAssignments = new int[(int)numLive][];
+		long[] liveRecords = new long[(int)numLive];
+		int n = 0;
+		for (long record : index.records()) {
+			reader.seek(record);
+			if (!reader.isTombstone()) {
+				liveAssignments[n] = reader.readAssignments();
+				liveRecords[n] = record;
+				n++;
+			}
+		}
+
+		// sort by assignments
+		Integer[] order = new Integer[n];
+		for (int i=0; i<n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> compareAssignments(liveAssignments[a], liveAssignments[b]));
+
+		long[] sorted = new long[n];
+		for (int i=0; i<n; i++) {
+			sorted[i] = liveRecords[order[i]];
+		}
+		return sorted;
+	}
+
+	private static int compareAssignments(int[] a, int[] b) {
+		for (int i=0; i<a.length; i++) {
+			int val = Integer.compare(a[i], b[i]);
+			if (val != 0) {
+				return val;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public Iterator<Map.Entry<int[],ConfDB.ConfInfo>> iterator() {
+
+		long[] records = getLiveRecordsByAssignments();
+		RecordReader reader = new RecordReader();
+
+		return new Iterator<Map.Entry<int[],ConfDB.ConfInfo>>() {
+
+			int i = 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < records.length;
+			}
+
+			@Override
+			public Map.Entry<int[],ConfDB.ConfInfo> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				reader.seek(records[i++]);
+				int[] assignments = reader.readAssignments();
+				return new AbstractMap.SimpleImmutableEntry<>(assignments, reader.readInfo());
+			}
+		};
+	}
+
+	private boolean isCurrent(EnergyIndex energyIndex) {
+		return energyIndex != null && energyIndex.numSegmentRecords == numRecords;
+	}
+
+	/** makes sure the energy indices are up to date with the segment, building them if needed */
+	public synchronized void buildEnergyIndices() {
+		if (!isCurrent(lowerIndex)) {
+			lowerIndex = lowerIndex == null
+				? buildEnergyIndex(lowerFile, true)
+				: updateEnergyIndex(lowerFile, lowerIndex, true);
+		}
+		if (!isCurrent(upperIndex)) {
+			upperIndex = upperIndex == null
+				? buildEnergyIndex(upperFile, false)
+				: updateEnergyIndex(upperFile, upperIndex, false);
+		}
+		supersededRecords.clear();
+	}
+
+	private EnergyIndex buildEnergyIndex(File file, boolean isLower) {
+
+		// collect all the bounds that have been set
+		double[] energies = new double[(int)numLive];
+		long[] records = new long[(int)numLive];
+		int n = 0;
+		RecordReader reader = new RecordReader();
+		for (long record : index.records()) {
+			reader.seek(record);
+			if (reader.isTombstone()) {
+				continue;
+			}
+			ConfDB.ConfInfo info = reader.readInfo();
+			long timestampNs = isLower ? info.lowerTimestampNs : info.upperTimestampNs;
+			if (timestampNs != 0L) {
+				energies[n] = isLower ? info.lowerEnergy : info.upperEnergy;
+				records[n] = record;
+				n++;
+			}
+		}
+
+		// sort by energy, then by record to keep insertion order among ties
+		sortPairs(energies, records, 0, n - 1);
+
+		EnergyIndex.write(file, numRecords, energies, records, n);
+		return EnergyIndex.openIfCurrent(file, numRecords);
+	}
+
+	/** merges the records written since the index was built into the index, instead of rescanning the whole segment */
+	private EnergyIndex updateEnergyIndex(File file, EnergyIndex oldIndex, boolean isLower) {
+
+		// collect the bounds from the new records that are still current
+		long numNewRecords = numRecords - oldIndex.numSegmentRecords;
+		double[] newEnergies = new double[(int)numNewRecords];
+		long[] newRecords = new long[(int)numNewRecords];
+		int numNew = 0;
+		RecordReader reader = new RecordReader();
+		for (long record=oldIndex.numSegmentRecords; record<numRecords; record++) {
+			if (supersededRecords.contains(record)) {
+				continue;
+			}
+			reader.seek(record);
+			if (reader.isTombstone()) {
+				continue;
+			}
+			ConfDB.ConfInfo info = reader.readInfo();
+			long timestampNs = isLower ? info.lowerTimestampNs : info.upperTimestampNs;
+			if (timestampNs != 0L) {
+				newEnergies[numNew] = isLower ? info.lowerEnergy : info.upperEnergy;
+				newRecords[numNew] = record;
+				numNew++;
+			}
+		}
+		sortPairs(newEnergies, newRecords, 0, numNew - 1);
+
+		// merge with the old entries that haven't been replaced since
+		// old records all come before new records, so ties go to the old entries to keep insertion order
+		double[] energies = new double[(int)(oldIndex.size + numNew)];
+		long[] records = new long[(int)(oldIndex.size + numNew)];
+		int n = 0;
+		long i = 0;
+		int j = 0;
+		while (i < oldIndex.size || j < numNew) {
+			if (i < oldIndex.size && supersededRecords.contains(oldIndex.getRecord(i))) {
+				i++;
+				continue;
+			}
+			if (j >= numNew || (i < oldIndex.size && Double.compare(oldIndex.getEnergy(i), newEnergies[j]) <= 0)) {
+				energies[n] = oldIndex.getEnergy(i);
+				records[n] = oldIndex.getRecord(i);
+				i++;
+			} else {
+				energies[n] = newEnergies[j];
+				records[n] = newRecords[j];
+				j++;
+			}
+			n++;
+		}
+
+		// let go of the old mapping before replacing the file
+		oldIndex.close();
+
+		EnergyIndex.write(file, numRecords, energies, records, n);
+		return EnergyIndex.openIfCurrent(file, numRecords);
+	}
+
+	private static boolean lessThan(double[] energies, long[] records, int i, int j) {
+		int val = Double.compare(energies[i], energies[j]);
+		if (val != 0) {
+			return val < 0;
+		}
+		return records[i] < records[j];
+	}
+
+	private static void swap(double[] energies, long[] records, int i, int j) {
+		double e = energies[i];
+		energies[i] = energies[j];
+		energies[j] = e;
+		long r = records[i];
+		records[i] = records[j];
+		records[j] = r;
+	}
+
+	/** in-place quicksort of parallel primitive arrays, so we don't have to box millions of entries */
+	private static void sortPairs(double[] energies, long[] records, int lo, int hi) {
+		while (hi - lo > 16) {
+
+			// median of three pivot, moved to hi
+			int mid = (lo + hi) >>> 1;
+			if (lessThan(energies, records, mid, lo)) swap(energies, records, mid, lo);
+			if (lessThan(energies, records, hi, lo)) swap(energies, records, hi, lo);
+			if (lessThan(energies, records, mid, hi)) swap(energies, records, mid, hi);
+
+			int p = lo;
+			for (int i=lo; i<hi; i++) {
+				if (lessThan(energies, records, i, hi)) {
+					swap(energies, records, i, p++);
+				}
+			}
+			swap(energies, records, p, hi);
+
+			// recurse on the smaller side to bound the stack depth
+			if (p - lo < hi - p) {
+				sortPairs(energies, records, lo, p - 1);
+				lo = p + 1;
+			} else {
+				sortPairs(energies, records, p + 1, hi);
+				hi = p - 1;
+			}
+		}
+
+		// insertion sort for the small ranges
+		for (int i=lo + 1; i<=hi; i++) {
+			for (int j=i; j>lo && lessThan(energies, records, j, j - 1); j--) {
+				swap(energies, records, j, j - 1);
+			}
+		}
+	}
+
+	private synchronized EnergyIndex getLowerIndex() {
+		buildEnergyIndices();
+		return lowerIndex;
+	}
+
+	private synchronized EnergyIndex getUpperIndex() {
+		buildEnergyIndices();
+		return upperIndex;
+	}
+
+	private Iterator<Map.Entry<Double,int[]>> iterateIndex(EnergyIndex energyIndex) {
+
+		RecordReader reader = new RecordReader();
+
+		return new Iterator<Map.Entry<Double,int[]>>() {
+
+			long i = 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < energyIndex.size;
+			}
+
+			@Override
+			public Map.Entry<Double,int[]> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				double energy = energyIndex.getEnergy(i);
+				reader.seek(energyIndex.getRecord(i));
+				i++;
+				return new ConfDB.EnergiedAssignments(energy, reader.readAssignments());
+			}
+		};
+	}
+
+	private Iterator<Double> iterateDistinctEnergies(EnergyIndex energyIndex) {
+		return new Iterator<Double>() {
+
+			long i = 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < energyIndex.size;
+			}
+
+			@Override
+			public Double next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				double energy = energyIndex.getEnergy(i);
+				do {
+					i++;
+				} while (i < energyIndex.size && Double.compare(energyIndex.getEnergy(i), energy) == 0);
+				return energy;
+			}
+		};
+	}
+
+	private List<int[]> getByEnergy(EnergyIndex energyIndex, double energy) {
+		long i = energyIndex.find(energy);
+		if (i < 0) {
+			return null;
+		}
+		RecordReader reader = new RecordReader();
+		List<int[]> multiAssignments = new ArrayList<>();
+		for (; i < energyIndex.size && Double.compare(energyIndex.getEnergy(i), energy) == 0; i++) {
+			reader.seek(energyIndex.getRecord(i));
+			multiAssignments.add(reader.readAssignments());
+		}
+		return multiAssignments;
+	}
+
+	@Override
+	public Iterator<Map.Entry<Double,int[]>> lowerIterator() {
+		return iterateIndex(getLowerIndex());
+	}
+
+	@Override
+	public Iterator<Map.Entry<Double,int[]>> upperIterator() {
+		return iterateIndex(getUpperIndex());
+	}
+
+	@Override
+	public Iterator<Double> lowerEnergies() {
+		return iterateDistinctEnergies(getLowerIndex());
+	}
+
+	@Override
+	public Iterator<Double> upperEnergies() {
+		return iterateDistinctEnergies(getUpperIndex());
+	}
+
+	@Override
+	public List<int[]> getByLower(double energy) {
+		return getByEnergy(getLowerIndex(), energy);
+	}
+
+	@Override
+	public List<int[]> getByUpper(double energy) {
+		return getByEnergy(getUpperIndex(), energy);
+	}
+
+	@Override
+	public synchronized long size() {
+		return numLive;
+	}
+
+	public synchronized long getNumRecords() {
+		return numRecords;
+	}
+
+	@Override
+	public synchronized void flush() {
+		try {
+			channel.force(false);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		buildEnergyIndices();
+		flush();
+		invalidateEnergyIndices();
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+
+	/**
+	 * Reads records from memory-mapped windows of the segment,
+	 * so sequential scans don't need a system call per record.
+	 */
+	private class RecordReader {
+
+		private final long recordsPerWindow = MaxMappedBytes/recordBytes;
+
+		private MappedByteBuffer window = null;
+		private long windowStart = -1;
+		private long windowSize = 0;
+		private long record = -1;
+
+		public void seek(long record) {
+
+			if (window == null || record < windowStart || record >= windowStart + windowSize) {
+
+				// map a new window
+				windowStart = (record/recordsPerWindow)*recordsPerWindow;
+				windowSize = Math.min(recordsPerWindow, getNumRecords() - windowStart);
+				try {
+					window = channel.map(FileChannel.MapMode.READ_ONLY, recordPos(windowStart), windowSize*recordBytes);
+				} catch (IOException ex) {
+					throw new UncheckedIOException("can't map conf segment: " + segmentFile, ex);
+				}
+			}
+
+			this.record = record;
+			window.position((int)((record - windowStart)*recordBytes));
+		}
+
+		public int[] readAssignments() {
+			window.position((int)((record - windowStart)*recordBytes));
+			int[] assignments = new int[numPos];
+			for (int i=0; i<numPos; i++) {
+				assignments[i] = encoding.read(window);
+			}
+			return assignments;
+		}
+
+		public boolean isTombstone() {
+			return window.getLong((int)((record - windowStart)*recordBytes) + assignmentBytes + Double.BYTES) == TombstoneTimestamp;
+		}
+
+		public ConfDB.ConfInfo readInfo() {
+			window.position((int)((record - windowStart)*recordBytes) + assignmentBytes);
+			return new ConfDB.ConfInfo(
+				window.getDouble(),
+				window.getLong(),
+				window.getDouble(),
+				window.getLong()
+			);
+		}
+	}
+
+
+	/**
+	 * Open-addressing (linear probing) hash table from assignments to the newest record.
+	 *
+	 * Only the record index and the hash are kept in memory,
+	 * the assignments themselves are read back from the segment to resolve collisions.
+	 */
+	private class HashIndex {
+
+		private long[] slots = new long[1024]; // record + 1, or 0 for empty
+		private int[] hashes = new int[1024];
+		private int size = 0;
+
+		private int find(int[] assignments, int h) {
+			int mask = slots.length - 1;
+			int i = h & mask;
+			while (slots[i] != 0) {
+				if (hashes[i] == h && assignmentsMatch(slots[i] - 1, assignments)) {
+					return i;
+				}
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+
+		/** returns the slot for the assignments, either holding its record or empty */
+		public int find(int[] assignments) {
+			return find(assignments, hash(assignments));
+		}
+
+		/** returns the record in the slot, or -1 */
+		public long getRecord(int slot) {
+			return slots[slot] - 1;
+		}
+
+		public long get(int[] assignments) {
+			return getRecord(find(assignments));
+		}
+
+		/**
+		 * puts the record in a slot from {@link #find(int[])}, so callers that already
+		 * looked up the old record don't have to probe (and read the segment) again
+		 *
+		 * returns the previous record, or -1
+		 */
+		public long put(int slot, int[] assignments, long record) {
+			long oldRecord = slots[slot] - 1;
+			slots[slot] = record + 1;
+			hashes[slot] = hash(assignments);
+			if (oldRecord < 0) {
+				size++;
+				if (size*2 > slots.length) {
+					grow();
+				}
+			}
+			return oldRecord;
+		}
+
+		/** returns the previous record, or -1 */
+		public long put(int[] assignments, long record) {
+			return put(find(assignments), assignments, record);
+		}
+
+		private void grow() {
+			long[] oldSlots = slots;
+			int[] oldHashes = hashes;
+			slots = new long[oldSlots.length*2];
+			hashes = new int[oldHashes.length*2];
+			int mask = slots.length - 1;
+			for (int j=0; j<oldSlots.length; j++) {
+				if (oldSlots[j] != 0) {
+
+					// the entries are already distinct, so no need to compare assignments when re-inserting
+					int i = oldHashes[j] & mask;
+					while (slots[i] != 0) {
+						i = (i + 1) & mask;
+					}
+					slots[i] = oldSlots[j];
+					hashes[i] = oldHashes[j];
+				}
+			}
+		}
+
+		/** all records in the index, including tombstones, in slot order */
+		public Iterable<Long> records() {
+			return () -> new Iterator<Long>() {
+
+				int i = advance(0);
+
+				private int advance(int i) {
+					while (i < slots.length && slots[i] == 0) {
+						i++;
+					}
+					return i;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return i < slots.length;
+				}
+
+				@Override
+				public Long next() {
+					long record = slots[i] - 1;
+					i = advance(i + 1);
+					return record;
+				}
+			};
+		}
+	}
+
+
+	/**
+	 * A sorted (energy,record) index file, memory-mapped for reading
+	 */
+	private static class EnergyIndex {
+
+		public final long numSegmentRecords;
+		public final long size;
+
+		private final FileChannel channel;
+		private final MappedByteBuffer[] windows;
+		private final long entriesPerWindow = MaxMappedBytes/IndexEntryBytes;
+
+		private EnergyIndex(FileChannel channel, long numSegmentRecords, long size)
+		throws IOException {
+			this.channel = channel;
+			this.numSegmentRecords = numSegmentRecords;
+			this.size = size;
+			int numWindows = (int)((size + entriesPerWindow - 1)/entriesPerWindow);
+			windows = new MappedByteBuffer[numWindows];
+			for (int i=0; i<numWindows; i++) {
+				long start = i*entriesPerWindow;
+				long count = Math.min(entriesPerWindow, size - start);
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, IndexHeaderBytes + start*IndexEntryBytes, count*IndexEntryBytes);
+			}
+		}
+
+		/**
+		 * Writes to a temp file first and moves it into place, so other readers
+		 * with the old index mapped never see a truncated or partial file.
+		 */
+		public static void write(File file, long numSegmentRecords, double[] energies, long[] records, int n) {
+			try {
+				File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+				try {
+
+					try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+						// stream the header and the entries through one buffer
+						ByteBuffer buf = ByteBuffer.allocate(IndexHeaderBytes + 8192*IndexEntryBytes);
+						buf.putInt(IndexMagic);
+						buf.putInt(Version);
+						buf.putLong(numSegmentRecords);
+						buf.putLong(n);
+
+						long pos = 0;
+						for (int i=0; i<n; i++) {
+							if (buf.remaining() < IndexEntryBytes) {
+								buf.flip();
+								long len = buf.remaining();
+								writeFully(channel, buf, pos);
+								pos += len;
+								buf.clear();
+							}
+							buf.putDouble(energies[i]);
+							buf.putLong(records[i]);
+						}
+						buf.flip();
+						writeFully(channel, buf, pos);
+					}
+
+					Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+				} finally {
+					tempFile.delete();
+				}
+
+			} catch (IOException ex) {
+				throw new UncheckedIOException("can't write energy index: " + file, ex);
+			}
+		}
+
+		/** returns null if the index doesn't exist or was built for a different version of the segment */
+		public static EnergyIndex openIfCurrent(File file, long numSegmentRecords) {
+
+			if (!file.exists()) {
+				return null;
+			}
+
+			try {
+				FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				try {
+
+					ByteBuffer header = ByteBuffer.allocate(IndexHeaderBytes);
+					if (channel.size() < IndexHeaderBytes) {
+						channel.close();
+						return null;
+					}
+					readFully(channel, header, 0);
+					header.flip();
+					if (header.getInt() != IndexMagic || header.getInt() != Version || header.getLong() != numSegmentRecords) {
+						channel.close();
+						return null;
+					}
+					long size = header.getLong();
+					if (channel.size() < IndexHeaderBytes + size*IndexEntryBytes) {
+						channel.close();
+						return null;
+					}
+
+					return new EnergyIndex(channel, numSegmentRecords, size);
+
+				} catch (IOException ex) {
+					channel.close();
+					throw ex;
+				}
+
+			} catch (IOException ex) {
+				throw new UncheckedIOException("can't read energy index: " + file, ex);
+			}
+		}
+
+		public double getEnergy(long i) {
+			return windows[(int)(i/entriesPerWindow)].getDouble((int)(i % entriesPerWindow)*IndexEntryBytes);
+		}
+
+		public long getRecord(long i) {
+			return windows[(int)(i/entriesPerWindow)].getLong((int)(i % entriesPerWindow)*IndexEntryBytes + Double.BYTES);
+		}
+
+		/** returns the index of the first entry with the energy, or -1 */
+		public long find(double energy) {
+			long lo = 0;
+			long hi = size;
+			while (lo < hi) {
+				long mid = (lo + hi) >>> 1;
+				if (Double.compare(getEnergy(mid), energy) < 0) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			if (lo < size && Double.compare(getEnergy(lo), energy) == 0) {
+				return lo;
+			}
+			return -1;
+		}
+
+		public void close() {
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+	}
+}
@@ -123,12 +123,18 @@ public class PositionConfSpace implements Serializable {
         }
 
         if(!wtRotOnly){//Create RCs based on library rotamers, not just the one wild-type rotamer
+
+            //	Compute phi and psi, necessary for backbone dependent rotamers.
+            double[] phipsi = Protractor.getPhiPsi(this.res);
+
             for(String AAType : allowedAAs){
-                int numDihedrals = templateLib.numDihedralsForResType(AAType);
 
-                //	Compute phi and psi, necessary for backbone dependent rotamers.
-                double[] phipsi = Protractor.getPhiPsi(this.res);
-                int numRot = templateLib.numRotForResType(designIndex, AAType, phipsi[0], phipsi[1]);
+                // look up the rotamers for this AA type and backbone once,
+                // instead of searching the template library for every dihedral of every rotamer
+                ResidueTemplate AATemplate = templateLib.getTemplateOrThrow(AAType);
+                int numDihedrals = AATemplate.numDihedrals;
+                int rotBin = AATemplate.getRotamerBin(phipsi[0], phipsi[1]);
+                int numRot = AATemplate.getRotamers().getNumRotamers(rotBin);
 
                 //resDOFs is all sidechain DOFs, for now
                 ArrayList<DegreeOfFreedom> dofListForRot = new ArrayList<>();
@@ -160,7 +166,7 @@ public class PositionConfSpace implements Serializable {
                             // get rotamer dihedrals
                             double[] dihedrals = new double[numDihedrals];
                             for(int i=0; i<numDihedrals; i++) {
-                                dihedrals[i] = templateLib.getDihedralForRotamer(designIndex, AAType, phipsi[0], phipsi[1], rot, i);
+                                dihedrals[i] = AATemplate.getRotamers().getDihedral(rotBin, rot, i);
                             }
 
                             createRC(dihedrals, AAType, null, rot, contSCFlex, dofListForRot, -1, strandDOFs,
@@ -41,13 +41,17 @@ import edu.duke.cs.osprey.dof.FreeDihedral;
 import edu.duke.cs.osprey.dof.ProlinePucker;
 import edu.duke.cs.osprey.dof.ResidueTypeDOF;
 import edu.duke.cs.osprey.minimization.ObjectiveFunction.DofBounds;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.restypes.HardCodedResidueInfo;
 import edu.duke.cs.osprey.restypes.ResidueTemplate;
 import edu.duke.cs.osprey.restypes.ResidueTemplateLibrary;
+import edu.duke.cs.osprey.structure.CellList;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.Residue;
 import edu.duke.cs.osprey.structure.Residues;
 import edu.duke.cs.osprey.tools.MathTools;
+import edu.duke.cs.osprey.tools.Stopwatch;
 
 import java.io.Serializable;
 import java.util.stream.Collectors;
@@ -72,6 +76,16 @@ public class SimpleConfSpace implements Serializable {
 		private List<Strand> strands = new ArrayList<>();
 		private Map<Strand,List<StrandFlex>> strandFlex = new IdentityHashMap<>();
 
+		/**
+		 * Residue conformations for different design positions (and shell distances for
+		 * different static residues) are computed in parallel.
+		 * Position and residue conformation order doesn't depend on the parallelism.
+		 */
+		private Parallelism parallelism = Parallelism.makeCpu(1);
+
+		/** True to print how long each phase of conf space construction took */
+		private boolean reportTimes = false;
+
 		public Builder addStrand(Strand strand, StrandFlex ... flexTypes) {
 			addStrand(strand, Arrays.asList(flexTypes));
 			return this;
@@ -96,8 +110,18 @@ public class SimpleConfSpace implements Serializable {
 			return this;
 		}
 
+		public Builder setParallelism(Parallelism val) {
+			parallelism = val;
+			return this;
+		}
+
+		public Builder setReportTimes(boolean val) {
+			reportTimes = val;
+			return this;
+		}
+
 		public SimpleConfSpace build() {
-			return new SimpleConfSpace(strands, strandFlex, shellDist);
+			return new SimpleConfSpace(strands, strandFlex, shellDist, parallelism, reportTimes);
 		}
 	}
 
@@ -302,11 +326,18 @@ public class SimpleConfSpace implements Serializable {
 	private final int[] numResConfsByPos;
 
 	public SimpleConfSpace(List<Strand> strands, Map<Strand,List<StrandFlex>> strandFlex, double shellDist) {
+		this(strands, strandFlex, shellDist, Parallelism.makeCpu(1), false);
+	}
+
+	public SimpleConfSpace(List<Strand> strands, Map<Strand,List<StrandFlex>> strandFlex, double shellDist, Parallelism parallelism, boolean reportTimes) {
 
 		this.strands = strands;
 		this.strandFlex = strandFlex;
 		this.shellDist = shellDist;
 
+		Stopwatch totalStopwatch = new Stopwatch().start();
+		Stopwatch stopwatch = new Stopwatch().start();
+
 		// make sure all residues are unique
 		Set<String> resNums = new HashSet<>();
 		for (Strand strand : strands) {
@@ -319,8 +350,9 @@ public class SimpleConfSpace implements Serializable {
 			}
 		}
 
-		// build the design positions
+		// make the design positions
 		positions = new ArrayList<>();
+		List<ResidueTemplate> wildTypeTemplates = new ArrayList<>();
 		for (Strand strand : strands) {
 
 			for (String resNum : strand.flexibility.getFlexibleResidueNumbers()) {
@@ -331,17 +363,16 @@ public class SimpleConfSpace implements Serializable {
 				Position pos = new Position(positions.size(), strand, res);
 				positions.add(pos);
 
-				// make residue confs from library rotamers
-				for (String resType : resFlex.resTypes) {
-					makeResidueConfsFromTemplate(pos, strand.templateLib.getTemplateOrThrow(resType, true), ResidueConf.Type.Library);
-				}
-
-				// make residue confs from wild type rotamers
+				// wild type templates are cached in the template library, which isn't thread-safe,
+				// so make them all here before making the residue confs in parallel
 				if (resFlex.addWildTypeRotamers) {
-					makeResidueConfsFromTemplate(pos, strand.templateLib.getOrMakeWildTypeTemplate(res), ResidueConf.Type.WildType);
+					wildTypeTemplates.add(strand.templateLib.getOrMakeWildTypeTemplate(res));
+				} else {
+					wildTypeTemplates.add(null);
 				}
 			}
 		}
+		String positionsTime = stopwatch.stop().getTime(2);
 
 		// make sure we have some design positions
 		if (positions.isEmpty()) {
@@ -368,17 +399,55 @@ public class SimpleConfSpace implements Serializable {
 		assert (flexibleResidues.size() == positions.size());
 		assert (staticResidues.size() == resNums.size() - positions.size());
 
-		// make the shell
 		shellResNumbers = new HashSet<>();
-		for (Residue staticRes : staticResidues) {
-
-			// see if a flexible residue is nearby
-			for (Residue flexibleRes : flexibleResidues) {
-				if (staticRes.distanceTo(flexibleRes) <= shellDist) {
-					shellResNumbers.add(Residues.normalizeResNum(staticRes.getPDBResNumber()));
-					break;
-				}
+		String resConfsTime;
+		String shellTime;
+		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
+
+			// make the residue confs, one task per position
+			// each position numbers its own confs, so the order doesn't depend on which task finishes first
+			stopwatch.start();
+			for (Position pos : positions) {
+				ResidueTemplate wildTypeTemplate = wildTypeTemplates.get(pos.index);
+				tasks.submit(
+					() -> makeResidueConfs(pos, wildTypeTemplate),
+					(List<ResidueConf> resConfs) -> pos.resConfs.addAll(resConfs)
+				);
 			}
+			tasks.waitForFinish();
+			resConfsTime = stopwatch.stop().getTime(2);
+
+			// make the shell
+			stopwatch.start();
+
+			// for finite shell distances, index the flexible atoms so we only check the ones nearby
+			CellList flexibleCells = shellDist == Double.POSITIVE_INFINITY
+				? null
+				: new CellList(Math.max(shellDist, 1.0), flexibleResidues);
+
+			for (Residue staticRes : staticResidues) {
+				tasks.submit(
+					() -> {
+						// see if a flexible residue is nearby
+						if (flexibleCells != null) {
+							return flexibleCells.isWithin(staticRes, shellDist);
+						}
+						for (Residue flexibleRes : flexibleResidues) {
+							if (staticRes.distanceTo(flexibleRes) <= shellDist) {
+								return true;
+							}
+						}
+						return false;
+					},
+					(Boolean isNearby) -> {
+						if (isNearby) {
+							shellResNumbers.add(Residues.normalizeResNum(staticRes.getPDBResNumber()));
+						}
+					}
+				);
+			}
+			tasks.waitForFinish();
+			shellTime = stopwatch.stop().getTime(2);
 		}
 		assert (shellResNumbers.size() <= staticResidues.size());
 		assert (shellDist != Double.POSITIVE_INFINITY || shellResNumbers.size() == staticResidues.size());
@@ -388,9 +457,35 @@ public class SimpleConfSpace implements Serializable {
 		for (int i=0; i<positions.size(); i++) {
 			numResConfsByPos[i] = positions.get(i).resConfs.size();
 		}
+
+		if (reportTimes) {
+			System.out.println(String.format("SimpleConfSpace: built %d positions, %d residue confs in %s",
+				positions.size(), getNumResConfs(), totalStopwatch.getTime(2)
+			));
+			System.out.println("\tpositions, wild type templates: " + positionsTime);
+			System.out.println("\tresidue confs:                  " + resConfsTime);
+			System.out.println("\tshell:                          " + shellTime);
+		}
+	}
+
+	private List<ResidueConf> makeResidueConfs(Position pos, ResidueTemplate wildTypeTemplate) {
+
+		List<ResidueConf> resConfs = new ArrayList<>();
+
+		// make residue confs from library rotamers
+		for (String resType : pos.resFlex.resTypes) {
+			makeResidueConfsFromTemplate(pos, resConfs, pos.strand.templateLib.getTemplateOrThrow(resType, true), ResidueConf.Type.Library);
+		}
+
+		// make residue confs from wild type rotamers
+		if (wildTypeTemplate != null) {
+			makeResidueConfsFromTemplate(pos, resConfs, wildTypeTemplate, ResidueConf.Type.WildType);
+		}
+
+		return resConfs;
 	}
 
-	private void makeResidueConfsFromTemplate(Position pos, ResidueTemplate template, ResidueConf.Type type) {
+	private void makeResidueConfsFromTemplate(Position pos, List<ResidueConf> resConfs, ResidueTemplate template, ResidueConf.Type type) {
 
 		//make one RC for each (backbone voxel, rotamer) pair
 		for (HashMap<String,double[]> bbState : listBackboneVoxels(pos)) {
@@ -401,22 +496,22 @@ public class SimpleConfSpace implements Serializable {
 				for (ProlinePucker.Direction dir : ProlinePucker.Direction.values()) {
 					ResidueConf resConf = new ResidueConf(
 							pos,
-							pos.resConfs.size(),
+							resConfs.size(),
 							template,
 							type,
 							dir.ordinal(),
 							bbState
 					);
 					resConf.postTemplateModifier = (res) -> res.pucker.apply(dir);
-					pos.resConfs.add(resConf);
+					resConfs.add(resConf);
 				}
 
 			} else if (template.getNumRotamers() <= 0) {
 
 				// make one template for the library template
-				pos.resConfs.add(new ResidueConf(
+				resConfs.add(new ResidueConf(
 						pos,
-						pos.resConfs.size(),
+						resConfs.size(),
 						template,
 						type,
 						bbState
@@ -426,9 +521,9 @@ public class SimpleConfSpace implements Serializable {
 
 				// make a template for each rotamer
 				for (int rotamerIndex=0; rotamerIndex<template.getNumRotamers(); rotamerIndex++) {
-					pos.resConfs.add(new ResidueConf(
+					resConfs.add(new ResidueConf(
 							pos,
-							pos.resConfs.size(),
+							resConfs.size(),
 							template,
 							type,
 							rotamerIndex,
@@ -10,6 +10,8 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import edu.duke.cs.osprey.multistatekstar.ResidueTermini;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.restypes.DAminoAcidHandler;
 import edu.duke.cs.osprey.restypes.HardCodedResidueInfo;
 import edu.duke.cs.osprey.restypes.ResidueTemplateLibrary;
@@ -40,6 +42,9 @@ public class Strand implements Serializable {
 		 **/
 		private ResidueTemplateLibrary templateLib;
 		private boolean errorOnNonTemplateResidues;
+
+		/** Residues are matched to templates in parallel */
+		private Parallelism parallelism;
 		
 		public Builder(Molecule mol) {
 			this.mol = mol;
@@ -47,6 +52,7 @@ public class Strand implements Serializable {
 			this.lastResNum = mol.residues.get(mol.residues.size() - 1).getPDBResNumber();
 			this.templateLib = new ResidueTemplateLibrary.Builder().build();
 			this.errorOnNonTemplateResidues = false;
+			this.parallelism = Parallelism.makeCpu(1);
 		}
 
 		@Deprecated
@@ -82,8 +88,13 @@ public class Strand implements Serializable {
 			return this;
 		}
 		
+		public Builder setParallelism(Parallelism val) {
+			this.parallelism = val;
+			return this;
+		}
+		
 		public Strand build() {
-			return new Strand(mol, firstResNum, lastResNum, templateLib, errorOnNonTemplateResidues);
+			return new Strand(mol, firstResNum, lastResNum, templateLib, errorOnNonTemplateResidues, parallelism);
 		}
 	}
 	
@@ -243,7 +254,7 @@ public class Strand implements Serializable {
 	/** Flexibility parameters for this strand */
 	public final Flexibility flexibility;
 		
-	private Strand(Molecule mol, String firstResNumber, String lastResNumber, ResidueTemplateLibrary templateLib, boolean errorOnNonTemplateResidues) {
+	private Strand(Molecule mol, String firstResNumber, String lastResNumber, ResidueTemplateLibrary templateLib, boolean errorOnNonTemplateResidues, Parallelism parallelism) {
 		
 		// make sure the mol has these residues, otherwise the ranges won't work correctly
 		mol.residues.getOrThrow(firstResNumber);
@@ -267,7 +278,7 @@ public class Strand implements Serializable {
 		
 		// assign templates and mark intra-residue bonds
 		this.templateLib = templateLib;
-		nonTemplateResNames = tryAssigningTemplates(this.mol, templateLib);
+		nonTemplateResNames = tryAssigningTemplates(this.mol, templateLib, parallelism);
 		
 		// delete non template residues if needed
 		if (!nonTemplateResNames.isEmpty()) {
@@ -295,25 +306,38 @@ public class Strand implements Serializable {
         
         
     public static LinkedHashSet<String> tryAssigningTemplates(Molecule mol, ResidueTemplateLibrary templateLib){
+        return tryAssigningTemplates(mol, templateLib, Parallelism.makeCpu(1));
+    }
+
+    public static LinkedHashSet<String> tryAssigningTemplates(Molecule mol, ResidueTemplateLibrary templateLib, Parallelism parallelism){
+
+        // template matching only touches each residue (and its alternates), so match residues in parallel
+        // results[i][0] is for the main residue, results[i][j+1] is for alternate j
+        boolean[][] results = new boolean[mol.residues.size()][];
+        try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
+            for (Residue res : mol.residues) {
+                tasks.submit(
+                        () -> assignTemplates(res, mol.getAlternates(res.indexInMolecule), templateLib),
+                        (boolean[] assigned) -> results[res.indexInMolecule] = assigned
+                );
+            }
+            tasks.waitForFinish();
+        }
+
+        // then collect the failures in residue order
         LinkedHashSet<String> nonTemplateResNames = new LinkedHashSet<>();
         for (Residue res : mol.residues) {
 
-                // We accept D-amino acid named using the usual L names,
-                // but must change them here so the right template name is used
-                DAminoAcidHandler.tryRenamingAsD(res);
-                for (Residue altRes : mol.getAlternates(res.indexInMolecule)) {
-                        DAminoAcidHandler.tryRenamingAsD(altRes);
-                }
-
-                // try to assign the template
-                boolean templateAssigned = res.assignTemplate(templateLib);
+                boolean[] assigned = results[res.indexInMolecule];
+                boolean templateAssigned = assigned[0];
                 if (templateAssigned) {
 
-                        // assign the alternates too
+                        // check the alternates too
                         Iterator<Residue> altIter = mol.getAlternates(res.indexInMolecule).iterator();
+                        int altIndex = 0;
                         while (altIter.hasNext()) {
                                 Residue altRes = altIter.next();
-                                boolean altTemplateAssigned = altRes.assignTemplate(templateLib);
+                                boolean altTemplateAssigned = assigned[++altIndex];
                                 if (!altTemplateAssigned) {
 
                                         // sometimes alts have fewer atoms than the main residue and we can't do template assignment
@@ -330,6 +354,30 @@ public class Strand implements Serializable {
         }
         return nonTemplateResNames;
     }
+
+    private static boolean[] assignTemplates(Residue res, List<Residue> altResidues, ResidueTemplateLibrary templateLib) {
+
+        boolean[] assigned = new boolean[1 + altResidues.size()];
+
+        // We accept D-amino acid named using the usual L names,
+        // but must change them here so the right template name is used
+        DAminoAcidHandler.tryRenamingAsD(res);
+        for (Residue altRes : altResidues) {
+                DAminoAcidHandler.tryRenamingAsD(altRes);
+        }
+
+        // try to assign the template
+        assigned[0] = res.assignTemplate(templateLib);
+        if (assigned[0]) {
+
+                // assign the alternates too
+                for (int i=0; i<altResidues.size(); i++) {
+                        assigned[i + 1] = altResidues.get(i).assignTemplate(templateLib);
+                }
+        }
+
+        return assigned;
+    }
 	
 	private static String stringResNumForMolec(int resNumInt, Molecule molec) {
 		//given an integer residue number, find the full (with chain ID) residue number
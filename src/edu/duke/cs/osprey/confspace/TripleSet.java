@@ -0,0 +1,231 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.confspace;
+
+
+import java.io.Serializable;
+
+
+/**
+ * compact storage for a sparse set of RC triples, eg pruned triples
+ *
+ * Each triple is packed into a single 64-bit key (sorted by position) and the keys are kept
+ * in an open-addressing hash table with linear probing, so there are no per-tuple objects at all.
+ * Lookups take the (pos,rc) triple directly, in any position order, so they don't need an {@link RCTuple}.
+ *
+ * Not thread-safe for writes, but concurrent reads are fine.
+ */
+public class TripleSet implements Serializable {
+
+	private static final long serialVersionUID = 6281914360817343095L;
+
+	public static interface TripleConsumer {
+		void accept(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3);
+	}
+
+	// sorted triples always have distinct positions, so no key can ever be zero
+	private static final long Empty = 0L;
+
+	private static final int MinCapacity = 16;
+
+	private final int rcBits;
+	private final int entryBits;
+	private final long rcMask;
+	private final long entryMask;
+
+	private long[] keys;
+	private int size;
+
+	public TripleSet(int numPos, int maxNumConfs) {
+
+		int posBits = numBits(numPos);
+		rcBits = numBits(maxNumConfs);
+		entryBits = posBits + rcBits;
+		if (entryBits*3 > 64) {
+			throw new IllegalArgumentException(String.format(
+				"too many positions (%d) or RCs (%d) to pack triples into 64 bits",
+				numPos, maxNumConfs
+			));
+		}
+		rcMask = (1L << rcBits) - 1;
+		entryMask = (1L << entryBits) - 1;
+
+		keys = new long[MinCapacity];
+		size = 0;
+	}
+
+	public TripleSet(TripleSet other) {
+		this.rcBits = other.rcBits;
+		this.entryBits = other.entryBits;
+		this.rcMask = other.rcMask;
+		this.entryMask = other.entryMask;
+		this.keys = other.keys.clone();
+		this.size = other.size;
+	}
+
+	private static int numBits(int n) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(0, n - 1)));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	private long pack(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+
+		if (pos1 == pos2 || pos1 == pos3 || pos2 == pos3) {
+			throw new IllegalArgumentException(String.format("triple positions must be different, got %d, %d, %d", pos1, pos2, pos3));
+		}
+
+		// positions are in the high bits of each entry, so sorting entries sorts positions
+		long a = ((long)pos1 << rcBits) | rc1;
+		long b = ((long)pos2 << rcBits) | rc2;
+		long c = ((long)pos3 << rcBits) | rc3;
+		long swap;
+		if (a > b) { swap = a; a = b; b = swap; }
+		if (b > c) { swap = b; b = c; c = swap; }
+		if (a > b) { swap = a; a = b; b = swap; }
+
+		return (a << (entryBits*2)) | (b << entryBits) | c;
+	}
+
+	private int hash(long key) {
+		// the murmur3 64-bit finalizer
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int)key & (keys.length - 1);
+	}
+
+	private int find(long key) {
+		int mask = keys.length - 1;
+		for (int i=hash(key); ; i=(i + 1) & mask) {
+			long k = keys[i];
+			if (k == key || k == Empty) {
+				return i;
+			}
+		}
+	}
+
+	public boolean contains(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		if (size == 0) {
+			return false;
+		}
+		return keys[find(pack(pos1, rc1, pos2, rc2, pos3, rc3))] != Empty;
+	}
+
+	/** returns true if the triple wasn't in the set already */
+	public boolean add(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+
+		long key = pack(pos1, rc1, pos2, rc2, pos3, rc3);
+		int i = find(key);
+		if (keys[i] != Empty) {
+			return false;
+		}
+
+		keys[i] = key;
+		size++;
+
+		// keep the load factor at or under 1/2, so probe sequences stay short
+		if (size*2 > keys.length) {
+			rehash(keys.length*2);
+		}
+
+		return true;
+	}
+
+	/** returns true if the triple was in the set */
+	public boolean remove(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+
+		if (size == 0) {
+			return false;
+		}
+
+		int i = find(pack(pos1, rc1, pos2, rc2, pos3, rc3));
+		if (keys[i] == Empty) {
+			return false;
+		}
+
+		// shift later keys in the probe sequence back, so we don't need tombstones
+		int mask = keys.length - 1;
+		int hole = i;
+		for (int j=(i + 1) & mask; keys[j] != Empty; j=(j + 1) & mask) {
+			int home = hash(keys[j]);
+			boolean canMove = hole <= j
+				? (home <= hole || home > j)
+				: (home <= hole && home > j);
+			if (canMove) {
+				keys[hole] = keys[j];
+				hole = j;
+			}
+		}
+		keys[hole] = Empty;
+		size--;
+
+		return true;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		keys = new long[capacity];
+		for (long key : oldKeys) {
+			if (key != Empty) {
+				keys[find(key)] = key;
+			}
+		}
+	}
+
+	/** visits every triple in the set, with positions sorted so pos1 < pos2 < pos3, in no particular order */
+	public void forEach(TripleConsumer consumer) {
+		for (long key : keys) {
+			if (key == Empty) {
+				continue;
+			}
+			long a = key >>> (entryBits*2);
+			long b = (key >>> entryBits) & entryMask;
+			long c = key & entryMask;
+			consumer.accept(
+				(int)(a >>> rcBits), (int)(a & rcMask),
+				(int)(b >>> rcBits), (int)(b & rcMask),
+				(int)(c >>> rcBits), (int)(c & rcMask)
+			);
+		}
+	}
+}
@@ -21,6 +21,11 @@ public class DihedralRotation extends RigidBodyMotion {
     //we're rotating around (2nd then 3rd of the 4 atoms defining the dihedral),
     //along with the CHANGE in dihedral angle that we want
     
+    public DihedralRotation(){
+        //no rotation yet, call set() to update the rotation in place
+        super();
+    }
+
     public DihedralRotation(double[] atom2Coords, double[] atom3Coords, double dihedralChange ){
         //dihedralChange is in degrees
         super (atom3Coords, VectorAlgebra.subtract(atom3Coords, atom2Coords), dihedralChange, false);
@@ -30,5 +35,19 @@ public class DihedralRotation extends RigidBodyMotion {
             double cosDihedralChange){
         super (atom3Coords, VectorAlgebra.subtract(atom3Coords, atom2Coords), sinDihedralChange, cosDihedralChange);
     }
+
+    public DihedralRotation set(double[] concatCoords, int atom2Index, int atom3Index, double sinDihedralChange,
+            double cosDihedralChange){
+        //same rotation as the constructor, but reading the bond atoms straight from concatenated coords
+        //and updating this rotation in place instead of allocating a new one
+        int i2 = 3*atom2Index;
+        int i3 = 3*atom3Index;
+        double x3 = concatCoords[i3];
+        double y3 = concatCoords[i3+1];
+        double z3 = concatCoords[i3+2];
+        setRotation(x3, y3, z3, x3 - concatCoords[i2], y3 - concatCoords[i2+1], z3 - concatCoords[i2+2],
+                sinDihedralChange, cosDihedralChange);
+        return this;
+    }
     
 }
@@ -35,7 +35,6 @@ package edu.duke.cs.osprey.dof;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.Residue;
 import edu.duke.cs.osprey.tools.Protractor;
-import edu.duke.cs.osprey.tools.RigidBodyMotion;
 
 /**
  *
@@ -54,6 +53,9 @@ public class FreeDihedral extends DegreeOfFreedom {
 
     // temp space
     double[][] dihedralCoords;
+    // (not serialized, apply() makes them again if needed)
+    private transient double[] measuredSinCos;
+    private transient DihedralRotation dihRotation;
 
     public FreeDihedral(Residue res, int dihedralNum) {
 
@@ -117,21 +119,34 @@ public class FreeDihedral extends DegreeOfFreedom {
         double sin = Math.sin(angleRadians);
         double cos = Math.cos(angleRadians);
 
+        // this runs for every step of every line search, so read the residue coords in place
+        // and reuse the temp space, rather than copying coords and allocating rotations
+        if (measuredSinCos == null) {
+            measuredSinCos = new double[2];
+            dihRotation = new DihedralRotation();
+        }
+
         // measure the current dihedral
         // NOTE: measuring a dihedral requires evaluating an inverse cosine, which is slow
         // let's work with sines and cosines of dihedrals directly
-        updateDihedralCoords();
-        double measuredSinCos[] = Protractor.measureDihedralSinCos(dihedralCoords);
+        checkValid();
+        int[] dihAtomIndices = res.template.getDihedralDefiningAtoms(dihedralNum);
+        double[] coords = res.coords;
+        Protractor.measureDihedralSinCos(
+                coords, dihAtomIndices[0],
+                coords, dihAtomIndices[1],
+                coords, dihAtomIndices[2],
+                coords, dihAtomIndices[3],
+                measuredSinCos
+        );
 
         // calc the dihedral rotation as a rigid body transformation relative to the current pose
         double dsin = sin*measuredSinCos[1] - cos*measuredSinCos[0];
         double dcos = cos*measuredSinCos[1] + sin*measuredSinCos[0];
-        RigidBodyMotion dihRotation = new DihedralRotation(dihedralCoords[1], dihedralCoords[2], dsin, dcos);
+        dihRotation.set(coords, dihAtomIndices[1], dihAtomIndices[2], dsin, dcos);
 
         // rotate all the atoms that are moved by the dihedrals (i.e., everything beyond the third atom)
-        for(int index : res.template.getDihedralRotatedAtoms(dihedralNum)) {
-            dihRotation.transform(res.coords, index);
-        }
+        dihRotation.transform(coords, res.template.getDihedralRotatedAtomIndices(dihedralNum));
 
         // store the orignal (unnormalized) value
         curVal = angleDegrees;
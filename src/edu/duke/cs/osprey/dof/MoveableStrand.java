@@ -34,6 +34,7 @@ package edu.duke.cs.osprey.dof;
 
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.Residue;
+import edu.duke.cs.osprey.tools.RigidBodyMotion;
 import edu.duke.cs.osprey.tools.RotationMatrix;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -67,6 +68,11 @@ public class MoveableStrand implements Serializable, DOFBlock {
     //curRotMatrix is in turn defined by curAngles
     double curAngles[];//in degrees
 
+    //temp space for rotating the strand, so line searches don't allocate
+    //(not serialized, rotate() makes them again if needed)
+    private transient RotationMatrix prevRotMatrix;
+    private transient RigidBodyMotion changeMotion;
+
 
     public static final double maxStrandRot = 5;//maximum strand rotation Tait-Bryan angle, in degrees
     public static final double maxStrandTrans = 1.2;//maximum strand translation in any dimension, in angstroms
@@ -108,14 +114,31 @@ public class MoveableStrand implements Serializable, DOFBlock {
         //but this is OK because we can still reach any rotation we want
 
 
-        //first, rotate by the first angle about the x-axis
-        RotationMatrix rot1 = new RotationMatrix(1, 0, 0, curAngles[0], false);
-        //then y and z
-        RotationMatrix rot2 = new RotationMatrix(0, 1, 0, curAngles[1], false);
-        RotationMatrix rot3 = new RotationMatrix(0, 0, 1, curAngles[2], false);
+        //first, rotate by the first angle about the x-axis, then y and z
+        //(updated in place, copyForNewMolecule() gives each strand its own matrix)
+        curRotMatrix.setTaitBryan(curAngles[0], curAngles[1], curAngles[2], false);
+    }
+
 
-        //perform rot1, then 2 and 3
-        curRotMatrix = rot3.multiply( rot2.multiply(rot1) );
+    void rotate(int angleNum, double angleDegrees){
+        //set one of the rotation angles, and rotate all the strand's atoms to match
+
+        if(changeMotion == null){
+            prevRotMatrix = RotationMatrix.identity();
+            changeMotion = new RigidBodyMotion();
+        }
+
+        //figure out how much to rotate, based on old and new rotation matrices for strand
+        prevRotMatrix.set(curRotMatrix);
+        curAngles[angleNum] = angleDegrees;
+        updateRotMatrixFromAngles();//new rotation (relative to starting orientation)
+
+        //so now we just need to rotate the whole strand by (new * old^T) about the current center
+        changeMotion.setCenter(initCenter[0] + curTrans[0], initCenter[1] + curTrans[1], initCenter[2] + curTrans[2]);
+        changeMotion.getRotation().setMultiplyTranspose(curRotMatrix, prevRotMatrix);//transpose = inverse for rotations
+
+        for(Residue curRes : res)
+            changeMotion.transform(curRes.coords);
     }
 
 
@@ -32,11 +32,6 @@
 
 package edu.duke.cs.osprey.dof;
 
-import edu.duke.cs.osprey.structure.Residue;
-import edu.duke.cs.osprey.tools.RigidBodyMotion;
-import edu.duke.cs.osprey.tools.RotationMatrix;
-import edu.duke.cs.osprey.tools.VectorAlgebra;
-
 /**
  *
  * @author mhall44
@@ -56,21 +51,8 @@ public class StrandRotation extends DegreeOfFreedom {
 
     @Override
     public void apply(double paramVal) {
-
-        double[] rotationCenter = VectorAlgebra.add(strand.initCenter, strand.curTrans);
-        strand.curAngles[angleNum] = paramVal;
-
-        //figure out how much to rotate, based on old and new rotation matrices for strand
-        RotationMatrix oldMatrix = strand.curRotMatrix;
-        strand.updateRotMatrixFromAngles();//new rotation (relative to starting orientation)
-        RotationMatrix newMatrix = strand.curRotMatrix;
-        RotationMatrix changeMatrix = newMatrix.multiply( oldMatrix.transpose() );//transpose = inverse for rotations
-
-        //so now we just need to rotate the whole strand by changeMatrix about rotationCenter
-        RigidBodyMotion motion = new RigidBodyMotion(rotationCenter, changeMatrix, rotationCenter);
-
-        for(Residue res : strand.res)
-            motion.transform(res.coords);
+        //rotate the whole strand about its current center, in place
+        strand.rotate(angleNum, paramVal);
     }
 
     public MoveableStrand getMoveableStrand(){
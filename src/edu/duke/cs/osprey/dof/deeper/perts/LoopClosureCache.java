@@ -0,0 +1,171 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.dof.deeper.perts;
+
+import edu.duke.cs.osprey.structure.Residue;
+import edu.duke.cs.osprey.tools.RigidBodyMotion;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ *
+ * Loop closure solutions for a LoopClosureAdjustment, keyed by the starting backbone coordinates
+ * (N, CA, and C of the three residues) that the solutions were computed from.
+ *
+ * Solving the tripeptide closure means finding roots of a high-degree polynomial, which is slow,
+ * but the same starting backbone comes up over and over (e.g., for every conformation in a backbone voxel),
+ * so all copies of a perturbation (for different molecules and threads) share one cache.
+ *
+ * Solutions are only reused for bit-identical starting coords:
+ * closure solutions can't be interpolated, since nearby starting coords can have a different number of solutions,
+ * and a solution for slightly different coords wouldn't close the loop exactly.
+ */
+public class LoopClosureCache implements Serializable {
+
+    private static final long serialVersionUID = 6243850671034725542L;
+
+    public static final int DefaultMaxSize = 1024;
+
+    private static final String[] AtomNames = { "N", "CA", "C" };
+
+    private static class Key {
+
+        final long[] coords;
+        final int hashCode;
+
+        Key(List<Residue> res) {
+            coords = new long[res.size()*AtomNames.length*3];
+            int i = 0;
+            for (Residue curRes : res) {
+                for (String atomName : AtomNames) {
+                    int atomIndex = curRes.getAtomIndexByName(atomName);
+                    for (int dim=0; dim<3; dim++) {
+                        coords[i++] = Double.doubleToLongBits(curRes.coords[3*atomIndex + dim]);
+                    }
+                }
+            }
+            hashCode = Arrays.hashCode(coords);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(coords, ((Key)other).coords);
+        }
+    }
+
+    public final int maxSize;
+
+    //solutions aren't serialized, a deserialized cache just starts empty
+    private transient Map<Key,RigidBodyMotion[][]> solns = null;
+    private transient long numHits = 0;
+    private transient long numMisses = 0;
+
+    public LoopClosureCache() {
+        this(DefaultMaxSize);
+    }
+
+    public LoopClosureCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached solutions for the current starting coords of res, or calls solver
+     * (without holding the lock, so other threads can keep reading) and caches its solutions.
+     * The returned solutions are shared, so don't modify them.
+     */
+    public RigidBodyMotion[][] get(List<Residue> res, Supplier<RigidBodyMotion[][]> solver) {
+
+        Key key = new Key(res);
+
+        synchronized (this) {
+            RigidBodyMotion[][] cached = getSolns().get(key);
+            if (cached != null) {
+                numHits++;
+                return cached;
+            }
+            numMisses++;
+        }
+
+        //racing threads might both solve the same closure, but they'll get the same solutions
+        RigidBodyMotion[][] computed = solver.get();
+
+        synchronized (this) {
+            getSolns().put(key, computed);
+        }
+
+        return computed;
+    }
+
+    private Map<Key,RigidBodyMotion[][]> getSolns() {
+        if (solns == null) {
+            //least-recently-used eviction, so continuous upstream perturbations (which rarely repeat coords)
+            //can't grow the cache without bound
+            solns = new LinkedHashMap<Key,RigidBodyMotion[][]>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key,RigidBodyMotion[][]> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+        return solns;
+    }
+
+    public synchronized int size() {
+        return solns == null ? 0 : solns.size();
+    }
+
+    public synchronized long getNumHits() {
+        return numHits;
+    }
+
+    public synchronized long getNumMisses() {
+        return numMisses;
+    }
+
+    public synchronized void clear() {
+        solns = null;
+        numHits = 0;
+        numMisses = 0;
+    }
+}
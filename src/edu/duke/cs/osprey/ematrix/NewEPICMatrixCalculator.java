@@ -15,6 +15,7 @@ import edu.duke.cs.osprey.ematrix.epic.EPICFitter;
 import edu.duke.cs.osprey.ematrix.epic.EPICMatrix;
 import edu.duke.cs.osprey.ematrix.epic.EPICSettings;
 import edu.duke.cs.osprey.ematrix.epic.EPoly;
+import edu.duke.cs.osprey.ematrix.epic.FitLog;
 import edu.duke.cs.osprey.ematrix.epic.FitParams;
 import edu.duke.cs.osprey.ematrix.epic.NewEPICMatrix;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
@@ -23,6 +24,7 @@ import edu.duke.cs.osprey.minimization.CCDMinimizer;
 import edu.duke.cs.osprey.minimization.MoleculeModifierAndScorer;
 import edu.duke.cs.osprey.minimization.MoleculeObjectiveFunction;
 import edu.duke.cs.osprey.minimization.ObjectiveFunction;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.pruning.PruningMatrix;
 import java.util.ArrayList;
 
@@ -68,13 +70,24 @@ public class NewEPICMatrixCalculator {
        
        initMatrix();
        
+       //each tuple's fit is independent, so fit them in parallel on the energy calculator's threads
+       //the listeners fill in the matrix, and print each fit's log all at once so parallel fits don't interleave
+       TaskExecutor tasks = confECalc.tasks;
+       
        for(int pos=0; pos<searchSpace.getNumPos(); pos++){
             
             System.out.println("Starting intra+shell energy calculations for residue "+pos);
             
             for(int rc=0; rc<searchSpace.getNumResConfs(pos); rc++){
-                EPoly singlePoly = makeEPoly(new RCTuple(pos,rc));
-                epicMat.setOneBody(pos, rc, singlePoly);
+                final int fpos = pos;
+                final int frc = rc;
+                tasks.submit(
+                    () -> FitLog.capture(() -> makeEPoly(new RCTuple(fpos,frc))),
+                    (singlePoly) -> {
+                        System.out.print(singlePoly.log);
+                        epicMat.setOneBody(fpos, frc, singlePoly.result);
+                    }
+                );
             }
 
             for(int pos2=0; pos2<pos; pos2++){
@@ -82,14 +95,24 @@ public class NewEPICMatrixCalculator {
 
                 for(int rc=0; rc<searchSpace.getNumResConfs(pos); rc++){
                     for(int rc2=0; rc2<searchSpace.getNumResConfs(pos2); rc2++){
-                        
-                        EPoly pairPoly = makeEPoly(new RCTuple(pos, rc, pos2, rc2));
-                        epicMat.setPairwise(pos, rc, pos2, rc2, pairPoly);
+                        final int fpos = pos;
+                        final int frc = rc;
+                        final int fpos2 = pos2;
+                        final int frc2 = rc2;
+                        tasks.submit(
+                            () -> FitLog.capture(() -> makeEPoly(new RCTuple(fpos, frc, fpos2, frc2))),
+                            (pairPoly) -> {
+                                System.out.print(pairPoly.log);
+                                epicMat.setPairwise(fpos, frc, fpos2, frc2, pairPoly.result);
+                            }
+                        );
                     }
                 }
             }
         }
        
+       tasks.waitForFinish();
+       
        System.out.println("EPIC MATRIX CALCULATION DONE");
    }
     
@@ -178,7 +201,7 @@ public class NewEPICMatrixCalculator {
                   
                 for( int boundCount=0; bestResid>epicSettings.EPICGoalResid && curFitParams!=null; boundCount++ ){
                     
-                    System.out.println("FIT NUMBER "+boundCount+": "+curFitParams.getDescription());
+                    FitLog.out().println("FIT NUMBER "+boundCount+": "+curFitParams.getDescription());
                     
                     EPoly curSeries;
                     try{
@@ -218,9 +241,9 @@ public class NewEPICMatrixCalculator {
                 }
                 
                 if(bestResid > epicSettings.EPICGoalResid){
-                    System.out.println("Failed to reach goal residual.");
+                    FitLog.out().println("Failed to reach goal residual.");
                 }
-                System.out.println("Best residual: "+bestResid+" for bound number "+bestBound);
+                FitLog.out().println("Best residual: "+bestResid+" for bound number "+bestBound);
 
                 printFitTests(fitter, RCList, minEnergy, mof, bestDOFVals, series);
 
@@ -244,8 +267,8 @@ public class NewEPICMatrixCalculator {
         int numDOFs = fitter.numDOFs;
 
         //TESTING FITS
-        System.out.println("RCs: "+RCList.stringListing());
-        System.out.println("Minimum energy: "+minEnergy);
+        FitLog.out().println("RCs: "+RCList.stringListing());
+        FitLog.out().println("Minimum energy: "+minEnergy);
 
         double testScales[] = new double[] { 0.01, 0.5, 5, 100 };//100
         int samplesPerScale = 3;
@@ -277,18 +300,18 @@ public class NewEPICMatrixCalculator {
 
                 double trueVal = mof.getValue(sampAbs) - minEnergy;
 
-                System.out.print("TEST: scale="+scale+" dx=");
+                FitLog.out().print("TEST: scale="+scale+" dx=");
                 for(int dof=0; dof<numDOFs; dof++)
-                    System.out.print(dx[dof]+" ");
+                    FitLog.out().print(dx[dof]+" ");
 
-                System.out.print("TRUE="+trueVal+" FIT=");
+                FitLog.out().print("TRUE="+trueVal+" FIT=");
 
                 for(EPoly b : series){
                     if(b!=null)
-                        System.out.print(b.evaluate(sampAbs,false,false)+" ");
+                        FitLog.out().print(b.evaluate(sampAbs,false,false)+" ");
                 }
 
-                System.out.println();
+                FitLog.out().println();
             }
         }
     }
@@ -317,14 +340,14 @@ public class NewEPICMatrixCalculator {
         double tol = 0.1;//we'll only consider this a problem if the minimum
         //(where EPIC should be pretty accurate) is well below the actual minimum
         if(lowPointEPICE < lowPointTrueE - tol){
-            System.out.println("Rejecting fit because of low minimum for EPIC term, "
+            FitLog.out().println("Rejecting fit because of low minimum for EPIC term, "
                     +lowPointEPICE+".  Corresponding true E: "+lowPointTrueE);
             return false;
         }
         
         //But let's warn if the minimum is low in absolute terms
         if(lowPointEPICE < -tol){
-            System.out.println("Warning: low minimum for EPIC term, "
+            FitLog.out().println("Warning: low minimum for EPIC term, "
                     +lowPointEPICE+".  Corresponding true E: "+lowPointTrueE);
         }
         
@@ -0,0 +1,211 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.ematrix.epic;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compiled form of an {@link EPoly} series (without principal components),
+ * for fast evaluation inside minimizer line searches.
+ *
+ * Monomials are stored in the same order as the series coefficients (see {@link SeriesFitter#evalSeries}),
+ * i.e. for each degree, non-increasing tuples of DOF indices. Every monomial of degree n is
+ * a monomial of degree n-1 times one more DOF, so the whole series can be evaluated with
+ * one multiply-add per coefficient by filling in monomial values from their parents.
+ *
+ * Gradients use precomputed (coefficient*exponent, lower monomial) tables,
+ * since d/dz_k of a monomial is its exponent of z_k times the monomial with one z_k removed.
+ *
+ * Coordinates are relative to the EPoly center, in a primitive double[].
+ * Instances are immutable and thread-safe; evaluation scratch space is supplied by the caller.
+ */
+public class CompiledEPoly implements Serializable {
+
+    private static final long serialVersionUID = 4620815432095723141L;
+
+    public final int numDOFs;
+    public final int numMonomials;
+
+    private final double[] coeffs;
+
+    // monomial m = monomial parent[m] * z[var[m]], parent -1 means the constant 1
+    private final int[] parent;
+    private final int[] var;
+
+    // flattened gradient terms for all the monomials
+    private final int[] gradVar;
+    private final double[] gradCoeff;// coefficient times exponent
+    private final int[] gradLower;// monomial with one z[gradVar] removed, or -1 for the constant 1
+
+    public CompiledEPoly(int numDOFs, int order, double[] coeffs) {
+
+        this.numDOFs = numDOFs;
+
+        // enumerate the monomials in series order
+        List<int[]> monomials = new ArrayList<>();
+        for (int degree=1; degree<=order; degree++) {
+            enumerate(new int[degree], 0, numDOFs - 1, monomials);
+        }
+        numMonomials = monomials.size();
+
+        if (coeffs == null) {
+            coeffs = new double[numMonomials];
+        } else if (coeffs.length != numMonomials) {
+            throw new IllegalArgumentException(String.format(
+                "expected %d coefficients for a degree %d series on %d DOFs, but got %d",
+                numMonomials, order, numDOFs, coeffs.length
+            ));
+        }
+        this.coeffs = coeffs.clone();
+
+        HashMap<List<Integer>,Integer> indices = new HashMap<>();
+        for (int m=0; m<numMonomials; m++) {
+            indices.put(toList(monomials.get(m), -1), m);
+        }
+
+        parent = new int[numMonomials];
+        var = new int[numMonomials];
+        List<Integer> gradVarList = new ArrayList<>();
+        List<Double> gradCoeffList = new ArrayList<>();
+        List<Integer> gradLowerList = new ArrayList<>();
+
+        for (int m=0; m<numMonomials; m++) {
+            int[] monomial = monomials.get(m);
+            int degree = monomial.length;
+
+            // the last index is the smallest, so dropping it keeps the tuple non-increasing
+            var[m] = monomial[degree - 1];
+            parent[m] = degree == 1 ? -1 : indices.get(toList(monomial, degree - 1));
+
+            for (int i=0; i<degree; i++) {
+
+                // just handle each distinct DOF once (repeats are adjacent)
+                if (i > 0 && monomial[i] == monomial[i - 1]) {
+                    continue;
+                }
+                int exponent = 0;
+                for (int dof : monomial) {
+                    if (dof == monomial[i]) {
+                        exponent++;
+                    }
+                }
+
+                gradVarList.add(monomial[i]);
+                gradCoeffList.add(this.coeffs[m]*exponent);
+                gradLowerList.add(degree == 1 ? -1 : indices.get(toList(monomial, i)));
+            }
+        }
+
+        int numGradTerms = gradVarList.size();
+        gradVar = new int[numGradTerms];
+        gradCoeff = new double[numGradTerms];
+        gradLower = new int[numGradTerms];
+        for (int i=0; i<numGradTerms; i++) {
+            gradVar[i] = gradVarList.get(i);
+            gradCoeff[i] = gradCoeffList.get(i);
+            gradLower[i] = gradLowerList.get(i);
+        }
+    }
+
+    private static void enumerate(int[] monomial, int depth, int maxIndex, List<int[]> out) {
+        // same loop nesting as SeriesFitter: first index outermost, each later index <= the previous one
+        if (depth == monomial.length) {
+            out.add(monomial.clone());
+            return;
+        }
+        for (int i=0; i<=maxIndex; i++) {
+            monomial[depth] = i;
+            enumerate(monomial, depth + 1, i, out);
+        }
+    }
+
+    private static List<Integer> toList(int[] monomial, int skipIndex) {
+        List<Integer> list = new ArrayList<>(monomial.length);
+        for (int i=0; i<monomial.length; i++) {
+            if (i != skipIndex) {
+                list.add(monomial[i]);
+            }
+        }
+        return list;
+    }
+
+    /** scratch space needed by {@link #evaluate(double[], double[])} and {@link #gradient(double[], double[], double[])} */
+    public double[] makeScratch() {
+        return new double[numMonomials];
+    }
+
+    /** evaluate the series at z (relative to the center) */
+    public double evaluate(double[] z) {
+        return evaluate(z, makeScratch());
+    }
+
+    public double evaluate(double[] z, double[] scratch) {
+        double ans = 0;
+        for (int m=0; m<numMonomials; m++) {
+            int p = parent[m];
+            double val = z[var[m]];
+            if (p >= 0) {
+                val *= scratch[p];
+            }
+            scratch[m] = val;
+            ans += coeffs[m]*val;
+        }
+        return ans;
+    }
+
+    /** gradient of the series at z (relative to the center) */
+    public double[] gradient(double[] z) {
+        double[] grad = new double[numDOFs];
+        gradient(z, grad, makeScratch());
+        return grad;
+    }
+
+    /**
+     * Writes the gradient into grad and returns the series value,
+     * since the monomial values are computed for the gradient anyway.
+     */
+    public double gradient(double[] z, double[] grad, double[] scratch) {
+        double ans = evaluate(z, scratch);
+        Arrays.fill(grad, 0, numDOFs, 0.0);
+        for (int i=0; i<gradVar.length; i++) {
+            int lower = gradLower[i];
+            grad[gradVar[i]] += gradCoeff[i]*(lower >= 0 ? scratch[lower] : 1.0);
+        }
+        return ans;
+    }
+}
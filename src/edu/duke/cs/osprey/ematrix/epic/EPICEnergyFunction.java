@@ -35,6 +35,14 @@ public class EPICEnergyFunction implements EnergyFunction.NeedsInit, EnergyFunct
     
     ArrayList<ArrayList<Integer>> termDOFs;//for each term, which degrees of freedom (in curDOFVals) it operates on
 
+    //compiled forms of the terms, for evaluation without any Colt objects
+    //(null entries for terms that can't be compiled)
+    CompiledEPoly[] compiledTerms;
+    int[][] compiledTermDOFs;
+    double[][] compiledTermCenters;
+    double[] zScratch;
+    double[] monomialScratch;
+
     
     public EPICEnergyFunction(ArrayList<EPoly> terms, boolean includeMinE) {
         //create an energy function from some terms, will assign curDOFVals, termDOFs, and (if needed) sharedMolec
@@ -82,6 +90,8 @@ public class EPICEnergyFunction implements EnergyFunction.NeedsInit, EnergyFunct
             termDOFs.add(singleTermDOFs);
         }
         
+        compileTerms();
+        
         
         
         //all terms with SAPE need to know about the shared molecule, if we are using one
@@ -96,6 +106,61 @@ public class EPICEnergyFunction implements EnergyFunction.NeedsInit, EnergyFunct
     }
     
     
+    private void compileTerms(){
+        
+        int numTerms = terms.size();
+        compiledTerms = new CompiledEPoly[numTerms];
+        compiledTermDOFs = new int[numTerms][];
+        compiledTermCenters = new double[numTerms][];
+        int maxDOFs = 0;
+        int maxMonomials = 0;
+        
+        for(int termNum=0; termNum<numTerms; termNum++){
+            EPoly term = terms.get(termNum);
+            
+            //a standalone SAPE term needs the DOF values as a Colt vector anyway
+            if(term.sapeTerm!=null && !useSharedMolec)
+                continue;
+            
+            CompiledEPoly compiled = term.compile();
+            if(compiled==null)
+                continue;
+            
+            compiledTerms[termNum] = compiled;
+            compiledTermDOFs[termNum] = new int[term.numDOFs];
+            for(int DOFCount=0; DOFCount<term.numDOFs; DOFCount++)
+                compiledTermDOFs[termNum][DOFCount] = termDOFs.get(termNum).get(DOFCount);
+            compiledTermCenters[termNum] = term.center.toArray();
+            
+            maxDOFs = Math.max(maxDOFs, term.numDOFs);
+            maxMonomials = Math.max(maxMonomials, compiled.numMonomials);
+        }
+        
+        zScratch = new double[maxDOFs];
+        monomialScratch = new double[maxMonomials];
+    }
+    
+    
+    private double evaluateCompiled(int termNum){
+        
+        EPoly term = terms.get(termNum);
+        int[] dofs = compiledTermDOFs[termNum];
+        double[] center = compiledTermCenters[termNum];
+        for(int DOFCount=0; DOFCount<dofs.length; DOFCount++)
+            zScratch[DOFCount] = curDOFVals.getQuick(dofs[DOFCount]) - center[DOFCount];
+        
+        double termVal = compiledTerms[termNum].evaluate(zScratch, monomialScratch);
+        
+        if(includeMinE)
+            termVal += term.minE;
+        
+        if(term.sapeTerm!=null)//shared molecule assumed to be in the right conformation already
+            termVal += term.sapeTerm.getEnergySharedMolec() - term.baseSAPE;
+        
+        return termVal;
+    }
+    
+    
     public void unassignSharedMolec(){
         //delete the sharedMolecEnergyFunction for each of the SAPE terms used by this EPICEnergyFunction
         //If a new molecule is made for every minimization and this isn't done,
@@ -118,6 +183,12 @@ public class EPICEnergyFunction implements EnergyFunction.NeedsInit, EnergyFunct
         
         double E = 0;
         for(int termNum=0; termNum<terms.size(); termNum++){
+            
+            if(compiledTerms[termNum]!=null){
+                E += evaluateCompiled(termNum);
+                continue;
+            }
+            
             EPoly term = terms.get(termNum);
             
             DoubleMatrix1D DOFValsForTerm = DoubleFactory1D.dense.make(term.numDOFs);
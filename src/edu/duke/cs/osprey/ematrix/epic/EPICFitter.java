@@ -46,6 +46,55 @@ public class EPICFitter {
     
     static int sampPerParam = 10;
     
+    //samples (and their energies) drawn so far, kept across fit orders and SAPE refits
+    //so raising the order only needs to draw the extra samples
+    //training and cross-validation samples are kept separately so CV stays independent of the fit
+    private final SampleSet trainingSamples = new SampleSet();
+    private final SampleSet cvSamples = new SampleSet();
+    
+    
+    private class SampleSet {
+        
+        ArrayList<DoubleMatrix1D> sampRel = new ArrayList<>();
+        ArrayList<DoubleMatrix1D> sampAbs = new ArrayList<>();
+        double[] trueVal = new double[0];
+        int countOverCutoff = 0;
+        GaussianLowEnergySampler gs = null;
+        
+        int size(){
+            return sampRel.size();
+        }
+        
+        void get(int numSamples, DoubleMatrix1D[] sampRelOut, DoubleMatrix1D[] sampAbsOut, double[] trueValOut){
+            //copy out the first numSamples samples, drawing more first if needed
+            //callers get their own energy array since fitting modifies it (e.g. SAPE shifts)
+            if(size()<numSamples)
+                draw(numSamples);
+            
+            for(int s=0; s<numSamples; s++){
+                sampRelOut[s] = sampRel.get(s);
+                sampAbsOut[s] = sampAbs.get(s);
+            }
+            System.arraycopy(trueVal, 0, trueValOut, 0, numSamples);
+        }
+        
+        private void draw(int numSamples){
+            //extend the set to numSamples samples, as in generateSamples
+            //(the cap on samples over cutoff applies to the whole extended set)
+            int numOld = size();
+            DoubleMatrix1D[] newRel = new DoubleMatrix1D[numSamples];
+            DoubleMatrix1D[] newAbs = new DoubleMatrix1D[numSamples];
+            trueVal = Arrays.copyOf(trueVal, numSamples);
+            
+            generateSamples(numOld, numSamples, newRel, newAbs, trueVal, numSamples/2, this);
+            
+            for(int s=numOld; s<numSamples; s++){
+                sampRel.add(newRel[s]);
+                sampAbs.add(newAbs[s]);
+            }
+        }
+    }
+    
     public EPICFitter ( MoleculeModifierAndScorer mof, EPICSettings eset,
             DoubleMatrix1D cen, double me ) {
         //given the CCDMinimizer used to minimize for a rotamer pair (or intra+shell)
@@ -94,7 +143,7 @@ public class EPICFitter {
         
         //PARAMETER CAP: save time
         if(numParams>2000){
-            System.out.println("ABORTING EPICFITTER.DOFIT BECAUSE THERE ARE TOO MANY PARAMETERS: "+numParams);
+            FitLog.out().println("ABORTING EPICFITTER.DOFIT BECAUSE THERE ARE TOO MANY PARAMETERS: "+numParams);
             return null;
         }
 
@@ -103,7 +152,7 @@ public class EPICFitter {
         DoubleMatrix1D[] sampAbs = new DoubleMatrix1D[numSamples];
         double trueVal[] = new double[numSamples];
 
-        generateSamples(numSamples,sampRel,sampAbs,trueVal,numSamples/2);
+        trainingSamples.get(numSamples,sampRel,sampAbs,trueVal);
 
         //no point doing high1S if all samples are below bCutoff
         boolean allBelowCutoff = true;
@@ -164,11 +213,11 @@ public class EPICFitter {
                 ySamp[s] = PCFit.toPCBasis(sampRel[s]);
 
             if(Double.isInfinite(fp.SAPECutoff)){//SAPE takes care of everything
-                System.out.println("No fit needed: SAPE is full energy");
+                FitLog.out().println("No fit needed: SAPE is full energy");
                 PCFit.coeffs = new double[numParams];//all 0's for polynomial is best, anything else is noise
             }
             else if(allBelowCutoff){
-                System.out.println("Analytical:");
+                FitLog.out().println("Analytical:");
                 PCFit.coeffs = SeriesFitter.fitSeries(ySamp,trueVal,weights,lambda,
                     false,PCFit.fullOrder,PCFit.PCOrder,PCFit.isPC,false,null,null);
             }
@@ -183,11 +232,11 @@ public class EPICFitter {
         else{
             
             if(Double.isInfinite(fp.SAPECutoff)){//SAPE takes care of everything
-                System.out.println("No fit needed: SAPE is full energy");
+                FitLog.out().println("No fit needed: SAPE is full energy");
                 seriesCoeffs = new double[numParams];//all 0's for polynomial is best, anything else is noise
             }
             else if(allBelowCutoff){
-                System.out.println("Analytical:");
+                FitLog.out().println("Analytical:");
                 seriesCoeffs = SeriesFitter.fitSeries(sampRel,trueVal,weights,lambda,
                         false,fp.order);
             }
@@ -258,7 +307,7 @@ public class EPICFitter {
             }
 
             meanResidual /= weightSum;//numSamples;
-            System.out.println("CHECK TRAINING SET MEAN RESIDUAL:"+meanResidual);
+            FitLog.out().println("CHECK TRAINING SET MEAN RESIDUAL:"+meanResidual);
         }
         */    //DEBUG!!!!
         
@@ -298,7 +347,7 @@ public class EPICFitter {
         double trueVal[] = new double[numSamples];
         DoubleMatrix1D sampRel[] = new DoubleMatrix1D[numSamples];
         DoubleMatrix1D sampAbs[] = new DoubleMatrix1D[numSamples];
-        generateSamples(numSamples,sampRel,sampAbs,trueVal,numSamples/2);
+        cvSamples.get(numSamples,sampRel,sampAbs,trueVal);
         
         for(int s=0; s<numSamples; s++){
 
@@ -355,7 +404,7 @@ public class EPICFitter {
         }
 
         meanResidual /= weightSum;//numSamples;
-        System.out.println("CV MEAN RESIDUAL:"+meanResidual);
+        FitLog.out().println("CV MEAN RESIDUAL:"+meanResidual);
         
         //Let's return the mean residual
         return meanResidual;
@@ -424,16 +473,16 @@ public class EPICFitter {
         avgSR /= LSBRecord.size();
         avgTimeRat /= LSBRecord.size();
         
-        System.out.println("ANALYSIS OF LSB:");
-        System.out.println("Total conformation count: "+LSBRecord.size());
-        System.out.println("Average minimization time ratio (normal/EPIC): "+avgTimeRat);
-        System.out.println("Average slack recovery fraction: "+avgSR);
-        System.out.println(numOverHundredth+" LSBs > 0.01 over true E; "+numOverTenth+" >0.1 over, "
+        FitLog.out().println("ANALYSIS OF LSB:");
+        FitLog.out().println("Total conformation count: "+LSBRecord.size());
+        FitLog.out().println("Average minimization time ratio (normal/EPIC): "+avgTimeRat);
+        FitLog.out().println("Average slack recovery fraction: "+avgSR);
+        FitLog.out().println(numOverHundredth+" LSBs > 0.01 over true E; "+numOverTenth+" >0.1 over, "
                 +numOverHalf+" >0.5 over");
         //System.out.println(numEnum+" need to be enumerated based on LSBs");
-        System.out.println("Bin_max Bin_count");
+        FitLog.out().println("Bin_max Bin_count");
         for(int bin=0; bin<binMaxs.length; bin++){
-            System.out.println(binMaxs[bin]+" "+binCounts[bin]);
+            FitLog.out().println(binMaxs[bin]+" "+binCounts[bin]);
         }
     }
     
@@ -453,6 +502,13 @@ public class EPICFitter {
     
     void generateSamples(int numSamples,
             DoubleMatrix1D[] sampRel, DoubleMatrix1D[] sampAbs, double[] trueVal, int maxOverCutoff){
+        generateSamples(0, numSamples, sampRel, sampAbs, trueVal, maxOverCutoff, null);
+    }
+    
+    
+    private void generateSamples(int firstSample, int numSamples,
+            DoubleMatrix1D[] sampRel, DoubleMatrix1D[] sampAbs, double[] trueVal, int maxOverCutoff,
+            SampleSet state){
 
         //Generate samples relative to startVec (sampRel) and absolute (sampAbs)
         //and give their energies (trueVal), relative to baseE
@@ -467,9 +523,10 @@ public class EPICFitter {
         //by default, uniform voxel sampling is used
         //If in the first numSamples/4 samples we don't get any below the threshold,
         //then we will use Gaussian sampling near the center
-        GaussianLowEnergySampler gs = null;//only allocate if needed
+        //if we're extending a sample set, pick up its sampler state where it left off
+        GaussianLowEnergySampler gs = state==null ? null : state.gs;//only allocate if needed
         
-        int countOverCutoff = 0;//how many of our samples are over the cutoff
+        int countOverCutoff = state==null ? 0 : state.countOverCutoff;//how many of our samples are over the cutoff
                         
         double relMax[] = new double[numDOFs];//maximum shifts of degrees of freedom relative to minimum point (startVec)
         double relMin[] = new double[numDOFs];
@@ -479,7 +536,7 @@ public class EPICFitter {
         }
 
         
-        for(int s=0; s<numSamples; s++){
+        for(int s=firstSample; s<numSamples; s++){
 
             if(countOverCutoff<maxOverCutoff){//normal draw
                 sampleFromVoxel(s,sampRel,sampAbs,trueVal,objFcn,relMin,relMax,gs);
@@ -499,7 +556,13 @@ public class EPICFitter {
             }
         }
         
-        System.out.println("Drew "+numSamples+" samples of which "+countOverCutoff+" are over bCutoff");
+        if(state!=null){
+            state.gs = gs;
+            state.countOverCutoff = countOverCutoff;
+        }
+        
+        FitLog.out().println("Drew "+(numSamples-firstSample)+" samples (of "+numSamples+" total) of which "
+                +countOverCutoff+" are over bCutoff");
     }
 
     
@@ -683,28 +746,28 @@ public class EPICFitter {
     
     void makeVoxelFigureData(EPoly ep){
         //This is a manually configured function that can be called from RotamerSearch.compEPICFit once fitting is completed
-        System.out.println("Making voxel figure data!");
+        FitLog.out().println("Making voxel figure data!");
         
         
-        System.out.println("minE: "+ep.minE);
+        FitLog.out().println("minE: "+ep.minE);
         DoubleMatrix1D x = ep.center.copy();
         
         
         //this is for 1-D
         //if called on a >1-D voxel will stay at center wrt other dims
         if(ep.numDOFs!=2){
-            System.out.println("chi trueval fitval");
+            FitLog.out().println("chi trueval fitval");
 
             for(double chi=ep.DOFmin.get(0); chi<=ep.DOFmax.get(0); chi++){
                 x.set(0, chi);
                 double trueVal = objFcn.getValue(x);
                 double fitVal = ep.evaluate(x, true, false);
-                System.out.println(chi+" "+trueVal+" "+fitVal);
+                FitLog.out().println(chi+" "+trueVal+" "+fitVal);
             }
         }
         else {
             //2-D version:
-            System.out.println("chi1 chi2 trueval fitval");
+            FitLog.out().println("chi1 chi2 trueval fitval");
 
             for(double chi1=ep.DOFmin.get(0); chi1<=ep.DOFmax.get(0); chi1++){
                 for(double chi2=ep.DOFmin.get(1); chi2<=ep.DOFmax.get(1); chi2++){
@@ -712,7 +775,7 @@ public class EPICFitter {
                     x.set(1, chi2);
                     double trueVal = objFcn.getValue(x);
                     double fitVal = ep.evaluate(x, true, false);
-                    System.out.println(chi1+" "+chi2+" "+trueVal+" "+fitVal);
+                    FitLog.out().println(chi1+" "+chi2+" "+trueVal+" "+fitVal);
                 }
             }
         }
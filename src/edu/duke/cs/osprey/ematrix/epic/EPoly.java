@@ -96,6 +96,12 @@ public class EPoly implements Serializable {
     double baseSAPE = 0;//value of SAPE terms at center (SAPE will be evaluated relative to this)
 
     
+    //compiled form of the series, built on first use (not serialized; it's cheap to rebuild)
+    //must be reset to null whenever coeffs change
+    private transient CompiledEPoly compiled = null;
+    private transient double[] compiledCoeffs = null;//the coeffs the compiled form was built from
+
+    
 
     public EPoly(int numDOFs, ArrayList<DegreeOfFreedom> DOFs, DoubleMatrix1D DOFmax, DoubleMatrix1D DOFmin, 
             DoubleMatrix1D center, double minE, double[] coeffs, int order ) {
@@ -155,10 +161,32 @@ public class EPoly implements Serializable {
     double evalSeries(DoubleMatrix1D z){
         //evaluate the actual series
         //(function of relative coordinates)
+        CompiledEPoly c = compile();
+        if(c!=null)
+            return c.evaluate(z.toArray());
         return SeriesFitter.evalSeries(coeffs, z, numDOFs, false, order);
     }
     
     
+    public CompiledEPoly compile(){
+        //get the compiled form of the series (relative coordinates in a double[])
+        //returns null if this term can't be compiled:
+        //subclasses (e.g. EPolyPC) evaluate in a different basis
+        if(getClass()!=EPoly.class)
+            return null;
+        
+        //racing threads just build equivalent copies, which is harmless
+        //also rebuild if coeffs was reassigned since we compiled (eg by a refit)
+        CompiledEPoly c = compiled;
+        if(c==null || compiledCoeffs!=coeffs){
+            c = new CompiledEPoly(numDOFs, order, coeffs);
+            compiledCoeffs = coeffs;
+            compiled = c;
+        }
+        return c;
+    }
+    
+    
     /*
      * These functions might be useful for EPIC fitting of non-pairwise energies?
      * 
@@ -192,6 +220,7 @@ public class EPoly implements Serializable {
         center = x;
         newPoly.removeConstant();
         coeffs = newPoly.toSeriesDoubleArray(false,order,null);
+        compiled = null;
     }
     
     
@@ -241,6 +270,9 @@ public class EPoly implements Serializable {
     
     DoubleMatrix1D seriesGradient(DoubleMatrix1D z){
         //gradient with respect to DOF values
+        CompiledEPoly c = compile();
+        if(c!=null)
+            return DoubleFactory1D.dense.make(c.gradient(z.toArray()));
         return SeriesFitter.evalSeriesGradient(coeffs, z, numDOFs, false, order, order, null);
     }
     
@@ -0,0 +1,82 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+
+package edu.duke.cs.osprey.ematrix.epic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.function.Supplier;
+
+/**
+ * Where EPIC fitting progress goes.
+ *
+ * Defaults to System.out, but a thread can capture everything its fits print,
+ * so fits running in parallel can print their logs one at a time instead of interleaving.
+ */
+public class FitLog {
+
+    private static final ThreadLocal<PrintStream> capture = new ThreadLocal<>();
+
+    public static PrintStream out(){
+        PrintStream out = capture.get();
+        if(out!=null)
+            return out;
+        return System.out;
+    }
+
+    /** A result, with everything that was printed while making it */
+    public static class Captured<T> {
+
+        public final T result;
+        public final String log;
+
+        public Captured(T result, String log){
+            this.result = result;
+            this.log = log;
+        }
+    }
+
+    /** runs the block on this thread, capturing its fitting output instead of printing it */
+    public static <T> Captured<T> capture(Supplier<T> block){
+        PrintStream oldOut = capture.get();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        capture.set(new PrintStream(buf, true));
+        try {
+            T result = block.get();
+            return new Captured<>(result, buf.toString());
+        } finally {
+            capture.set(oldOut);
+        }
+    }
+}
@@ -109,7 +109,7 @@ public class SeriesFitter {
 
         int numSamples = samp.length;
 
-        System.out.println("Fit has "+numSamples+" samples for "+numParams+" parameters");
+        FitLog.out().println("Fit has "+numSamples+" samples for "+numParams+" parameters");
 
 
         if(c==null)
@@ -120,7 +120,13 @@ public class SeriesFitter {
 
         //scratch for terms of c, M
         DoubleMatrix1D cScratch = DoubleFactory1D.dense.make(numParams);
-        DoubleMatrix2D MScratch = DoubleFactory2D.dense.make(numParams,numParams);
+        double[] coeffs = new double[numParams];
+
+        //accumulate the normal equations in primitive arrays
+        //(just the upper triangle of M, since it's symmetric)
+        //and add them into c, M once all the samples are in
+        double[] cSum = new double[numParams];
+        double[] MSum = new double[numParams*numParams];
 
 
         if(!update){
@@ -146,13 +152,27 @@ public class SeriesFitter {
                 //Least-squares equations are then (sum_samples weight * MScratch) * params = sum_samples weight * c_scratch *trueVals
                 //where MScratch is cScratch*cScratch^T
                 calcSampParamCoeffs(cScratch,samp[s],nd,includeConst,order,PCOrder,isPC);
+                cScratch.toArray(coeffs);
+
+                for(int p=0; p<numParams; p++){
+                    double wp = weight*coeffs[p];
+                    if(wp==0)//polynomial terms are often 0 (e.g. a DOF at the center)
+                        continue;
+                    cSum[p] += wp*trueVals[s];
+                    int row = p*numParams;
+                    for(int q=p; q<numParams; q++)
+                        MSum[row+q] += wp*coeffs[q];
+                }
+            }
+        }
 
-                Algebra.DEFAULT.multOuter(cScratch, cScratch, MScratch);
-                MScratch.assign(Functions.mult(weight));
-                M.assign(MScratch, Functions.plus);
-
-                cScratch.assign(Functions.mult(trueVals[s]*weight));
-                c.assign(cScratch, Functions.plus);
+        for(int p=0; p<numParams; p++){
+            c.set(p, c.getQuick(p)+cSum[p]);
+            for(int q=p; q<numParams; q++){
+                double val = MSum[p*numParams+q];
+                M.setQuick(p, q, M.getQuick(p,q)+val);
+                if(q!=p)
+                    M.setQuick(q, p, M.getQuick(q,p)+val);
             }
         }
 
@@ -221,15 +241,15 @@ public class SeriesFitter {
                 if(Double.isInfinite(residTerm) || Double.isNaN(residTerm)){
                     System.err.println("ERROR: SeriesFitter.fitSeries gives infinite residual term: "+residTerm);
 
-                    System.out.print("Sample: ");
+                    FitLog.out().print("Sample: ");
                     for(int dof=0; dof<nd; dof++)
                         System.err.print(samp[s].get(dof)+" ");
-                    System.out.println();
+                    FitLog.out().println();
                     
                     System.err.println(" TRUEVAL="+trueVals[s]+" BV="+bv);
                     System.err.println("params:");
                     for(double param : v)
-                        System.out.println(param);
+                        FitLog.out().println(param);
 
                     throw new RuntimeException("Infinite or nan residual");
                 }
@@ -242,13 +262,13 @@ public class SeriesFitter {
             }
 
             meanResidual /= weightSum;
-            System.out.println("TRAINING SET MEAN RESIDUAL:"+meanResidual);
+            FitLog.out().println("TRAINING SET MEAN RESIDUAL:"+meanResidual);
         }
 
 
         long doneTime = System.currentTimeMillis();
         //System.out.println("fitSeries checking time (ms): "+(doneTime-vTime));
-        System.out.println("fitSeries time (ms): "+(doneTime-startTime));
+        FitLog.out().println("fitSeries time (ms): "+(doneTime-startTime));
 
         return v;
     }
@@ -267,7 +287,7 @@ public class SeriesFitter {
             int PCOrder, boolean isPC[]){
         
         long startTime = System.currentTimeMillis();
-        System.out.println("Starting fitSeriesIterative...");
+        FitLog.out().println("Starting fitSeriesIterative...");
 
 
         int numSamples = samp.length;
@@ -569,7 +589,7 @@ public class SeriesFitter {
             meanResidual /= weightSum;
 
             if(meanResidual==prevResid)
-                System.out.println();
+                FitLog.out().println();
 
 
 
@@ -610,12 +630,12 @@ public class SeriesFitter {
                 //Let's do an exact line search to rectify the situation
 
                 if(!useLineSearch){
-                    System.out.println("Skipping line search, returning with residual "+prevResid);
+                    FitLog.out().println("Skipping line search, returning with residual "+prevResid);
                     return oldCoeffs;
                 }
                 
                 
-                System.out.println("LINE SEARCH");
+                FitLog.out().println("LINE SEARCH");
                 
                 
                 for(int s=0; s<numSamples; s++){
@@ -810,9 +830,9 @@ public class SeriesFitter {
                     //NOTE THIS CAN HAPPEN IF THE QUADRATIC APPROXIMATION AT OLDCOEFFS HAS SOLUTION
                     //FAR FROM THE EXACT VALUE (ASSUMING EXACT FITSERIES) OF 1
                     //THIS CAN HAPPEN IF WE'RE GETTING BELOW THE NUMERICAL PRECISION OF FITSERIES
-                    System.out.println("TRAINING SET MEAN RESIDUAL:"+prevResid);
-                    System.out.println("CONVERGED IN LINE SEARCH, line search min: "+minResid);
-                    System.out.println("fitSeriesIterative time (ms): "+(System.currentTimeMillis()-startTime));
+                    FitLog.out().println("TRAINING SET MEAN RESIDUAL:"+prevResid);
+                    FitLog.out().println("CONVERGED IN LINE SEARCH, line search min: "+minResid);
+                    FitLog.out().println("fitSeriesIterative time (ms): "+(System.currentTimeMillis()-startTime));
 
                     return oldCoeffs;
                 }
@@ -863,7 +883,7 @@ public class SeriesFitter {
                 } while(minResid>prevResid);
                 
                 if(a<1e-4)
-                    System.out.println("Warning: line search a got down to "+a);
+                    FitLog.out().println("Warning: line search a got down to "+a);
 
                 
                 meanResidual = minResid;
@@ -871,13 +891,13 @@ public class SeriesFitter {
 */
 
             oldCoeffs = coeffs;
-            System.out.println("STEP RESIDUAL: "+meanResidual);
+            FitLog.out().println("STEP RESIDUAL: "+meanResidual);
             prevResid = meanResidual;
             oldSerVals = serVals;
         }
 
-        System.out.println("TRAINING SET MEAN RESIDUAL:"+meanResidual);
-        System.out.println("fitSeriesIterative time (ms): "+(System.currentTimeMillis()-startTime));
+        FitLog.out().println("TRAINING SET MEAN RESIDUAL:"+meanResidual);
+        FitLog.out().println("fitSeriesIterative time (ms): "+(System.currentTimeMillis()-startTime));
 
         
         
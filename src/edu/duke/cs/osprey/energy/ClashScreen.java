@@ -0,0 +1,226 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.energy;
+
+import edu.duke.cs.osprey.structure.Atom;
+import edu.duke.cs.osprey.structure.CellList;
+import edu.duke.cs.osprey.structure.Molecule;
+import edu.duke.cs.osprey.structure.Residue;
+import edu.duke.cs.osprey.structure.Residues;
+import edu.duke.cs.osprey.tools.TimeFormatter;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A cheap check for severe steric clashes in a rigid pose, meant to run before minimization.
+ *
+ * Two heavy atoms clash if they're not bonded 1-2 or 1-3, and their vdW spheres overlap
+ * by more than {@link #overlap} angstroms. Poses with clashes like that usually minimize
+ * into the infinite energy well of the full forcefield, so {@link EnergyCalculator} resolves
+ * their clashes with a purely vdW forcefield first, instead of paying for a full minimization
+ * that would just be thrown away.
+ *
+ * The screen also counts what it did, so callers can report how much minimization time it saved.
+ */
+public class ClashScreen {
+
+	/** vdW overlap (in angstroms) between two heavy atoms that counts as a clash */
+	public final double overlap;
+
+	private final AtomicLong numScreened = new AtomicLong(0L);
+	private final AtomicLong numFlagged = new AtomicLong(0L);
+	private final AtomicLong screenNs = new AtomicLong(0L);
+	private final AtomicLong numMinimizations = new AtomicLong(0L);
+	private final AtomicLong minimizationNs = new AtomicLong(0L);
+	private final AtomicLong numMissedWells = new AtomicLong(0L);
+
+	public ClashScreen(double overlap) {
+		this.overlap = overlap;
+	}
+
+	/**
+	 * Returns true if any two heavy atoms clash in the current pose of the molecule,
+	 * considering only atom pairs in the residue interactions.
+	 */
+	public boolean isClashing(Molecule mol, ResidueInteractions inters) {
+
+		// index the interacting residues
+		Residues residues = inters.filter(mol.residues);
+		int n = residues.size();
+		Map<Residue,Integer> indices = new IdentityHashMap<>();
+		for (Residue res : residues) {
+			indices.put(res, indices.size());
+		}
+		boolean[][] isInteracting = new boolean[n][n];
+		for (ResidueInteractions.Pair pair : inters) {
+			int i1 = indices.get(mol.residues.getOrThrow(pair.resNum1));
+			int i2 = indices.get(mol.residues.getOrThrow(pair.resNum2));
+			isInteracting[i1][i2] = true;
+			isInteracting[i2][i1] = true;
+		}
+
+		// how far apart can two heavy atoms be and still clash?
+		double maxRadius = 0;
+		for (Residue res : residues) {
+			for (Atom atom : res.atoms) {
+				if (isHeavy(atom)) {
+					maxRadius = Math.max(maxRadius, atom.radius);
+				}
+			}
+		}
+		double maxDist = 2*maxRadius/100 - overlap;
+		if (maxDist <= 0) {
+			return false;
+		}
+
+		// look for close heavy atoms, checking each pair of atoms only once
+		CellList cells = new CellList(maxDist, residues);
+		boolean[] found = { false };
+		for (int i1=0; i1<n && !found[0]; i1++) {
+			Residue res1 = residues.get(i1);
+			for (int a1=0; a1<res1.atoms.size() && !found[0]; a1++) {
+				Atom atom1 = res1.atoms.get(a1);
+				if (!isHeavy(atom1)) {
+					continue;
+				}
+				int fi1 = i1;
+				int fa1 = a1;
+				cells.forEachAtomWithin(res1.coords[a1*3], res1.coords[a1*3 + 1], res1.coords[a1*3 + 2], maxDist, (res2, a2, distSq) -> {
+					if (found[0]) {
+						return;
+					}
+					int i2 = indices.get(res2);
+					if (i2 < fi1 || (i2 == fi1 && a2 <= fa1) || !isInteracting[fi1][i2]) {
+						return;
+					}
+					Atom atom2 = res2.atoms.get(a2);
+					if (!isHeavy(atom2)) {
+						return;
+					}
+					double clashDist = (atom1.radius + atom2.radius)/100 - overlap;
+					if (clashDist > 0 && distSq < clashDist*clashDist && !isBonded13(atom1, atom2)) {
+						found[0] = true;
+					}
+				});
+			}
+		}
+		return found[0];
+	}
+
+	private static boolean isHeavy(Atom atom) {
+		// skip dummy atoms too, their radii are meaningless
+		return !atom.isHydrogen() && !atom.elementType.equals("DU");
+	}
+
+	private static boolean isBonded13(Atom atom1, Atom atom2) {
+		for (Atom bonded : atom1.bonds) {
+			if (bonded == atom2 || bonded.bonds.contains(atom2)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** screens the molecule and counts the result */
+	boolean screen(Molecule mol, ResidueInteractions inters) {
+		long startNs = System.nanoTime();
+		boolean isClashing = isClashing(mol, inters);
+		screenNs.addAndGet(System.nanoTime() - startNs);
+		numScreened.incrementAndGet();
+		if (isClashing) {
+			numFlagged.incrementAndGet();
+		}
+		return isClashing;
+	}
+
+	/** counts a full minimization from the start pose of a molecule that passed the screen */
+	void recordMinimization(long ns, boolean fellIntoWell) {
+		numMinimizations.incrementAndGet();
+		minimizationNs.addAndGet(ns);
+		if (fellIntoWell) {
+			numMissedWells.incrementAndGet();
+		}
+	}
+
+	public long getNumScreened() {
+		return numScreened.get();
+	}
+
+	public long getNumFlagged() {
+		return numFlagged.get();
+	}
+
+	/** returns the number of poses that passed the screen, but still fell into the infinite well */
+	public long getNumMissedWells() {
+		return numMissedWells.get();
+	}
+
+	public long getScreenNs() {
+		return screenNs.get();
+	}
+
+	/**
+	 * Estimates the minimization time saved by the screen, less the time spent screening.
+	 *
+	 * Each flagged pose skips one full minimization from its start pose, which we assume
+	 * takes as long as the average full minimization of the poses that passed the screen.
+	 */
+	public long estimateSavedNs() {
+		long num = numMinimizations.get();
+		if (num <= 0) {
+			return 0;
+		}
+		return numFlagged.get()*(minimizationNs.get()/num) - screenNs.get();
+	}
+
+	public void resetCounters() {
+		numScreened.set(0);
+		numFlagged.set(0);
+		screenNs.set(0);
+		numMinimizations.set(0);
+		minimizationNs.set(0);
+		numMissedWells.set(0);
+	}
+
+	public String makeReport() {
+		return String.format("clash screen: flagged %d of %d poses, missed %d wells, screening time %s, estimated minimization time saved %s",
+			getNumFlagged(), getNumScreened(), getNumMissedWells(),
+			TimeFormatter.format(getScreenNs(), 2),
+			TimeFormatter.format(estimateSavedNs(), 2)
+		);
+	}
+}
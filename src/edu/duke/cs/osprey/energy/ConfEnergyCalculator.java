@@ -32,9 +32,12 @@
 
 package edu.duke.cs.osprey.energy;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
 import java.util.function.Supplier;
 
 import edu.duke.cs.osprey.confspace.*;
@@ -42,6 +45,7 @@ import edu.duke.cs.osprey.confspace.ConfSearch.EnergiedConf;
 import edu.duke.cs.osprey.confspace.ConfSearch.ScoredConf;
 import edu.duke.cs.osprey.ematrix.SimpleReferenceEnergies;
 import edu.duke.cs.osprey.minimization.MoleculeObjectiveFunction;
+import edu.duke.cs.osprey.parallelism.FutureTaskExecutor;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.parallelism.TaskExecutor.TaskListener;
 import edu.duke.cs.osprey.tools.Progress;
@@ -69,6 +73,12 @@ public class ConfEnergyCalculator {
         private SimpleReferenceEnergies eref = null;
         private boolean addResEntropy = false;
 
+        /**
+         * Directory for a {@link SharedEnergyCache} of conformation energies, or null for no cache.
+         * The cache can be shared by many processes and runs using the same conf space and forcefield.
+         */
+        private File energyCacheDir = null;
+
         public Builder(SimpleConfSpace confSpace, EnergyCalculator ecalc) {
             this.confSpace  = confSpace;
             this.ecalc = ecalc;
@@ -89,8 +99,13 @@ public class ConfEnergyCalculator {
             return this;
         }
 
+        public Builder setEnergyCache(File val) {
+            this.energyCacheDir = val;
+            return this;
+        }
+
         public ConfEnergyCalculator build() {
-            return new ConfEnergyCalculator(confSpace, ecalc, epart, eref, addResEntropy);
+            return new ConfEnergyCalculator(confSpace, ecalc, ecalc.tasks, epart, eref, addResEntropy, energyCacheDir);
         }
     }
 
@@ -100,9 +115,11 @@ public class ConfEnergyCalculator {
     public final SimpleReferenceEnergies eref;
     public final boolean addResEntropy;
     public final TaskExecutor tasks;
+    public final SharedEnergyCache energyCache;
 
     protected final AtomicLong numCalculations = new AtomicLong(0L);
     protected final AtomicLong numConfDBReads = new AtomicLong(0L);
+    protected final AtomicLong numEnergyCacheReads = new AtomicLong(0L);
 
     protected ConfEnergyCalculator(SimpleConfSpace confSpace, EnergyCalculator ecalc, EnergyPartition epart, SimpleReferenceEnergies eref, boolean addResEntropy) {
         this(confSpace, ecalc, ecalc.tasks, epart, eref, addResEntropy);
@@ -113,12 +130,23 @@ public class ConfEnergyCalculator {
     }
 
     protected ConfEnergyCalculator(SimpleConfSpace confSpace, EnergyCalculator ecalc, TaskExecutor tasks, EnergyPartition epart, SimpleReferenceEnergies eref, boolean addResEntropy) {
+        this(confSpace, ecalc, tasks, epart, eref, addResEntropy, null);
+    }
+
+    protected ConfEnergyCalculator(SimpleConfSpace confSpace, EnergyCalculator ecalc, TaskExecutor tasks, EnergyPartition epart, SimpleReferenceEnergies eref, boolean addResEntropy, File energyCacheDir) {
         this.confSpace = confSpace;
         this.ecalc = ecalc;
         this.epart = epart;
         this.eref = eref;
         this.addResEntropy = addResEntropy;
         this.tasks = tasks;
+
+        // NOTE: the cache fingerprints our settings, so open it after all the fields are set
+        if (energyCacheDir != null) {
+            this.energyCache = new SharedEnergyCache(energyCacheDir, this);
+        } else {
+            this.energyCache = null;
+        }
     }
 
     protected ConfEnergyCalculator(ConfEnergyCalculator other) {
@@ -126,20 +154,32 @@ public class ConfEnergyCalculator {
     }
 
     public ConfEnergyCalculator(ConfEnergyCalculator other, EnergyCalculator ecalc) {
-        this(other.confSpace, ecalc, other.epart, other.eref, other.addResEntropy);
+        this.confSpace = other.confSpace;
+        this.ecalc = ecalc;
+        this.epart = other.epart;
+        this.eref = other.eref;
+        this.addResEntropy = other.addResEntropy;
+        this.tasks = ecalc.tasks;
+
+        // keep using the other calculator's energy cache, unless the new energy calculator changes the energies
+        if (other.energyCache != null) {
+            this.energyCache = other.energyCache.forCalculator(this);
+        } else {
+            this.energyCache = null;
+        }
     }
 
     /**
      * returns the number of requested energy calculations,
-     * including ones cached in a conf DB
+     * including ones cached in a conf DB or energy cache
      */
     public long getNumRequests() {
-        return numCalculations.get() + numConfDBReads.get();
+        return numCalculations.get() + numConfDBReads.get() + numEnergyCacheReads.get();
     }
 
     /**
      * returns the number of energy calculations performed,
-     * excluding values cached in a conf DB
+     * excluding values cached in a conf DB or energy cache
      */
     public long getNumCalculations() {
         return numCalculations.get();
@@ -152,9 +192,24 @@ public class ConfEnergyCalculator {
         return numConfDBReads.get();
     }
 
+    /**
+     * returns the number of energies served from the shared energy cache
+     */
+    public long getNumEnergyCacheReads() {
+        return numEnergyCacheReads.get();
+    }
+
+    /**
+     * returns the clash screen of the energy calculator, or null if it doesn't screen for clashes
+     */
+    public ClashScreen getClashScreen() {
+        return ecalc != null ? ecalc.clashScreen : null;
+    }
+
     public void resetCounters() {
         numCalculations.set(0);
         numConfDBReads.set(0);
+        numEnergyCacheReads.set(0);
     }
 
     public ResidueInteractions makeFragInters(RCTuple frag) {
@@ -240,7 +295,7 @@ public class ConfEnergyCalculator {
      * @return The energy of the resulting molecule fragment
      */
     public double calcEnergy(RCTuple frag, ConfDB.ConfTable table) {
-        return calcEnergy(frag, makeFragInters(frag), table);
+        return calcEnergy(frag, table, () -> calcFragEnergy(frag));
     }
 
     /**
@@ -253,10 +308,14 @@ public class ConfEnergyCalculator {
      * @return The energy of the resulting molecule fragment
      */
     public double calcEnergy(RCTuple frag, ResidueInteractions inters, ConfDB.ConfTable table) {
+        return calcEnergy(frag, table, () -> calcEnergy(frag, inters).energy);
+    }
+
+    private double calcEnergy(RCTuple frag, ConfDB.ConfTable table, DoubleSupplier supplier) {
 
         // no confDB? just compute the energy
         if (table == null) {
-            return calcEnergy(frag, inters).energy;
+            return supplier.getAsDouble();
         }
 
         // check the confDB for the energy
@@ -268,7 +327,7 @@ public class ConfEnergyCalculator {
         }
 
         // cache miss, compute the energy
-        double energy = calcEnergy(frag, inters).energy;
+        double energy = supplier.getAsDouble();
 
         // update the ConfDB
         table.setUpperBound(conf, energy, TimeTools.getTimestampNs());
@@ -309,7 +368,32 @@ public class ConfEnergyCalculator {
      * @return The conformation with attached energy
      */
     public EnergiedConf calcEnergy(ScoredConf conf) {
-        return new EnergiedConf(conf, calcEnergy(new RCTuple(conf.getAssignments())).energy);
+        return new EnergiedConf(conf, calcFragEnergy(new RCTuple(conf.getAssignments())));
+    }
+
+    /**
+     * Calculate the energy of a molecule fragment using residue interactions generated by the energy partition,
+     * using the shared energy cache if there is one.
+     */
+    private double calcFragEnergy(RCTuple frag) {
+
+        // no cache? just compute the energy
+        if (energyCache == null) {
+            return calcEnergy(frag).energy;
+        }
+
+        // check the cache for the energy
+        int[] conf = Conf.make(confSpace, frag);
+        Double energy = energyCache.get(conf);
+        if (energy != null) {
+            numEnergyCacheReads.incrementAndGet();
+            return energy;
+        }
+
+        // cache miss, compute the energy and share it
+        energy = calcEnergy(frag).energy;
+        energyCache.put(conf, energy);
+        return energy;
     }
 
     /**
@@ -403,16 +487,28 @@ public class ConfEnergyCalculator {
         }
 
         // check the confDB for the energy
-        EnergiedConf econf = table.getEnergied(conf);
+        EnergiedConf econf = readConfDB(conf, table);
         if (econf != null) {
-            numConfDBReads.incrementAndGet();
             return econf;
         }
 
         // cache miss, compute the energy
         econf = supplier.get();
 
-        // update the ConfDB
+        return writeConfDB(econf, table);
+    }
+
+    /** returns null if the conf isn't in the confDB yet */
+    private EnergiedConf readConfDB(ScoredConf conf, ConfDB.ConfTable table) {
+        EnergiedConf econf = table.getEnergied(conf);
+        if (econf != null) {
+            numConfDBReads.incrementAndGet();
+        }
+        return econf;
+    }
+
+    private EnergiedConf writeConfDB(EnergiedConf econf, ConfDB.ConfTable table) {
+
         // NOTE: flushing the db every write might be noticeably slow at a high write rate
         // in testing so far, at about 20 writes/s, the performance hit is undetectable
         table.setBounds(econf, TimeTools.getTimestampNs());
@@ -425,6 +521,45 @@ public class ConfEnergyCalculator {
         tasks.submit(() -> calcEnergy(conf, table, supplier), listener);
     }
 
+    /**
+     * Future-returning version of {@link #calcEnergy(ScoredConf)}.
+     *
+     * @param conf The conformation to analyze
+     * @return A future for the conformation with attached energy
+     */
+    public CompletableFuture<EnergiedConf> calcEnergyFuture(ScoredConf conf) {
+        return tasks.submitFuture(() -> calcEnergy(conf));
+    }
+
+    /**
+     * Future-returning version of {@link #calcEnergy(ScoredConf, ConfDB.ConfTable)}.
+     *
+     * If the task executor is a {@link FutureTaskExecutor}, the ConfDB reads and writes happen
+     * on I/O threads, and only the energy calculation itself uses a CPU worker thread.
+     * No thread blocks waiting on another stage.
+     *
+     * @param conf The conformation to analyze
+     * @param table the confDB table
+     * @return A future for the conformation with attached energy
+     */
+    public CompletableFuture<EnergiedConf> calcEnergyFuture(ScoredConf conf, ConfDB.ConfTable table) {
+
+        if (table == null || !(tasks instanceof FutureTaskExecutor)) {
+            return tasks.submitFuture(() -> calcEnergy(conf, table));
+        }
+        FutureTaskExecutor futures = (FutureTaskExecutor)tasks;
+
+        // read on an I/O thread, compute on a CPU thread, then write on an I/O thread
+        return futures.submitIO(() -> readConfDB(conf, table))
+            .thenCompose((econf) -> {
+                if (econf != null) {
+                    return CompletableFuture.completedFuture(econf);
+                }
+                return futures.submitFuture(() -> calcEnergy(conf))
+                    .thenApplyAsync((newEconf) -> writeConfDB(newEconf, table), futures.io());
+            });
+    }
+
 
     public List<EnergiedConf> calcAllEnergies(List<ScoredConf> confs) {
         return calcAllEnergies(confs, false);
@@ -33,6 +33,7 @@
 package edu.duke.cs.osprey.energy;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import cern.colt.matrix.DoubleFactory1D;
@@ -57,6 +58,7 @@ import edu.duke.cs.osprey.minimization.Minimizer;
 import edu.duke.cs.osprey.minimization.MoleculeObjectiveFunction;
 import edu.duke.cs.osprey.minimization.ObjectiveFunction;
 import edu.duke.cs.osprey.minimization.SimpleCCDMinimizer;
+import edu.duke.cs.osprey.parallelism.GroupLocal;
 import edu.duke.cs.osprey.parallelism.Parallelism;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.parallelism.TaskExecutor.TaskListener;
@@ -131,6 +133,18 @@ public class EnergyCalculator implements AutoCleanable {
          */
         private Double alwaysResolveClashesEnergy = null;
 
+        /**
+         * If set, screen the starting pose of each minimization for heavy atoms whose vdW
+         * spheres overlap by more than this many angstroms (see {@link ClashScreen}).
+         * Poses that fail the screen skip the first full minimization, and go straight to
+         * the vdW clash resolution instead.
+         *
+         * Works best with {@link #infiniteWellEnergy}, and has no effect when
+         * {@link #alwaysResolveClashesEnergy} is set, since then every pose gets its clashes resolved.
+         * If you're unsure, 1.0 angstroms is probably a good overlap to choose.
+         */
+        private Double clashScreenOverlap = null;
+
         public Builder(ResidueTemplateLibrary templateLib, ForcefieldParams ffparams) {
             this.ffparams = ffparams;
             this.atomConnectivityBuilder.addTemplates(templateLib);
@@ -167,6 +181,15 @@ public class EnergyCalculator implements AutoCleanable {
             return this;
         }
 
+        /**
+         * Cache the atom connectivity in this directory across runs,
+         * see {@link AtomConnectivity.Builder#setSnapshotDir(File)}
+         */
+        public Builder setAtomConnectivitySnapshotDir(File val) {
+            atomConnectivityBuilder.setSnapshotDir(val);
+            return this;
+        }
+
         public Builder setResPairCache(ResPairCache val) {
             resPairCache = val;
             return this;
@@ -187,6 +210,11 @@ public class EnergyCalculator implements AutoCleanable {
             return this;
         }
 
+        public Builder setClashScreenOverlap(Double val) {
+            clashScreenOverlap = val;
+            return this;
+        }
+
         public EnergyCalculator build() {
 
             // if no explicit type was picked, pick the best one now
@@ -206,7 +234,9 @@ public class EnergyCalculator implements AutoCleanable {
                 resPairCache = new ResPairCache(ffparams, connectivity);
             }
 
-            return new EnergyCalculator(parallelism, type, resPairCache, isMinimizing, infiniteWellEnergy, alwaysResolveClashesEnergy);
+            ClashScreen clashScreen = clashScreenOverlap != null ? new ClashScreen(clashScreenOverlap) : null;
+
+            return new EnergyCalculator(parallelism, type, resPairCache, isMinimizing, infiniteWellEnergy, alwaysResolveClashesEnergy, clashScreen);
         }
     }
 
@@ -517,10 +547,16 @@ public class EnergyCalculator implements AutoCleanable {
     public final boolean isMinimizing;
     public final Double infiniteWellEnergy;
     public final Double alwaysResolveClashesEnergy;
+    public final ClashScreen clashScreen;
 
     private final Type.Context cpuContext; // for vdW forcefields
 
-    private EnergyCalculator(Parallelism parallelism, Type type, ResPairCache resPairCache, boolean isMinimizing, Double infiniteWellEnergy, Double alwaysResolveClashesEnergy) {
+    // per-group replicas for grouped CPU parallelism, null otherwise
+    private final GroupLocal<ResPairCache> groupResPairCaches;
+    private final GroupLocal<Type.Context> groupContexts;
+    private final GroupLocal<Type.Context> groupCpuContexts;
+
+    private EnergyCalculator(Parallelism parallelism, Type type, ResPairCache resPairCache, boolean isMinimizing, Double infiniteWellEnergy, Double alwaysResolveClashesEnergy, ClashScreen clashScreen) {
 
         this.parallelism = parallelism;
         this.tasks = parallelism.makeTaskExecutor();
@@ -530,14 +566,37 @@ public class EnergyCalculator implements AutoCleanable {
         this.isMinimizing = isMinimizing;
         this.infiniteWellEnergy = infiniteWellEnergy;
         this.alwaysResolveClashesEnergy = alwaysResolveClashesEnergy;
+        this.clashScreen = clashScreen;
 
         // make a CPU context if we need to do vdW forcefields
         // TODO: implement vdW forcefield on the GPU too?
-        if (infiniteWellEnergy != null || alwaysResolveClashesEnergy != null) {
+        if (infiniteWellEnergy != null || alwaysResolveClashesEnergy != null || clashScreen != null) {
             this.cpuContext = Type.Cpu.makeContext(parallelism, resPairCache);
         } else {
             this.cpuContext = null;
         }
+
+        // replicate the CPU contexts and res pair caches for each worker group if needed
+        // so workers mostly read forcefield data that was allocated by their own group
+        if (parallelism.isGrouped() && (type == Type.Cpu || type == Type.CpuOriginalCCD)) {
+            this.groupResPairCaches = new GroupLocal<>(parallelism.numGroups, resPairCache,
+                () -> new ResPairCache(resPairCache.ffparams, resPairCache.connectivity)
+            );
+            this.groupContexts = new GroupLocal<>(parallelism.numGroups, context,
+                () -> type.makeContext(parallelism, groupResPairCaches.get())
+            );
+            if (cpuContext != null) {
+                this.groupCpuContexts = new GroupLocal<>(parallelism.numGroups, cpuContext,
+                    () -> Type.Cpu.makeContext(parallelism, groupResPairCaches.get())
+                );
+            } else {
+                this.groupCpuContexts = null;
+            }
+        } else {
+            this.groupResPairCaches = null;
+            this.groupContexts = null;
+            this.groupCpuContexts = null;
+        }
     }
 
     private EnergyCalculator(EnergyCalculator parent, boolean isMinimizing) {
@@ -550,16 +609,39 @@ public class EnergyCalculator implements AutoCleanable {
         this.isMinimizing = isMinimizing;
         this.infiniteWellEnergy = parent.infiniteWellEnergy;
         this.alwaysResolveClashesEnergy = parent.alwaysResolveClashesEnergy;
+        this.clashScreen = parent.clashScreen;
 
         this.cpuContext = parent.cpuContext;
+        this.groupResPairCaches = parent.groupResPairCaches;
+        this.groupContexts = parent.groupContexts;
+        this.groupCpuContexts = parent.groupCpuContexts;
     }
 
     @Override
     public void clean() {
-        context.cleanup();
+        if (groupContexts != null) {
+            groupContexts.forEach((groupContext) -> groupContext.cleanup());
+        } else {
+            context.cleanup();
+        }
         tasks.clean();
     }
 
+    /** gets the context for the current thread's worker group */
+    private Type.Context getContext() {
+        if (groupContexts != null) {
+            return groupContexts.get();
+        }
+        return context;
+    }
+
+    private Type.Context getCpuContext() {
+        if (groupCpuContexts != null) {
+            return groupCpuContexts.get();
+        }
+        return cpuContext;
+    }
+
     /**
      * Calculate the energy of a molecule. If the molecule has continuous degrees of freedom,
      * they will be minimized within the specified bounds before calculating the energy.
@@ -577,7 +659,7 @@ public class EnergyCalculator implements AutoCleanable {
 
         // if we don't need to minimize, just return the energy of the current pose
         if (!isMinimizing || pmol.dofBounds.size() <= 0) {
-            try (EnergyFunction efunc = context.efuncs.make(inters, pmol.mol)) {
+            try (EnergyFunction efunc = getContext().efuncs.make(inters, pmol.mol)) {
                 return new EnergiedParametricMolecule(pmol, inters, null, efunc.getEnergy());
             }
         }
@@ -586,6 +668,8 @@ public class EnergyCalculator implements AutoCleanable {
         DoubleMatrix1D x = DoubleFactory1D.dense.make(pmol.dofs.size());
         pmol.dofBounds.getCenter(x);
 
+        boolean isClashResolved = false;
+        boolean isScreenPassed = false;
         if (alwaysResolveClashesEnergy != null) {
 
             Minimizer.Result vdwResult = minimizeWithVdw(pmol, inters, x);
@@ -596,21 +680,44 @@ public class EnergyCalculator implements AutoCleanable {
             }
 
             x = vdwResult.dofValues;
+
+        } else if (clashScreen != null) {
+
+            // check the starting pose for severe clashes
+            for (int d=0; d<pmol.dofs.size(); d++) {
+                pmol.dofs.get(d).apply(x.get(d));
+            }
+            if (clashScreen.screen(pmol.mol, inters)) {
+
+                // the full forcefield will probably fall into the infinite well from here,
+                // so skip straight to resolving the clash
+                isClashResolved = true;
+                x = minimizeWithVdw(pmol, inters, x).dofValues;
+
+            } else {
+                isScreenPassed = true;
+            }
         }
 
         // minimize using the full forcefield
-        try (EnergyFunction efunc = context.efuncs.make(inters, pmol.mol)) {
+        try (EnergyFunction efunc = getContext().efuncs.make(inters, pmol.mol)) {
             MoleculeObjectiveFunction mof = new MoleculeObjectiveFunction(pmol, efunc);
-            try (Minimizer minimizer = context.minimizers.make(mof)) {
+            try (Minimizer minimizer = getContext().minimizers.make(mof)) {
 
+                long startNs = System.nanoTime();
                 Minimizer.Result result = minimizer.minimizeFrom(x);
+                if (isScreenPassed) {
+                    clashScreen.recordMinimization(System.nanoTime() - startNs, isInfiniteWell(result.energy));
+                }
 
                 // did we fall into an infinite energy well?
                 if (isInfiniteWell(result.energy)) {
 
-                    // try to resolve the clash and try the minimization again
-                    Minimizer.Result vdwResult = minimizeWithVdw(pmol, inters, x);
-                    result = minimizer.minimizeFrom(vdwResult.dofValues);
+                    // if we haven't already, try to resolve the clash and try the minimization again
+                    if (!isClashResolved) {
+                        Minimizer.Result vdwResult = minimizeWithVdw(pmol, inters, x);
+                        result = minimizer.minimizeFrom(vdwResult.dofValues);
+                    }
 
                     // are we still in the well?
                     if (isInfiniteWell(result.energy)) {
@@ -628,6 +735,7 @@ public class EnergyCalculator implements AutoCleanable {
     }
 
     private Minimizer.Result minimizeWithVdw(ParametricMolecule pmol, ResidueInteractions inters, DoubleMatrix1D x) {
+        Type.Context cpuContext = getCpuContext();
         try (EnergyFunction efunc = cpuContext.efuncs.make(inters, pmol.mol)) {
             ResidueForcefieldEnergy.Vdw vdwEfunc = new ResidueForcefieldEnergy.Vdw((ResidueForcefieldEnergy)efunc);
             try (Minimizer minimizer = cpuContext.minimizers.make(new MoleculeObjectiveFunction(pmol, vdwEfunc))) {
@@ -645,7 +753,7 @@ public class EnergyCalculator implements AutoCleanable {
     }
 
     public EnergyFunction makeEnergyFunction(ParametricMolecule pmol, ResidueInteractions inters) {
-        return context.efuncs.make(inters, pmol.mol);
+        return getContext().efuncs.make(inters, pmol.mol);
     }
 
     public MoleculeObjectiveFunction makeEnergyObjFcn(ParametricMolecule pmol, ResidueInteractions inters) {
@@ -666,4 +774,15 @@ public class EnergyCalculator implements AutoCleanable {
     public void calcEnergyAsync(ParametricMolecule pmol, ResidueInteractions inters, TaskListener<EnergiedParametricMolecule> listener) {
         tasks.submit(() -> calcEnergy(pmol, inters), listener);
     }
+
+    /**
+     * Future-returning version of {@link #calcEnergy(ParametricMolecule,ResidueInteractions)}.
+     *
+     * @param pmol The molecule
+     * @param inters Residue interactions for the energy function
+     * @return A future for the calculated energy and the associated molecule pose
+     */
+    public CompletableFuture<EnergiedParametricMolecule> calcEnergyFuture(ParametricMolecule pmol, ResidueInteractions inters) {
+        return tasks.submitFuture(() -> calcEnergy(pmol, inters));
+    }
 }
@@ -0,0 +1,613 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+package edu.duke.cs.osprey.energy;
+
+import edu.duke.cs.osprey.confspace.Conf;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.confspace.StrandFlex;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.structure.Residue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+
+/**
+ * Read-through/write-through cache of conformation energies that can be shared
+ * by many processes (on the same host, or on a shared filesystem) and across runs.
+ *
+ * Energies are keyed by a context (a fingerprint of the conf space, forcefield params,
+ * energy calculator settings, and energy modifications like reference energies)
+ * and by the conformation assignments.
+ *
+ * Entries are stored in a directory of append-only log files, sharded by the assignments.
+ * Each cache instance only ever appends to its own log files, so readers never see interleaved writes
+ * from other processes. Writers hold a lock on their own logs while they're open, just to show they're alive.
+ * When a cache is opened, it merges the logs of writers that have gone away into its own logs and removes them,
+ * so the directory doesn't keep one log per writer per run forever. Readers pick up entries
+ * from other writers by reading the new bytes at the end of their logs on a cache miss,
+ * at most once per {@link #RefreshIntervalMs} per shard, so misses don't keep rescanning the directory.
+ * Each record carries a checksum. Reading a log stops at the first record that doesn't match its checksum
+ * (e.g., one that's still being written), and the next refresh tries that record again.
+ */
+public class SharedEnergyCache {
+
+	private static final int LogMagic = 0x4f534543; // OSEC
+	private static final int Version = 1;
+
+	// magic, version, numPos
+	private static final int LogHeaderBytes = Integer.BYTES*3;
+
+	public static final int DefaultNumShards = 16;
+
+	/** minimum time between looking for other writers' entries on cache misses, per shard */
+	public static final long RefreshIntervalMs = 1000;
+
+	public final File dir;
+	public final String context;
+	public final int numPos;
+	public final int numShards;
+
+	private final String writerId;
+	private final int recordBytes;
+	private final Shard[] shards;
+
+	/**
+	 * Opens (or creates) a cache for the conformation energies computed by the conf energy calculator
+	 */
+	public SharedEnergyCache(File dir, ConfEnergyCalculator confEcalc) {
+		this(dir, describe(confEcalc), confEcalc.confSpace.positions.size(), DefaultNumShards);
+	}
+
+	/**
+	 * Returns this cache if the conf energy calculator computes energies in the same context,
+	 * otherwise opens the cache for its context in the same directory
+	 */
+	public SharedEnergyCache forCalculator(ConfEnergyCalculator confEcalc) {
+		String description = describe(confEcalc);
+		if (hashDescription(description).equals(context) && confEcalc.confSpace.positions.size() == numPos) {
+			return this;
+		}
+		return new SharedEnergyCache(dir, description, confEcalc.confSpace.positions.size(), numShards);
+	}
+
+	/**
+	 * Opens (or creates) a cache for energies in the given context
+	 *
+	 * @param dir directory for the cache files, shared by all processes using the cache
+	 * @param description full description of the energy context, used to validate cache entries
+	 * @param numPos number of design positions in the conformations
+	 * @param numShards number of shards to split the entries into
+	 */
+	public SharedEnergyCache(File dir, String description, int numPos, int numShards) {
+
+		this.dir = dir;
+		this.context = hashDescription(description);
+		this.numPos = numPos;
+		this.numShards = numShards;
+
+		// pick a unique id for our log files
+		this.writerId = String.format("%016x", ThreadLocalRandom.current().nextLong());
+
+		// assignments, energy, checksum
+		this.recordBytes = numPos*Integer.BYTES + Double.BYTES + Integer.BYTES;
+
+		dir.mkdirs();
+		checkManifest(description);
+
+		shards = new Shard[numShards];
+		for (int i=0; i<numShards; i++) {
+			shards[i] = new Shard(i);
+			shards[i].mergeAbandonedLogs();
+		}
+	}
+
+	private static String hashDescription(String description) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(description.getBytes(StandardCharsets.UTF_8));
+			StringBuilder buf = new StringBuilder();
+			for (int i=0; i<16; i++) {
+				buf.append(String.format("%02x", digest[i]));
+			}
+			return buf.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new Error("SHA-256 should always be available", ex);
+		}
+	}
+
+	/**
+	 * Make sure the context in the cache dir really matches our context.
+	 * The context id is a hash, so the full description makes collisions detectable.
+	 */
+	private void checkManifest(String description) {
+
+		Path manifest = dir.toPath().resolve(context + ".manifest");
+		try {
+
+			if (!Files.exists(manifest)) {
+
+				// write to a temp file, then move into place atomically, so other processes never see a partial manifest
+				Path tmp = dir.toPath().resolve(context + ".manifest." + writerId);
+				Files.write(tmp, description.getBytes(StandardCharsets.UTF_8));
+				try {
+					Files.move(tmp, manifest, StandardCopyOption.ATOMIC_MOVE);
+				} catch (FileAlreadyExistsException ex) {
+					// another process beat us to it, that's fine
+					Files.deleteIfExists(tmp);
+				}
+			}
+
+			String existing = new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8);
+			if (!existing.equals(description)) {
+				throw new IllegalStateException("energy cache context " + context + " in " + dir
+					+ " doesn't match this conf space and forcefield, refusing to use it");
+			}
+
+		} catch (IOException ex) {
+			throw new UncheckedIOException("can't read energy cache manifest: " + manifest, ex);
+		}
+	}
+
+	private Shard getShard(int[] conf) {
+		int h = Conf.hashCode(conf);
+		h ^= h >>> 16;
+		return shards[Math.floorMod(h, numShards)];
+	}
+
+	/**
+	 * Returns the cached energy for the conformation (or fragment), or null if there is none yet
+	 */
+	public Double get(int[] conf) {
+		return getShard(conf).get(conf);
+	}
+
+	/**
+	 * Adds the energy for the conformation (or fragment) to the cache
+	 */
+	public void put(int[] conf, double energy) {
+		if (conf.length != numPos) {
+			throw new IllegalArgumentException("expected " + numPos + " positions, not " + conf.length);
+		}
+		getShard(conf).put(conf, energy);
+	}
+
+	/**
+	 * Returns the number of entries loaded into memory so far
+	 */
+	public long size() {
+		long size = 0;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				size += shard.energies.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Loads all entries written so far by any process
+	 */
+	public void refresh() {
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				shard.refresh();
+			}
+		}
+	}
+
+	/**
+	 * Closes the log files this instance writes to. Entries already written stay in the cache.
+	 */
+	public void close() {
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				shard.close();
+			}
+		}
+	}
+
+
+	private class Shard {
+
+		final String prefix;
+		final File ownFile;
+		final Conf.Map<Double> energies = new Conf.Map<>();
+
+		// how far we've read into each log file in this shard
+		final Map<String,Long> offsets = new HashMap<>();
+
+		// opened on the first write, and kept open so each record is just one append
+		FileChannel ownChannel = null;
+
+		// when we last looked for other writers' entries, or null if we never have
+		Long lastRefreshNs = null;
+
+		Shard(int index) {
+			prefix = String.format("%s-%03d-", context, index);
+			ownFile = new File(dir, prefix + writerId + ".log");
+		}
+
+		synchronized Double get(int[] conf) {
+
+			Double energy = energies.get(conf);
+			if (energy == null && isRefreshDue()) {
+
+				// maybe another process computed it already
+				refresh();
+				energy = energies.get(conf);
+			}
+			return energy;
+		}
+
+		private boolean isRefreshDue() {
+			return lastRefreshNs == null
+				|| System.nanoTime() - lastRefreshNs >= RefreshIntervalMs*1000000L;
+		}
+
+		synchronized void put(int[] conf, double energy) {
+
+			if (energies.put(conf.clone(), energy) != null) {
+				// already cached, no need to write it again
+				return;
+			}
+
+			ByteBuffer buf = ByteBuffer.allocate(recordBytes);
+			for (int i=0; i<numPos; i++) {
+				buf.putInt(conf[i]);
+			}
+			buf.putDouble(energy);
+			buf.putInt(checksum(buf.array(), recordBytes - Integer.BYTES));
+			buf.flip();
+
+			try {
+				FileChannel channel = getOwnChannel();
+				while (buf.hasRemaining()) {
+					channel.write(buf);
+				}
+
+				// we don't need to read our own writes back in
+				offsets.put(ownFile.getName(), channel.size());
+
+			} catch (IOException ex) {
+				throw new UncheckedIOException("can't write to energy cache: " + ownFile, ex);
+			}
+		}
+
+		private FileChannel getOwnChannel()
+		throws IOException {
+
+			if (ownChannel == null) {
+
+				// open in append mode, so writes always land at the end of the file
+				// and lock it, so other caches know we're still writing to it
+				while (true) {
+					ownChannel = FileChannel.open(ownFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+					try {
+						ownChannel.lock();
+					} catch (OverlappingFileLockException ex) {
+						// another cache in this process is merging our old log right now, try again when it's gone
+						ownChannel.close();
+						Thread.yield();
+						continue;
+					}
+
+					// if we re-opened our log after a close, another cache could have merged it away before we got the lock
+					if (ownFile.exists()) {
+						break;
+					}
+					ownChannel.close();
+				}
+
+				// NOTE: we have the lock before writing the header,
+				// so a log with a header and no lock belongs to a writer that's gone away
+				if (ownChannel.size() == 0) {
+					ByteBuffer header = ByteBuffer.allocate(LogHeaderBytes);
+					header.putInt(LogMagic);
+					header.putInt(Version);
+					header.putInt(numPos);
+					header.flip();
+					while (header.hasRemaining()) {
+						ownChannel.write(header);
+					}
+				}
+			}
+			return ownChannel;
+		}
+
+		void close() {
+			if (ownChannel != null) {
+				try {
+					ownChannel.close();
+				} catch (IOException ex) {
+					throw new UncheckedIOException("can't close energy cache: " + ownFile, ex);
+				}
+				ownChannel = null;
+			}
+		}
+
+		File[] listLogs() {
+			return dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(".log"));
+		}
+
+		void refresh() {
+			lastRefreshNs = System.nanoTime();
+			File[] files = listLogs();
+			if (files == null) {
+				return;
+			}
+			for (File file : files) {
+				readNewRecords(file);
+			}
+		}
+
+		/**
+		 * Copies the entries in logs that no writer holds a lock on into our own log, then removes those logs
+		 */
+		void mergeAbandonedLogs() {
+
+			File[] files = listLogs();
+			if (files == null) {
+				return;
+			}
+
+			for (File file : files) {
+
+				if (file.equals(ownFile)) {
+					continue;
+				}
+
+				try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+					FileLock lock;
+					try {
+						lock = channel.tryLock();
+					} catch (OverlappingFileLockException ex) {
+						// another cache in this process is still writing to it
+						continue;
+					}
+					if (lock == null) {
+						// another process is still writing to it
+						continue;
+					}
+
+					// a log without a header might be brand new, and its writer just hasn't locked it yet
+					long size = channel.size();
+					if (size < LogHeaderBytes) {
+						continue;
+					}
+
+					// the writer is gone, so any incomplete record at the end will never be finished
+					FileChannel own = getOwnChannel();
+					if (readRecords(channel, 0, size, (record) -> {
+						try {
+							while (record.hasRemaining()) {
+								own.write(record);
+							}
+						} catch (IOException ex) {
+							throw new UncheckedIOException("can't write to energy cache: " + ownFile, ex);
+						}
+					}) < 0) {
+						// not a log we understand, leave it alone
+						continue;
+					}
+					offsets.put(ownFile.getName(), own.size());
+
+					// still holding the lock, so no other cache is merging it too
+					Files.delete(file.toPath());
+
+				} catch (NoSuchFileException ex) {
+					// another cache merged it first, that's fine
+				} catch (IOException ex) {
+					throw new UncheckedIOException("can't merge energy cache log: " + file, ex);
+				}
+			}
+		}
+
+		private void readNewRecords(File file) {
+
+			long offset = offsets.getOrDefault(file.getName(), 0L);
+			long size = file.length();
+			if (size <= offset || size < LogHeaderBytes) {
+				return;
+			}
+
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+				offset = readRecords(channel, offset, size, (record) -> {});
+				if (offset < 0) {
+					// not a log we understand, skip it from now on
+					offset = Long.MAX_VALUE;
+				}
+
+			} catch (NoSuchFileException ex) {
+				// file was removed out from under us (eg, merged into another log), that's fine
+				return;
+			} catch (IOException ex) {
+				throw new UncheckedIOException("can't read energy cache: " + file, ex);
+			}
+
+			offsets.put(file.getName(), offset);
+		}
+
+		/**
+		 * Loads the complete, valid records in the log from the offset up to the size,
+		 * and passes each one to the callback too, as a buffer positioned at the start of the record.
+		 * Returns the offset after the last record loaded, or -1 if the log header doesn't match this cache.
+		 */
+		private long readRecords(FileChannel channel, long offset, long size, Consumer<ByteBuffer> onRecord)
+		throws IOException {
+
+			if (offset == 0) {
+				ByteBuffer header = ByteBuffer.allocate(LogHeaderBytes);
+				readFully(channel, header, 0);
+				header.flip();
+				if (header.getInt() != LogMagic || header.getInt() != Version || header.getInt() != numPos) {
+					return -1;
+				}
+				offset = LogHeaderBytes;
+			}
+
+			// only read complete records
+			long numRecords = (size - offset)/recordBytes;
+			ByteBuffer buf = ByteBuffer.allocate(recordBytes);
+			for (long i=0; i<numRecords; i++) {
+				buf.clear();
+				readFully(channel, buf, offset);
+				buf.flip();
+
+				if (buf.getInt(recordBytes - Integer.BYTES) != checksum(buf.array(), recordBytes - Integer.BYTES)) {
+					// the writer might not have finished this record yet,
+					// so stop here and try it again on the next refresh
+					break;
+				}
+				offset += recordBytes;
+
+				int[] conf = new int[numPos];
+				for (int p=0; p<numPos; p++) {
+					conf[p] = buf.getInt();
+				}
+				energies.put(conf, buf.getDouble());
+
+				buf.rewind();
+				onRecord.accept(buf);
+			}
+
+			return offset;
+		}
+	}
+
+	private static int checksum(byte[] bytes, int len) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, len);
+		return (int)crc.getValue();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buf, long pos)
+	throws IOException {
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf, pos);
+			if (n < 0) {
+				throw new IOException("unexpected end of file");
+			}
+			pos += n;
+		}
+	}
+
+
+	/**
+	 * Describes everything that affects the energies computed by the conf energy calculator,
+	 * so the cache never returns energies computed with a different setup.
+	 */
+	public static String describe(ConfEnergyCalculator confEcalc) {
+
+		StringBuilder buf = new StringBuilder();
+		buf.append("osprey energy cache v").append(Version).append('\n');
+
+		// conf space
+		SimpleConfSpace confSpace = confEcalc.confSpace;
+		for (Strand strand : confSpace.strands) {
+			buf.append("strand");
+			for (Residue res : strand.mol.residues) {
+
+				// include the coords, since different input structures give different energies
+				long coordsHash = 1;
+				for (double x : res.coords) {
+					coordsHash = coordsHash*31 + Double.doubleToLongBits(x);
+				}
+				buf.append(String.format(" %s:%s:%016x", res.getPDBResNumber(), res.template == null ? res.fullName : res.template.name, coordsHash));
+			}
+			buf.append('\n');
+			buf.append("flex");
+			for (StrandFlex flex : confSpace.strandFlex.get(strand)) {
+				buf.append(' ').append(flex.getClass().getSimpleName());
+			}
+			buf.append('\n');
+		}
+		buf.append("shell ").append(confSpace.shellDist).append(' ').append(new TreeSet<>(confSpace.shellResNumbers)).append('\n');
+		for (SimpleConfSpace.Position pos : confSpace.positions) {
+			buf.append("pos ").append(pos.resNum);
+			for (SimpleConfSpace.ResidueConf rc : pos.resConfs) {
+				buf.append(' ').append(rc.index).append(':').append(rc.template.name).append(':').append(rc.getRotamerCode());
+				for (Map.Entry<String,double[]> entry : new TreeMap<>(rc.dofBounds).entrySet()) {
+					buf.append(':').append(entry.getKey()).append(Arrays.toString(entry.getValue()));
+				}
+			}
+			buf.append('\n');
+		}
+
+		// forcefield and energy calculator
+		EnergyCalculator ecalc = confEcalc.ecalc;
+		ForcefieldParams ffparams = ecalc.resPairCache.ffparams;
+		// NOTE: the interaction distance cutoff is the conf space's shell distance, described above
+		buf.append(String.format("ff %s vdw=%s solv=%s:%s dielec=%s distDep=%b hElect=%b hVDW=%b\n",
+			ffparams.forcefld, ffparams.vdwMultiplier, ffparams.solvationForcefield, ffparams.solvScale,
+			ffparams.dielectric, ffparams.distDepDielect, ffparams.hElect, ffparams.hVDW
+		));
+		buf.append(String.format("ecalc minimizing=%b infiniteWell=%s resolveClashes=%s\n",
+			ecalc.isMinimizing, ecalc.infiniteWellEnergy, ecalc.alwaysResolveClashesEnergy
+		));
+		if (ecalc.clashScreen != null) {
+			// only describe the screen when it's on, so caches from before it existed still match
+			buf.append(String.format("clashScreen overlap=%s\n", ecalc.clashScreen.overlap));
+		}
+
+		// energy modifications
+		buf.append("epart ").append(confEcalc.epart).append('\n');
+		buf.append("resEntropy ").append(confEcalc.addResEntropy).append('\n');
+		if (confEcalc.eref != null) {
+			buf.append("eref");
+			for (SimpleConfSpace.Position pos : confSpace.positions) {
+				for (SimpleConfSpace.ResidueConf rc : pos.resConfs) {
+					buf.append(' ').append(confEcalc.eref.getOffset(confSpace, pos.index, rc.index));
+				}
+			}
+			buf.append('\n');
+		}
+
+		return buf.toString();
+	}
+}
@@ -419,6 +419,11 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 		// wait for all the scores and energies to come in
 		ecalc.tasks.waitForFinish();
 
+		// report how the clash screen did, if needed
+		if (isReportingProgress && ecalc.getClashScreen() != null) {
+			System.out.println(ecalc.getClashScreen().makeReport());
+		}
+
 		// update the pfunc values from the state
 		values.qstar = state.getLowerBound();
 		values.qprime = new BigMath(PartitionFunction.decimalPrecision)
@@ -36,7 +36,6 @@ import edu.duke.cs.osprey.confspace.ConfDB;
 import edu.duke.cs.osprey.confspace.ConfSearch;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.externalMemory.ExternalMemory;
-import edu.duke.cs.osprey.parallelism.ThreadPoolTaskExecutor;
 import edu.duke.cs.osprey.tools.JvmMem;
 import edu.duke.cs.osprey.tools.MathTools;
 import edu.duke.cs.osprey.tools.Stopwatch;
@@ -190,7 +189,7 @@ public class SimplePartitionFunction implements PartitionFunction {
 
             // nope, need to do some more work
 
-            if (ecalc.tasks instanceof ThreadPoolTaskExecutor) {
+            if (ecalc.tasks.isAsync()) {
 
                 // while we're waiting on energy threads, refine q' a bit on the main thread
                 while (upperBound.delta > upperBoundEpsilon && ecalc.tasks.isBusy()) {
@@ -264,7 +263,7 @@ public class SimplePartitionFunction implements PartitionFunction {
         }
 
         // if we're still waiting on energy threads, refine q' a bit more on the main thread
-        if (ecalc.tasks instanceof ThreadPoolTaskExecutor) {
+        if (ecalc.tasks.isAsync()) {
             while (upperBound.delta > upperBoundEpsilon && ecalc.tasks.isWorking()) {
                 upperBound.run(scoreConfsBatchSize, upperBoundEpsilon);
             }
@@ -0,0 +1,136 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.lute;
+
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+
+
+/**
+ * Solves the least-squares problem min |Ax - b| using conjugate gradient on the normal equations (CGLS).
+ *
+ * Unlike running plain conjugate gradient on A^tA, A^tA is never formed (not even implicitly as an operator),
+ * which is numerically better behaved, and each iteration costs exactly one A*x and one A^t*x.
+ */
+public class CGLS {
+
+	public final SparseIncidenceMatrix A;
+	public final int maxIterations;
+
+	/** stop when |A^t(b - Ax)| <= tolerance*|A^tb|, the same criterion as conjugate gradient on the normal equations */
+	public final double tolerance;
+
+	private int numIterations = 0;
+
+	public CGLS(SparseIncidenceMatrix A, int maxIterations, double tolerance) {
+		this.A = A;
+		this.maxIterations = maxIterations;
+		this.tolerance = tolerance;
+	}
+
+	public int getNumIterations() {
+		return numIterations;
+	}
+
+	public double[] solve(double[] b, TaskExecutor tasks) {
+		return solve(b, null, tasks);
+	}
+
+	/**
+	 * @param x0 the initial guess for x, eg a solution to a similar system, or null to start at zero
+	 */
+	public double[] solve(double[] b, double[] x0, TaskExecutor tasks) {
+
+		double[] x;
+		double[] r = b.clone();
+		if (x0 == null) {
+			x = new double[A.numCols];
+		} else {
+			x = x0.clone();
+			double[] Ax = A.multA(x, tasks);
+			for (int i=0; i<r.length; i++) {
+				r[i] -= Ax[i];
+			}
+		}
+		double[] s = A.multAt(r, tasks);
+		double[] p = s.clone();
+		double gamma = dot(s, s);
+
+		// the stopping criterion is relative to A^tb, not the initial residual, so warm starts don't change the tolerance
+		double stopNorm = tolerance*Math.sqrt(x0 == null ? gamma : normSq(A.multAt(b, tasks)));
+
+		for (numIterations=0; numIterations<maxIterations; numIterations++) {
+
+			if (Math.sqrt(gamma) <= stopNorm) {
+				break;
+			}
+
+			double[] q = A.multA(p, tasks);
+			double qq = dot(q, q);
+			if (qq == 0.0) {
+				break;
+			}
+			double alpha = gamma/qq;
+
+			for (int i=0; i<x.length; i++) {
+				x[i] += alpha*p[i];
+			}
+			for (int i=0; i<r.length; i++) {
+				r[i] -= alpha*q[i];
+			}
+
+			s = A.multAt(r, tasks);
+			double nextGamma = dot(s, s);
+			double beta = nextGamma/gamma;
+			gamma = nextGamma;
+
+			for (int i=0; i<p.length; i++) {
+				p[i] = s[i] + beta*p[i];
+			}
+		}
+
+		return x;
+	}
+
+	private static double normSq(double[] a) {
+		return dot(a, a);
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0.0;
+		for (int i=0; i<a.length; i++) {
+			sum += a[i]*b[i];
+		}
+		return sum;
+	}
+}
@@ -39,10 +39,9 @@ import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.parallelism.ThreadPoolTaskExecutor;
 import edu.duke.cs.osprey.pruning.PruningMatrix;
+import edu.duke.cs.osprey.pruning.UnprunedTuples;
 import edu.duke.cs.osprey.tools.Progress;
 import edu.duke.cs.osprey.tools.Stopwatch;
-import org.apache.commons.math3.exception.DimensionMismatchException;
-import org.apache.commons.math3.linear.*;
 import smile.data.SparseDataset;
 import smile.math.matrix.Matrix;
 import smile.regression.LASSO;
@@ -50,6 +49,7 @@ import smile.regression.LASSO;
 import java.io.File;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -77,33 +77,11 @@ public class LUTE {
 			@Override
 			public double[] fit(LinearSystem system, LinearSystem.BInfo binfo, TaskExecutor tasks) {
 
-				// build the linear model: Ax=b
-				// except conjugate gradient needs square A, so transform to A^tAx = A^tb
-				RealLinearOperator AtA = new RealLinearOperator() {
-
-					@Override
-					public int getRowDimension() {
-						return system.tuples.size();
-					}
-
-					@Override
-					public int getColumnDimension() {
-						return system.tuples.size();
-					}
-
-					@Override
-					public RealVector operate(RealVector vx)
-							throws DimensionMismatchException {
-						double[] x = ((ArrayRealVector)vx).getDataRef();
-						double[] AtAx = system.parallelMultAt(system.parallelMultA(x, tasks), tasks);
-						return new ArrayRealVector(AtAx, false);
-					}
-				};
-
-				RealVector Atb = new ArrayRealVector(system.multAt(binfo.b), false);
-
-				ConjugateGradient cg = new ConjugateGradient(100000, 1e-6, false);
-				return ((ArrayRealVector)cg.solve(AtA, Atb)).getDataRef();
+				// solve the linear model Ax=b in the least-squares sense
+				// with conjugate gradient on the normal equations A^tAx = A^tb
+				// A^tA is never formed, so each iteration is just one A*x and one A^t*x on the sparse matrix
+				CGLS cgls = new CGLS(system.A, 100000, 1e-6);
+				return cgls.solve(binfo.b, binfo.x0, tasks);
 			}
 		},
 
@@ -126,7 +104,7 @@ public class LUTE {
 				SparseDataset data = new SparseDataset(system.tuples.size());
 				for (int c=0; c<system.confs.size(); c++) {
 					final int fc = c;
-					system.forEachTupleIn(c, (t) -> {
+					system.A.forEachColIn(c, (t) -> {
 						data.set(fc, t, 1.0);
 					});
 				}
@@ -139,6 +117,7 @@ public class LUTE {
 
 				// regress!
 				// NOTE: can't do parallelism here apparently, so `tasks` is ingored =(
+				// NOTE: can't warm-start either, so `binfo.x0` is ignored too
 				LASSO lasso = new LASSO(A, binfo.b, lambda, tolerance, maxIterations);
 				binfo.offset += lasso.intercept();
 				return lasso.coefficients();
@@ -160,6 +139,7 @@ public class LUTE {
 			double[] b = confEnergies.clone();
 			double offset = 0.0;
 			double scale = 1.0;
+			double[] x0 = null;
 		}
 
 
@@ -167,23 +147,39 @@ public class LUTE {
 		public final List<int[]> confs;
 		public final double[] confEnergies;
 
+		/** the conf-tuple incidence matrix, ie A[c][t] = 1 iff conf c contains tuple t */
+		public final SparseIncidenceMatrix A;
+
 		public double[] tupleEnergies;
 		public double tupleEnergyOffset;
 
 		public Errors errors = null;
 
 		public LinearSystem(TuplesIndex tuples, ConfSampler.Samples samples, Map<int[],Double> confEnergies) {
+			this(tuples, new ArrayList<>(samples.getAllConfs()), confEnergies, null);
+		}
 
-			this.tuples = tuples;
+		/**
+		 * @param prefix a system for the same tuples whose confs are the first confs in this system, or null.
+		 *               The rows for those confs are copied rather than looked up again.
+		 */
+		public LinearSystem(TuplesIndex tuples, List<int[]> confs, Map<int[],Double> confEnergies, LinearSystem prefix) {
 
-			// linearize the conformations
-			confs = new ArrayList<>(samples.getAllConfs());
+			this.tuples = tuples;
+			this.confs = confs;
 
 			// linearize the conf energies
 			this.confEnergies = new double[confs.size()];
 			for (int c=0; c<confs.size(); c++) {
 				this.confEnergies[c] = confEnergies.get(confs.get(c));
 			}
+
+			// find the tuples in each conf just once, rather than on every matrix multiply
+			A = new SparseIncidenceMatrix(
+				prefix == null ? null : prefix.A,
+				confs.size(), tuples.size(),
+				(c, callback) -> forEachTupleIn(c, (t) -> callback.accept(t))
+			);
 		}
 
 		private void forEachTupleIn(int c, Consumer<Integer> callback) {
@@ -193,6 +189,14 @@ public class LUTE {
 		}
 
 		public void fit(Fitter fitter, TaskExecutor tasks) {
+			fit(fitter, tasks, null);
+		}
+
+		/**
+		 * @param warmStart a previously-fit system whose tuple energies are the starting point for this fit, or null.
+		 *                  The tuples don't have to match exactly: tuples missing from the previous system start at zero.
+		 */
+		public void fit(Fitter fitter, TaskExecutor tasks, LinearSystem warmStart) {
 
 			// calculate b, and normalize if needed
 			BInfo binfo = new BInfo();
@@ -215,108 +219,19 @@ public class LUTE {
 				}
 			}
 
-			double[] x = fitter.fit(this, binfo, tasks);
-
-			calcTupleEnergies(x, binfo);
-		}
-
-		private double[] multA(double[] x) {
-			double[] out = new double[confs.size()];
-			for (int c=0; c<confs.size(); c++) {
-				final int fc = c;
-				forEachTupleIn(c, (t) -> {
-					out[fc] += x[t];
-				});
-			}
-			return out;
-		}
-
-		private double[] multAt(double[] x) {
-			double[] out = new double[tuples.size()];
-			for (int c=0; c<confs.size(); c++) {
-				double xc = x[c];
-				forEachTupleIn(c, (t) -> {
-					out[t] += xc;
-				});
-			}
-			return out;
-		}
-
-		private double[] parallelMultA(double[] x, TaskExecutor tasks) {
-
-			int numConfs = confs.size();
-			int numThreads = tasks.getParallelism();
-			int partitionSize = numConfs/numThreads;
-
-			double[] out = new double[numConfs];
-
-			// partition the confs equally among the threads
-			for (int i=0; i<numThreads; i++) {
-				int startC = i*partitionSize;
-				int stopC;
-				if (i == numThreads - 1) {
-					stopC = numConfs;
-				} else {
-					stopC = (i+1)*partitionSize;
+			if (warmStart != null && warmStart.tupleEnergies != null) {
+				binfo.x0 = new double[tuples.size()];
+				for (int t=0; t<tuples.size(); t++) {
+					Integer prevt = warmStart.tuples == tuples ? Integer.valueOf(t) : warmStart.tuples.getIndex(tuples.get(t));
+					if (prevt != null) {
+						binfo.x0[t] = warmStart.tupleEnergies[prevt]/binfo.scale;
+					}
 				}
-				tasks.submit(
-						() -> {
-							for (int c=startC; c<stopC; c++) {
-								final int fc = c;
-								forEachTupleIn(fc, (t) -> {
-									out[fc] += x[t];
-								});
-							}
-							return null;
-						},
-						(ignored) -> {}
-				);
 			}
-			tasks.waitForFinish();
-
-			return out;
-		}
-
-		private double[] parallelMultAt(double[] x, TaskExecutor tasks) {
-
-			int numConfs = confs.size();
-			int numThreads = tasks.getParallelism();
-			int partitionSize = numConfs/numThreads;
-
-			int numTuples = tuples.size();
-			double[] out = new double[numTuples];
 
-			// partition the confs equally among the threads
-			for (int i=0; i<numThreads; i++) {
-				int startC = i*partitionSize;
-				int stopC;
-				if (i == numThreads - 1) {
-					stopC = numConfs;
-				} else {
-					stopC = (i+1)*partitionSize;
-				}
-				tasks.submit(
-						() -> {
-							double[] threadOut = new double[numTuples];
-							for (int c=startC; c<stopC; c++) {
-								double xc = x[c];
-								forEachTupleIn(c, (t) -> {
-									threadOut[t] += xc;
-								});
-							}
-							return threadOut;
-						},
-						(threadOut) -> {
-							// aggregate thread results to the real out array
-							for (int t=0; t<numTuples; t++) {
-								out[t] += threadOut[t];
-							}
-						}
-				);
-			}
-			tasks.waitForFinish();
+			double[] x = fitter.fit(this, binfo, tasks);
 
-			return out;
+			calcTupleEnergies(x, binfo);
 		}
 
 		private void calcTupleEnergies(double[] x, BInfo binfo) {
@@ -336,7 +251,7 @@ public class LUTE {
 			this.tupleEnergyOffset = offset;
 
 			// calculate the residual
-			double[] residual = multA(tupleEnergies);
+			double[] residual = A.multA(tupleEnergies);
 			for (int c=0; c<confs.size(); c++) {
 				residual[c] = (residual[c] + tupleEnergyOffset - confEnergies[c]);
 			}
@@ -421,34 +336,28 @@ public class LUTE {
 
 		Set<RCTuple> pairs = new LinkedHashSet<>();
 
-		for (int pos1=0; pos1<pmat.getNumPos(); pos1++) {
-			for (int rc1=0; rc1<pmat.getNumConfAtPos(pos1); rc1++) {
-
-				// skip pruned singles
-				if (pmat.isSinglePruned(pos1, rc1)) {
-					continue;
-				}
+		// snapshot the pruning matrix into bitsets, so we can skip pruned pairs quickly
+		UnprunedTuples unpruned = new UnprunedTuples(pmat);
 
-				for (int pos2=0; pos2<pos1; pos2++) {
-					for (int rc2=0; rc2<pmat.getNumConfAtPos(pos2); rc2++) {
+		for (int pos1=0; pos1<unpruned.numPos; pos1++) {
+			final int fpos1 = pos1;
+			unpruned.forEachUnprunedSingleAt(pos1, (rc1) -> {
+				for (int pos2=0; pos2<fpos1; pos2++) {
+					final int fpos2 = pos2;
+					unpruned.forEachUnprunedPairAt(fpos1, rc1, pos2, (rc2) -> {
 
 						// skip pruned singles
-						if (pmat.isSinglePruned(pos2, rc2)) {
-							continue;
-						}
-
-						// skip pruned tuples
-						if (pmat.isPairPruned(pos1, rc1, pos2, rc2)) {
-							continue;
+						if (!unpruned.isSingleUnpruned(fpos2, rc2)) {
+							return;
 						}
 
 						// we found it! It's an unpruned pair!
 						// NOTE: make the tuple in pos2, pos1 order so the positions are already sorted
 						// (because pos2 < pos1 by definition)
-						pairs.add(new RCTuple(pos2, rc2, pos1, rc1));
-					}
+						pairs.add(new RCTuple(fpos2, rc2, fpos1, rc1));
+					});
 				}
-			}
+			});
 		}
 
 		return pairs;
@@ -710,81 +619,98 @@ public class LUTE {
 		log("all triples exhausted. Nothing more to try to improve the fit.");
 	}
 
+	/**
+	 * If greater than 0, stop sampling when neither the test set RMS error nor the overfitting score changes
+	 * by more than this fraction between rounds, even if the overfitting score is still too high.
+	 * Defaults to 0, which keeps sampling until the max overfitting score is reached.
+	 */
+	public double convergenceTolerance = 0.0;
+
 	public void fit(ConfEnergyCalculator confEcalc, ConfDB.ConfTable confTable, ConfSampler sampler, Fitter fitter, double maxOverfittingScore) {
 
 		TuplesIndex tuplesIndex = new TuplesIndex(confSpace, tuples);
 
 		ConfSampler.Samples trainingSet = new ConfSampler.Samples(tuplesIndex);
 		ConfSampler.Samples testSet = new ConfSampler.Samples(tuplesIndex);
-		energies = new Conf.Map<>();
-		double overfittingScore;
 
-		Stopwatch sw = new Stopwatch().start();
+		// if we fit before (eg, with fewer tuples), keep the samples, their energies, and the tuple energies
+		LinearSystem warmStart = trainingSystem;
+		if (energies == null) {
+			energies = new Conf.Map<>();
+		}
+		if (trainingSystem != null && testSystem != null) {
+			trainingSystem.confs.forEach(trainingSet::addConf);
+			testSystem.confs.forEach(testSet::addConf);
+		}
+		trainingSystem = null;
+		testSystem = null;
 
-		int numSamples = 0;
 		int samplesPerTuple = 1;
-		while (true) {
-
-			// sample the training and test sets
-			logf("\nsampling at least %d confs per tuple for %d tuples...", samplesPerTuple, tuples.size());
-			Stopwatch samplingSw = new Stopwatch().start();
-			sampler.sampleConfsForTuples(trainingSet, samplesPerTuple);
-			sampler.sampleConfsForTuples(testSet, samplesPerTuple);
-			log(" done in %s", samplingSw.stop().getTime(2));
-
-			// count all the samples
-			for (int[] conf : trainingSet.getAllConfs()) {
-				energies.put(conf, null);
-			}
-			for (int[] conf : testSet.getAllConfs()) {
-				energies.put(conf, null);
-			}
-
-			int numAdditionalSamples = energies.size() - numSamples;
-			numSamples = energies.size();
-
-			// calculate energies for all the samples
-			Progress progress = new Progress(numSamples);
-			log("calculating energies for %d more samples...", numAdditionalSamples);
-			for (Map.Entry<int[],Double> entry : energies.entrySet()) {
-				int[] conf = entry.getKey();
-				confEcalc.calcEnergyAsync(new RCTuple(conf), confTable, (energy) -> {
-					entry.setValue(energy);
-					progress.incrementProgress();
-				});
-			}
-			confEcalc.tasks.waitForFinish();
+		double overfittingScore;
+		double lastTestRMS = Double.NaN;
+		double lastOverfittingScore = Double.NaN;
 
-			// make sure we get a thread pool intended for the CPU rather than the GPU
-			try (ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor()) {
-				tasks.start(confEcalc.ecalc.parallelism.numThreads);
+		Stopwatch sw = new Stopwatch().start();
 
-				// fit the linear system to the training set
-				logf("fitting %d confs to %d tuples ...", numSamples, this.tuples.size());
+		// make sure we get a thread pool intended for the CPU rather than the GPU
+		try (ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor()) {
+			tasks.start(confEcalc.ecalc.parallelism.numThreads);
+
+			while (true) {
+
+				// sample the training set, and start calculating energies right away
+				logf("\nsampling at least %d confs per tuple for %d tuples...", samplesPerTuple, tuples.size());
+				Stopwatch samplingSw = new Stopwatch().start();
+				sampler.sampleConfsForTuples(trainingSet, samplesPerTuple);
+				CountDownLatch trainingEnergies = calcEnergiesAsync(confEcalc, confTable, trainingSet.getAllConfs());
+
+				// sample the test set while the training energies are being calculated
+				sampler.sampleConfsForTuples(testSet, samplesPerTuple);
+				calcEnergiesAsync(confEcalc, confTable, testSet.getAllConfs());
+				log(" done in %s", samplingSw.stop().getTime(2));
+
+				// fit the linear system to the training set as soon as the training energies are ready,
+				// while the test energies are still being calculated
+				try {
+					trainingEnergies.await();
+				} catch (InterruptedException ex) {
+					throw new Error(ex);
+				}
+				logf("fitting %d confs to %d tuples ...", trainingSet.size(), this.tuples.size());
 				Stopwatch trainingSw = new Stopwatch().start();
-				trainingSystem = new LinearSystem(tuplesIndex, trainingSet, energies);
-				trainingSystem.fit(fitter, tasks);
+				LinearSystem prevTrainingSystem = trainingSystem;
+				trainingSystem = makeSystem(tuplesIndex, trainingSet, prevTrainingSystem);
+				trainingSystem.fit(fitter, tasks, prevTrainingSystem != null ? prevTrainingSystem : warmStart);
 				logf(" done in %s", trainingSw.stop().getTime(2));
-			}
 
-			// analyze the test set errors
-			testSystem = new LinearSystem(tuplesIndex, testSet, energies);
-			testSystem.setTupleEnergies(trainingSystem.tupleEnergies, trainingSystem.tupleEnergyOffset);
+				// analyze the test set errors
+				confEcalc.tasks.waitForFinish();
+				testSystem = makeSystem(tuplesIndex, testSet, testSystem);
+				testSystem.setTupleEnergies(trainingSystem.tupleEnergies, trainingSystem.tupleEnergyOffset);
 
-			// measure overfitting by comparing ratio of rms errors
-			overfittingScore = calcOverfittingScore();
-			if (overfittingScore <= maxOverfittingScore) {
-				log("");
-				break;
-			}
+				// measure overfitting by comparing ratio of rms errors
+				overfittingScore = calcOverfittingScore();
+				if (overfittingScore <= maxOverfittingScore) {
+					log("");
+					break;
+				}
 
-			log("    RMS errors:  train %.4f    test %.4f    overfitting score: %.4f",
-					trainingSystem.errors.rms,
-					testSystem.errors.rms,
-					overfittingScore
-			);
+				log("    RMS errors:  train %.4f    test %.4f    overfitting score: %.4f",
+						trainingSystem.errors.rms,
+						testSystem.errors.rms,
+						overfittingScore
+				);
 
-			samplesPerTuple++;
+				// did more samples stop helping?
+				if (hasConverged(lastTestRMS, testSystem.errors.rms) && hasConverged(lastOverfittingScore, overfittingScore)) {
+					log("test set RMS error and overfitting score have converged, more samples won't help");
+					break;
+				}
+				lastTestRMS = testSystem.errors.rms;
+				lastOverfittingScore = overfittingScore;
+
+				samplesPerTuple++;
+			}
 		}
 
 		log("\nLUTE fitting finished in %s:\n", sw.stop().getTime(2));
@@ -811,10 +737,77 @@ public class LUTE {
 			log("               : %5.1f%% <= %s", 100.0*counts[i]/testSystem.confs.size(), Double.toString(bucketTops[i]));
 		}
 
-		log("total energy calculations: %d    overfitting score: %.4f <= %.4f", energies.size(), overfittingScore, maxOverfittingScore);
+		log("total energy calculations: %d    overfitting score: %.4f %s %.4f",
+				energies.size(), overfittingScore, overfittingScore <= maxOverfittingScore ? "<=" : ">", maxOverfittingScore
+		);
 		log("");
 	}
 
+	private boolean hasConverged(double last, double next) {
+		return convergenceTolerance > 0 && !Double.isNaN(last) && Math.abs(next - last) <= convergenceTolerance*Math.abs(last);
+	}
+
+	/**
+	 * Starts calculating energies for any confs we don't have energies for yet.
+	 * The returned latch is released when those energies are done.
+	 */
+	private CountDownLatch calcEnergiesAsync(ConfEnergyCalculator confEcalc, ConfDB.ConfTable confTable, Set<int[]> confs) {
+
+		// find the new confs
+		List<int[]> newConfs = new ArrayList<>();
+		synchronized (energies) {
+			for (int[] conf : confs) {
+				if (!energies.containsKey(conf)) {
+					energies.put(conf, null);
+					newConfs.add(conf);
+				}
+			}
+		}
+
+		CountDownLatch latch = new CountDownLatch(newConfs.size());
+		if (newConfs.isEmpty()) {
+			return latch;
+		}
+
+		log("calculating energies for %d more samples...", newConfs.size());
+		Progress progress = new Progress(newConfs.size());
+		for (int[] conf : newConfs) {
+			confEcalc.calcEnergyAsync(new RCTuple(conf), confTable, (energy) -> {
+				synchronized (energies) {
+					energies.put(conf, energy);
+				}
+				progress.incrementProgress();
+				latch.countDown();
+			});
+		}
+		return latch;
+	}
+
+	/**
+	 * Makes a linear system for the samples, re-using the rows of the previous system (if any) for the same tuples.
+	 */
+	private LinearSystem makeSystem(TuplesIndex tuplesIndex, ConfSampler.Samples samples, LinearSystem prev) {
+
+		// samples only ever grow, so put the new confs after the old ones
+		List<int[]> confs;
+		if (prev != null) {
+			confs = new ArrayList<>(prev.confs);
+			Set<int[]> prevConfs = new Conf.Set();
+			prevConfs.addAll(prev.confs);
+			for (int[] conf : samples.getAllConfs()) {
+				if (!prevConfs.contains(conf)) {
+					confs.add(conf);
+				}
+			}
+		} else {
+			confs = new ArrayList<>(samples.getAllConfs());
+		}
+
+		synchronized (energies) {
+			return new LinearSystem(tuplesIndex, confs, energies, prev);
+		}
+	}
+
 	public double calcOverfittingScore() {
 
 		double num = testSystem.errors.rms;
@@ -871,4 +864,11 @@ public class LUTE {
 	public void save(File file) {
 		LUTEIO.write(new LUTEState(trainingSystem), file);
 	}
+
+	/**
+	 * Saves the trained model in the binary {@link LUTEModel} layout, which can be memory-mapped with {@link LUTEModel#map(File)}
+	 */
+	public void saveModel(File file) {
+		LUTEModel.fromState(confSpace, new LUTEState(trainingSystem)).write(file);
+	}
 }
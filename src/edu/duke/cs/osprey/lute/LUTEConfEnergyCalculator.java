@@ -35,24 +35,34 @@ package edu.duke.cs.osprey.lute;
 import edu.duke.cs.osprey.confspace.ConfSearch;
 import edu.duke.cs.osprey.confspace.RCTuple;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
-import edu.duke.cs.osprey.confspace.TuplesIndex;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.EnergyCalculator;
 import edu.duke.cs.osprey.energy.ResidueInteractions;
 import edu.duke.cs.osprey.minimization.MoleculeObjectiveFunction;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 
+import java.io.File;
+
 
 public class LUTEConfEnergyCalculator extends ConfEnergyCalculator {
 
-	public final LUTEState state;
-	public final TuplesIndex tuples;
+	public final LUTEModel model;
 
 	public LUTEConfEnergyCalculator(SimpleConfSpace confSpace, LUTEState state) {
+		this(confSpace, LUTEModel.fromState(confSpace, state));
+	}
+
+	/**
+	 * Use a LUTE model directly, eg one from {@link LUTEModel#map(File)}
+	 */
+	public LUTEConfEnergyCalculator(SimpleConfSpace confSpace, LUTEModel model) {
 		super(confSpace, new TaskExecutor()); // TODO: parallelism?
 
-		this.state = state;
-		this.tuples = new TuplesIndex(confSpace, state.tuples);
+		if (!model.matches(confSpace)) {
+			throw new IllegalArgumentException("LUTE model doesn't match the conformation space");
+		}
+
+		this.model = model;
 	}
 
 	private static class NotSupportedByLUTEException extends RuntimeException {
@@ -97,49 +107,31 @@ public class LUTEConfEnergyCalculator extends ConfEnergyCalculator {
 	}
 
 	public double calcEnergy(int[] conf) {
-
 		numCalculations.incrementAndGet();
-
-		final boolean throwIfMissingSingle = false; // we're not fitting singles
-		final boolean throwIfMissingPair = true; // we always fit to dense pairs, confs shouldn't be using pruned pairs
-
-		// silly Java... If this were Kotlin, we wouldn't have to use an array to make the energy modifiable
-		// hopefully JVM escape analysis will stack-allocate this?
-		final double[] energy = new double[] { 0.0 };
-		tuples.forEachIn(conf, throwIfMissingSingle, throwIfMissingPair, (t) -> {
-			energy[0] += state.tupleEnergies[t];
-		});
-		return energy[0] + state.tupleEnergyOffset;
+		return model.calcEnergy(conf);
 	}
 
 	public boolean hasTuple(int pos, int rc) {
-		return tuples.getIndex(pos, rc) != null;
+		return model.hasTuple(pos, rc);
 	}
 
 	public boolean hasTuple(int pos1, int rc1, int pos2, int rc2) {
-		return tuples.getIndex(pos1, rc1, pos2, rc2) != null;
+		return model.hasTuple(pos1, rc1, pos2, rc2);
 	}
 
 	public boolean hasTuple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
-		return tuples.getIndex(pos1, rc1, pos2, rc2, pos3, rc3) != null;
+		return model.hasTuple(pos1, rc1, pos2, rc2, pos3, rc3);
 	}
 
 	public double getEnergy(int pos, int rc) {
-		return getEnergy(tuples.getIndex(pos, rc));
+		return model.getEnergy(pos, rc);
 	}
 
 	public double getEnergy(int pos1, int rc1, int pos2, int rc2) {
-		return getEnergy(tuples.getIndex(pos1, rc1, pos2, rc2));
+		return model.getEnergy(pos1, rc1, pos2, rc2);
 	}
 
 	public double getEnergy(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
-		return getEnergy(tuples.getIndex(pos1, rc1, pos2, rc2, pos3, rc3));
-	}
-
-	private double getEnergy(Integer index) {
-		if (index == null) {
-			return 0.0;
-		}
-		return state.tupleEnergies[index];
+		return model.getEnergy(pos1, rc1, pos2, rc2, pos3, rc3);
 	}
 }
@@ -0,0 +1,543 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.lute;
+
+import edu.duke.cs.osprey.confspace.Conf;
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.TuplesIndex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A trained LUTE model in a flat binary layout that can be used directly from a (possibly memory-mapped) buffer.
+ *
+ * Tuple energies are looked up with a few array reads instead of hashing {@link RCTuple} instances:
+ * singles and pairs are dense tables of slots into the energies array, and the triples for each pair
+ * are stored contiguously, sorted by the third (lowest) position and RC.
+ *
+ * Layout (big-endian, each section aligned to 8 bytes):
+ * <pre>
+ *   "LUTE", version byte (2), 3 padding bytes
+ *   int numPos, int numTuples, int numTriples, int padding
+ *   double energy offset
+ *   int[numPos]              numRCs
+ *   int[numSingleEntries]    single slots, -1 if no tuple
+ *   int[numPairEntries]      pair slots, -1 if no tuple
+ *   int[numPairEntries + 1]  start of each pair's triples
+ *   int[numTriples]          pos3 of each triple
+ *   int[numTriples]          rc3 of each triple
+ *   int[numTriples]          triple slots
+ *   double[numTuples]        tuple energies, by slot
+ * </pre>
+ * where pair entries are indexed by pos1 &gt; pos2.
+ *
+ * The sections are read through int-indexed buffers, so a model can be at most 2 GiB.
+ */
+public class LUTEModel {
+
+	public static final byte Version = 2;
+
+	private static final int HeaderSize = 32;
+
+	public final int numPos;
+	public final int numTuples;
+	public final int numTriples;
+	public final double offset;
+
+	private final ByteBuffer buf;
+
+	private final int[] numRCs;
+	private final int[] singleOffsets; // [pos]
+	private final int[][] pairOffsets; // [pos1][pos2], pos1 > pos2
+	private final IntBuffer singleSlots;
+	private final IntBuffer pairSlots;
+	private final IntBuffer tripleStarts;
+	private final IntBuffer triplePos3;
+	private final IntBuffer tripleRC3;
+	private final IntBuffer tripleSlots;
+	private final DoubleBuffer energies;
+
+	private LUTEModel(ByteBuffer buf) {
+
+		this.buf = buf;
+
+		// check the magic number and version
+		byte[] magic = new byte[4];
+		for (int i=0; i<magic.length; i++) {
+			magic[i] = buf.get(i);
+		}
+		if (!new String(magic, StandardCharsets.US_ASCII).equals("LUTE")) {
+			throw new IllegalArgumentException("not a LUTE model");
+		}
+		byte version = buf.get(4);
+		if (version != Version) {
+			throw new IllegalArgumentException("unrecognized LUTE model version: " + version);
+		}
+
+		numPos = buf.getInt(8);
+		numTuples = buf.getInt(12);
+		numTriples = buf.getInt(16);
+		offset = buf.getDouble(24);
+
+		int pos = HeaderSize;
+		IntBuffer numRCsBuf = intSection(pos, numPos);
+		numRCs = new int[numPos];
+		numRCsBuf.get(numRCs);
+		pos = align(pos + numPos*Integer.BYTES);
+
+		// make sure the tables fit before indexing them with ints
+		int size = calcSize(numPos, countSingleEntries(numRCs), countPairEntries(numRCs), numTriples, numTuples);
+		if (buf.capacity() < size) {
+			throw new IllegalArgumentException(String.format("LUTE model is truncated: expected %d bytes, but only have %d",
+				size, buf.capacity()
+			));
+		}
+
+		// the table offsets are implied by the numbers of RCs
+		singleOffsets = new int[numPos];
+		pairOffsets = new int[numPos][];
+		int numSingleEntries = 0;
+		int numPairEntries = 0;
+		for (int pos1=0; pos1<numPos; pos1++) {
+			singleOffsets[pos1] = numSingleEntries;
+			numSingleEntries += numRCs[pos1];
+			pairOffsets[pos1] = new int[pos1];
+			for (int pos2=0; pos2<pos1; pos2++) {
+				pairOffsets[pos1][pos2] = numPairEntries;
+				numPairEntries += numRCs[pos1]*numRCs[pos2];
+			}
+		}
+
+		singleSlots = intSection(pos, numSingleEntries);
+		pos = align(pos + numSingleEntries*Integer.BYTES);
+		pairSlots = intSection(pos, numPairEntries);
+		pos = align(pos + numPairEntries*Integer.BYTES);
+		tripleStarts = intSection(pos, numPairEntries + 1);
+		pos = align(pos + (numPairEntries + 1)*Integer.BYTES);
+		triplePos3 = intSection(pos, numTriples);
+		pos = align(pos + numTriples*Integer.BYTES);
+		tripleRC3 = intSection(pos, numTriples);
+		pos = align(pos + numTriples*Integer.BYTES);
+		tripleSlots = intSection(pos, numTriples);
+		pos = align(pos + numTriples*Integer.BYTES);
+
+		ByteBuffer energiesBuf = buf.duplicate();
+		energiesBuf.position(pos);
+		energiesBuf.limit(pos + numTuples*Double.BYTES);
+		energies = energiesBuf.slice().asDoubleBuffer();
+	}
+
+	private IntBuffer intSection(int pos, int size) {
+		ByteBuffer section = buf.duplicate();
+		section.position(pos);
+		section.limit(pos + size*Integer.BYTES);
+		return section.slice().asIntBuffer();
+	}
+
+	private static int align(int pos) {
+		return (pos + 7) & ~7;
+	}
+
+	private static long align(long pos) {
+		return (pos + 7) & ~7L;
+	}
+
+	private static long countSingleEntries(int[] numRCs) {
+		long num = 0;
+		for (int pos1=0; pos1<numRCs.length; pos1++) {
+			num += numRCs[pos1];
+		}
+		return num;
+	}
+
+	private static long countPairEntries(int[] numRCs) {
+		long num = 0;
+		for (int pos1=0; pos1<numRCs.length; pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				num += (long)numRCs[pos1]*numRCs[pos2];
+			}
+		}
+		return num;
+	}
+
+	/** returns the size of the layout in bytes, or throws if it's too big to index with ints */
+	private static int calcSize(int numPos, long numSingleEntries, long numPairEntries, long numTriples, long numTuples) {
+		long size = HeaderSize;
+		size = align(size + (long)numPos*Integer.BYTES);
+		size = align(size + numSingleEntries*Integer.BYTES);
+		size = align(size + numPairEntries*Integer.BYTES);
+		size = align(size + (numPairEntries + 1)*Integer.BYTES);
+		size = align(size + numTriples*Integer.BYTES);
+		size = align(size + numTriples*Integer.BYTES);
+		size = align(size + numTriples*Integer.BYTES);
+		size += numTuples*Double.BYTES;
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format(
+				"LUTE model is too big: needs %d bytes, but models can be at most %d bytes (%d singles, %d pairs, %d triples)",
+				size, Integer.MAX_VALUE, numSingleEntries, numPairEntries, numTriples
+			));
+		}
+		return (int)size;
+	}
+
+	/** lays out the LUTE state for the conf space */
+	public static LUTEModel fromState(SimpleConfSpace confSpace, LUTEState state) {
+
+		int numPos = confSpace.positions.size();
+		int[] numRCs = confSpace.getNumResConfsByPos();
+
+		// check the tuples, and make sure the layout fits before indexing anything with ints
+		int numTriples = 0;
+		for (RCTuple tuple : state.tuples) {
+			if (tuple.size() == 3) {
+				numTriples++;
+			} else if (tuple.size() > 3) {
+				throw new IllegalArgumentException("LUTE models only support up to triples, not " + tuple);
+			}
+		}
+		int size = calcSize(numPos, countSingleEntries(numRCs), countPairEntries(numRCs), numTriples, state.tuples.length);
+		int numPairEntries = (int)countPairEntries(numRCs);
+
+		// index the tuples
+		TuplesIndex tuples = new TuplesIndex(confSpace, state.tuples);
+
+		// group the triples by their top two positions, in index order
+		List<List<RCTuple>> triplesByPair = new ArrayList<>(numPairEntries);
+		for (int i=0; i<numPairEntries; i++) {
+			triplesByPair.add(null);
+		}
+		for (RCTuple tuple : state.tuples) {
+			if (tuple.size() == 3) {
+				RCTuple sorted = tuple.sorted();
+				int entry = pairEntry(numRCs, sorted.pos.get(2), sorted.RCs.get(2), sorted.pos.get(1), sorted.RCs.get(1));
+				List<RCTuple> triples = triplesByPair.get(entry);
+				if (triples == null) {
+					triples = new ArrayList<>();
+					triplesByPair.set(entry, triples);
+				}
+				triples.add(sorted);
+			}
+		}
+
+		// allocate the buffer
+		ByteBuffer buf = ByteBuffer.allocate(size);
+
+		// write the header
+		buf.put("LUTE".getBytes(StandardCharsets.US_ASCII));
+		buf.put(Version);
+		buf.putInt(8, numPos);
+		buf.putInt(12, state.tuples.length);
+		buf.putInt(16, numTriples);
+		buf.putDouble(24, state.tupleEnergyOffset);
+		for (int pos=0; pos<numPos; pos++) {
+			buf.putInt(HeaderSize + pos*Integer.BYTES, numRCs[pos]);
+		}
+
+		// fill in the tables
+		LUTEModel model = new LUTEModel(buf);
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+				model.singleSlots.put(model.singleOffsets[pos1] + rc1, slotOrNone(tuples.getIndex(pos1, rc1)));
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+						model.pairSlots.put(model.pairEntry(pos1, rc1, pos2, rc2), slotOrNone(tuples.getIndex(pos1, rc1, pos2, rc2)));
+					}
+				}
+			}
+		}
+		int t = 0;
+		for (int entry=0; entry<numPairEntries; entry++) {
+			model.tripleStarts.put(entry, t);
+			List<RCTuple> triples = triplesByPair.get(entry);
+			if (triples == null) {
+				continue;
+			}
+			triples.sort((a, b) -> {
+				int diff = Integer.compare(a.pos.get(0), b.pos.get(0));
+				return diff != 0 ? diff : Integer.compare(a.RCs.get(0), b.RCs.get(0));
+			});
+			for (RCTuple triple : triples) {
+				model.triplePos3.put(t, triple.pos.get(0));
+				model.tripleRC3.put(t, triple.RCs.get(0));
+				model.tripleSlots.put(t, tuples.getIndex(triple));
+				t++;
+			}
+		}
+		model.tripleStarts.put(numPairEntries, t);
+		for (int i=0; i<state.tupleEnergies.length; i++) {
+			model.energies.put(i, state.tupleEnergies[i]);
+		}
+
+		return model;
+	}
+
+	private static int slotOrNone(Integer slot) {
+		return slot == null ? -1 : slot;
+	}
+
+	private static int pairEntry(int[] numRCs, int pos1, int rc1, int pos2, int rc2) {
+		int entry = 0;
+		for (int p1=0; p1<pos1; p1++) {
+			for (int p2=0; p2<p1; p2++) {
+				entry += numRCs[p1]*numRCs[p2];
+			}
+		}
+		for (int p2=0; p2<pos2; p2++) {
+			entry += numRCs[pos1]*numRCs[p2];
+		}
+		return entry + rc1*numRCs[pos2] + rc2;
+	}
+
+	/** wraps a model in memory, eg from {@link #toBytes()} */
+	public static LUTEModel read(byte[] data) {
+		return new LUTEModel(ByteBuffer.wrap(data));
+	}
+
+	/** reads a model from a file without copying it onto the heap */
+	public static LUTEModel map(File file) {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			return new LUTEModel(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} catch (IOException ex) {
+			throw new RuntimeException("can't read LUTE model: " + file, ex);
+		}
+	}
+
+	public byte[] toBytes() {
+		ByteBuffer copy = buf.duplicate();
+		copy.clear();
+		byte[] data = new byte[copy.remaining()];
+		copy.get(data);
+		return data;
+	}
+
+	public void write(File file) {
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			ByteBuffer copy = buf.duplicate();
+			copy.clear();
+			FileChannel channel = out.getChannel();
+			while (copy.hasRemaining()) {
+				channel.write(copy);
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("can't write LUTE model: " + file, ex);
+		}
+	}
+
+	/** true if the model was made for a conf space with these numbers of RCs */
+	public boolean matches(SimpleConfSpace confSpace) {
+		if (confSpace.positions.size() != numPos) {
+			return false;
+		}
+		for (int pos=0; pos<numPos; pos++) {
+			if (confSpace.positions.get(pos).resConfs.size() != numRCs[pos]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** converts back to the tuple list form, with the tuples in their original order */
+	public LUTEState toState() {
+
+		LUTEState state = new LUTEState(numTuples);
+		state.tupleEnergyOffset = offset;
+		for (int i=0; i<numTuples; i++) {
+			state.tupleEnergies[i] = energies.get(i);
+		}
+
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+
+				int slot = singleSlots.get(singleOffsets[pos1] + rc1);
+				if (slot >= 0) {
+					state.tuples[slot] = new RCTuple(pos1, rc1);
+				}
+
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+						int entry = pairEntry(pos1, rc1, pos2, rc2);
+
+						slot = pairSlots.get(entry);
+						if (slot >= 0) {
+							state.tuples[slot] = new RCTuple(pos2, rc2, pos1, rc1);
+						}
+
+						for (int t=tripleStarts.get(entry); t<tripleStarts.get(entry + 1); t++) {
+							state.tuples[tripleSlots.get(t)] = new RCTuple(triplePos3.get(t), tripleRC3.get(t), pos2, rc2, pos1, rc1);
+						}
+					}
+				}
+			}
+		}
+
+		return state;
+	}
+
+	private int pairEntry(int pos1, int rc1, int pos2, int rc2) {
+		return pairOffsets[pos1][pos2] + rc1*numRCs[pos2] + rc2;
+	}
+
+	private int findTriple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+
+		// sort the positions, highest first
+		if (pos1 < pos2) {
+			int swap = pos1; pos1 = pos2; pos2 = swap;
+			swap = rc1; rc1 = rc2; rc2 = swap;
+		}
+		if (pos2 < pos3) {
+			int swap = pos2; pos2 = pos3; pos3 = swap;
+			swap = rc2; rc2 = rc3; rc3 = swap;
+		}
+		if (pos1 < pos2) {
+			int swap = pos1; pos1 = pos2; pos2 = swap;
+			swap = rc1; rc1 = rc2; rc2 = swap;
+		}
+
+		// binary search the triples for the pair
+		int entry = pairEntry(pos1, rc1, pos2, rc2);
+		int lo = tripleStarts.get(entry);
+		int hi = tripleStarts.get(entry + 1) - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int diff = Integer.compare(triplePos3.get(mid), pos3);
+			if (diff == 0) {
+				diff = Integer.compare(tripleRC3.get(mid), rc3);
+			}
+			if (diff < 0) {
+				lo = mid + 1;
+			} else if (diff > 0) {
+				hi = mid - 1;
+			} else {
+				return tripleSlots.get(mid);
+			}
+		}
+		return -1;
+	}
+
+	private int getPairSlot(int pos1, int rc1, int pos2, int rc2) {
+		if (pos1 > pos2) {
+			return pairSlots.get(pairEntry(pos1, rc1, pos2, rc2));
+		} else {
+			return pairSlots.get(pairEntry(pos2, rc2, pos1, rc1));
+		}
+	}
+
+	public boolean hasTuple(int pos, int rc) {
+		return singleSlots.get(singleOffsets[pos] + rc) >= 0;
+	}
+
+	public boolean hasTuple(int pos1, int rc1, int pos2, int rc2) {
+		return getPairSlot(pos1, rc1, pos2, rc2) >= 0;
+	}
+
+	public boolean hasTuple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		return findTriple(pos1, rc1, pos2, rc2, pos3, rc3) >= 0;
+	}
+
+	/** returns 0 for missing tuples */
+	public double getEnergy(int pos, int rc) {
+		return getEnergy(singleSlots.get(singleOffsets[pos] + rc));
+	}
+
+	public double getEnergy(int pos1, int rc1, int pos2, int rc2) {
+		return getEnergy(getPairSlot(pos1, rc1, pos2, rc2));
+	}
+
+	public double getEnergy(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		return getEnergy(findTriple(pos1, rc1, pos2, rc2, pos3, rc3));
+	}
+
+	private double getEnergy(int slot) {
+		if (slot < 0) {
+			return 0.0;
+		}
+		return energies.get(slot);
+	}
+
+	/**
+	 * Sums the energies of all the tuples in the conformation, like {@link TuplesIndex#forEachIn},
+	 * skipping missing singles, but throwing if a pair is missing.
+	 */
+	public double calcEnergy(int[] conf) {
+
+		double energy = 0.0;
+
+		for (int pos1=0; pos1<numPos; pos1++) {
+
+			int rc1 = conf[pos1];
+			if (rc1 == Conf.Unassigned) {
+				continue;
+			}
+
+			energy += getEnergy(singleSlots.get(singleOffsets[pos1] + rc1));
+
+			for (int pos2=0; pos2<pos1; pos2++) {
+
+				int rc2 = conf[pos2];
+				if (rc2 == Conf.Unassigned) {
+					continue;
+				}
+
+				int entry = pairEntry(pos1, rc1, pos2, rc2);
+				int slot = pairSlots.get(entry);
+				if (slot < 0) {
+					throw new TuplesIndex.NoSuchTupleException(new RCTuple(pos2, rc2, pos1, rc1));
+				}
+				energy += energies.get(slot);
+
+				// add any triples for this pair that are also in the conf
+				for (int t=tripleStarts.get(entry); t<tripleStarts.get(entry + 1); t++) {
+					if (conf[triplePos3.get(t)] == tripleRC3.get(t)) {
+						energy += energies.get(tripleSlots.get(t));
+					}
+				}
+			}
+		}
+
+		return energy + offset;
+	}
+}
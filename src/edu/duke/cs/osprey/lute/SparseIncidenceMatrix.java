@@ -0,0 +1,248 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.lute;
+
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+
+/**
+ * A sparse 0/1 matrix stored in both compressed row (CSR) and compressed column (CSC) forms,
+ * so both A*x and A^t*x can be partitioned among threads without any reductions:
+ * A*x splits the rows among the threads, A^t*x splits the columns.
+ *
+ * Each output element is always summed in the same order, so the results don't depend on the number of threads.
+ */
+public class SparseIncidenceMatrix {
+
+	public static interface RowVisitor {
+		void forEachColIn(int row, IntConsumer callback);
+	}
+
+	/** smaller partitions aren't worth the overhead of handing them to another thread */
+	public static final int MinNonZerosPerPartition = 1 << 16;
+
+	public final int numRows;
+	public final int numCols;
+
+	private final int[] rowStarts; // [numRows + 1]
+	private final int[] colIndices; // [nnz], sorted by row
+	private final int[] colStarts; // [numCols + 1]
+	private final int[] rowIndices; // [nnz], sorted by column
+
+	public SparseIncidenceMatrix(int numRows, int numCols, RowVisitor rows) {
+		this(null, numRows, numCols, rows);
+	}
+
+	/**
+	 * Makes a matrix whose first rows are copied from the prefix matrix, so only the new rows need to be visited.
+	 */
+	public SparseIncidenceMatrix(SparseIncidenceMatrix prefix, int numRows, int numCols, RowVisitor rows) {
+
+		if (prefix != null && (prefix.numCols != numCols || prefix.numRows > numRows)) {
+			throw new IllegalArgumentException(String.format("prefix matrix (%dx%d) doesn't fit in a %dx%d matrix",
+				prefix.numRows, prefix.numCols, numRows, numCols
+			));
+		}
+
+		this.numRows = numRows;
+		this.numCols = numCols;
+		int firstRow = prefix == null ? 0 : prefix.numRows;
+
+		// count the non-zeros in each new row
+		rowStarts = new int[numRows + 1];
+		int[] count = { 0 };
+		if (prefix != null) {
+			System.arraycopy(prefix.rowStarts, 0, rowStarts, 0, firstRow);
+			count[0] = prefix.rowStarts[firstRow];
+		}
+		for (int r=firstRow; r<numRows; r++) {
+			rowStarts[r] = count[0];
+			rows.forEachColIn(r, (c) -> count[0]++);
+		}
+		rowStarts[numRows] = count[0];
+
+		// fill the new rows
+		colIndices = new int[count[0]];
+		int[] i = { 0 };
+		if (prefix != null) {
+			System.arraycopy(prefix.colIndices, 0, colIndices, 0, prefix.colIndices.length);
+			i[0] = prefix.colIndices.length;
+		}
+		for (int r=firstRow; r<numRows; r++) {
+			rows.forEachColIn(r, (c) -> colIndices[i[0]++] = c);
+		}
+
+		// transpose to columns with a counting sort, which keeps the rows in order within each column
+		colStarts = new int[numCols + 1];
+		for (int c : colIndices) {
+			colStarts[c + 1]++;
+		}
+		for (int c=0; c<numCols; c++) {
+			colStarts[c + 1] += colStarts[c];
+		}
+		rowIndices = new int[colIndices.length];
+		int[] next = new int[numCols];
+		System.arraycopy(colStarts, 0, next, 0, numCols);
+		for (int r=0; r<numRows; r++) {
+			for (int j=rowStarts[r]; j<rowStarts[r + 1]; j++) {
+				rowIndices[next[colIndices[j]]++] = r;
+			}
+		}
+	}
+
+	public int getNumNonZeros() {
+		return colIndices.length;
+	}
+
+	public void forEachColIn(int row, IntConsumer callback) {
+		for (int j=rowStarts[row]; j<rowStarts[row + 1]; j++) {
+			callback.accept(colIndices[j]);
+		}
+	}
+
+	public double[] multA(double[] x) {
+		double[] out = new double[numRows];
+		multA(x, out, 0, numRows);
+		return out;
+	}
+
+	public double[] multAt(double[] x) {
+		double[] out = new double[numCols];
+		multAt(x, out, 0, numCols);
+		return out;
+	}
+
+	private void multA(double[] x, double[] out, int startRow, int stopRow) {
+		for (int r=startRow; r<stopRow; r++) {
+			double sum = 0.0;
+			for (int j=rowStarts[r]; j<rowStarts[r + 1]; j++) {
+				sum += x[colIndices[j]];
+			}
+			out[r] = sum;
+		}
+	}
+
+	private void multAt(double[] x, double[] out, int startCol, int stopCol) {
+		for (int c=startCol; c<stopCol; c++) {
+			double sum = 0.0;
+			for (int j=colStarts[c]; j<colStarts[c + 1]; j++) {
+				sum += x[rowIndices[j]];
+			}
+			out[c] = sum;
+		}
+	}
+
+	public double[] multA(double[] x, TaskExecutor tasks) {
+		double[] out = new double[numRows];
+		forEachPartition(rowStarts, numRows, tasks, (start, stop) -> multA(x, out, start, stop));
+		return out;
+	}
+
+	public double[] multAt(double[] x, TaskExecutor tasks) {
+		double[] out = new double[numCols];
+		forEachPartition(colStarts, numCols, tasks, (start, stop) -> multAt(x, out, start, stop));
+		return out;
+	}
+
+	private static interface RangeFunction {
+		void apply(int start, int stop);
+	}
+
+	/**
+	 * split the rows (or cols) into one contiguous range per thread, with about the same number of non-zeros in each
+	 */
+	private void forEachPartition(int[] starts, int num, TaskExecutor tasks, RangeFunction func) {
+
+		long nnz = starts[num];
+		int numPartitions = (int)Math.min(tasks.getParallelism(), nnz/MinNonZerosPerPartition);
+		if (numPartitions <= 1 || num <= 1) {
+			func.apply(0, num);
+			return;
+		}
+
+		// find the partition boundaries first, so we know how many tasks to wait for
+		int[] bounds = new int[numPartitions + 1];
+		int n = 0;
+		for (int p=0; p<numPartitions && bounds[n] < num; p++) {
+			int start = bounds[n];
+
+			// find the end of this partition
+			int stop;
+			if (p == numPartitions - 1) {
+				stop = num;
+			} else {
+				long targetNnz = nnz*(p + 1)/numPartitions;
+				stop = start + 1;
+				while (stop < num && starts[stop] < targetNnz) {
+					stop++;
+				}
+			}
+
+			bounds[++n] = stop;
+		}
+
+		// wait for just our partitions, since the caller might be using the tasks for other things too
+		CountDownLatch latch = new CountDownLatch(n);
+		AtomicReference<Throwable> failure = new AtomicReference<>(null);
+		for (int p=0; p<n; p++) {
+			int fstart = bounds[p];
+			int fstop = bounds[p + 1];
+			tasks.submit(
+				() -> {
+					try {
+						func.apply(fstart, fstop);
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						latch.countDown();
+					}
+					return null;
+				},
+				(ignored) -> {}
+			);
+		}
+		try {
+			latch.await();
+		} catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		}
+		if (failure.get() != null) {
+			throw new RuntimeException("can't process partition", failure.get());
+		}
+	}
+}
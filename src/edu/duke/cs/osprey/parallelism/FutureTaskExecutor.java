@@ -0,0 +1,216 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.parallelism;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A task executor for pipelines built from {@link CompletableFuture}s, rather than listener callbacks.
+ *
+ * CPU-bound tasks (eg minimizations) run on the bounded work-stealing pool, exactly like
+ * {@link WorkStealingTaskExecutor}. I/O-bound stages (eg ConfDB reads and writes, writing
+ * conformations to files) run on separate I/O threads via {@link #submitIO(Task)}, so they never
+ * tie up a CPU worker. I/O stages are free to block, eg waiting on a CPU task's future.
+ *
+ * On JVMs that support virtual threads (Java 21+), each I/O stage gets its own virtual thread.
+ * Otherwise, I/O stages fall back to a pool of daemon platform threads. Either way, at most
+ * {@link #maxIOTasks} I/O stages run at once; further calls to {@link #submitIO(Task)} block.
+ */
+public class FutureTaskExecutor extends WorkStealingTaskExecutor {
+
+	private static final Method newVirtualThreadPerTaskExecutor;
+
+	static {
+		Method method = null;
+		try {
+			method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException ex) {
+			// no virtual threads on this JVM
+		}
+		newVirtualThreadPerTaskExecutor = method;
+	}
+
+	public static boolean isVirtualThreadsSupported() {
+		return newVirtualThreadPerTaskExecutor != null;
+	}
+
+	/** max number of I/O stages running at once */
+	public int maxIOTasks = 256;
+
+	private ExecutorService ioThreads = null;
+	private Semaphore ioSlots = null;
+
+	private final AtomicLong numIOStarted = new AtomicLong(0);
+	private final AtomicLong numIOFinished = new AtomicLong(0);
+	private final Object ioFinishLock = new Object();
+	private final Executor trackedIOThreads = (runnable) -> {
+		numIOStarted.incrementAndGet();
+		ioThreads.execute(() -> {
+			try {
+				runnable.run();
+			} finally {
+				finishedIO();
+			}
+		});
+	};
+
+	@Override
+	public void start(int numThreads) {
+		super.start(numThreads);
+
+		ioSlots = new Semaphore(maxIOTasks);
+
+		if (isVirtualThreadsSupported()) {
+			try {
+				ioThreads = (ExecutorService)newVirtualThreadPerTaskExecutor.invoke(null);
+			} catch (ReflectiveOperationException ex) {
+				throw new Error("can't make virtual threads", ex);
+			}
+		} else {
+			AtomicInteger threadId = new AtomicInteger(0);
+			ioThreads = Executors.newCachedThreadPool((runnable) -> {
+				Thread thread = new Thread(runnable, "io-" + threadId.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	@Override
+	public void stop() {
+		super.stop();
+		if (ioThreads != null) {
+			ioThreads.shutdown();
+			ioThreads = null;
+		}
+	}
+
+	@Override
+	public void stopAndWait(int timeoutMs) {
+		super.stopAndWait(timeoutMs);
+		if (ioThreads != null) {
+			ioThreads.shutdown();
+			ioThreads = null;
+		}
+	}
+
+	/**
+	 * An executor for I/O stages, for use with eg {@link CompletableFuture#thenApplyAsync}.
+	 * Stages run this way are tracked by {@link #waitForFinish()}, but never block to wait for
+	 * a free I/O slot, since they're often scheduled from CPU worker threads.
+	 */
+	public Executor io() {
+		return trackedIOThreads;
+	}
+
+	public long getNumRunningIOTasks() {
+		return numIOStarted.get() - numIOFinished.get();
+	}
+
+	@Override
+	public boolean isWorking() {
+		return super.isWorking() || getNumRunningIOTasks() > 0;
+	}
+
+	/**
+	 * Runs an I/O-bound stage on an I/O thread.
+	 * Blocks if {@link #maxIOTasks} stages are already running.
+	 */
+	public <T> CompletableFuture<T> submitIO(Task<T> task) {
+
+		CompletableFuture<T> future = new CompletableFuture<>();
+
+		ioSlots.acquireUninterruptibly();
+		numIOStarted.incrementAndGet();
+
+		ioThreads.execute(() -> {
+			try {
+				future.complete(task.run());
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			} finally {
+				ioSlots.release();
+				finishedIO();
+			}
+		});
+
+		return future;
+	}
+
+	private void finishedIO() {
+		long numFinished = numIOFinished.incrementAndGet();
+		if (numFinished >= numIOStarted.get()) {
+			synchronized (ioFinishLock) {
+				ioFinishLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits for all CPU tasks and all I/O stages to finish,
+	 * including any tasks submitted by other tasks while waiting.
+	 */
+	@Override
+	public void waitForFinish() {
+
+		checkNotWorkerThread();
+
+		while (true) {
+
+			synchronized (ioFinishLock) {
+				while (numIOFinished.get() < numIOStarted.get()) {
+					try {
+						ioFinishLock.wait();
+					} catch (InterruptedException ex) {
+						throw new Error(ex);
+					}
+				}
+			}
+
+			super.waitForFinish();
+
+			if (!isWorking()) {
+				break;
+			}
+		}
+	}
+}
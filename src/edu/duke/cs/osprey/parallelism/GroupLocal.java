@@ -0,0 +1,108 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.parallelism;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+
+/**
+ * Like a {@link ThreadLocal}, but with one value per worker group of a {@link GroupedTaskExecutor}.
+ *
+ * Values are made lazily by the first thread in each group that asks for one,
+ * so their memory is allocated near that group's CPUs. Other threads asking at the same time
+ * wait for that value rather than making their own, so each group's value is only made once,
+ * even when it holds resources (eg native memory) that would leak if a losing copy were dropped.
+ * Values should be read-mostly and thread-safe, since all the threads in a group share them.
+ */
+public class GroupLocal<T> {
+
+	public final int numGroups;
+
+	private final Supplier<T> factory;
+	private final AtomicReferenceArray<T> values;
+	private final Object[] locks;
+
+	public GroupLocal(int numGroups, Supplier<T> factory) {
+		this.numGroups = Math.max(1, numGroups);
+		this.factory = factory;
+		this.values = new AtomicReferenceArray<>(this.numGroups);
+		this.locks = new Object[this.numGroups];
+		for (int i=0; i<this.numGroups; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Uses {@code first} as the value for group 0 (eg, the main thread's copy),
+	 * and makes replicas for the other groups as needed.
+	 */
+	public GroupLocal(int numGroups, T first, Supplier<T> factory) {
+		this(numGroups, factory);
+		values.set(0, first);
+	}
+
+	/** gets the value for the current thread's group */
+	public T get() {
+		return get(GroupedTaskExecutor.getCurrentGroup());
+	}
+
+	public T get(int group) {
+		group = group % numGroups;
+		T value = values.get(group);
+		if (value == null) {
+			synchronized (locks[group]) {
+
+				// another thread might have made it while we were waiting
+				value = values.get(group);
+				if (value == null) {
+					value = factory.get();
+					values.set(group, value);
+				}
+			}
+		}
+		return value;
+	}
+
+	/** calls the consumer on all the values that have been made so far */
+	public void forEach(Consumer<T> consumer) {
+		for (int i=0; i<numGroups; i++) {
+			T value = values.get(i);
+			if (value != null) {
+				consumer.accept(value);
+			}
+		}
+	}
+}
@@ -0,0 +1,444 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.parallelism;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * A task executor that partitions its worker threads into groups, eg one group per CPU socket.
+ *
+ * Each group has its own task queue. Tasks are routed to groups (round-robin by default, or explicitly
+ * with {@link #submit(int, Task, TaskListener)}), and workers only steal tasks from other groups
+ * when their own group has run out of work.
+ *
+ * Worker threads know their group (see {@link #getCurrentGroup()}), so read-mostly structures can be
+ * replicated per group with {@link GroupLocal}. Replicas are allocated by the group's own threads, so
+ * with the OS's usual first-touch memory placement, each group mostly reads memory from its own socket.
+ *
+ * NOTE: the JVM has no portable API for pinning threads to cores, so groups are a scheduling hint,
+ * not a hard affinity. Combine with eg `numactl --cpunodebind` per-process for hard guarantees.
+ *
+ * Listeners are called one-at-a-time (never concurrently), on whichever worker finishes a task.
+ */
+public class GroupedTaskExecutor extends TaskExecutor {
+
+	public static class GroupThread extends Thread {
+
+		public final int group;
+
+		private final GroupedTaskExecutor tasks;
+
+		private GroupThread(GroupedTaskExecutor tasks, int group, int index) {
+			super(String.format("group-%d-%d", group, index));
+			setDaemon(true);
+			this.tasks = tasks;
+			this.group = group;
+		}
+
+		@Override
+		public void run() {
+			tasks.work(this);
+		}
+	}
+
+	/**
+	 * Returns the group of the current thread,
+	 * or 0 if the current thread isn't a worker thread of a grouped executor.
+	 */
+	public static int getCurrentGroup() {
+		Thread thread = Thread.currentThread();
+		if (thread instanceof GroupThread) {
+			return ((GroupThread)thread).group;
+		}
+		return 0;
+	}
+
+	/**
+	 * Controls task queue size, see {@link ThreadPoolTaskExecutor#queueSize}.
+	 * Set this to 0 to cause the submitting thread to block until a worker thread is ready.
+	 */
+	public int queueSize = 0;
+
+	private int numThreads = 0;
+	private List<ConcurrentLinkedDeque<Runnable>> queues = null;
+	private GroupThread[] threads = null;
+	private Semaphore slots = null;
+	private volatile boolean isRunning = false;
+
+	private final AtomicInteger nextGroup = new AtomicInteger(0);
+	private final AtomicLong numQueued = new AtomicLong(0);
+	private final AtomicInteger numIdle = new AtomicInteger(0);
+	private final Object idleLock = new Object();
+
+	private final AtomicLong numTasksStarted = new AtomicLong(0);
+	private final AtomicLong numTasksFinished = new AtomicLong(0);
+	private final AtomicLong numTasksStolen = new AtomicLong(0);
+	private final AtomicReference<TaskException> exception = new AtomicReference<>(null);
+	private final Object finishLock = new Object();
+
+	private final ConcurrentLinkedQueue<Runnable> listenerQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean isDrainingListeners = new AtomicBoolean(false);
+
+	/**
+	 * Starts the worker threads, split as evenly as possible among the groups
+	 */
+	public void start(int numThreads, int numGroups) {
+
+		if (numGroups <= 0 || numGroups > numThreads) {
+			throw new IllegalArgumentException(String.format("need between 1 and %d groups, not %d", numThreads, numGroups));
+		}
+
+		this.numThreads = numThreads;
+		queues = new ArrayList<>(numGroups);
+		for (int i=0; i<numGroups; i++) {
+			queues.add(new ConcurrentLinkedDeque<>());
+		}
+		slots = new Semaphore(numThreads + Math.max(0, queueSize));
+
+		isRunning = true;
+		threads = new GroupThread[numThreads];
+		for (int i=0; i<numThreads; i++) {
+			int group = i*numGroups/numThreads;
+			threads[i] = new GroupThread(this, group, i);
+		}
+		for (GroupThread thread : threads) {
+			thread.start();
+		}
+	}
+
+	public void stop() {
+		if (threads != null) {
+			isRunning = false;
+			synchronized (idleLock) {
+				idleLock.notifyAll();
+			}
+			threads = null;
+		}
+	}
+
+	public void stopAndWait(int timeoutMs) {
+		GroupThread[] threads = this.threads;
+		stop();
+		if (threads != null) {
+			for (GroupThread thread : threads) {
+				try {
+					thread.join(timeoutMs);
+				} catch (InterruptedException ex) {
+					throw new Error(ex);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void clean() {
+		stop();
+	}
+
+	@Override
+	public int getParallelism() {
+		return numThreads;
+	}
+
+	public int getNumGroups() {
+		return queues.size();
+	}
+
+	@Override
+	public boolean isAsync() {
+		return true;
+	}
+
+	@Override
+	public boolean isBusy() {
+		return getNumRunningTasks() >= getParallelism();
+	}
+
+	@Override
+	public boolean isWorking() {
+		return getNumRunningTasks() > 0;
+	}
+
+	public long getNumRunningTasks() {
+		return numTasksStarted.get() - numTasksFinished.get();
+	}
+
+	/** how many tasks were run by a group other than the one they were submitted to */
+	public long getNumTasksStolen() {
+		return numTasksStolen.get();
+	}
+
+	@Override
+	public <T> void submit(Task<T> task, TaskListener<T> listener) {
+		submit(nextGroup(), task, listener);
+	}
+
+	/**
+	 * Submits the task to a specific group.
+	 * Other groups may still steal the task if they run out of work.
+	 */
+	public <T> void submit(int group, Task<T> task, TaskListener<T> listener) {
+
+		checkException();
+
+		// block until there's room for the task
+		slots.acquireUninterruptibly();
+		numTasksStarted.incrementAndGet();
+
+		queues.get(group).addLast(new GroupTask<>(task, listener));
+		queued();
+	}
+
+	/**
+	 * Futures are routed round-robin to the groups, like {@link #submit(Task, TaskListener)}.
+	 */
+	@Override
+	public <T> CompletableFuture<T> submitFuture(Task<T> task) {
+		return submitFuture(nextGroup(), task);
+	}
+
+	/**
+	 * Like {@link #submit(int, Task, TaskListener)}, but returns a future for the result instead of calling a listener.
+	 * Futures are completed directly on the worker thread, without waiting for any listeners.
+	 * Task failures complete the future exceptionally, rather than being reported by {@link #waitForFinish()}.
+	 */
+	public <T> CompletableFuture<T> submitFuture(int group, Task<T> task) {
+
+		checkException();
+
+		CompletableFuture<T> future = new CompletableFuture<>();
+
+		// block until there's room for the task
+		slots.acquireUninterruptibly();
+		numTasksStarted.incrementAndGet();
+
+		queues.get(group).addLast(() -> {
+			try {
+
+				T result;
+				try {
+					result = task.run();
+				} finally {
+					slots.release();
+				}
+				future.complete(result);
+
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			} finally {
+				finishedTask();
+			}
+		});
+		queued();
+
+		return future;
+	}
+
+	private int nextGroup() {
+		return Math.floorMod(nextGroup.getAndIncrement(), queues.size());
+	}
+
+	/**
+	 * Splits the batch into contiguous chunks, one per group,
+	 * so neighboring tasks (which tend to share data) run in the same group.
+	 */
+	@Override
+	public <T> void submitAll(List<? extends Task<T>> tasks, TaskListener<T> listener) {
+		int numGroups = queues.size();
+		for (int i=0; i<tasks.size(); i++) {
+			submit((int)((long)i*numGroups/tasks.size()), tasks.get(i), listener);
+		}
+	}
+
+	private class GroupTask<T> implements Runnable {
+
+		final Task<T> task;
+		final TaskListener<T> listener;
+
+		GroupTask(Task<T> task, TaskListener<T> listener) {
+			this.task = task;
+			this.listener = listener;
+		}
+
+		@Override
+		public void run() {
+
+			T result;
+			try {
+				result = task.run();
+			} catch (Throwable t) {
+				recordException(task, listener, t);
+				slots.release();
+				finishedTask();
+				return;
+			}
+
+			// the task is done, make room for the next one
+			slots.release();
+
+			listenerQueue.add(() -> {
+				try {
+					listener.onFinished(result);
+				} catch (Throwable t) {
+					recordException(task, listener, t);
+				}
+				finishedTask();
+			});
+			drainListeners();
+		}
+	}
+
+	private void queued() {
+
+		// NOTE: bump the queue count before checking for idle workers,
+		// workers do the reverse, so one of us always sees the other
+		numQueued.incrementAndGet();
+		if (numIdle.get() > 0) {
+			synchronized (idleLock) {
+				idleLock.notify();
+			}
+		}
+	}
+
+	private Runnable take(int group) {
+
+		// check our own group first, oldest tasks first
+		Runnable task = queues.get(group).pollFirst();
+		if (task != null) {
+			return task;
+		}
+
+		// then steal from the other groups, newest tasks first
+		for (int i=1; i<queues.size(); i++) {
+			task = queues.get((group + i) % queues.size()).pollLast();
+			if (task != null) {
+				numTasksStolen.incrementAndGet();
+				return task;
+			}
+		}
+
+		return null;
+	}
+
+	private void work(GroupThread thread) {
+		while (isRunning) {
+
+			Runnable task = take(thread.group);
+			if (task != null) {
+				numQueued.decrementAndGet();
+				task.run();
+				continue;
+			}
+
+			// no work anywhere, wait for more
+			synchronized (idleLock) {
+				numIdle.incrementAndGet();
+				try {
+					while (isRunning && numQueued.get() <= 0) {
+						idleLock.wait();
+					}
+				} catch (InterruptedException ex) {
+					break;
+				} finally {
+					numIdle.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	private void drainListeners() {
+		while (!listenerQueue.isEmpty() && isDrainingListeners.compareAndSet(false, true)) {
+			try {
+				Runnable listener;
+				while ((listener = listenerQueue.poll()) != null) {
+					listener.run();
+				}
+			} finally {
+				isDrainingListeners.set(false);
+			}
+		}
+	}
+
+	private void checkException() {
+		// NOTE: waitForFinish will throw the exception
+		if (exception.get() != null) {
+			waitForFinish();
+		}
+	}
+
+	@Override
+	public void waitForFinish() {
+
+		synchronized (finishLock) {
+			while (numTasksFinished.get() < numTasksStarted.get()) {
+				try {
+					finishLock.wait();
+				} catch (InterruptedException ex) {
+					throw new Error(ex);
+				}
+			}
+		}
+
+		// check for exceptions
+		TaskException t = exception.get();
+		if (t != null) {
+			throw t;
+		}
+	}
+
+	private void recordException(Task<?> task, TaskListener<?> listener, Throwable t) {
+
+		// record the exception, but don't overwrite any existing exceptions
+		exception.compareAndSet(null, new TaskException(task, listener, t));
+	}
+
+	private void finishedTask() {
+		long numFinished = numTasksFinished.incrementAndGet();
+		if (numFinished >= numTasksStarted.get()) {
+			synchronized (finishLock) {
+				finishLock.notifyAll();
+			}
+		}
+	}
+}
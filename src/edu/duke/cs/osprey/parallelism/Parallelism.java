@@ -16,6 +16,12 @@ public class Parallelism {
 		/** The number of simultaneous tasks that should be given to each GPU */
 		private int numStreamsPerGpu = 1;
 		
+		/** Which kind of thread pool to use for CPU tasks */
+		private ExecutorType executorType = ExecutorType.ThreadPool;
+		
+		/** The number of worker groups (eg CPU sockets) to split the CPU threads among. */
+		private int numGroups = 1;
+		
 		public Builder setNumCpus(int val) {
 			numCpus = val;
 			return this;
@@ -31,11 +37,38 @@ public class Parallelism {
 			return this;
 		}
 		
+		public Builder setExecutorType(ExecutorType val) {
+			executorType = val;
+			return this;
+		}
+		
+		public Builder setNumGroups(int val) {
+			numGroups = val;
+			return this;
+		}
+		
+		/** Use one worker group per CPU socket, see {@link GroupedTaskExecutor} */
+		public Builder setNumSockets(int val) {
+			return setNumGroups(val);
+		}
+		
 		public Parallelism build() {
-			return new Parallelism(numCpus, numGpus, numStreamsPerGpu);
+			return new Parallelism(numCpus, numGpus, numStreamsPerGpu, executorType, numGroups);
 		}
 	}
 	
+	public static enum ExecutorType {
+		
+		/** Classic thread pool with a dedicated listener thread, see {@link ThreadPoolTaskExecutor} */
+		ThreadPool,
+		
+		/** Lower-overhead work-stealing pool, see {@link WorkStealingTaskExecutor} */
+		WorkStealing,
+		
+		/** Work-stealing pool plus I/O threads (virtual threads when supported), see {@link FutureTaskExecutor} */
+		Futures
+	}
+	
 	public static enum Type {
 		
 		Cpu {
@@ -80,12 +113,25 @@ public class Parallelism {
 	public final int numGpus;
 	public final int numStreamsPerGpu;
 	
+	public final ExecutorType executorType;
+	public final int numGroups;
+	
 	public final Type type;
 	
 	public Parallelism(int numThreads, int numGpus, int numStreamsPerGpu) {
+		this(numThreads, numGpus, numStreamsPerGpu, ExecutorType.ThreadPool);
+	}
+	
+	public Parallelism(int numThreads, int numGpus, int numStreamsPerGpu, ExecutorType executorType) {
+		this(numThreads, numGpus, numStreamsPerGpu, executorType, 1);
+	}
+	
+	public Parallelism(int numThreads, int numGpus, int numStreamsPerGpu, ExecutorType executorType, int numGroups) {
 		this.numThreads = numThreads;
 		this.numGpus = numGpus;
 		this.numStreamsPerGpu = numStreamsPerGpu;
+		this.executorType = executorType;
+		this.numGroups = numGroups;
 		
 		// prefer gpus over threads
 		if (numGpus > 0) {
@@ -99,6 +145,15 @@ public class Parallelism {
 				numThreads, numGpus, numStreamsPerGpu
 			));
 		}
+		
+		if (numGroups <= 0 || (type == Type.Cpu && numGroups > numThreads)) {
+			throw new IllegalArgumentException(String.format("need between 1 and %d groups, not %d", numThreads, numGroups));
+		}
+	}
+	
+	/** true if CPU threads should be split into worker groups */
+	public boolean isGrouped() {
+		return type == Type.Cpu && numGroups > 1;
 	}
 	
 	/** get the maximum number of tasks to be be executed in parallel */
@@ -116,13 +171,43 @@ public class Parallelism {
 	 *                 false to only submit a task when a thread is ready (prevents extra tasks)
 	 */
 	public TaskExecutor makeTaskExecutor(Integer queueSize) {
-		if (getParallelism() > 1) {
-			ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor();
+		if (isGrouped()) {
+			GroupedTaskExecutor tasks = new GroupedTaskExecutor();
 			if (queueSize != null) {
 				tasks.queueSize = queueSize;
 			}
-			tasks.start(getParallelism());
+			tasks.start(numThreads, numGroups);
 			return tasks;
+		} else if (getParallelism() > 1) {
+			switch (executorType) {
+				
+				case Futures: {
+					FutureTaskExecutor tasks = new FutureTaskExecutor();
+					if (queueSize != null) {
+						tasks.queueSize = queueSize;
+					}
+					tasks.start(getParallelism());
+					return tasks;
+				}
+				
+				case WorkStealing: {
+					WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+					if (queueSize != null) {
+						tasks.queueSize = queueSize;
+					}
+					tasks.start(getParallelism());
+					return tasks;
+				}
+				
+				default: {
+					ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor();
+					if (queueSize != null) {
+						tasks.queueSize = queueSize;
+					}
+					tasks.start(getParallelism());
+					return tasks;
+				}
+			}
 		} else {
 			return new TaskExecutor();
 		}
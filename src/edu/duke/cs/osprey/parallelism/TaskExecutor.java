@@ -2,6 +2,9 @@ package edu.duke.cs.osprey.parallelism;
 
 import edu.duke.cs.osprey.tools.AutoCleanable;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public class TaskExecutor implements AutoCleanable {
 	
 	public static interface Task<T> {
@@ -24,10 +27,46 @@ public class TaskExecutor implements AutoCleanable {
 		return false;
 	}
 
+	/**
+	 * true if tasks run on other threads, so the calling thread is free to do
+	 * other work while {@link #isBusy()} or {@link #isWorking()}
+	 */
+	public boolean isAsync() {
+		return false;
+	}
+
 	public <T> void submit(Task<T> task, TaskListener<T> listener) {
 		T result = task.run();
 		listener.onFinished(result);
 	}
+
+	/**
+	 * Like {@link #submit(Task, TaskListener)}, but returns a future for the result instead of calling a listener.
+	 * By default, the future is completed the same way a listener would be called.
+	 * Task failures complete the future exceptionally, rather than being reported by {@link #waitForFinish()}.
+	 */
+	public <T> CompletableFuture<T> submitFuture(Task<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		submit(
+			() -> {
+				try {
+					return task.run();
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+					return null;
+				}
+			},
+			// NOTE: completing an already-failed future does nothing
+			(result) -> future.complete(result)
+		);
+		return future;
+	}
+
+	public <T> void submitAll(List<? extends Task<T>> tasks, TaskListener<T> listener) {
+		for (Task<T> task : tasks) {
+			submit(task, listener);
+		}
+	}
 	
 	public void waitForFinish() {
 		// nothing to do
@@ -157,6 +157,11 @@ public class ThreadPoolTaskExecutor extends TaskExecutor implements GarbageDetec
 		return threads.pool.getCorePoolSize();
 	}
 
+	@Override
+	public boolean isAsync() {
+		return true;
+	}
+
 	@Override
 	public boolean isBusy() {
 		return getNumRunningTasks() >= getParallelism();
@@ -0,0 +1,418 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+package edu.duke.cs.osprey.parallelism;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * A low-overhead task executor based on a work-stealing {@link ForkJoinPool}.
+ *
+ * Compared to {@link ThreadPoolTaskExecutor}, tasks don't get wrapped into extra listener tasks
+ * or handed off to a dedicated listener thread, submission blocks on a semaphore instead of
+ * polling a queue, and {@link #waitForFinish()} blocks on a proper completion latch.
+ *
+ * By default, listeners are still called one-at-a-time (never concurrently), like the listener
+ * thread of {@link ThreadPoolTaskExecutor}, but they're run on whichever worker thread finishes
+ * a task, so there's no hand-off to a single listener thread. If the listeners are thread-safe,
+ * use {@link ListenerMode#InThread} to run them on the worker threads concurrently instead.
+ *
+ * Either way, tasks and listeners run on the worker threads, so they can't call {@link #waitForFinish()}:
+ * they'd be waiting for themselves, so it throws instead of deadlocking. They can still submit more tasks though.
+ */
+public class WorkStealingTaskExecutor extends TaskExecutor {
+
+	public static enum ListenerMode {
+
+		/** Listeners are never called concurrently, so they don't need to be thread-safe */
+		Serialized,
+
+		/** Listeners are called on the worker thread right after the task, so they must be thread-safe */
+		InThread
+	}
+
+	/**
+	 * Controls task queue size, see {@link ThreadPoolTaskExecutor#queueSize}.
+	 * Set this to 0 to cause the submitting thread to block until a worker thread is ready.
+	 */
+	public int queueSize = 0;
+
+	public ListenerMode listenerMode = ListenerMode.Serialized;
+
+	private ForkJoinPool pool = null;
+	private Semaphore slots = null;
+
+	private final AtomicLong numTasksStarted = new AtomicLong(0);
+	private final AtomicLong numTasksFinished = new AtomicLong(0);
+	private final AtomicReference<TaskException> exception = new AtomicReference<>(null);
+	private final Object finishLock = new Object();
+
+	// for serialized listeners
+	private final ConcurrentLinkedQueue<Runnable> listenerQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean isDrainingListeners = new AtomicBoolean(false);
+
+	private static final AtomicInteger nextPoolId = new AtomicInteger(0);
+
+	public void start(int numThreads) {
+
+		int poolId = nextPoolId.getAndIncrement();
+		AtomicInteger threadId = new AtomicInteger(0);
+		pool = new ForkJoinPool(
+			numThreads,
+			(p) -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				thread.setDaemon(true);
+				thread.setName(String.format("ws-pool-%d-%d", poolId, threadId.getAndIncrement()));
+				return thread;
+			},
+			null,
+			true // FIFO order for tasks that are never joined
+		);
+
+		// one slot per thread, plus the queue
+		slots = new Semaphore(numThreads + Math.max(0, queueSize));
+	}
+
+	public void stop() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	public void stopAndWait(int timeoutMs) {
+		if (pool != null) {
+			pool.shutdown();
+			try {
+				pool.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				throw new Error(ex);
+			}
+			pool = null;
+		}
+	}
+
+	@Override
+	public void clean() {
+		stop();
+	}
+
+	@Override
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	@Override
+	public boolean isAsync() {
+		return true;
+	}
+
+	@Override
+	public boolean isBusy() {
+		return getNumRunningTasks() >= getParallelism();
+	}
+
+	@Override
+	public boolean isWorking() {
+		return getNumRunningTasks() > 0;
+	}
+
+	public long getNumRunningTasks() {
+		return numTasksStarted.get() - numTasksFinished.get();
+	}
+
+	private void checkException() {
+		TaskException t = exception.get();
+		if (t != null) {
+
+			// NOTE: waitForFinish will throw the exception
+			// but worker threads can't wait, so just throw it right away
+			if (isWorkerThread()) {
+				throw t;
+			}
+			waitForFinish();
+		}
+	}
+
+	/** true if the current thread is one of our workers, ie, running a task or a listener */
+	boolean isWorkerThread() {
+		Thread thread = Thread.currentThread();
+		return thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread)thread).getPool() == pool;
+	}
+
+	void checkNotWorkerThread() {
+		if (isWorkerThread()) {
+			// the calling task (or listener) can't finish until we stop waiting, so we'd wait forever
+			throw new IllegalStateException("can't wait for tasks to finish from inside a task or listener,"
+				+ " since they're still running. Wait from the thread that submitted the tasks instead.");
+		}
+	}
+
+	/** blocks until there's room for more tasks */
+	private void acquireSlots(int num) {
+
+		if (!isWorkerThread()) {
+			slots.acquireUninterruptibly(num);
+			return;
+		}
+
+		// a task or listener is submitting more tasks, so let the pool add a thread while this one is blocked,
+		// otherwise nothing might be left to run the tasks that would free up the slots
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+				boolean isAcquired = false;
+
+				@Override
+				public boolean block() {
+					slots.acquireUninterruptibly(num);
+					isAcquired = true;
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					if (!isAcquired) {
+						isAcquired = slots.tryAcquire(num);
+					}
+					return isAcquired;
+				}
+			});
+		} catch (InterruptedException ex) {
+			throw new Error(ex);
+		}
+	}
+
+	@Override
+	public <T> void submit(Task<T> task, TaskListener<T> listener) {
+
+		checkException();
+
+		// block until there's room for the task
+		acquireSlots(1);
+		numTasksStarted.incrementAndGet();
+
+		pool.execute(() -> runTask(task, listener));
+	}
+
+	/**
+	 * Futures are completed directly on the worker thread, without waiting for any listeners.
+	 * Task failures complete the future exceptionally, rather than being reported by {@link #waitForFinish()}.
+	 */
+	@Override
+	public <T> CompletableFuture<T> submitFuture(Task<T> task) {
+
+		checkException();
+
+		CompletableFuture<T> future = new CompletableFuture<>();
+
+		acquireSlots(1);
+		numTasksStarted.incrementAndGet();
+
+		pool.execute(() -> {
+			try {
+
+				T result;
+				try {
+					result = task.run();
+				} finally {
+					slots.release();
+				}
+				future.complete(result);
+
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			} finally {
+				finishedTask();
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Submits a batch of tasks at once. The batch is split recursively among the worker threads,
+	 * so the tasks land in the workers' own deques instead of going through the submission queue one-by-one.
+	 * Blocks until there's room in the queue for the whole batch
+	 * (or for as much of it as the queue can hold at once, for batches bigger than the queue).
+	 */
+	@Override
+	public <T> void submitAll(List<? extends Task<T>> tasks, TaskListener<T> listener) {
+
+		int maxChunkSize = getParallelism() + Math.max(0, queueSize);
+		for (int start=0; start<tasks.size(); start+=maxChunkSize) {
+
+			checkException();
+
+			int stop = Math.min(tasks.size(), start + maxChunkSize);
+			acquireSlots(stop - start);
+			numTasksStarted.addAndGet(stop - start);
+
+			pool.execute(new Batch<>(tasks, start, stop, listener));
+		}
+	}
+
+	private class Batch<T> extends RecursiveAction {
+
+		private static final long serialVersionUID = -2941478374530624870L;
+
+		final List<? extends Task<T>> tasks;
+		final int start;
+		final int stop;
+		final TaskListener<T> listener;
+
+		Batch(List<? extends Task<T>> tasks, int start, int stop, TaskListener<T> listener) {
+			this.tasks = tasks;
+			this.start = start;
+			this.stop = stop;
+			this.listener = listener;
+		}
+
+		@Override
+		protected void compute() {
+			if (stop - start <= 1) {
+				if (stop > start) {
+					runTask(tasks.get(start), listener);
+				}
+			} else {
+				int mid = (start + stop) >>> 1;
+				invokeAll(new Batch<>(tasks, start, mid, listener), new Batch<>(tasks, mid, stop, listener));
+			}
+		}
+	}
+
+	private <T> void runTask(Task<T> task, TaskListener<T> listener) {
+
+		T result;
+		try {
+			result = task.run();
+		} catch (Throwable t) {
+			recordException(task, listener, t);
+
+			// the task failed, but still report finish
+			slots.release();
+			finishedTask();
+			return;
+		}
+
+		// the task is done, make room for the next one
+		slots.release();
+
+		switch (listenerMode) {
+
+			case InThread:
+				runListener(task, listener, result);
+			break;
+
+			case Serialized:
+				listenerQueue.add(() -> runListener(task, listener, result));
+				drainListeners();
+			break;
+		}
+	}
+
+	private <T> void runListener(Task<T> task, TaskListener<T> listener, T result) {
+		try {
+			listener.onFinished(result);
+		} catch (Throwable t) {
+			recordException(task, listener, t);
+		}
+		finishedTask();
+	}
+
+	/**
+	 * Whichever thread gets the drain flag runs all the queued listeners, one-at-a-time.
+	 * Other threads just leave their listeners in the queue and go back to work.
+	 */
+	private void drainListeners() {
+		while (!listenerQueue.isEmpty() && isDrainingListeners.compareAndSet(false, true)) {
+			try {
+				Runnable listener;
+				while ((listener = listenerQueue.poll()) != null) {
+					listener.run();
+				}
+			} finally {
+				isDrainingListeners.set(false);
+			}
+			// loop in case another thread queued a listener after we stopped polling, but before we released the flag
+		}
+	}
+
+	@Override
+	public void waitForFinish() {
+
+		checkNotWorkerThread();
+
+		synchronized (finishLock) {
+			while (numTasksFinished.get() < numTasksStarted.get()) {
+				try {
+					finishLock.wait();
+				} catch (InterruptedException ex) {
+					throw new Error(ex);
+				}
+			}
+		}
+
+		// check for exceptions
+		TaskException t = exception.get();
+		if (t != null) {
+			throw t;
+		}
+	}
+
+	private void recordException(Task<?> task, TaskListener<?> listener, Throwable t) {
+
+		// record the exception, but don't overwrite any existing exceptions
+		exception.compareAndSet(null, new TaskException(task, listener, t));
+	}
+
+	private void finishedTask() {
+		long numFinished = numTasksFinished.incrementAndGet();
+		if (numFinished >= numTasksStarted.get()) {
+			synchronized (finishLock) {
+				finishLock.notifyAll();
+			}
+		}
+	}
+}
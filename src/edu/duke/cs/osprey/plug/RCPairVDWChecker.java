@@ -38,13 +38,16 @@ import edu.duke.cs.osprey.confspace.RCTuple;
 import edu.duke.cs.osprey.dof.DegreeOfFreedom;
 import edu.duke.cs.osprey.dof.ResidueTypeDOF;
 import static edu.duke.cs.osprey.plug.VoxelVDWDistExplorer.getVDWRadius;
+import static edu.duke.cs.osprey.plug.VoxelVDWDistExplorer.MaxVDWRadius;
 import edu.duke.cs.osprey.structure.Atom;
+import edu.duke.cs.osprey.structure.CellList;
 import edu.duke.cs.osprey.structure.Residue;
 import static edu.duke.cs.osprey.plug.VoxelVDWListChecker.DOFInterval;
 import edu.duke.cs.osprey.structure.AtomNeighbors;
 import edu.duke.cs.osprey.structure.ProbeAtomNeighbors;
 import edu.duke.cs.osprey.tools.VectorAlgebra;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -165,15 +168,29 @@ public class RCPairVDWChecker {
                 new ArrayList<>(),new ArrayList<>(),voxLinConstr);
         //for checking distances in candidate pairs
 
+        //index the shell (or res2) atoms, so each res1 atom only looks at residues close enough for a contact
+        CellList cells;
+        if(res2==null)
+            cells = new CellList(2*MaxVDWRadius+0.25+maxMotion, shellResidues);
+        else
+            cells = new CellList(2*MaxVDWRadius+0.25+maxMotion, Collections.singletonList(res2));
+
         for(Atom at1 : res1.atoms){
             double vdwRad1 = getVDWRadius(at1);
             //if at1 bb, calc at1 neighbors to make sure at2 not in them
+            double maxContactDist = vdwRad1+MaxVDWRadius+0.25+maxMotion;
 
             Iterable<Atom> atoms2;
-            if(res2==null)
-                atoms2 = new ISAtomsIterable(at1,res1,shellResidues);
-            else
+            if(res2==null){
+                ArrayList<Residue> nearbyShellResidues = new ArrayList<>(cells.getResiduesWithin(at1.getCoords(), maxContactDist));
+                atoms2 = new ISAtomsIterable(at1,res1,nearbyShellResidues);
+            }
+            else {
+                //no res2 atom can reach a contact with at1, so don't bother finding at1's bonded neighbors
+                if(cells.getResiduesWithin(at1.getCoords(), maxContactDist).isEmpty())
+                    continue;
                 atoms2 = new Res2AtomsIterable(at1,res1,res2);
+            }
 
             for(Atom at2 : atoms2){
                 double vdwRad2 = getVDWRadius(at2);
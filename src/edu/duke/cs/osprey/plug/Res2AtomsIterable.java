@@ -23,7 +23,7 @@ public class Res2AtomsIterable implements Iterable<Atom> {
     
     public Res2AtomsIterable(Atom at1, Residue res1, Residue res2){
         //iterator over atoms in res2 that are >3 bonds away from at1
-        neighbors = new ProbeAtomNeighbors(at1);//DEBUG!!  really only need this when at1, res2 close enough
+        neighbors = new ProbeAtomNeighbors(at1);//RCPairVDWChecker only makes these when at1, res2 close enough
         this.res1 = res1;
         this.res2 = res2;
     }
@@ -109,6 +109,8 @@ public class VoxelVDWDistExplorer {
         } );
     }
 
+    public static final double MaxVDWRadius = 1.8;//largest radius returned by getVDWRadius
+
     public static double getVDWRadius(Atom at){
         if(at.isHydrogen()){
             switch(at.bonds.get(0).elementNumber){
@@ -0,0 +1,830 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.pruning;
+
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.tools.Progress;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Dense, bit-parallel implementation of the Goldstein criteria in {@link SimpleDEE}.
+ *
+ * The energy matrix is copied into dense primitive blocks, one per position pair, and the pruning
+ * matrices are copied into bitsets, so the inner witness loops are just a min-reduction over the
+ * unpruned bits of a few words, with no boxing or callbacks.
+ *
+ * Prunes exactly the same tuples as the corresponding {@link SimpleDEE} methods (on a single thread).
+ * Candidates are only checked in parallel when they can't affect each other's witnesses: ie, when the
+ * competitors are a separate pruning matrix, candidates at the same position (or position pair, or triple)
+ * are independent. When pruning in-place (competitors == pmat), candidates are checked in order.
+ *
+ * Changes are written through to the pruning matrix, but changes made to the pruning matrix by anything
+ * else after this engine is created won't be seen.
+ */
+public class DenseDEE {
+
+	/** pruning state as bitsets, padding bits are always set, so they're never unpruned */
+	class Bits {
+
+		final long[][] singles; // [pos][word]
+		final long[][][] pairs; // [pos1][pos2][rc1*numWords[pos2] + word]
+
+		Bits(PruningMatrix pmat) {
+
+			singles = new long[numPos][];
+			pairs = new long[numPos][numPos][];
+
+			for (int pos1=0; pos1<numPos; pos1++) {
+				singles[pos1] = makePaddedWords(pos1);
+				for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+					if (pmat.getOneBody(pos1, rc1)) {
+						setBit(singles[pos1], 0, rc1);
+					}
+				}
+
+				for (int pos2=0; pos2<numPos; pos2++) {
+					if (pos2 == pos1) {
+						continue;
+					}
+					pairs[pos1][pos2] = new long[numRCs[pos1]*numWords[pos2]];
+					for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+						System.arraycopy(makePaddedWords(pos2), 0, pairs[pos1][pos2], rc1*numWords[pos2], numWords[pos2]);
+						for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+							if (pmat.getPairwise(pos1, rc1, pos2, rc2)) {
+								setBit(pairs[pos1][pos2], rc1*numWords[pos2], rc2);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		boolean isSinglePruned(int pos, int rc) {
+			return getBit(singles[pos], 0, rc);
+		}
+
+		boolean isPairBitSet(int pos1, int rc1, int pos2, int rc2) {
+			return getBit(pairs[pos1][pos2], rc1*numWords[pos2], rc2);
+		}
+
+		/** mirrors {@link PruningMatrix#pruneSingle(int, int)}, which also prunes all pairs containing the single */
+		void pruneSingle(int pos1, int rc1) {
+			setBit(singles[pos1], 0, rc1);
+			for (int pos2=0; pos2<numPos; pos2++) {
+				if (pos2 == pos1) {
+					continue;
+				}
+				for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+					prunePair(pos1, rc1, pos2, rc2);
+				}
+			}
+		}
+
+		void prunePair(int pos1, int rc1, int pos2, int rc2) {
+			setBit(pairs[pos1][pos2], rc1*numWords[pos2], rc2);
+			setBit(pairs[pos2][pos1], rc2*numWords[pos1], rc1);
+		}
+	}
+
+	public final SimpleConfSpace confSpace;
+	public final EnergyMatrix emat;
+	public final PruningMatrix pmat;
+	public final PruningMatrix competitors;
+
+	final int numPos;
+	final int[] numRCs;
+	final int[] numWords;
+
+	private final double[][] singleEnergies; // [pos][rc]
+	private final double[][][] pairEnergies; // [pos1][pos2][rc1*numRCs[pos2] + rc2]
+	private final int[][] types; // [pos][rc] -> template id
+
+	final Bits pmatBits;
+	final Bits competitorBits;
+
+	private long numCandidatesChecked = 0;
+
+	public DenseDEE(SimpleConfSpace confSpace, EnergyMatrix emat, PruningMatrix pmat) {
+		this(confSpace, emat, pmat, pmat);
+	}
+
+	public DenseDEE(SimpleConfSpace confSpace, EnergyMatrix emat, PruningMatrix pmat, PruningMatrix competitors) {
+
+		this.confSpace = confSpace;
+		this.emat = emat;
+		this.pmat = pmat;
+		this.competitors = competitors;
+
+		numPos = confSpace.positions.size();
+		numRCs = new int[numPos];
+		numWords = new int[numPos];
+		for (int pos=0; pos<numPos; pos++) {
+			numRCs[pos] = confSpace.positions.get(pos).resConfs.size();
+			numWords[pos] = (numRCs[pos] + 63) >>> 6;
+		}
+
+		// snapshot the energies and template types
+		singleEnergies = new double[numPos][];
+		pairEnergies = new double[numPos][numPos][];
+		types = new int[numPos][];
+		Map<String,Integer> typeIds = new HashMap<>();
+		for (int pos1=0; pos1<numPos; pos1++) {
+
+			types[pos1] = new int[numRCs[pos1]];
+			for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+				String type = confSpace.positions.get(pos1).resConfs.get(rc1).template.name;
+				types[pos1][rc1] = typeIds.computeIfAbsent(type, (key) -> typeIds.size());
+			}
+
+			singleEnergies[pos1] = new double[numRCs[pos1]];
+			for (int pos2=0; pos2<numPos; pos2++) {
+				if (pos2 != pos1) {
+					pairEnergies[pos1][pos2] = new double[numRCs[pos1]*numRCs[pos2]];
+				}
+			}
+		}
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+				readSingleEnergy(pos1, rc1);
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+						readPairEnergy(pos1, rc1, pos2, rc2);
+					}
+				}
+			}
+		}
+
+		// snapshot the pruning matrices
+		pmatBits = new Bits(pmat);
+		competitorBits = competitors == pmat ? pmatBits : new Bits(competitors);
+	}
+
+	void readSingleEnergy(int pos, int rc) {
+		singleEnergies[pos][rc] = emat.getOneBody(pos, rc);
+	}
+
+	/** pair energies are stored in both directions, so update both blocks */
+	void readPairEnergy(int pos1, int rc1, int pos2, int rc2) {
+		pairEnergies[pos1][pos2][rc1*numRCs[pos2] + rc2] = emat.getPairwise(pos1, rc1, pos2, rc2);
+		pairEnergies[pos2][pos1][rc2*numRCs[pos1] + rc1] = emat.getPairwise(pos2, rc2, pos1, rc1);
+	}
+
+	/** the total number of candidate tuples checked against the Goldstein criteria so far */
+	public long getNumCandidatesChecked() {
+		return numCandidatesChecked;
+	}
+
+	/** subclasses can skip candidates that don't need checking */
+	boolean shouldCheckSingle(int pos, int rc) {
+		return true;
+	}
+
+	boolean shouldCheckPair(int pos1, int rc1, int pos2, int rc2) {
+		return true;
+	}
+
+	boolean shouldCheckTriple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		return true;
+	}
+
+	boolean isInPlace() {
+		return competitorBits == pmatBits;
+	}
+
+	private long[] makePaddedWords(int pos) {
+		long[] words = new long[numWords[pos]];
+		int numUsed = numRCs[pos] & 63;
+		if (numUsed != 0) {
+			words[words.length - 1] = -1L << numUsed;
+		}
+		return words;
+	}
+
+	static boolean getBit(long[] words, int offset, int i) {
+		return (words[offset + (i >>> 6)] & (1L << i)) != 0;
+	}
+
+	static void setBit(long[] words, int offset, int i) {
+		words[offset + (i >>> 6)] |= 1L << i;
+	}
+
+	TaskExecutor makeTasks(Parallelism parallelism) {
+		// in-place pruning has to be sequential to match SimpleDEE exactly
+		if (isInPlace()) {
+			return new TaskExecutor();
+		}
+		return parallelism.makeTaskExecutor();
+	}
+
+	/**
+	 * Runs a batch of independent candidate checks, possibly in parallel
+	 */
+	private static interface Checker {
+		boolean canPrune(int index);
+	}
+
+	private boolean[] checkAll(TaskExecutor tasks, int numCandidates, Checker checker) {
+
+		boolean[] canPrune = new boolean[numCandidates];
+		int numChunks = Math.min(numCandidates, tasks.getParallelism()*4);
+		for (int c=0; c<numChunks; c++) {
+			int start = (int)((long)c*numCandidates/numChunks);
+			int stop = (int)((long)(c + 1)*numCandidates/numChunks);
+			tasks.submit(
+				() -> {
+					boolean[] chunk = new boolean[stop - start];
+					for (int i=start; i<stop; i++) {
+						chunk[i - start] = checker.canPrune(i);
+					}
+					return chunk;
+				},
+				(chunk) -> System.arraycopy(chunk, 0, canPrune, start, chunk.length)
+			);
+		}
+		tasks.waitForFinish();
+		return canPrune;
+	}
+
+	/** min over the unpruned witness RCs, see {@link SimpleDEE} for the energy diff */
+	private double minWitness1(int witnessPos, long[] prunedA, int offsetA, double[] candidateA, int candidateOffsetA, double[] competitorA, int competitorOffsetA) {
+
+		long[] prunedWitnesses = pmatBits.singles[witnessPos];
+		double minEnergyDiff = Double.POSITIVE_INFINITY;
+		for (int word=0; word<numWords[witnessPos]; word++) {
+			long unpruned = ~(prunedA[offsetA + word] | prunedWitnesses[word]);
+			while (unpruned != 0) {
+				int witnessRc = (word << 6) + Long.numberOfTrailingZeros(unpruned);
+				unpruned &= unpruned - 1;
+				double energyDiff = 0
+					+ candidateA[candidateOffsetA + witnessRc]
+					- competitorA[competitorOffsetA + witnessRc];
+				minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
+			}
+		}
+		return minEnergyDiff;
+	}
+
+	private double minWitness2(int witnessPos,
+		long[] prunedA, int offsetA, long[] prunedB, int offsetB,
+		double[] candidateA, int candidateOffsetA, double[] candidateB, int candidateOffsetB,
+		double[] competitorA, int competitorOffsetA, double[] competitorB, int competitorOffsetB
+	) {
+		long[] prunedWitnesses = pmatBits.singles[witnessPos];
+		double minEnergyDiff = Double.POSITIVE_INFINITY;
+		for (int word=0; word<numWords[witnessPos]; word++) {
+			long unpruned = ~(prunedA[offsetA + word] | prunedB[offsetB + word] | prunedWitnesses[word]);
+			while (unpruned != 0) {
+				int witnessRc = (word << 6) + Long.numberOfTrailingZeros(unpruned);
+				unpruned &= unpruned - 1;
+				double energyDiff = 0
+					+ candidateA[candidateOffsetA + witnessRc]
+					+ candidateB[candidateOffsetB + witnessRc]
+					- competitorA[competitorOffsetA + witnessRc]
+					- competitorB[competitorOffsetB + witnessRc];
+				minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
+			}
+		}
+		return minEnergyDiff;
+	}
+
+	private double minWitness3(int witnessPos,
+		long[] prunedA, int offsetA, long[] prunedB, int offsetB, long[] prunedC, int offsetC,
+		double[] candidateA, int candidateOffsetA, double[] candidateB, int candidateOffsetB, double[] candidateC, int candidateOffsetC,
+		double[] competitorA, int competitorOffsetA, double[] competitorB, int competitorOffsetB, double[] competitorC, int competitorOffsetC
+	) {
+		long[] prunedWitnesses = pmatBits.singles[witnessPos];
+		double minEnergyDiff = Double.POSITIVE_INFINITY;
+		for (int word=0; word<numWords[witnessPos]; word++) {
+			long unpruned = ~(prunedA[offsetA + word] | prunedB[offsetB + word] | prunedC[offsetC + word] | prunedWitnesses[word]);
+			while (unpruned != 0) {
+				int witnessRc = (word << 6) + Long.numberOfTrailingZeros(unpruned);
+				unpruned &= unpruned - 1;
+				double energyDiff = 0
+					+ candidateA[candidateOffsetA + witnessRc]
+					+ candidateB[candidateOffsetB + witnessRc]
+					+ candidateC[candidateOffsetC + witnessRc]
+					- competitorA[competitorOffsetA + witnessRc]
+					- competitorB[competitorOffsetB + witnessRc]
+					- competitorC[competitorOffsetC + witnessRc];
+				minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
+			}
+		}
+		return minEnergyDiff;
+	}
+
+
+	// SINGLES
+
+	public void pruneSinglesGoldstein(double energyDiffThreshold, boolean typeDependent) {
+		pruneSinglesGoldstein(energyDiffThreshold, typeDependent, Parallelism.makeCpu(1));
+	}
+
+	public void pruneSinglesGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
+		try (TaskExecutor tasks = makeTasks(parallelism)) {
+			for (int pos=0; pos<numPos; pos++) {
+				pruneSinglesGoldstein(pos, energyDiffThreshold, typeDependent, tasks);
+			}
+		}
+	}
+
+	void pruneSinglesGoldstein(int pos, double energyDiffThreshold, boolean typeDependent, TaskExecutor tasks) {
+
+		if (isInPlace()) {
+
+			// candidates compete against each other, so go in order
+			for (int rc=0; rc<numRCs[pos]; rc++) {
+				if (!pmatBits.isSinglePruned(pos, rc) && shouldCheckSingle(pos, rc)) {
+					numCandidatesChecked++;
+					if (canPruneSingle(pos, rc, energyDiffThreshold, typeDependent)) {
+						pruneSingle(pos, rc);
+					}
+				}
+			}
+
+		} else {
+
+			// witnesses are at other positions, so the candidates here are independent
+			int[] candidates = new int[numRCs[pos]];
+			int numCandidates = 0;
+			for (int rc=0; rc<numRCs[pos]; rc++) {
+				if (!pmatBits.isSinglePruned(pos, rc) && shouldCheckSingle(pos, rc)) {
+					candidates[numCandidates++] = rc;
+				}
+			}
+			numCandidatesChecked += numCandidates;
+			boolean[] canPrune = checkAll(tasks, numCandidates, (i) -> canPruneSingle(pos, candidates[i], energyDiffThreshold, typeDependent));
+			for (int i=0; i<numCandidates; i++) {
+				if (canPrune[i]) {
+					pruneSingle(pos, candidates[i]);
+				}
+			}
+		}
+	}
+
+	void pruneSingle(int pos, int rc) {
+		pmatBits.pruneSingle(pos, rc);
+		pmat.pruneSingle(pos, rc);
+	}
+
+	boolean canPruneSingle(int candidatePos, int candidateRc, double energyDiffThreshold, boolean typeDependent) {
+
+		long[] competitorSingles = competitorBits.singles[candidatePos];
+
+		for (int competitorRc=0; competitorRc<numRCs[candidatePos]; competitorRc++) {
+
+			// skip pruned competitors, and don't compete against self
+			if (getBit(competitorSingles, 0, competitorRc) || competitorRc == candidateRc) {
+				continue;
+			}
+
+			// skip unmatched types if needed
+			if (typeDependent && types[candidatePos][candidateRc] != types[candidatePos][competitorRc]) {
+				continue;
+			}
+
+			// start with singles energy diff
+			double energyDiffSum = 0
+				+ singleEnergies[candidatePos][candidateRc]
+				- singleEnergies[candidatePos][competitorRc];
+
+			// sum over witness positions
+			for (int witnessPos=0; witnessPos<numPos; witnessPos++) {
+
+				if (witnessPos == candidatePos) {
+					continue;
+				}
+
+				int numWitnessRCs = numRCs[witnessPos];
+				double[] energies = pairEnergies[candidatePos][witnessPos];
+				energyDiffSum += minWitness1(witnessPos,
+					pmatBits.pairs[candidatePos][witnessPos], candidateRc*numWords[witnessPos],
+					energies, candidateRc*numWitnessRCs,
+					energies, competitorRc*numWitnessRCs
+				);
+				if (energyDiffSum == Double.POSITIVE_INFINITY) {
+					break;
+				}
+			}
+
+			// found a suitable competitor?
+			if (energyDiffSum > energyDiffThreshold) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+
+	// PAIRS
+
+	public void prunePairsGoldstein(double energyDiffThreshold, boolean typeDependent) {
+		prunePairsGoldstein(energyDiffThreshold, typeDependent, Parallelism.makeCpu(1));
+	}
+
+	public void prunePairsGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
+
+		// this one can take quite a while, so track progress
+		long numPairs = 0;
+		for (int pos1=1; pos1<numPos; pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				numPairs += countUnprunedPairs(pos1, pos2);
+			}
+		}
+		Progress progress = new Progress(numPairs);
+
+		try (TaskExecutor tasks = makeTasks(parallelism)) {
+			for (int pos1=1; pos1<numPos; pos1++) {
+				for (int pos2=0; pos2<pos1; pos2++) {
+					progress.incrementProgress(prunePairsGoldstein(pos1, pos2, energyDiffThreshold, typeDependent, tasks));
+				}
+			}
+		}
+	}
+
+	private int countUnprunedPairs(int pos1, int pos2) {
+		int count = 0;
+		for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+			if (pmatBits.isSinglePruned(pos1, rc1)) {
+				continue;
+			}
+			for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+				if (!pmatBits.isPairBitSet(pos1, rc1, pos2, rc2)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/** returns the number of candidates checked */
+	int prunePairsGoldstein(int pos1, int pos2, double energyDiffThreshold, boolean typeDependent, TaskExecutor tasks) {
+
+		// collect the candidates, in the same order as PruningMatrix.forEachUnprunedPairAt()
+		int[] candidates = new int[numRCs[pos1]*numRCs[pos2]];
+		int numCandidates = 0;
+		for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+			if (pmatBits.isSinglePruned(pos1, rc1)) {
+				continue;
+			}
+			for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+				if (!pmatBits.isPairBitSet(pos1, rc1, pos2, rc2) && shouldCheckPair(pos1, rc1, pos2, rc2)) {
+					candidates[numCandidates++] = rc1*numRCs[pos2] + rc2;
+				}
+			}
+		}
+		numCandidatesChecked += numCandidates;
+
+		if (isInPlace()) {
+
+			// candidates compete against each other, so go in order
+			for (int i=0; i<numCandidates; i++) {
+				int rc1 = candidates[i]/numRCs[pos2];
+				int rc2 = candidates[i] % numRCs[pos2];
+				if (canPrunePair(pos1, rc1, pos2, rc2, energyDiffThreshold, typeDependent)) {
+					prunePair(pos1, rc1, pos2, rc2);
+				}
+			}
+
+		} else {
+
+			// witnesses are at other positions, so the candidates here are independent
+			boolean[] canPrune = checkAll(tasks, numCandidates, (i) -> canPrunePair(
+				pos1, candidates[i]/numRCs[pos2],
+				pos2, candidates[i] % numRCs[pos2],
+				energyDiffThreshold, typeDependent
+			));
+			for (int i=0; i<numCandidates; i++) {
+				if (canPrune[i]) {
+					prunePair(pos1, candidates[i]/numRCs[pos2], pos2, candidates[i] % numRCs[pos2]);
+				}
+			}
+		}
+
+		return numCandidates;
+	}
+
+	void prunePair(int pos1, int rc1, int pos2, int rc2) {
+		pmatBits.prunePair(pos1, rc1, pos2, rc2);
+		pmat.prunePair(pos1, rc1, pos2, rc2);
+	}
+
+	boolean canPrunePair(int candidatePos1, int candidateRc1, int candidatePos2, int candidateRc2, double energyDiffThreshold, boolean typeDependent) {
+
+		// if a candidate single is pruned, all its witnesses are pruned too
+		boolean isCandidateSinglePruned = pmatBits.isSinglePruned(candidatePos1, candidateRc1) || pmatBits.isSinglePruned(candidatePos2, candidateRc2);
+
+		double[] energies12 = pairEnergies[candidatePos1][candidatePos2];
+		int n2 = numRCs[candidatePos2];
+
+		for (int competitorRc1=0; competitorRc1<numRCs[candidatePos1]; competitorRc1++) {
+
+			if (competitorBits.isSinglePruned(candidatePos1, competitorRc1)) {
+				continue;
+			}
+
+			for (int competitorRc2=0; competitorRc2<n2; competitorRc2++) {
+
+				// skip pruned competitors
+				if (competitorBits.isPairBitSet(candidatePos1, competitorRc1, candidatePos2, competitorRc2)) {
+					continue;
+				}
+
+				// don't compete against self
+				if (competitorRc1 == candidateRc1 && competitorRc2 == candidateRc2) {
+					continue;
+				}
+
+				// skip unmatched types if needed
+				if (typeDependent) {
+					if (types[candidatePos1][candidateRc1] != types[candidatePos1][competitorRc1]
+						|| types[candidatePos2][candidateRc2] != types[candidatePos2][competitorRc2]) {
+						continue;
+					}
+				}
+
+				// start with fragment energy diff
+				double energyDiffSum = 0
+					+ singleEnergies[candidatePos1][candidateRc1]
+					+ singleEnergies[candidatePos2][candidateRc2]
+					+ energies12[candidateRc1*n2 + candidateRc2]
+					- singleEnergies[candidatePos1][competitorRc1]
+					- singleEnergies[candidatePos2][competitorRc2]
+					- energies12[competitorRc1*n2 + competitorRc2];
+
+				// sum over witness positions
+				for (int witnessPos=0; witnessPos<numPos; witnessPos++) {
+
+					if (witnessPos == candidatePos1 || witnessPos == candidatePos2) {
+						continue;
+					}
+
+					if (isCandidateSinglePruned) {
+						energyDiffSum += Double.POSITIVE_INFINITY;
+					} else {
+						int numWitnessRCs = numRCs[witnessPos];
+						int numWitnessWords = numWords[witnessPos];
+						double[] energies1 = pairEnergies[candidatePos1][witnessPos];
+						double[] energies2 = pairEnergies[candidatePos2][witnessPos];
+						energyDiffSum += minWitness2(witnessPos,
+							pmatBits.pairs[candidatePos1][witnessPos], candidateRc1*numWitnessWords,
+							pmatBits.pairs[candidatePos2][witnessPos], candidateRc2*numWitnessWords,
+							energies1, candidateRc1*numWitnessRCs,
+							energies2, candidateRc2*numWitnessRCs,
+							energies1, competitorRc1*numWitnessRCs,
+							energies2, competitorRc2*numWitnessRCs
+						);
+					}
+					if (energyDiffSum == Double.POSITIVE_INFINITY) {
+						break;
+					}
+				}
+
+				if (energyDiffSum > energyDiffThreshold) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+
+	// TRIPLES
+
+	/** pruned triples for one position triple, as a bitset over rc1*n2*n3 + rc2*n3 + rc3 */
+	private long[] snapshotTriples(PruningMatrix pm, Bits bits, int pos1, int pos2, int pos3) {
+
+		int n2 = numRCs[pos2];
+		int n3 = numRCs[pos3];
+		long[] words = new long[(numRCs[pos1]*n2*n3 + 63) >>> 6];
+
+		for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+
+			// only look up triples PruningMatrix.forEachUnprunedTripleAt() would
+			if (bits.isSinglePruned(pos1, rc1)) {
+				continue;
+			}
+			for (int rc2=0; rc2<n2; rc2++) {
+				if (bits.isPairBitSet(pos1, rc1, pos2, rc2)) {
+					continue;
+				}
+				for (int rc3=0; rc3<n3; rc3++) {
+					if (pm.getTuple(new RCTuple(pos3, rc3, pos2, rc2, pos1, rc1))) {
+						setBit(words, 0, (rc1*n2 + rc2)*n3 + rc3);
+					}
+				}
+			}
+		}
+
+		return words;
+	}
+
+	private boolean isTripleUnpruned(Bits bits, long[] triples, int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		return !bits.isSinglePruned(pos1, rc1)
+			&& !bits.isPairBitSet(pos1, rc1, pos2, rc2)
+			&& !getBit(triples, 0, (rc1*numRCs[pos2] + rc2)*numRCs[pos3] + rc3);
+	}
+
+	public void pruneTriplesGoldstein(double energyDiffThreshold, boolean typeDependent) {
+		pruneTriplesGoldstein(energyDiffThreshold, typeDependent, Parallelism.makeCpu(1));
+	}
+
+	public void pruneTriplesGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
+		try (TaskExecutor tasks = makeTasks(parallelism)) {
+			for (int pos1=2; pos1<numPos; pos1++) {
+				for (int pos2=1; pos2<pos1; pos2++) {
+					for (int pos3=0; pos3<pos2; pos3++) {
+						pruneTriplesGoldstein(pos1, pos2, pos3, energyDiffThreshold, typeDependent, tasks);
+					}
+				}
+			}
+		}
+	}
+
+	void pruneTriplesGoldstein(int pos1, int pos2, int pos3, double energyDiffThreshold, boolean typeDependent, TaskExecutor tasks) {
+
+		int n2 = numRCs[pos2];
+		int n3 = numRCs[pos3];
+
+		long[] triples = snapshotTriples(pmat, pmatBits, pos1, pos2, pos3);
+		long[] competitorTriples = isInPlace() ? triples : snapshotTriples(competitors, competitorBits, pos1, pos2, pos3);
+
+		// collect the candidates, in the same order as PruningMatrix.forEachUnprunedTripleAt()
+		int[] candidates = new int[numRCs[pos1]*n2*n3];
+		int numCandidates = 0;
+		for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+			for (int rc2=0; rc2<n2; rc2++) {
+				for (int rc3=0; rc3<n3; rc3++) {
+					if (isTripleUnpruned(pmatBits, triples, pos1, rc1, pos2, rc2, pos3, rc3) && shouldCheckTriple(pos1, rc1, pos2, rc2, pos3, rc3)) {
+						candidates[numCandidates++] = (rc1*n2 + rc2)*n3 + rc3;
+					}
+				}
+			}
+		}
+		numCandidatesChecked += numCandidates;
+
+		if (isInPlace()) {
+
+			// candidates compete against each other, so go in order
+			for (int i=0; i<numCandidates; i++) {
+				int index = candidates[i];
+				int rc1 = index/(n2*n3);
+				int rc2 = (index/n3) % n2;
+				int rc3 = index % n3;
+				if (canPruneTriple(pos1, rc1, pos2, rc2, pos3, rc3, competitorTriples, energyDiffThreshold, typeDependent)) {
+					setBit(triples, 0, index);
+					pruneTriple(pos1, rc1, pos2, rc2, pos3, rc3);
+				}
+			}
+
+		} else {
+
+			// triples never affect witnesses, so all the candidates are independent
+			boolean[] canPrune = checkAll(tasks, numCandidates, (i) -> {
+				int index = candidates[i];
+				return canPruneTriple(pos1, index/(n2*n3), pos2, (index/n3) % n2, pos3, index % n3, competitorTriples, energyDiffThreshold, typeDependent);
+			});
+			for (int i=0; i<numCandidates; i++) {
+				if (canPrune[i]) {
+					int index = candidates[i];
+					pruneTriple(pos1, index/(n2*n3), pos2, (index/n3) % n2, pos3, index % n3);
+				}
+			}
+		}
+	}
+
+	void pruneTriple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		pmat.pruneTriple(pos1, rc1, pos2, rc2, pos3, rc3);
+	}
+
+	private boolean canPruneTriple(int candidatePos1, int candidateRc1, int candidatePos2, int candidateRc2, int candidatePos3, int candidateRc3, long[] competitorTriples, double energyDiffThreshold, boolean typeDependent) {
+
+		boolean isCandidateSinglePruned = pmatBits.isSinglePruned(candidatePos1, candidateRc1)
+			|| pmatBits.isSinglePruned(candidatePos2, candidateRc2)
+			|| pmatBits.isSinglePruned(candidatePos3, candidateRc3);
+
+		int n2 = numRCs[candidatePos2];
+		int n3 = numRCs[candidatePos3];
+		double[] energies12 = pairEnergies[candidatePos1][candidatePos2];
+		double[] energies13 = pairEnergies[candidatePos1][candidatePos3];
+		double[] energies23 = pairEnergies[candidatePos2][candidatePos3];
+
+		for (int competitorRc1=0; competitorRc1<numRCs[candidatePos1]; competitorRc1++) {
+			for (int competitorRc2=0; competitorRc2<n2; competitorRc2++) {
+				for (int competitorRc3=0; competitorRc3<n3; competitorRc3++) {
+
+					// skip pruned competitors
+					if (!isTripleUnpruned(competitorBits, competitorTriples, candidatePos1, competitorRc1, candidatePos2, competitorRc2, candidatePos3, competitorRc3)) {
+						continue;
+					}
+
+					// don't compete against self
+					if (competitorRc1 == candidateRc1 && competitorRc2 == candidateRc2 && competitorRc3 == candidateRc3) {
+						continue;
+					}
+
+					// skip unmatched types if needed
+					if (typeDependent) {
+						if (types[candidatePos1][candidateRc1] != types[candidatePos1][competitorRc1]
+							|| types[candidatePos2][candidateRc2] != types[candidatePos2][competitorRc2]
+							|| types[candidatePos3][candidateRc3] != types[candidatePos3][competitorRc3]) {
+							continue;
+						}
+					}
+
+					// start with fragment energy diff
+					double energyDiffSum = 0
+						+ singleEnergies[candidatePos1][candidateRc1]
+						+ singleEnergies[candidatePos2][candidateRc2]
+						+ singleEnergies[candidatePos3][candidateRc3]
+						+ energies12[candidateRc1*n2 + candidateRc2]
+						+ energies13[candidateRc1*n3 + candidateRc3]
+						+ energies23[candidateRc2*n3 + candidateRc3]
+						- singleEnergies[candidatePos1][competitorRc1]
+						- singleEnergies[candidatePos2][competitorRc2]
+						- singleEnergies[candidatePos3][competitorRc3]
+						- energies12[competitorRc1*n2 + competitorRc2]
+						- energies13[competitorRc1*n3 + competitorRc3]
+						- energies23[competitorRc2*n3 + competitorRc3];
+
+					// sum over witness positions
+					for (int witnessPos=0; witnessPos<numPos; witnessPos++) {
+
+						if (witnessPos == candidatePos1 || witnessPos == candidatePos2 || witnessPos == candidatePos3) {
+							continue;
+						}
+
+						if (isCandidateSinglePruned) {
+							energyDiffSum += Double.POSITIVE_INFINITY;
+						} else {
+							int numWitnessRCs = numRCs[witnessPos];
+							int numWitnessWords = numWords[witnessPos];
+							double[] energies1 = pairEnergies[candidatePos1][witnessPos];
+							double[] energies2 = pairEnergies[candidatePos2][witnessPos];
+							double[] energies3 = pairEnergies[candidatePos3][witnessPos];
+							energyDiffSum += minWitness3(witnessPos,
+								pmatBits.pairs[candidatePos1][witnessPos], candidateRc1*numWitnessWords,
+								pmatBits.pairs[candidatePos2][witnessPos], candidateRc2*numWitnessWords,
+								pmatBits.pairs[candidatePos3][witnessPos], candidateRc3*numWitnessWords,
+								energies1, candidateRc1*numWitnessRCs,
+								energies2, candidateRc2*numWitnessRCs,
+								energies3, candidateRc3*numWitnessRCs,
+								energies1, competitorRc1*numWitnessRCs,
+								energies2, competitorRc2*numWitnessRCs,
+								energies3, competitorRc3*numWitnessRCs
+							);
+						}
+						if (energyDiffSum == Double.POSITIVE_INFINITY) {
+							break;
+						}
+					}
+
+					if (energyDiffSum > energyDiffThreshold) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.pruning;
+
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+
+
+/**
+ * Iterative Goldstein DEE that only re-checks the candidates whose criteria could have changed.
+ *
+ * Each residue conformation (pos,rc) is a node in a worklist. A candidate tuple is only re-checked
+ * when one of its nodes is dirty. Nodes get dirty when:
+ *   - a witness of the node gets pruned (ie, a single at another position, or a pair containing the node),
+ *   - energies involving the node's position change (see {@link #onEnergyChanged(RCTuple)}).
+ *
+ * With a fixed set of competitors, pruning is monotone: removing witnesses can only raise the energy
+ * differences, so a candidate that failed the criteria and whose inputs didn't change will fail again.
+ * That means a round only costs as much as the set of changes since the last round, and iterating until
+ * the worklist is empty prunes exactly the same tuples as iterating the full {@link DenseDEE} passes until
+ * nothing more gets pruned.
+ *
+ * Pruned tuples are never un-pruned, so energy updates should only ever tighten the bounds.
+ */
+public class IncrementalDEE extends DenseDEE {
+
+	private long[][] dirty; // [pos][word], nodes to re-check in the next round
+	private long[][] nextDirty = null; // [pos][word], nodes dirtied during the current round
+
+	private int numPruned = 0;
+
+	public IncrementalDEE(SimpleConfSpace confSpace, EnergyMatrix emat, PruningMatrix pmat, PruningMatrix competitors) {
+		super(confSpace, emat, pmat, competitors);
+
+		// in-place pruning isn't monotone, since pruning a candidate also removes a competitor
+		if (isInPlace()) {
+			throw new IllegalArgumentException("incremental DEE needs a separate competitors pruning matrix");
+		}
+
+		dirty = makeDirtyWords();
+		markAllDirty();
+	}
+
+	private long[][] makeDirtyWords() {
+		long[][] words = new long[numPos][];
+		for (int pos=0; pos<numPos; pos++) {
+			words[pos] = new long[numWords[pos]];
+		}
+		return words;
+	}
+
+	/** makes the next round re-check every candidate */
+	public void markAllDirty() {
+		for (int pos=0; pos<numPos; pos++) {
+			for (int rc=0; rc<numRCs[pos]; rc++) {
+				markDirty(pos, rc);
+			}
+		}
+	}
+
+	public void markDirty(int pos, int rc) {
+		setBit(dirty[pos], 0, rc);
+		if (nextDirty != null) {
+			setBit(nextDirty[pos], 0, rc);
+		}
+	}
+
+	private void markDirty(int pos) {
+		for (int rc=0; rc<numRCs[pos]; rc++) {
+			markDirty(pos, rc);
+		}
+	}
+
+	public boolean isDirty(int pos, int rc) {
+		return getBit(dirty[pos], 0, rc);
+	}
+
+	private boolean isDirty(int pos) {
+		for (long word : dirty[pos]) {
+			if (word != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** true if the next round has anything to check */
+	public boolean hasWork() {
+		for (int pos=0; pos<numPos; pos++) {
+			if (isDirty(pos)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Call after changing an energy in the energy matrix, so the affected candidates get re-checked.
+	 *
+	 * A changed energy appears in the criteria of every candidate at its positions (as either candidate
+	 * or competitor energy), but nowhere else. Higher-order energies aren't used by the Goldstein criteria,
+	 * so they don't cause any work.
+	 */
+	public void onEnergyChanged(RCTuple tuple) {
+		switch (tuple.size()) {
+
+			case 1:
+				readSingleEnergy(tuple.pos.get(0), tuple.RCs.get(0));
+				markDirty(tuple.pos.get(0));
+			break;
+
+			case 2:
+				readPairEnergy(tuple.pos.get(0), tuple.RCs.get(0), tuple.pos.get(1), tuple.RCs.get(1));
+				markDirty(tuple.pos.get(0));
+				markDirty(tuple.pos.get(1));
+			break;
+		}
+	}
+
+	/**
+	 * Runs one round of the Goldstein criteria over the dirty candidates.
+	 * Pass null for a threshold to skip that tuple size.
+	 *
+	 * @return the number of tuples pruned
+	 */
+	public int pruneRound(Double singlesThreshold, Double pairsThreshold, Double triplesThreshold, boolean typeDependent, Parallelism parallelism) {
+
+		numPruned = 0;
+		nextDirty = makeDirtyWords();
+
+		try (TaskExecutor tasks = makeTasks(parallelism)) {
+
+			if (singlesThreshold != null) {
+				for (int pos=0; pos<numPos; pos++) {
+					if (isDirty(pos)) {
+						pruneSinglesGoldstein(pos, singlesThreshold, typeDependent, tasks);
+					}
+				}
+			}
+
+			if (pairsThreshold != null) {
+				for (int pos1=1; pos1<numPos; pos1++) {
+					for (int pos2=0; pos2<pos1; pos2++) {
+						if (isDirty(pos1) || isDirty(pos2)) {
+							prunePairsGoldstein(pos1, pos2, pairsThreshold, typeDependent, tasks);
+						}
+					}
+				}
+			}
+
+			if (triplesThreshold != null) {
+				for (int pos1=2; pos1<numPos; pos1++) {
+					for (int pos2=1; pos2<pos1; pos2++) {
+						for (int pos3=0; pos3<pos2; pos3++) {
+							if (isDirty(pos1) || isDirty(pos2) || isDirty(pos3)) {
+								pruneTriplesGoldstein(pos1, pos2, pos3, triplesThreshold, typeDependent, tasks);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		// only the nodes dirtied by this round's pruning need checking next round
+		dirty = nextDirty;
+		nextDirty = null;
+
+		return numPruned;
+	}
+
+	/**
+	 * Runs rounds until the worklist is empty (or the max number of rounds is reached)
+	 *
+	 * @return the number of tuples pruned
+	 */
+	public int prune(Double singlesThreshold, Double pairsThreshold, Double triplesThreshold, boolean typeDependent, Parallelism parallelism, int maxNumRounds) {
+		int totalPruned = 0;
+		for (int i=0; i<maxNumRounds && hasWork(); i++) {
+			totalPruned += pruneRound(singlesThreshold, pairsThreshold, triplesThreshold, typeDependent, parallelism);
+		}
+		return totalPruned;
+	}
+
+	@Override
+	boolean shouldCheckSingle(int pos, int rc) {
+		return isDirty(pos, rc);
+	}
+
+	@Override
+	boolean shouldCheckPair(int pos1, int rc1, int pos2, int rc2) {
+		return isDirty(pos1, rc1) || isDirty(pos2, rc2);
+	}
+
+	@Override
+	boolean shouldCheckTriple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		return isDirty(pos1, rc1) || isDirty(pos2, rc2) || isDirty(pos3, rc3);
+	}
+
+	@Override
+	void pruneSingle(int pos, int rc) {
+
+		// the single is a witness for every unpruned node at the other positions that still pairs with it
+		for (int pos2=0; pos2<numPos; pos2++) {
+			if (pos2 == pos) {
+				continue;
+			}
+			for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+				if (!pmatBits.isSinglePruned(pos2, rc2) && !pmatBits.isPairBitSet(pos, rc, pos2, rc2)) {
+					markDirty(pos2, rc2);
+				}
+			}
+		}
+
+		super.pruneSingle(pos, rc);
+		numPruned++;
+	}
+
+	@Override
+	void prunePair(int pos1, int rc1, int pos2, int rc2) {
+
+		// each node of the pair loses the other as a witness
+		markDirty(pos1, rc1);
+		markDirty(pos2, rc2);
+
+		super.prunePair(pos1, rc1, pos2, rc2);
+		numPruned++;
+	}
+
+	@Override
+	void pruneTriple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+
+		// triples are never witnesses, so nothing else to check
+		super.pruneTriple(pos1, rc1, pos2, rc2, pos3, rc3);
+		numPruned++;
+	}
+}
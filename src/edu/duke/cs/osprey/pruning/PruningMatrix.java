@@ -53,12 +53,19 @@ public class PruningMatrix extends TupleMatrixBoolean {
 
     //maybe separate intra too?
 
+    // pruned triples are much more common than higher tuples, so store them compactly
+    // lazily allocated, so matrices without pruned triples don't pay for it
+    private TripleSet prunedTriples = null;
+
     protected PruningMatrix(){//no allocation (for overriding by UpdatedPruningMatrix)
         super();
     }
 
     public PruningMatrix(PruningMatrix other) {
         super(other);
+        if (other.prunedTriples != null) {
+            this.prunedTriples = new TripleSet(other.prunedTriples);
+        }
     }
 
     public PruningMatrix(ConfSpace cSpace, double pruningInterval){
@@ -82,6 +89,14 @@ public class PruningMatrix extends TupleMatrixBoolean {
 
     @Override
     public Boolean getTuple(RCTuple tuple) {
+        if (tuple.size() == 3) {
+            tuple.checkSortedPositions();
+            return getTriple(
+                tuple.pos.get(0), tuple.RCs.get(0),
+                tuple.pos.get(1), tuple.RCs.get(1),
+                tuple.pos.get(2), tuple.RCs.get(2)
+            );
+        }
         Boolean val = super.getTuple(tuple);
         if (val != null) {
             return val;
@@ -89,6 +104,38 @@ public class PruningMatrix extends TupleMatrixBoolean {
         return false;
     }
 
+    @Override
+    public void setTuple(RCTuple tuple, Boolean val) {
+        if (tuple.size() == 3) {
+            tuple.checkSortedPositions();
+            int pos1 = tuple.pos.get(0);
+            int rc1 = tuple.RCs.get(0);
+            int pos2 = tuple.pos.get(1);
+            int rc2 = tuple.RCs.get(1);
+            int pos3 = tuple.pos.get(2);
+            int rc3 = tuple.RCs.get(2);
+            if (val) {
+                pruneTriple(pos1, rc1, pos2, rc2, pos3, rc3);
+            } else if (prunedTriples != null) {
+                prunedTriples.remove(pos1, rc1, pos2, rc2, pos3, rc3);
+            }
+            return;
+        }
+        super.setTuple(tuple, val);
+    }
+
+    public boolean hasPrunedTriples() {
+        return prunedTriples != null && !prunedTriples.isEmpty();
+    }
+
+    /**
+     * returns true if this exact triple was pruned, without checking its singles and pairs
+     * positions can be in any order
+     */
+    public boolean getTriple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+        return prunedTriples != null && prunedTriples.contains(pos1, rc1, pos2, rc2, pos3, rc3);
+    }
+
     public void unprunedRCsAtPos(ArrayList<Integer> out, int pos) {
         out.clear();
         int numRCs = getNumConfAtPos(pos);
@@ -224,35 +271,22 @@ public class PruningMatrix extends TupleMatrixBoolean {
             }
         }
 
-        // check triples if needed using tuple trees
-        if (hasHigherOrderTuples()) {
-
-            // allocate just one tuple, but update it inside the loops
-            RCTuple tuple = new RCTuple(0, 0, 0, 0, 0, 0);
+        // check triples if needed
+        if (hasPrunedTriples()) {
 
             for (int i1=2; i1<numTupPos; i1++) {
                 int pos1 = tuppos.get(i1);
                 int rc1 = tupRCs.get(i1);
 
-                // update tuple in reverse order, so positions are sorted
-                tuple.pos.set(2, pos1);
-                tuple.RCs.set(2, rc1);
-
                 for (int i2=1; i2<i1; i2++) {
                     int pos2 = tuppos.get(i2);
                     int rc2 = tupRCs.get(i2);
 
-                    tuple.pos.set(1, pos2);
-                    tuple.RCs.set(1, rc2);
-
                     for (int i3=0; i3<i2; i3++) {
                         int pos3 = tuppos.get(i3);
                         int rc3 = tupRCs.get(i3);
 
-                        tuple.pos.set(0, pos3);
-                        tuple.RCs.set(0, rc3);
-
-                        if (getTuple(tuple)) {
+                        if (getTriple(pos1, rc1, pos2, rc2, pos3, rc3)) {
                             return true;
                         }
                     }
@@ -308,7 +342,14 @@ public class PruningMatrix extends TupleMatrixBoolean {
     }
 
     public void pruneTriple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
-        this.setTuple(new RCTuple(pos1, rc1, pos2, rc2, pos3, rc3).sorted(), true);
+        if (prunedTriples == null) {
+            int maxNumConfs = 0;
+            for (int pos=0; pos<getNumPos(); pos++) {
+                maxNumConfs = Math.max(maxNumConfs, getNumConfAtPos(pos));
+            }
+            prunedTriples = new TripleSet(getNumPos(), maxNumConfs);
+        }
+        prunedTriples.add(pos1, rc1, pos2, rc2, pos3, rc3);
     }
 
     public void prunePairsFromSingles() {
@@ -355,7 +396,7 @@ public class PruningMatrix extends TupleMatrixBoolean {
                 || getPairwise(pos1, rc1, pos2, rc2)
                 || getPairwise(pos1, rc1, pos3, rc3)
                 || getPairwise(pos2, rc2, pos3, rc3)
-                || getTuple(new RCTuple(pos1, rc1, pos2, rc2, pos3, rc3).sorted());
+                || getTriple(pos1, rc1, pos2, rc2, pos3, rc3);
     }
 
     public void markAsPruned(RCTuple tup){
@@ -408,43 +449,10 @@ public class PruningMatrix extends TupleMatrixBoolean {
     }
 
     public int countPrunedTriples() {
-
-        int numPos = getNumPos();
-        int count = 0;
-        RCTuple tuple = new RCTuple(0, 0, 0, 0, 0, 0);
-
-        for (int pos1=0; pos1<getNumPos(); pos1++) {
-            tuple.pos.set(0, pos1);
-            for (int rc1=0; rc1<getNumConfAtPos(pos1); rc1++) {
-                tuple.RCs.set(0, rc1);
-
-                for (int pos2=pos1+1; pos2<numPos; pos2++) {
-                    tuple.pos.set(1, pos2);
-                    for (int rc2=0; rc2<getNumConfAtPos(pos2); rc2++) {
-                        tuple.RCs.set(1, rc2);
-
-                        TupleTree<Boolean> tree = getHigherOrderTuples(pos1, rc1, pos2, rc2);
-                        if (tree == null) {
-                            continue;
-                        }
-
-                        for (int pos3=pos2+1; pos3<numPos; pos3++) {
-                            tuple.pos.set(2, pos3);
-                            for (int rc3=0; rc3<getNumConfAtPos(pos3); rc3++) {
-                                tuple.RCs.set(2, rc3);
-
-                                Boolean val = tree.get(tuple);
-                                if (val != null && val == true) {
-                                    count++;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        if (prunedTriples == null) {
+            return 0;
         }
-
-        return count;
+        return prunedTriples.size();
     }
 
     /*boolean isPruned(RC rc){
@@ -742,9 +750,6 @@ public class PruningMatrix extends TupleMatrixBoolean {
 
     public IteratorCommand forEachUnprunedTripleAt(int pos1, int pos2, int pos3, TripleConsumer consumer) {
 
-        // allocate one tuple for the whole function, but update it at each iteration
-        RCTuple tuple = new RCTuple(0, 0, 0, 0, 0, 0);
-
         for (int rc1=0; rc1<getNumConfAtPos(pos1); rc1++) {
 
             // skip pruned stuff
@@ -752,10 +757,6 @@ public class PruningMatrix extends TupleMatrixBoolean {
                 continue;
             }
 
-            // update the tuple in reverse order, so tuple positions are sorted
-            tuple.pos.set(2, pos1);
-            tuple.RCs.set(2, rc1);
-
             for (int rc2=0; rc2<getNumConfAtPos(pos2); rc2++) {
 
                 // skip pruned stuff
@@ -763,16 +764,10 @@ public class PruningMatrix extends TupleMatrixBoolean {
                     continue;
                 }
 
-                tuple.pos.set(1, pos2);
-                tuple.RCs.set(1, rc2);
-
                 for (int rc3=0; rc3<getNumConfAtPos(pos3); rc3++) {
 
-                    tuple.pos.set(0, pos3);
-                    tuple.RCs.set(0, rc3);
-
                     // skip pruned stuff
-                    if (getTuple(tuple)) {
+                    if (getTriple(pos1, rc1, pos2, rc2, pos3, rc3)) {
                         continue;
                     }
 
@@ -148,6 +148,8 @@ public class SimpleDEE {
 		private boolean showProgress = false;
 		private File cacheFile = null;
 		private Parallelism parallelism = Parallelism.makeCpu(1);
+		private boolean useDenseEngine = false;
+		private boolean incremental = false;
 
 		public Runner setSinglesThreshold(Double val) {
 			singlesThreshold = val;
@@ -212,6 +214,26 @@ public class SimpleDEE {
 			return this;
 		}
 
+		/**
+		 * Use {@link DenseDEE} for the Goldstein criteria, which prunes the same tuples, but much faster.
+		 * Defaults to false, which uses the original {@link SimpleDEE} implementation.
+		 */
+		public Runner setUseDenseEngine(boolean val) {
+			useDenseEngine = val;
+			return this;
+		}
+
+		/**
+		 * Use {@link IncrementalDEE} for the iterative Goldstein pruning, so each iteration after the first
+		 * only re-checks the candidates affected by the previous iteration's pruning.
+		 * Iterates until nothing more can be pruned (or the max number of iterations is reached).
+		 * Requires the dense engine.
+		 */
+		public Runner setIncremental(boolean val) {
+			incremental = val;
+			return this;
+		}
+
 		public PruningMatrix run(SimpleConfSpace confSpace, EnergyMatrix emat) {
 
 			// check the cache file first
@@ -262,7 +284,19 @@ public class SimpleDEE {
 				System.out.println("Choosing competitor residue conformations...");
 			}
 			PruningMatrix competitors = new PruningMatrix(pmat);
-			{
+			if (useDenseEngine) {
+				DenseDEE dee = new DenseDEE(confSpace, emat, competitors);
+				if (singlesGoldsteinDiffThreshold != null) {
+					dee.pruneSinglesGoldstein(0, typeDependent);
+				}
+				if (pairsGoldsteinDiffThreshold != null) {
+					dee.prunePairsGoldstein(0, typeDependent, parallelism);
+				}
+				if (triplesGoldsteinDiffThreshold != null) {
+					dee.pruneTriplesGoldstein(0, typeDependent, parallelism);
+					maybeReport.accept("Goldstein Triples");
+				}
+			} else {
 				SimpleDEE dee = new SimpleDEE(confSpace, emat, competitors);
 				if (singlesGoldsteinDiffThreshold != null) {
 					dee.pruneSinglesGoldstein(0, typeDependent);
@@ -277,9 +311,23 @@ public class SimpleDEE {
 			}
 
 			// 3. iterative DEE pruning
-			if (singlesGoldsteinDiffThreshold != null || pairsGoldsteinDiffThreshold != null || triplesGoldsteinDiffThreshold != null) {
+			if (incremental && useDenseEngine && (singlesGoldsteinDiffThreshold != null || pairsGoldsteinDiffThreshold != null || triplesGoldsteinDiffThreshold != null)) {
 
-				SimpleDEE dee = new SimpleDEE(confSpace, emat, pmat, competitors);
+				IncrementalDEE dee = new IncrementalDEE(confSpace, emat, pmat, competitors);
+				for (int i=0; i<numIterations && dee.hasWork(); i++) {
+
+					if (showProgress) {
+						System.out.println("DEE iteration " + (i+1) + "...");
+					}
+
+					dee.pruneRound(singlesGoldsteinDiffThreshold, pairsGoldsteinDiffThreshold, triplesGoldsteinDiffThreshold, typeDependent, parallelism);
+					maybeReport.accept("Goldstein (incremental)");
+				}
+
+			} else if (singlesGoldsteinDiffThreshold != null || pairsGoldsteinDiffThreshold != null || triplesGoldsteinDiffThreshold != null) {
+
+				SimpleDEE dee = useDenseEngine ? null : new SimpleDEE(confSpace, emat, pmat, competitors);
+				DenseDEE denseDee = useDenseEngine ? new DenseDEE(confSpace, emat, pmat, competitors) : null;
 
 				for (int i=0; i<numIterations; i++) {
 
@@ -291,15 +339,27 @@ public class SimpleDEE {
 
 					// 3.1 Goldstein criterion
 					if (singlesGoldsteinDiffThreshold != null) {
-						dee.pruneSinglesGoldstein(singlesGoldsteinDiffThreshold, typeDependent);
+						if (denseDee != null) {
+							denseDee.pruneSinglesGoldstein(singlesGoldsteinDiffThreshold, typeDependent, parallelism);
+						} else {
+							dee.pruneSinglesGoldstein(singlesGoldsteinDiffThreshold, typeDependent);
+						}
 						maybeReport.accept("Goldstein Singles");
 					}
 					if (pairsGoldsteinDiffThreshold != null) {
-						dee.prunePairsGoldstein(pairsGoldsteinDiffThreshold, typeDependent, parallelism);
+						if (denseDee != null) {
+							denseDee.prunePairsGoldstein(pairsGoldsteinDiffThreshold, typeDependent, parallelism);
+						} else {
+							dee.prunePairsGoldstein(pairsGoldsteinDiffThreshold, typeDependent, parallelism);
+						}
 						maybeReport.accept("Goldstein Pairs");
 					}
 					if (triplesGoldsteinDiffThreshold != null) {
-						dee.pruneTriplesGoldstein(triplesGoldsteinDiffThreshold, typeDependent, parallelism);
+						if (denseDee != null) {
+							denseDee.pruneTriplesGoldstein(triplesGoldsteinDiffThreshold, typeDependent, parallelism);
+						} else {
+							dee.pruneTriplesGoldstein(triplesGoldsteinDiffThreshold, typeDependent, parallelism);
+						}
 						maybeReport.accept("Goldstein Triples");
 					}
 
@@ -362,11 +422,10 @@ public class SimpleDEE {
 	}
 
 	public void prunePairsByThreshold(double energyThreshold) {
-		pmat.forEachUnprunedPair((pos1, rc1, pos2, rc2) -> {
+		new UnprunedTuples(pmat).forEachUnprunedPair((pos1, rc1, pos2, rc2) -> {
 			if (emat.getPairwise(pos1, rc1, pos2, rc2) > energyThreshold) {
 				pmat.prunePair(pos1, rc1, pos2, rc2);
 			}
-			return PruningMatrix.IteratorCommand.Continue;
 		});
 	}
 
@@ -451,17 +510,15 @@ public class SimpleDEE {
 
 	public void prunePairsGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
 
+		// snapshot the candidates, so we can count them without visiting each one
+		UnprunedTuples candidates = new UnprunedTuples(pmat);
+
 		// this one can take quite a while, so track progress
-		AtomicLong numPairs = new AtomicLong(0);
-		pmat.forEachUnprunedPair((pos1, rc1, pos2, rc2) -> {
-			numPairs.incrementAndGet();
-			return PruningMatrix.IteratorCommand.Continue;
-		});
-		Progress progress = new Progress(numPairs.get());
+		Progress progress = new Progress(candidates.countUnprunedPairs());
 
 		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
 
-			pmat.forEachUnprunedPair((candidatePos1, candidateRc1, candidatePos2, candidateRc2) -> {
+			candidates.forEachUnprunedPair((candidatePos1, candidateRc1, candidatePos2, candidateRc2) -> {
 
 				tasks.submit(
 						() -> {
@@ -540,9 +597,6 @@ public class SimpleDEE {
 							progress.incrementProgress();
 						}
 				);
-
-				// always go onto to check the next candidate
-				return PruningMatrix.IteratorCommand.Continue;
 			});
 		}
 	}
@@ -0,0 +1,403 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.pruning;
+
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+
+/**
+ * A read-only snapshot of the unpruned singles and pairs of a {@link PruningMatrix}, packed into bitsets.
+ *
+ * Unlike the iterators on {@link PruningMatrix}, the consumers here take primitive ints and return nothing,
+ * so visiting tuples doesn't allocate, and the bitsets let iteration skip over pruned regions a word at a time.
+ *
+ * Pairs are stored with the same layout as the pairwise entries of the pruning matrix:
+ * ordered by pos1, then pos2 (where pos1 > pos2), then rc1, then rc2. So any range of pair indices
+ * is a contiguous chunk of the iteration order, and {@link PairRange} can split the pairs
+ * into chunks to be visited by different threads.
+ *
+ * Pairs are visited under the same rules as {@link PruningMatrix#forEachUnprunedPair}: a pair (pos1, rc1, pos2, rc2)
+ * with pos1 > pos2 is unpruned here if neither the pair nor the (pos1, rc1) single is pruned.
+ * Callers that also need the (pos2, rc2) single to be unpruned can check {@link #isSingleUnpruned}.
+ *
+ * The snapshot doesn't track changes to the pruning matrix after it's made,
+ * so it's safe to prune tuples in the matrix while iterating over the snapshot.
+ */
+public class UnprunedTuples {
+
+	public static interface SingleConsumer {
+		void accept(int pos, int rc);
+	}
+
+	public static interface PairConsumer {
+		void accept(int pos1, int rc1, int pos2, int rc2);
+	}
+
+	public final int numPos;
+
+	private final int[] numConfAtPos;
+	private final int[] singleOffsets;
+	private final int numSingles;
+	private final int[] pairOffsets; // indexed by pos1*(pos1 - 1)/2 + pos2, where pos1 > pos2, in increasing order
+	private final int numPairs;
+
+	private final BitSet singles; // set bits are unpruned
+	private final BitSet pairs; // set bits are unpruned
+
+	public UnprunedTuples(PruningMatrix pmat) {
+
+		numPos = pmat.getNumPos();
+		numConfAtPos = new int[numPos];
+		for (int pos=0; pos<numPos; pos++) {
+			numConfAtPos[pos] = pmat.getNumConfAtPos(pos);
+		}
+
+		// compute the layout
+		singleOffsets = new int[numPos];
+		int offset = 0;
+		for (int pos=0; pos<numPos; pos++) {
+			singleOffsets[pos] = offset;
+			offset += numConfAtPos[pos];
+		}
+		numSingles = offset;
+
+		pairOffsets = new int[numPos*(numPos - 1)/2];
+		offset = 0;
+		int index = 0;
+		for (int pos1=1; pos1<numPos; pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				pairOffsets[index++] = offset;
+				offset += numConfAtPos[pos1]*numConfAtPos[pos2];
+			}
+		}
+		numPairs = offset;
+
+		// copy the singles
+		singles = new BitSet(numSingles);
+		for (int pos=0; pos<numPos; pos++) {
+			for (int rc=0; rc<numConfAtPos[pos]; rc++) {
+				if (!pmat.isSinglePruned(pos, rc)) {
+					singles.set(singleOffsets[pos] + rc);
+				}
+			}
+		}
+
+		// copy the pairs, but only look at rows whose pos1 single is unpruned
+		pairs = new BitSet(numPairs);
+		for (int pos1=1; pos1<numPos; pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				int n2 = numConfAtPos[pos2];
+				for (int rc1=nextSingle(pos1, 0); rc1>=0; rc1=nextSingle(pos1, rc1 + 1)) {
+					int rowOffset = getPairRowOffset(pos1, rc1, pos2);
+					for (int rc2=0; rc2<n2; rc2++) {
+						if (!pmat.getPairwise(pos1, rc1, pos2, rc2)) {
+							pairs.set(rowOffset + rc2);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public int getNumConfAtPos(int pos) {
+		return numConfAtPos[pos];
+	}
+
+	private int nextSingle(int pos, int rc) {
+		if (rc >= numConfAtPos[pos]) {
+			return -1;
+		}
+		int i = singles.nextSetBit(singleOffsets[pos] + rc);
+		if (i < 0 || i >= singleOffsets[pos] + numConfAtPos[pos]) {
+			return -1;
+		}
+		return i - singleOffsets[pos];
+	}
+
+	private int getPairRowOffset(int pos1, int rc1, int pos2) {
+		return pairOffsets[pos1*(pos1 - 1)/2 + pos2] + numConfAtPos[pos2]*rc1;
+	}
+
+	public boolean isSingleUnpruned(int pos, int rc) {
+		return singles.get(singleOffsets[pos] + rc);
+	}
+
+	public boolean isPairUnpruned(int pos1, int rc1, int pos2, int rc2) {
+		if (pos1 < pos2) {
+			return pairs.get(getPairRowOffset(pos2, rc2, pos1) + rc1);
+		} else if (pos1 > pos2) {
+			return pairs.get(getPairRowOffset(pos1, rc1, pos2) + rc2);
+		} else {
+			throw new IllegalArgumentException("pair positions must be different, got " + pos1 + " twice");
+		}
+	}
+
+	public int countUnprunedSingles() {
+		return singles.cardinality();
+	}
+
+	public int countUnprunedSinglesAt(int pos) {
+		return singles.get(singleOffsets[pos], singleOffsets[pos] + numConfAtPos[pos]).cardinality();
+	}
+
+	public int countUnprunedPairs() {
+		return pairs.cardinality();
+	}
+
+	public int[] unprunedRCsAt(int pos) {
+		int[] rcs = new int[countUnprunedSinglesAt(pos)];
+		int[] i = { 0 };
+		forEachUnprunedSingleAt(pos, (rc) -> rcs[i[0]++] = rc);
+		return rcs;
+	}
+
+
+	// FOR SINGLES
+
+	public void forEachUnprunedSingle(SingleConsumer consumer) {
+		for (int pos=0; pos<numPos; pos++) {
+			final int fpos = pos;
+			forEachUnprunedSingleAt(pos, (rc) -> consumer.accept(fpos, rc));
+		}
+	}
+
+	public void forEachUnprunedSingleAt(int pos, IntConsumer consumer) {
+		int offset = singleOffsets[pos];
+		int stop = offset + numConfAtPos[pos];
+		for (int i=singles.nextSetBit(offset); i>=0 && i<stop; i=singles.nextSetBit(i + 1)) {
+			consumer.accept(i - offset);
+		}
+	}
+
+
+	// FOR PAIRS
+
+	public void forEachUnprunedPair(PairConsumer consumer) {
+		pairs().forEachRemaining(consumer);
+	}
+
+	/**
+	 * Visits the unpruned rc2s paired with (pos1, rc1) at pos2, in increasing order,
+	 * where pos1 > pos2. Skips everything if the (pos1, rc1) single is pruned.
+	 */
+	public void forEachUnprunedPairAt(int pos1, int rc1, int pos2, IntConsumer consumer) {
+
+		if (pos1 <= pos2) {
+			throw new IllegalArgumentException("pos1 must be greater than pos2, got " + pos1 + " and " + pos2);
+		}
+
+		// the rc2s are contiguous, so scan the bits directly
+		int offset = getPairRowOffset(pos1, rc1, pos2);
+		int stop = offset + numConfAtPos[pos2];
+		for (int i=pairs.nextSetBit(offset); i>=0 && i<stop; i=pairs.nextSetBit(i + 1)) {
+			consumer.accept(i - offset);
+		}
+	}
+
+	/** returns a range over all the pairs, which can be split for parallel iteration */
+	public PairRange pairs() {
+		return new PairRange(0, numPairs);
+	}
+
+	/**
+	 * Visits all the unpruned pairs, split into chunks among the tasks' threads.
+	 * The consumer is called concurrently from many threads, so it must be thread-safe.
+	 * Returns after all the pairs have been visited.
+	 */
+	public void forEachUnprunedPair(TaskExecutor tasks, PairConsumer consumer) {
+
+		// aim for a few chunks per thread, to smooth out differences in pair density
+		int numChunks = Math.max(1, tasks.getParallelism()*4);
+		int chunkSize = Math.max(1, (numPairs + numChunks - 1)/numChunks);
+
+		// wait for just our chunks, since the caller might be using the tasks for other things too
+		CountDownLatch latch = new CountDownLatch((numPairs + chunkSize - 1)/chunkSize);
+		AtomicReference<Throwable> failure = new AtomicReference<>(null);
+		for (int start=0; start<numPairs; start+=chunkSize) {
+			PairRange range = new PairRange(start, Math.min(numPairs, start + chunkSize));
+			tasks.submit(
+				() -> {
+					try {
+						range.forEachRemaining(consumer);
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						latch.countDown();
+					}
+					return null;
+				},
+				(ignored) -> {}
+			);
+		}
+		try {
+			latch.await();
+		} catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		}
+		if (failure.get() != null) {
+			throw new RuntimeException("can't visit unpruned pairs", failure.get());
+		}
+	}
+
+	/**
+	 * A range of pair indices, in iteration order. Works like a {@link java.util.Spliterator},
+	 * but with primitive pair consumers.
+	 */
+	public class PairRange {
+
+		private int start;
+		private final int stop;
+
+		private PairRange(int start, int stop) {
+			this.start = start;
+			this.stop = stop;
+		}
+
+		/** upper bound on the number of unpruned pairs left in the range */
+		public long estimateSize() {
+			return stop - start;
+		}
+
+		/** the exact number of unpruned pairs left in the range */
+		public int countUnprunedPairs() {
+			return pairs.get(start, stop).cardinality();
+		}
+
+		/**
+		 * Splits off the first half of this range, and keeps the second half.
+		 * Returns null if the range is too small to split.
+		 */
+		public PairRange trySplit() {
+			int mid = (start + stop) >>> 1;
+			if (mid <= start) {
+				return null;
+			}
+			PairRange prefix = new PairRange(start, mid);
+			start = mid;
+			return prefix;
+		}
+
+		public boolean tryAdvance(PairConsumer consumer) {
+			int i = nextPair(start);
+			if (i < 0) {
+				start = stop;
+				return false;
+			}
+			int block = findBlock(i);
+			int pos1 = blockPos1(block);
+			int pos2 = block - pos1*(pos1 - 1)/2;
+			int n2 = numConfAtPos[pos2];
+			int j = i - pairOffsets[block];
+			consumer.accept(pos1, j/n2, pos2, j % n2);
+			start = i + 1;
+			return true;
+		}
+
+		public void forEachRemaining(PairConsumer consumer) {
+
+			int i = nextPair(start);
+			if (i < 0) {
+				start = stop;
+				return;
+			}
+
+			// find the block of the first pair, then walk the blocks forward with the bits
+			int block = findBlock(i);
+			int pos1 = blockPos1(block);
+			int pos2 = block - pos1*(pos1 - 1)/2;
+			int blockStop = block + 1 < pairOffsets.length ? pairOffsets[block + 1] : numPairs;
+
+			while (i >= 0) {
+
+				// advance to the block containing this pair
+				while (i >= blockStop) {
+					block++;
+					pos2++;
+					if (pos2 == pos1) {
+						pos1++;
+						pos2 = 0;
+					}
+					blockStop = block + 1 < pairOffsets.length ? pairOffsets[block + 1] : numPairs;
+				}
+
+				int n2 = numConfAtPos[pos2];
+				int j = i - pairOffsets[block];
+				consumer.accept(pos1, j/n2, pos2, j % n2);
+
+				i = nextPair(i + 1);
+			}
+
+			start = stop;
+		}
+
+		private int nextPair(int i) {
+			if (i >= stop) {
+				return -1;
+			}
+			i = pairs.nextSetBit(i);
+			if (i >= stop) {
+				return -1;
+			}
+			return i;
+		}
+	}
+
+	private int findBlock(int i) {
+
+		// find the last block whose offset is <= i
+		// (empty blocks share offsets with their successors, so skip past them)
+		int block = Arrays.binarySearch(pairOffsets, i);
+		if (block < 0) {
+			return -block - 2;
+		}
+		while (block + 1 < pairOffsets.length && pairOffsets[block + 1] == i) {
+			block++;
+		}
+		return block;
+	}
+
+	private int blockPos1(int block) {
+		int pos1 = 1;
+		while ((pos1 + 1)*pos1/2 <= block) {
+			pos1++;
+		}
+		return pos1;
+	}
+}
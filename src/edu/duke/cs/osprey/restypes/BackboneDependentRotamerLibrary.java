@@ -1,5 +1,339 @@
 package edu.duke.cs.osprey.restypes;
 
-public class BackboneDependentRotamerLibrary {
+import edu.duke.cs.osprey.tools.FileTools;
 
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Rotamers for residue types, packed into primitive arrays and indexed directly by backbone (phi,psi) bin.
+ *
+ * Backbone-independent rotamer libraries are just the special case of a single 360-degree bin.
+ *
+ * Libraries can be written to a file and memory-mapped back in, which is much faster than
+ * parsing big backbone-dependent libraries (like Dunbrack's) from text again.
+ */
+public class BackboneDependentRotamerLibrary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** The rotamers for one residue type */
+	public static class Table implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		/** number of bins for each of phi and psi, eg 37 for Dunbrack (-180, -170, ..., 170, 180) */
+		public final int numBins;
+
+		/** width of each bin in degrees, eg 10 for Dunbrack, or 360 for backbone-independent libraries */
+		public final double resolution;
+
+		public final int numDihedrals;
+
+		// rotamers for bin b are at indices [binStarts[b],binStarts[b+1]), bins are phi-major
+		private final int[] binStarts;
+
+		// dihedrals for rotamer r are at [r*numDihedrals,(r+1)*numDihedrals)
+		private final double[] dihedrals;
+
+		private Table(int numBins, double resolution, int numDihedrals, int[] binStarts, double[] dihedrals) {
+			this.numBins = numBins;
+			this.resolution = resolution;
+			this.numDihedrals = numDihedrals;
+			this.binStarts = binStarts;
+			this.dihedrals = dihedrals;
+		}
+
+		/** makes a backbone-independent table, ie one bin, from the dihedrals for each rotamer */
+		public static Table of(double[][] rotamers, int numDihedrals) {
+			Builder builder = new Builder(1, 360, numDihedrals);
+			for (double[] rotamer : rotamers) {
+				builder.add(0, 0, rotamer);
+			}
+			return builder.build();
+		}
+
+		public boolean isBackboneDependent() {
+			return numBins > 1;
+		}
+
+		/** returns the number of rotamers in all bins */
+		public int getNumRotamers() {
+			return binStarts[binStarts.length - 1];
+		}
+
+		public int getBin(double phi, double psi) {
+			if (numBins == 1) {
+				// backbone-independent, so every backbone is in the one bin
+				return 0;
+			}
+			return getBin1D(phi)*numBins + getBin1D(psi);
+		}
+
+		private int getBin1D(double angle) {
+			// round to the closest bin and add numBins/2 (to make all indices positive)
+			return (int)Math.round(angle/resolution) + numBins/2;
+		}
+
+		public int getNumRotamers(int bin) {
+			return binStarts[bin + 1] - binStarts[bin];
+		}
+
+		public double getDihedral(int bin, int rotNum, int dihedralNum) {
+			return dihedrals[(binStarts[bin] + rotNum)*numDihedrals + dihedralNum];
+		}
+
+		/** returns a new array with the dihedrals of the rotamer */
+		public double[] getDihedrals(int bin, int rotNum) {
+			int i = (binStarts[bin] + rotNum)*numDihedrals;
+			return Arrays.copyOfRange(dihedrals, i, i + numDihedrals);
+		}
+
+		/** returns a copy of this table with all the dihedrals negated, eg for D amino acids */
+		public Table negate() {
+			double[] negated = new double[dihedrals.length];
+			for (int i=0; i<dihedrals.length; i++) {
+				negated[i] = -dihedrals[i];
+			}
+			return new Table(numBins, resolution, numDihedrals, binStarts, negated);
+		}
+	}
+
+	/** Collects rotamers in any order, then packs them into a {@link Table} */
+	public static class Builder {
+
+		public final int numBins;
+		public final double resolution;
+
+		private int numDihedrals;
+		private final List<List<double[]>> rotamersByBin = new ArrayList<>();
+
+		/**
+		 * @param numDihedrals the number of dihedrals, or -1 to take it from the first rotamer added
+		 */
+		public Builder(int numBins, double resolution, int numDihedrals) {
+			this.numBins = numBins;
+			this.resolution = resolution;
+			this.numDihedrals = numDihedrals;
+			for (int i=0; i<numBins*numBins; i++) {
+				rotamersByBin.add(new ArrayList<>());
+			}
+		}
+
+		public Builder add(int phiBin, int psiBin, double[] dihedrals) {
+			if (numDihedrals < 0) {
+				numDihedrals = dihedrals.length;
+			} else if (dihedrals.length != numDihedrals) {
+				throw new IllegalArgumentException("expected " + numDihedrals + " dihedrals, not " + dihedrals.length);
+			}
+			rotamersByBin.get(phiBin*numBins + psiBin).add(dihedrals);
+			return this;
+		}
+
+		/** adds the rotamer to the bin closest to phi and psi */
+		public Builder add(double phi, double psi, double[] dihedrals) {
+			int phiBin = (int)Math.round(phi/resolution) + numBins/2;
+			int psiBin = (int)Math.round(psi/resolution) + numBins/2;
+			return add(phiBin, psiBin, dihedrals);
+		}
+
+		public Table build() {
+			int n = Math.max(0, numDihedrals);
+			int[] binStarts = new int[rotamersByBin.size() + 1];
+			for (int b=0; b<rotamersByBin.size(); b++) {
+				binStarts[b + 1] = binStarts[b] + rotamersByBin.get(b).size();
+			}
+			double[] dihedrals = new double[binStarts[rotamersByBin.size()]*n];
+			int i = 0;
+			for (List<double[]> rotamers : rotamersByBin) {
+				for (double[] rotamer : rotamers) {
+					System.arraycopy(rotamer, 0, dihedrals, i, n);
+					i += n;
+				}
+			}
+			return new Table(numBins, resolution, n, binStarts, dihedrals);
+		}
+	}
+
+	// Dunbrack has rotamers in increments of 10 degrees for phi and psi, at -180, -170, ..., 170, 180
+	public static final double DunbrackResolution = 10;
+	public static final int DunbrackNumBins = 37;
+
+	private static final int Magic = 0x4f524f54; // "OROT"
+	private static final int Version = 1;
+
+	private final Map<String,Table> tables;
+
+	private BackboneDependentRotamerLibrary(Map<String,Table> tables) {
+		this.tables = tables;
+	}
+
+	/**
+	 * Reads a Dunbrack backbone-dependent rotamer library, keeping only rotamers
+	 * at least as probable as the cutoff.
+	 */
+	public static BackboneDependentRotamerLibrary parseDunbrack(String text, double probabilityCutoff) {
+
+		Map<String,Builder> builders = new HashMap<>();
+
+		// The first char for each of the dihedrals is, respectively at 47, 55, 63, 71
+		final int[] dihedralIndices = { 47, 55, 63, 71 };
+
+		for (String line : FileTools.parseLines(text)) {
+
+			// Skip comment lines: those that start with #
+			if (line.startsWith("#") || line.isEmpty()) {
+				continue;
+			}
+
+			// skip unlikely rotamers before parsing the rest of the line
+			// the rotamer probability is located at position 37 to 44
+			double probability = Double.parseDouble(line.substring(37, 45).trim());
+			if (probability < probabilityCutoff) {
+				continue;
+			}
+
+			// First three letters are the amino acid.
+			String aaName = line.substring(0, 3);
+
+			// We compute the number of dihedrals for this AA by counting the number of non-zeroes in columns r2-r4.
+			int numDihedrals = 1;
+			for (int col : new int[] { 27, 30, 33 }) {
+				if (Integer.parseInt(line.substring(col, col + 2).trim()) > 0) {
+					numDihedrals++;
+				}
+			}
+
+			// Phi is in chars 5, 6, 7, and 8, psi is in chars 10, 11, 12, 13
+			double phi = Double.parseDouble(line.substring(5, 9).trim());
+			double psi = Double.parseDouble(line.substring(10, 14).trim());
+
+			double[] chis = new double[numDihedrals];
+			for (int i=0; i<numDihedrals; i++) {
+				chis[i] = Double.parseDouble(line.substring(dihedralIndices[i], dihedralIndices[i] + 6).trim());
+			}
+
+			builders.computeIfAbsent(aaName, (key) -> new Builder(DunbrackNumBins, DunbrackResolution, -1))
+				.add(phi, psi, chis);
+		}
+
+		Map<String,Table> tables = new HashMap<>();
+		for (Map.Entry<String,Builder> entry : builders.entrySet()) {
+			tables.put(entry.getKey(), entry.getValue().build());
+		}
+		return new BackboneDependentRotamerLibrary(tables);
+	}
+
+	/** returns the rotamers for the residue type, or null if the library has none */
+	public Table get(String resType) {
+		return tables.get(resType);
+	}
+
+	/** returns the rotamers for the residue type, or an empty table if the library has none */
+	public Table getOrEmpty(String resType) {
+		Table table = tables.get(resType);
+		if (table == null) {
+			table = new Builder(DunbrackNumBins, DunbrackResolution, 0).build();
+		}
+		return table;
+	}
+
+	public Set<String> getResidueTypes() {
+		return Collections.unmodifiableSet(tables.keySet());
+	}
+
+	/**
+	 * Writes the library to a file, for {@link #read(File)}.
+	 *
+	 * Writes to a temp file first and moves it into place, so other processes never see a partial file.
+	 */
+	public void write(File file) {
+		try {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+			File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+					write(out);
+				}
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				tempFile.delete();
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("can't write rotamer library to " + file, ex);
+		}
+	}
+
+	private void write(DataOutputStream out)
+	throws IOException {
+		out.writeInt(Magic);
+		out.writeInt(Version);
+		out.writeInt(tables.size());
+		for (Map.Entry<String,Table> entry : new TreeMap<>(tables).entrySet()) {
+			byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(name.length);
+			out.write(name);
+			Table table = entry.getValue();
+			out.writeInt(table.numBins);
+			out.writeDouble(table.resolution);
+			out.writeInt(table.numDihedrals);
+			out.writeInt(table.binStarts.length);
+			for (int start : table.binStarts) {
+				out.writeInt(start);
+			}
+			out.writeInt(table.dihedrals.length);
+			for (double dihedral : table.dihedrals) {
+				out.writeDouble(dihedral);
+			}
+		}
+	}
+
+	/**
+	 * Reads a library written by {@link #write(File)}, by memory-mapping the file.
+	 */
+	public static BackboneDependentRotamerLibrary read(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			// check the magic number and version
+			if (buf.getInt() != Magic) {
+				throw new IllegalArgumentException("not a rotamer library file: " + file);
+			}
+			int version = buf.getInt();
+			if (version != Version) {
+				throw new IllegalArgumentException("unsupported rotamer library version " + version + ", expected " + Version);
+			}
+
+			Map<String,Table> tables = new HashMap<>();
+			int numTables = buf.getInt();
+			for (int t=0; t<numTables; t++) {
+				byte[] name = new byte[buf.getInt()];
+				buf.get(name);
+				int numBins = buf.getInt();
+				double resolution = buf.getDouble();
+				int numDihedrals = buf.getInt();
+				int[] binStarts = new int[buf.getInt()];
+				buf.asIntBuffer().get(binStarts);
+				buf.position(buf.position() + binStarts.length*Integer.BYTES);
+				double[] dihedrals = new double[buf.getInt()];
+				buf.asDoubleBuffer().get(dihedrals);
+				buf.position(buf.position() + dihedrals.length*Double.BYTES);
+				tables.put(new String(name, StandardCharsets.UTF_8), new Table(numBins, resolution, numDihedrals, binStarts, dihedrals));
+			}
+			return new BackboneDependentRotamerLibrary(tables);
+
+		} catch (BufferUnderflowException ex) {
+			throw new IllegalArgumentException("truncated rotamer library file: " + file, ex);
+		} catch (IOException ex) {
+			throw new RuntimeException("can't read rotamer library from " + file, ex);
+		}
+	}
 }
@@ -149,15 +149,8 @@ public class DAminoAcidHandler {
                 DTemplRes.coords[c] *= -1;
         }
 
-        if(DTemplate.rotamericDihedrals != null){
-            for(double[][][] phiDih : DTemplate.rotamericDihedrals){
-                for(double[][] psiDih : phiDih){
-                    for(double[] rotDih : psiDih){
-                        for(int d=0; d<rotDih.length; d++)
-                            rotDih[d] *= -1;
-                    }
-                }
-            }
+        if(DTemplate.hasRotamers()){
+            DTemplate.setRotamers(DTemplate.getRotamers().negate());
         }
 
         if(DTemplRes.pucker != null){
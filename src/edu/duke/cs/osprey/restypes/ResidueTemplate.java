@@ -45,19 +45,21 @@ public class ResidueTemplate implements Serializable {
     //these are indices in all our atom-wise arrays
     public ArrayList<ArrayList<Integer>> dihedralMovingAtoms;//list of atoms that move for each dihedral
 
+    //intra-residue bonds of templateRes, as atom indices: for each atom, the (sorted) indices of the atoms it's bonded to
+    //computed on first use and shared by all residues with this template, so copying residues doesn't have to
+    //re-derive the bonds from the template atoms every time
+    private transient volatile int[][] intraResBonds = null;
+
+    //dihedralMovingAtoms as primitive arrays, computed on first use, so applying a dihedral doesn't unbox indices
+    private transient volatile int[][] dihedralMovingAtomIndices = null;
+
 
     // Rotameric information for this residue template. ResidueTemplate supports both backbone dependent and backbone independent rotamer libraries.
     // PGC 2015: If backbone dependent rotamer libraries are used, the number of rotamers is dependent on the backbone dihedrals.
-    // Dimensions: (# phi increments)x(# psi increments)
-    public int numRotamers[][] = null;
-    //For each rotamer, gives the ideal values of all dihedrals
+    // The rotamers are packed into one table, indexed by (phi,psi) bin. Backbone independent libraries have a single 360-degree bin.
+    // For each rotamer, the table gives the ideal values of all dihedrals
     //note: this is just the standard set of ideal rotamers, we can modify this as desired
-    double rotamericDihedrals[][][][];// (# phi increments)x(# psi increments) x numRotamers x numDihedrals array.
-    // Number of "bins" for Phi and Psi angles for backbone dependent rotamer libraries. For example, in the Dunbrack library there are 37 bins for each dihedral.
-    // We assume that the number of bins will always be the same for phi or psi.
-    public int numberOfPhiPsiBins = -1;
-    // Resolution of phi and psi backbone dihedrals in the backbone dependent rotamer library. For example, in the Dunbrack rotamer library the resolution is 10. 
-    public double phiPsiResolution = -1;
+    private BackboneDependentRotamerLibrary.Table rotamers = null;
 
     public String CAEquivalent = null;//The name of the atom that the sidechain branches off of (e.g. CA in an amino acid)
     //if null we can't mutate
@@ -76,11 +78,8 @@ public class ResidueTemplate implements Serializable {
         ResidueTemplate newTemplate = new ResidueTemplate(templateRes, oldTemplate.name, oldTemplate.interResBonding, oldTemplate.CAEquivalent);
     	
     	// copy template info
-		newTemplate.setNumberOfPhiPsiBins(oldTemplate.numberOfPhiPsiBins);
-		newTemplate.initializeRotamerArrays();
 		newTemplate.dihedral4Atoms = oldTemplate.dihedral4Atoms;
 		newTemplate.numDihedrals = oldTemplate.numDihedrals;
-		newTemplate.setNumRotamers(residues.size());
 		
 		// measure the dihedrals for all conformations
 		double[][] dihedrals = new double[residues.size()][newTemplate.numDihedrals];
@@ -91,7 +90,7 @@ public class ResidueTemplate implements Serializable {
 				dihedrals[i][j] = res.getDihedralAngle(j);
 			}
 		}
-		newTemplate.setRotamericDihedrals(dihedrals);
+		newTemplate.setRotamers(BackboneDependentRotamerLibrary.Table.of(dihedrals, newTemplate.numDihedrals));
 		newTemplate.computeDihedralMovingAtoms();
 		
 		// TODO: the second conformation doesn't necessarily differ from the first only by dihedrals
@@ -112,6 +111,32 @@ public class ResidueTemplate implements Serializable {
         interResBonding = templ;
     }
 
+    public int[][] getIntraResBonds(){
+        //don't modify the returned arrays, they're shared
+        int[][] bonds = intraResBonds;
+        if(bonds==null){
+            //no need to lock, racing threads will compute the same bonds
+            boolean[][] isBonded = templateRes.getIntraResBondMatrix();
+            int numAtoms = isBonded.length;
+            bonds = new int[numAtoms][];
+            for(int i=0; i<numAtoms; i++){
+                int numBonds = 0;
+                for(int j=0; j<numAtoms; j++){
+                    if(isBonded[i][j])
+                        numBonds++;
+                }
+                bonds[i] = new int[numBonds];
+                numBonds = 0;
+                for(int j=0; j<numAtoms; j++){
+                    if(isBonded[i][j])
+                        bonds[i][numBonds++] = j;
+                }
+            }
+            intraResBonds = bonds;
+        }
+        return bonds;
+    }
+
     //information on dihedrals
     public int[] getDihedralDefiningAtoms(int dihedralNum){
         //numbers (indices among the atoms in this template) of the 4 atoms defining the dihedral
@@ -123,6 +148,19 @@ public class ResidueTemplate implements Serializable {
         return dihedralMovingAtoms.get(dihedralNum);
     }
 
+    public int[] getDihedralRotatedAtomIndices(int dihedralNum){
+        //same as getDihedralRotatedAtoms(), but as a shared array: don't modify it
+        int[][] indices = dihedralMovingAtomIndices;
+        if(indices==null){
+            //no need to lock, racing threads will compute the same indices
+            indices = new int[dihedralMovingAtoms.size()][];
+            for(int i=0; i<indices.length; i++)
+                indices[i] = dihedralMovingAtoms.get(i).stream().mapToInt(Integer::intValue).toArray();
+            dihedralMovingAtomIndices = indices;
+        }
+        return indices[dihedralNum];
+    }
+
     public void computeDihedralMovingAtoms(){
         //compute what atoms move when a dihedral is changed
         //Compute from dihedral4Atoms, and write answer in dihedralMovingAtoms
@@ -132,6 +170,7 @@ public class ResidueTemplate implements Serializable {
         //or atom 1 or to another residue,
         //then the dihedral can't move freely, and we return an error.  
         dihedralMovingAtoms = new ArrayList<>();
+        dihedralMovingAtomIndices = null;
 
         for(int dihedNum=0; dihedNum<numDihedrals; dihedNum++){
 
@@ -187,7 +226,7 @@ public class ResidueTemplate implements Serializable {
      * @return the angle value for the desired dihedral.
      */
     public double getRotamericDihedrals(double phi, double psi, int rotNum, int dihedralNum) {
-    	return getRotamericDihedrals(phi, psi, rotNum)[dihedralNum];
+    	return getRotamers().getDihedral(getRotamerBin(phi, psi), rotNum, dihedralNum);
     }
     
     public double getRotamericDihedrals(int rotNum, int dihedralNum) {
@@ -199,22 +238,29 @@ public class ResidueTemplate implements Serializable {
     }
     
     public double[] getRotamericDihedrals(double phi, double psi, int rotNum) {
-    	
+        return getRotamers().getDihedrals(getRotamerBin(phi, psi), rotNum);
+    }
+
+    /**
+     * Returns the bin in the rotamer table for the backbone closest to the values phi and psi.
+     * If the rotamer library is backbone independent, then phi and psi are ignored.
+     */
+    public int getRotamerBin(double phi, double psi) {
+
+        BackboneDependentRotamerLibrary.Table rotamers = getRotamers();
+
         if(Double.isNaN(phi) || Double.isNaN(psi)){//dihedrals not defined for this residue
-            if(numberOfPhiPsiBins > 1)
+            if(rotamers.isBackboneDependent())
                 throw new RuntimeException("ERROR: Can't use Dunbrack library on residues w/o phi/psi defined");
 
-            return rotamericDihedrals[0][0][rotNum];
+            return 0;
         }
 
-        // Under the dunbrack rotamer library, backbone dependent rotamers have a resolution of 10 degrees, 
-        //    while in backbone-independent rotamer libraries they have a resolution of 360.    		
-        //  Therefore, we round to the closest "bin" and add numberOfPhiPsiBins/2 (to make all numbers positive)
-        int phiBin = (int)(Math.round(phi/this.phiPsiResolution)) + this.numberOfPhiPsiBins/2;
-        int psiBin = (int)(Math.round(psi/this.phiPsiResolution)) + this.numberOfPhiPsiBins/2;
-        return rotamericDihedrals[phiBin][psiBin][rotNum];
+        // Under the dunbrack rotamer library, backbone dependent rotamers have a resolution of 10 degrees,
+        //    while in backbone-independent rotamer libraries they have a resolution of 360.
+        return rotamers.getBin(phi, psi);
     }
-    
+
     /**
      * Returns the number of rotamers for a backbone-dependent or backbone independent rotamer library.
      * @param phi The backbone phi angle, ignored if backbone independent rotamer library.
@@ -223,101 +269,41 @@ public class ResidueTemplate implements Serializable {
      */
 
     public int getNumRotamers(double phi, double psi){
-
-        if(numberOfPhiPsiBins==-1)
-            throw new RuntimeException("ERROR: Rotamers not set up for residue "+name);
-        
-        if(Double.isNaN(phi) || Double.isNaN(psi)){//dihedrals not defined for this residue
-            if(numberOfPhiPsiBins > 1)
-                throw new RuntimeException("ERROR: Can't use Dunbrack library on residues w/o phi/psi defined");
-
-            return numRotamers[0][0];
-        }
-
-
-        // Under the dunbrack rotamer library, backbone dependent rotamers have a resolution of 10 degrees, 
-        //    while in backbone-independent rotamer libraries they have a resolution of 360.    		
-        //  Therefore, we round to the closest "bin" and add numberOfPhiPsiBins/2 (to make all numbers positive)
-        int phiBin = (int)((Math.round(phi/this.phiPsiResolution))) + this.numberOfPhiPsiBins/2;
-        int psiBin = (int)((Math.round(psi/this.phiPsiResolution))) + this.numberOfPhiPsiBins/2;
-        return this.numRotamers[phiBin][psiBin];
+        return getRotamers().getNumRotamers(getRotamerBin(phi, psi));
     }
-    
+
     public int getNumRotamers() {
         return getNumRotamers(0,0);
     }
-    
-    /**
-     * Number of "bins" for Phi/Psi angles for backbone dependent rotamer libraries. For example, in the Dunbrack library there are 37 bins.
-     * @param numberOfPsiBins
-     */
-    public void setNumberOfPhiPsiBins(int numberOfPhiPsiBins) {
-        this.numberOfPhiPsiBins = numberOfPhiPsiBins;
-    }
-    /**
-     * Resolution of backbone "bins" in the rotamer library. For example in a backbone independent rotamer library this should be "360". 
-     * For the Dunbrack rotamer library this is 10. Set in the corresponding parser of the rotamer library. 
-     * @param phiPsiResolution.
-     */
-    public void setRLphiPsiResolution(double phiPsiResolution) {
-        this.phiPsiResolution = phiPsiResolution;
-    }
 
     /**
-     * Initialize the numRotamers and rotamericDihedrals arrays to the number of bins according to each rotamer library. 
+     * Returns the packed rotamer table for this residue type, indexed by backbone (phi,psi) bin
      */
-    public void initializeRotamerArrays(){
-        assert (numberOfPhiPsiBins > 0);
-        this.numRotamers= new int [numberOfPhiPsiBins][];
-        this.rotamericDihedrals = new double[numberOfPhiPsiBins][][][];
-        for (int i = 0; i < numberOfPhiPsiBins; i++){
-            this.numRotamers[i] = new int [numberOfPhiPsiBins];
-            this.rotamericDihedrals[i] = new double[numberOfPhiPsiBins][][];
-        }   	
+    public BackboneDependentRotamerLibrary.Table getRotamers() {
+        if(rotamers==null)
+            throw new RuntimeException("ERROR: Rotamers not set up for residue "+name);
+        return rotamers;
+    }
 
+    public boolean hasRotamers() {
+        return rotamers != null;
     }
 
     /**
-     * PGC 2015: 
-     * Sets the number of rotamers for a residue template; phi and psi are only 
-     * used when using a backbone dependent rotamer library.
-     * @param numRotamers Number of rotamers
-     * @param phiBin Bin in the rotamer array where the rotameric dihedrals will be stored. 
-     * @param psiBin Bin in the rotamer array where the rotameric dihedrals will be stored. 
+     * PGC 2015:
+     * Sets the rotamers for a residue template, from either a backbone dependent or backbone independent rotamer library.
      */
-
-    public void setNumRotamers(int numRotamers, int phiBin, int psiBin){
-
-        this.numRotamers[phiBin][psiBin] = numRotamers;
-
-    }
-    
-    public void setNumRotamers(int numRotamers){
-        setNumRotamers(numRotamers,0,0);
+    public void setRotamers(BackboneDependentRotamerLibrary.Table rotamers) {
+        this.rotamers = rotamers;
     }
-    
+
     /**
      * PGC 2015:
-     * Set the number of dihedrals for this Residue type 
+     * Set the number of dihedrals for this Residue type
      */
     public void setNumDihedrals(int numDihedrals){
         this.numDihedrals = numDihedrals;
     }
-    /**
-     * PGC 2015: 
-     * Sets the number of rotamers for a residue template; phi and psi are only 
-     * used when using a backbone dependent rotamer library.
-     * @param numRotamers Number of rotamers
-     * @param phiBin Bin in the rotamer array where the rotameric dihedrals will be stored. 
-     * @param psiBin Bin in the rotamer array where the rotameric dihedrals will be stored. 
-     */    
-    public void setRotamericDihedrals(double newRotamericDihedrals[][], int phiBin, int psiBin){
-        this.rotamericDihedrals[phiBin][psiBin] = newRotamericDihedrals;
-    }
-    
-    public void setRotamericDihedrals(double newRotamericDihedrals[][]){
-        setRotamericDihedrals(newRotamericDihedrals,0,0);
-     }
 
     @Override
     public String toString() {
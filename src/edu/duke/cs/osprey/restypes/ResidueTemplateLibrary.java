@@ -33,11 +33,15 @@
 package edu.duke.cs.osprey.restypes;
 
 import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.control.EnvironmentVars;
 import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.Residue;
+import edu.duke.cs.osprey.tools.ContentHasher;
 import edu.duke.cs.osprey.tools.FileTools;
+import edu.duke.cs.osprey.tools.ObjectIO;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.*;
 
@@ -58,6 +62,9 @@ public class ResidueTemplateLibrary implements Serializable {
 
 		private static final String LovellRotamersPath = "/config/LovellRotamer.dat";
 
+		/** bump this when the serialized form of the library changes, so old snapshots get ignored */
+		private static final int SnapshotVersion = 2;
+
 		@SafeVarargs
 		private static <T> List<T> listOf(T ... vals) {
 			List<T> list = new ArrayList<>();
@@ -84,6 +91,16 @@ public class ResidueTemplateLibrary implements Serializable {
 
 		private List<Molecule> molsForRotamers = listOf();
 
+		/**
+		 * Directory for snapshots of compiled template libraries, or null to always parse the texts
+		 */
+		private File snapshotDir = null;
+
+		/**
+		 * Backbone-dependent rotamers less likely than this are left out of the library
+		 */
+		private double dunbrackProbabilityCutoff = getDefaultDunbrackProbabilityCutoff();
+
 		public Builder() {
 			initTexts();
 		}
@@ -210,17 +227,81 @@ public class ResidueTemplateLibrary implements Serializable {
 			return this;
 		}
 
+		/**
+		 * Save the compiled library (including forcefield params) to this directory after parsing,
+		 * and read it back instead of parsing on the next run with the same inputs.
+		 *
+		 * Snapshots are named by a hash of all the input texts, so many libraries can share one directory.
+		 * Wild-type rotamers from molecules aren't part of the snapshot, they're added after loading.
+		 *
+		 * Backbone-dependent rotamers are also saved here on their own, packed by
+		 * {@link BackboneDependentRotamerLibrary}, so they can be memory-mapped back in
+		 * even when other inputs change.
+		 */
+		public Builder setSnapshotDir(File val) {
+			snapshotDir = val;
+			return this;
+		}
+
+		public Builder setDunbrackProbabilityCutoff(double val) {
+			dunbrackProbabilityCutoff = val;
+			return this;
+		}
+
 		public ResidueTemplateLibrary build() {
-			return new ResidueTemplateLibrary(
-					forcefield,
-					templatesTexts,
-					templateCoordsTexts,
-					rotamersTexts,
-					backboneDependentRotamersTexts,
-					entropyTexts,
-					makeDAminoAcidTemplates,
-					molsForRotamers
+
+			if (snapshotDir == null) {
+				ResidueTemplateLibrary library = new ResidueTemplateLibrary(
+						forcefield,
+						templatesTexts,
+						templateCoordsTexts,
+						rotamersTexts,
+						backboneDependentRotamersTexts,
+						entropyTexts,
+						makeDAminoAcidTemplates,
+						dunbrackProbabilityCutoff,
+						null
+				);
+				library.makeWildTypeTemplates(molsForRotamers);
+				return library;
+			}
+
+			snapshotDir.mkdirs();
+			File file = new File(snapshotDir, "templates." + hashInputs() + ".dat");
+			ResidueTemplateLibrary library = ObjectIO.readOrMake(
+					file,
+					ResidueTemplateLibrary.class,
+					"template library snapshot",
+					(context) -> new ResidueTemplateLibrary(
+							forcefield,
+							templatesTexts,
+							templateCoordsTexts,
+							rotamersTexts,
+							backboneDependentRotamersTexts,
+							entropyTexts,
+							makeDAminoAcidTemplates,
+							dunbrackProbabilityCutoff,
+							snapshotDir
+					)
 			);
+			library.makeWildTypeTemplates(molsForRotamers);
+			return library;
+		}
+
+		private String hashInputs() {
+			ContentHasher hasher = new ContentHasher()
+					.add(SnapshotVersion)
+					.add(forcefield.name())
+					.add(makeDAminoAcidTemplates)
+					// the snapshot templates only have the rotamers that passed the cutoff
+					.add(Double.doubleToLongBits(dunbrackProbabilityCutoff));
+			for (List<String> texts : Arrays.asList(templatesTexts, templateCoordsTexts, rotamersTexts, backboneDependentRotamersTexts, entropyTexts)) {
+				hasher.add(texts.size());
+				for (String text : texts) {
+					hasher.add(text);
+				}
+			}
+			return hasher.toHex();
 		}
 	}
 
@@ -235,6 +316,11 @@ public class ResidueTemplateLibrary implements Serializable {
 	public int totalNumRotamers;//total number of rotamers read in from rotamer library file(s), starts at 0
 
 	public ResidueTemplateLibrary(ForcefieldParams.Forcefield forcefield, List<String> templatesTexts, List<String> templateCoordTexts, List<String> rotamersTexts, List<String> backboneDependentRotamerTexts, List<String> resEntropyTexts, boolean makeDAminoAcids, List<Molecule> molsForRotamers) {
+		this(forcefield, templatesTexts, templateCoordTexts, rotamersTexts, backboneDependentRotamerTexts, resEntropyTexts, makeDAminoAcids, getDefaultDunbrackProbabilityCutoff(), null);
+		makeWildTypeTemplates(molsForRotamers);
+	}
+
+	private ResidueTemplateLibrary(ForcefieldParams.Forcefield forcefield, List<String> templatesTexts, List<String> templateCoordTexts, List<String> rotamersTexts, List<String> backboneDependentRotamerTexts, List<String> resEntropyTexts, boolean makeDAminoAcids, double dunbrackProbabilityCutoff, File rotamersCacheDir) {
 
 		this.ffparams = new ForcefieldParams(forcefield);
 
@@ -257,7 +343,7 @@ public class ResidueTemplateLibrary implements Serializable {
 		}
 		this.totalNumRotamers = numRotamers;
 		for (String text : backboneDependentRotamerTexts) {
-			RotamerLibraryReader.readDunbrackRotamerLibraryForResiduePosition(text, templates);
+			RotamerLibraryReader.applyBackboneDependentRotamers(readBackboneDependentRotamers(text, dunbrackProbabilityCutoff, rotamersCacheDir), templates);
 		}
 
 		// make D amino acids if needed
@@ -271,8 +357,41 @@ public class ResidueTemplateLibrary implements Serializable {
 		for (String text : resEntropyTexts) {
 			entropyParser.parse(text);
 		}
+	}
+
+	/** the global cutoff is deprecated, but it's still the default until the old config-file code goes away */
+	@SuppressWarnings("deprecation")
+	private static double getDefaultDunbrackProbabilityCutoff() {
+		return EnvironmentVars.DUNBRACK_PROBABILTY_CUTOFF;
+	}
+
+	private static BackboneDependentRotamerLibrary readBackboneDependentRotamers(String text, double cutoff, File cacheDir) {
+
+		if (cacheDir == null) {
+			return BackboneDependentRotamerLibrary.parseDunbrack(text, cutoff);
+		}
+
+		File file = new File(cacheDir, "rotamers." + new ContentHasher()
+				.add(text)
+				.add(Double.doubleToLongBits(cutoff))
+				.toHex() + ".dat"
+		);
+
+		// try the cache first
+		if (file.exists()) {
+			try {
+				return BackboneDependentRotamerLibrary.read(file);
+			} catch (RuntimeException ex) {
+				System.out.println("WARNING: can't read cached rotamers, will parse the rotamer library again: " + ex.getMessage());
+			}
+		}
+
+		BackboneDependentRotamerLibrary library = BackboneDependentRotamerLibrary.parseDunbrack(text, cutoff);
+		library.write(file);
+		return library;
+	}
 
-		// make wild type rotamers
+	private void makeWildTypeTemplates(List<Molecule> molsForRotamers) {
 		for (Molecule mol : molsForRotamers) {
 			Strand strand = new Strand.Builder(mol)
 					.setTemplateLibrary(this)
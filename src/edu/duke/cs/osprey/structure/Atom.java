@@ -83,10 +83,20 @@ public class Atom implements Serializable {
 
 
 
+    private Atom(Atom other){
+        //share the name strings, and copy the element properties directly,
+        //since looking them up in the PeriodicTable again would give the same values
+        this.name = other.name;
+        this.elementType = other.elementType;
+        this.elementNumber = other.elementNumber;
+        this.radius = other.radius;
+        this.mass = other.mass;
+    }
+
     public Atom copy(){
         //copy the atom, leaving the residue and bonds blank
         //(since these will need to be pointed to the right objects)
-        Atom ans = new Atom(name,elementType);
+        Atom ans = new Atom(this);
         ans.BFactor = BFactor;
         ans.modelAtomNumber = modelAtomNumber;
 
@@ -32,15 +32,29 @@
 
 package edu.duke.cs.osprey.structure;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
 import edu.duke.cs.osprey.confspace.Strand;
@@ -48,6 +62,7 @@ import edu.duke.cs.osprey.parallelism.Parallelism;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.restypes.ResidueTemplate;
 import edu.duke.cs.osprey.restypes.ResidueTemplateLibrary;
+import edu.duke.cs.osprey.tools.ContentHasher;
 import edu.duke.cs.osprey.tools.HashCalculator;
 
 /**
@@ -82,6 +97,14 @@ public class AtomConnectivity {
 
 		private Set<ResidueTemplate> templates = new HashSet<>();
 		private Parallelism parallelism = Parallelism.makeCpu(1);
+		private File snapshotDir = null;
+
+		/**
+		 * True to compute atom pairs for each template pair on first use, false to compute
+		 * all template pairs up front (eg, for reproducible timing).
+		 * Snapshots always compute everything up front, so they're complete for the next run.
+		 */
+		private boolean isLazy = true;
 
 		public Builder addTemplates(Collection<ResidueTemplate> val) {
 			templates.addAll(val);
@@ -108,8 +131,25 @@ public class AtomConnectivity {
 			return this;
 		}
 
+		/**
+		 * Save the atom pairs to this directory after computing them, and read them back
+		 * instead of computing them on the next run with the same templates.
+		 *
+		 * Snapshots are named by a hash of the template atoms and bonds, so many sets of templates
+		 * can share one directory.
+		 */
+		public Builder setSnapshotDir(File val) {
+			snapshotDir = val;
+			return this;
+		}
+
+		public Builder setLazy(boolean val) {
+			isLazy = val;
+			return this;
+		}
+
 		public AtomConnectivity build() {
-			return new AtomConnectivity(new ArrayList<>(templates), parallelism);
+			return new AtomConnectivity(new ArrayList<>(templates), parallelism, snapshotDir, isLazy && snapshotDir == null);
 		}
 	}
 
@@ -222,17 +262,81 @@ public class AtomConnectivity {
 		}
 	}
 
-	private Map<Key1,AtomPairs> atomPairs1;
-	private Map<Key2,AtomPairs> atomPairs2;
-	private Map<KeySeparate,AtomPairs> atomPairsSeparate;
+	public final boolean isLazy;
+
+	private final Map<Key1,AtomPairs> atomPairs1;
+	private final Map<Key2,AtomPairs> atomPairs2;
+	private final Map<KeySeparate,AtomPairs> atomPairsSeparate;
 
-	private AtomConnectivity(List<ResidueTemplate> templates, Parallelism parallelism) {
+	private AtomConnectivity(List<ResidueTemplate> templates, Parallelism parallelism, File snapshotDir, boolean isLazy) {
 
 		// make sure we have residue templates
 		if (templates == null || templates.isEmpty()) {
 			throw new IllegalArgumentException("templates cannot be empty. Try adding templates from a molecule or a conf space");
 		}
 
+		this.isLazy = isLazy;
+
+		if (isLazy) {
+
+			// all the energy calculator threads share these, so they need to be concurrent
+			// pairs get computed in getAtomPairs() as needed
+			atomPairs1 = new ConcurrentHashMap<>();
+			atomPairs2 = new ConcurrentHashMap<>();
+			atomPairsSeparate = new ConcurrentHashMap<>();
+			return;
+		}
+
+		// NOTE: eager maps can hold nulls, for templates that can't make peptide bonds
+		atomPairs1 = new HashMap<>();
+		atomPairs2 = new HashMap<>();
+		atomPairsSeparate = new HashMap<>();
+
+		if (snapshotDir == null) {
+			computePairs(templates, parallelism);
+			return;
+		}
+
+		// sort the templates, so the snapshot layout depends only on the template contents
+		Map<ResidueTemplate,String> fingerprints = new HashMap<>();
+		for (ResidueTemplate templ : templates) {
+			fingerprints.put(templ, fingerprint(templ));
+		}
+		templates = new ArrayList<>(templates);
+		templates.sort(Comparator.comparing(fingerprints::get));
+
+		ContentHasher hasher = new ContentHasher()
+			.add(SnapshotVersion)
+			.add(templates.size());
+		for (ResidueTemplate templ : templates) {
+			hasher.add(fingerprints.get(templ));
+		}
+		File file = new File(snapshotDir, "connectivity." + hasher.toHex() + ".dat");
+
+		// try the snapshot first
+		if (file.exists()) {
+			try {
+				readSnapshot(file, templates);
+				return;
+			} catch (RuntimeException ex) {
+				System.out.println("WARNING: can't read atom connectivity snapshot, will compute it again: " + ex.getMessage());
+				atomPairs1.clear();
+				atomPairs2.clear();
+				atomPairsSeparate.clear();
+			}
+		}
+
+		computePairs(templates, parallelism);
+
+		try {
+			writeSnapshot(file, templates);
+		} catch (IOException ex) {
+			System.out.println("WARNING: can't write atom connectivity snapshot, will have to compute it again next time: " + ex.getMessage());
+		}
+	}
+
+	private void computePairs(List<ResidueTemplate> templates, Parallelism parallelism) {
+
 		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
 		
 			/* DEBUG: show template info
@@ -247,64 +351,36 @@ public class AtomConnectivity {
 			*/
 
 			// do singles
-			atomPairs1 = new HashMap<>();
 			for (int i=0; i<templates.size(); i++) {
 				ResidueTemplate templ1  = templates.get(i);
 				tasks.submit(
 						() -> makeSingle(templ1),
-						(AtomPairs pairs) -> {
-							boolean wasAdded = atomPairs1.put(new Key1(templ1), pairs) == null;
-							assert (wasAdded);
-						}
+						(AtomPairs pairs) -> putSingle(templ1, pairs)
 				);
 			}
 			tasks.waitForFinish();
 
 			// do doubles
-			atomPairs2 = new HashMap<>();
 			for (int i=0; i<templates.size(); i++) {
 				ResidueTemplate templ1  = templates.get(i);
 				for (int j=0; j<templates.size(); j++) {
 					ResidueTemplate templ2  = templates.get(j);
-
-					// make the forward order
 					tasks.submit(
 							() -> makeDouble(templ1, templ2),
-							(AtomPairs pairs) -> {
-								boolean wasAdded = atomPairs2.put(new Key2(templ1, templ2, true), pairs) == null;
-								assert (wasAdded);
-
-								// make the reverse order
-								AtomPairs swappedPairs = makeSwappedPairs(pairs);
-								boolean wasSwappedAdded = atomPairs2.put(new Key2(templ1, templ2, false), swappedPairs) == null;
-								assert (wasSwappedAdded);
-							}
+							(AtomPairs pairs) -> putDouble(templ1, templ2, pairs)
 					);
 				}
 			}
 			tasks.waitForFinish();
 
 			// do separates
-			atomPairsSeparate = new HashMap<>();
 			for (int i=0; i<templates.size(); i++) {
 				ResidueTemplate templ1  = templates.get(i);
 				for (int j=0; j<=i; j++) {
 					ResidueTemplate templ2  = templates.get(j);
-
-					// make the forward order
 					tasks.submit(
 							() -> makeSeparate(templ1, templ2),
-							(AtomPairs pairs) -> {
-								boolean wasAdded = atomPairsSeparate.put(new KeySeparate(templ1, templ2), pairs) == null;
-								assert (wasAdded);
-
-								// make the reverse order if needed
-								if (templ1 != templ2) {
-									AtomPairs swappedPairs = makeSwappedPairs(pairs);
-									boolean wasSwappedAdded = atomPairsSeparate.put(new KeySeparate(templ2, templ1), swappedPairs) == null;
-									assert (wasSwappedAdded);
-								}
-							}
+							(AtomPairs pairs) -> putSeparate(templ1, templ2, pairs)
 					);
 				}
 			}
@@ -312,26 +388,268 @@ public class AtomConnectivity {
 		}
 	}
 
+	private void putSingle(ResidueTemplate templ, AtomPairs pairs) {
+		boolean wasAdded = atomPairs1.put(new Key1(templ), pairs) == null;
+		assert (wasAdded);
+	}
+
+	private void putDouble(ResidueTemplate templ1, ResidueTemplate templ2, AtomPairs pairs) {
+
+		// add the forward order
+		boolean wasAdded = atomPairs2.put(new Key2(templ1, templ2, true), pairs) == null;
+		assert (wasAdded);
+
+		// make the reverse order
+		AtomPairs swappedPairs = makeSwappedPairs(pairs);
+		boolean wasSwappedAdded = atomPairs2.put(new Key2(templ1, templ2, false), swappedPairs) == null;
+		assert (wasSwappedAdded);
+	}
+
+	private void putSeparate(ResidueTemplate templ1, ResidueTemplate templ2, AtomPairs pairs) {
+
+		// add the forward order
+		boolean wasAdded = atomPairsSeparate.put(new KeySeparate(templ1, templ2), pairs) == null;
+		assert (wasAdded);
+
+		// make the reverse order if needed
+		if (templ1 != templ2) {
+			AtomPairs swappedPairs = makeSwappedPairs(pairs);
+			boolean wasSwappedAdded = atomPairsSeparate.put(new KeySeparate(templ2, templ1), swappedPairs) == null;
+			assert (wasSwappedAdded);
+		}
+	}
+
+
+	// SNAPSHOTS
+
+	/*
+		Snapshot layout (big-endian):
+			"ACON", version byte, 3 padding bytes
+			int numTemplates
+			then the atom pairs for: each single, each double (i,j), each separate (i,j<=i)
+		where each atom pairs is, for each neighbor type: int numPairs, int[numPairs*2] atom indices
+		and missing atom pairs (eg, templates that can't make peptide bonds) are a single -1
+	*/
+
+	/** bump this when the snapshot layout changes, or when the atom pairs would be computed differently */
+	private static final byte SnapshotVersion = 1;
+	private static final int SnapshotHeaderSize = 12;
+
+	/** describes everything about a template that affects its atom pairs */
+	private static String fingerprint(ResidueTemplate templ) {
+		StringBuilder buf = new StringBuilder();
+		buf.append(templ.name);
+		List<Atom> atoms = templ.templateRes.atoms;
+		for (Atom atom : atoms) {
+			buf.append(";");
+			buf.append(atom.name);
+			int[] bonded = atom.bonds.stream()
+				.mapToInt(atoms::indexOf)
+				.sorted()
+				.toArray();
+			for (int i : bonded) {
+				buf.append(",");
+				buf.append(i);
+			}
+		}
+		return buf.toString();
+	}
+
+	private void writeSnapshot(File file, List<ResidueTemplate> templates)
+	throws IOException {
+
+		file.getParentFile().mkdirs();
+
+		// write to a temp file first and move it into place, so other processes never see a partial snapshot
+		File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+		try {
+
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+
+				out.write("ACON".getBytes(StandardCharsets.US_ASCII));
+				out.writeByte(SnapshotVersion);
+				out.write(new byte[3]);
+				out.writeInt(templates.size());
+
+				for (ResidueTemplate templ1 : templates) {
+					writePairs(out, atomPairs1.get(new Key1(templ1)));
+				}
+				for (ResidueTemplate templ1 : templates) {
+					for (ResidueTemplate templ2 : templates) {
+						writePairs(out, atomPairs2.get(new Key2(templ1, templ2, true)));
+					}
+				}
+				for (int i=0; i<templates.size(); i++) {
+					for (int j=0; j<=i; j++) {
+						writePairs(out, atomPairsSeparate.get(new KeySeparate(templates.get(i), templates.get(j))));
+					}
+				}
+			}
+
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	private static void writePairs(DataOutputStream out, AtomPairs pairs)
+	throws IOException {
+
+		if (pairs == null) {
+			out.writeInt(-1);
+			return;
+		}
+
+		for (AtomNeighbors.Type type : AtomNeighbors.Type.values()) {
+			int[][] typedPairs = pairs.getPairs(type);
+			out.writeInt(typedPairs.length);
+			for (int[] pair : typedPairs) {
+				out.writeInt(pair[0]);
+				out.writeInt(pair[1]);
+			}
+		}
+	}
+
+	private void readSnapshot(File file, List<ResidueTemplate> templates) {
+
+		ByteBuffer buf;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException ex) {
+			throw new RuntimeException("can't read atom connectivity snapshot: " + file, ex);
+		}
+
+		// check the magic number, version, and size
+		byte[] magic = new byte[4];
+		for (int i=0; i<magic.length; i++) {
+			magic[i] = buf.get(i);
+		}
+		if (!new String(magic, StandardCharsets.US_ASCII).equals("ACON")) {
+			throw new IllegalArgumentException("not an atom connectivity snapshot");
+		}
+		byte version = buf.get(4);
+		if (version != SnapshotVersion) {
+			throw new IllegalArgumentException("unrecognized atom connectivity snapshot version: " + version);
+		}
+		int numTemplates = buf.getInt(8);
+		if (numTemplates != templates.size()) {
+			throw new IllegalArgumentException("snapshot has " + numTemplates + " templates, expected " + templates.size());
+		}
+
+		buf.position(SnapshotHeaderSize);
+		IntBuffer in = buf.slice().asIntBuffer();
+
+		// the pairs don't need fresh residues, so share one per template
+		Map<ResidueTemplate,Residue> residues = new HashMap<>();
+		for (ResidueTemplate templ : templates) {
+			residues.put(templ, makeResidue(templ));
+		}
+
+		for (ResidueTemplate templ1 : templates) {
+			putSingle(templ1, readPairs(in, residues.get(templ1), residues.get(templ1)));
+		}
+		for (ResidueTemplate templ1 : templates) {
+			for (ResidueTemplate templ2 : templates) {
+				putDouble(templ1, templ2, readPairs(in, residues.get(templ1), residues.get(templ2)));
+			}
+		}
+		for (int i=0; i<templates.size(); i++) {
+			ResidueTemplate templ1 = templates.get(i);
+			for (int j=0; j<=i; j++) {
+				ResidueTemplate templ2 = templates.get(j);
+				putSeparate(templ1, templ2, readPairs(in, residues.get(templ1), residues.get(templ2)));
+			}
+		}
+
+		if (in.hasRemaining()) {
+			throw new IllegalArgumentException("atom connectivity snapshot has trailing data");
+		}
+	}
+
+	private static AtomPairs readPairs(IntBuffer in, Residue res1, Residue res2) {
+
+		AtomPairs pairs = null;
+
+		for (AtomNeighbors.Type type : AtomNeighbors.Type.values()) {
+
+			int n = in.get();
+			if (n == -1 && type.ordinal() == 0) {
+				return null;
+			}
+			if (pairs == null) {
+				pairs = new AtomPairs(res1, res2);
+			}
+
+			int[][] typedPairs = new int[n][2];
+			for (int i=0; i<n; i++) {
+				typedPairs[i][0] = in.get();
+				typedPairs[i][1] = in.get();
+			}
+			pairs.pairsByType[type.ordinal()] = typedPairs;
+		}
+
+		return pairs;
+	}
+
 	public AtomPairs getAtomPairs(Residue res1, Residue res2) {
 
 		// do we want intra pairs?
 		if (res1 == res2) {
-			return atomPairs1.get(new Key1(res1.template));
+			return getSingle(res1.template);
 		}
 
 		// are they bonded together?
 		if (isDipeptide(res1, res2)) {
 			// yup, in forward order
-			return atomPairs2.get(new Key2(res1.template, res2.template, true));
+			return getDouble(res1.template, res2.template, true);
 		} else if (isDipeptide(res2, res1)) {
 			// yup, in reverse order
-			return atomPairs2.get(new Key2(res2.template, res1.template, false));
+			return getDouble(res2.template, res1.template, false);
 		} else {
 			// res1 and res2 are not bonded
-			return atomPairsSeparate.get(new KeySeparate(res1.template, res2.template));
+			return getSeparate(res1.template, res2.template);
 		}
 	}
 
+	// NOTE: in lazy mode, try a plain get() first, since it never locks,
+	// and hits are far more common than misses after warm-up
+
+	private AtomPairs getSingle(ResidueTemplate templ) {
+		Key1 key = new Key1(templ);
+		AtomPairs pairs = atomPairs1.get(key);
+		if (pairs == null && isLazy) {
+			pairs = atomPairs1.computeIfAbsent(key, (k) -> makeSingle(templ));
+		}
+		return pairs;
+	}
+
+	private AtomPairs getDouble(ResidueTemplate templ1, ResidueTemplate templ2, boolean isForward) {
+		Key2 key = new Key2(templ1, templ2, isForward);
+		AtomPairs pairs = atomPairs2.get(key);
+		if (pairs == null && isLazy) {
+			if (isForward) {
+				pairs = atomPairs2.computeIfAbsent(key, (k) -> makeDouble(templ1, templ2));
+			} else {
+				AtomPairs forwardPairs = getDouble(templ1, templ2, true);
+				if (forwardPairs != null) {
+					pairs = atomPairs2.computeIfAbsent(key, (k) -> makeSwappedPairs(forwardPairs));
+				}
+			}
+		}
+		return pairs;
+	}
+
+	private AtomPairs getSeparate(ResidueTemplate templ1, ResidueTemplate templ2) {
+		KeySeparate key = new KeySeparate(templ1, templ2);
+		AtomPairs pairs = atomPairsSeparate.get(key);
+		if (pairs == null && isLazy) {
+			pairs = atomPairsSeparate.computeIfAbsent(key, (k) -> makeSeparate(templ1, templ2));
+		}
+		return pairs;
+	}
+
 	private AtomPairs makeSingle(ResidueTemplate templ) {
 		Residue res = makeResidue(templ);
 		return makeAtomPairs(res, res);
@@ -0,0 +1,455 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.duke.cs.osprey.tools.VectorAlgebra;
+
+/**
+ * A cell list (a uniform grid, hashed by cell) over the atoms of some residues,
+ * for finding atoms near a point without looking at every atom.
+ *
+ * Atoms are binned by their coordinates when their residue is added, and re-binned by
+ * {@link #update(Residue)}. Distances are always measured with the current residue coords,
+ * so query results are exact as long as residues are updated after they move.
+ *
+ * Cells about the size of the typical query radius work best.
+ *
+ * Not thread-safe for writes, but concurrent queries are fine.
+ */
+public class CellList {
+
+	public static interface AtomVisitor {
+		void visit(Residue res, int atomIndex, double distSq);
+	}
+
+	// cell indices are packed into 21 bits each
+	private static final int IndexBits = 21;
+	private static final int MinIndex = -(1 << (IndexBits - 1));
+	private static final int MaxIndex = (1 << (IndexBits - 1)) - 1;
+	private static final long IndexMask = (1L << IndexBits) - 1;
+
+	/** a bag of atoms, each packed as (residue id << 32 | atom index) */
+	private static class Cell {
+
+		long[] atoms = new long[4];
+		int size = 0;
+
+		void add(long atom) {
+			if (size == atoms.length) {
+				atoms = Arrays.copyOf(atoms, size*2);
+			}
+			atoms[size++] = atom;
+		}
+
+		void remove(long atom) {
+			for (int i=0; i<size; i++) {
+				if (atoms[i] == atom) {
+					atoms[i] = atoms[--size];
+					return;
+				}
+			}
+			throw new IllegalStateException("atom not in cell");
+		}
+	}
+
+	public final double cellSize;
+
+	private final Map<Long,Cell> cells = new HashMap<>();
+	private final List<Residue> residues = new ArrayList<>();
+	private final Map<Residue,Integer> residueIds = new IdentityHashMap<>();
+
+	/** the cell key of each atom, by residue id, so updates know which cells atoms came from */
+	private final List<long[]> atomCells = new ArrayList<>();
+
+	private int numAtoms = 0;
+
+	// bounds of the cells ever used, so big queries know when they've seen everything
+	private int minX = Integer.MAX_VALUE;
+	private int minY = Integer.MAX_VALUE;
+	private int minZ = Integer.MAX_VALUE;
+	private int maxX = Integer.MIN_VALUE;
+	private int maxY = Integer.MIN_VALUE;
+	private int maxZ = Integer.MIN_VALUE;
+
+	public CellList(double cellSize) {
+		if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+			throw new IllegalArgumentException("cell size must be positive and finite, not " + cellSize);
+		}
+		this.cellSize = cellSize;
+	}
+
+	public CellList(double cellSize, Collection<Residue> residues) {
+		this(cellSize);
+		addAll(residues);
+	}
+
+	public int getNumResidues() {
+		return residueIds.size();
+	}
+
+	public int getNumAtoms() {
+		return numAtoms;
+	}
+
+	public boolean contains(Residue res) {
+		return residueIds.containsKey(res);
+	}
+
+	public void addAll(Collection<Residue> residues) {
+		for (Residue res : residues) {
+			add(res);
+		}
+	}
+
+	public void add(Residue res) {
+
+		if (residueIds.containsKey(res)) {
+			throw new IllegalArgumentException("residue " + res.fullName + " is already in the cell list");
+		}
+
+		int id = residues.size();
+		residues.add(res);
+		residueIds.put(res, id);
+		atomCells.add(binAtoms(res, id));
+	}
+
+	public void remove(Residue res) {
+
+		Integer id = residueIds.remove(res);
+		if (id == null) {
+			throw new IllegalArgumentException("residue " + res.fullName + " is not in the cell list");
+		}
+
+		unbinAtoms(id, atomCells.get(id));
+
+		// leave the id slot empty, so other ids don't change
+		residues.set(id, null);
+		atomCells.set(id, null);
+	}
+
+	/**
+	 * Re-bins the atoms of a residue after its coords changed.
+	 * Only atoms that moved to a different cell are touched.
+	 * If the residue has a different number of atoms (eg, after a mutation), all its atoms are re-binned.
+	 */
+	public void update(Residue res) {
+
+		Integer id = residueIds.get(res);
+		if (id == null) {
+			throw new IllegalArgumentException("residue " + res.fullName + " is not in the cell list");
+		}
+
+		long[] keys = atomCells.get(id);
+		if (keys.length != res.atoms.size()) {
+			unbinAtoms(id, keys);
+			atomCells.set(id, binAtoms(res, id));
+			return;
+		}
+
+		for (int i=0; i<keys.length; i++) {
+			long key = getKey(res.coords, i);
+			if (key != keys[i]) {
+				long atom = pack(id, i);
+				removeFromCell(keys[i], atom);
+				addToCell(key, atom);
+				keys[i] = key;
+			}
+		}
+	}
+
+	private long[] binAtoms(Residue res, int id) {
+		int n = res.atoms.size();
+		long[] keys = new long[n];
+		for (int i=0; i<n; i++) {
+			keys[i] = getKey(res.coords, i);
+			addToCell(keys[i], pack(id, i));
+		}
+		numAtoms += n;
+		return keys;
+	}
+
+	private void unbinAtoms(int id, long[] keys) {
+		for (int i=0; i<keys.length; i++) {
+			removeFromCell(keys[i], pack(id, i));
+		}
+		numAtoms -= keys.length;
+	}
+
+	private void addToCell(long key, long atom) {
+		cells.computeIfAbsent(key, (k) -> new Cell()).add(atom);
+	}
+
+	private void removeFromCell(long key, long atom) {
+		Cell cell = cells.get(key);
+		cell.remove(atom);
+		if (cell.size == 0) {
+			cells.remove(key);
+		}
+	}
+
+	private static long pack(int id, int atomIndex) {
+		return ((long)id << 32) | atomIndex;
+	}
+
+	private int getIndex(double coord) {
+		double index = Math.floor(coord/cellSize);
+		if (!(index >= MinIndex && index <= MaxIndex)) {
+			throw new IllegalArgumentException(String.format(
+				"coordinate %f is out of range for cell size %f", coord, cellSize
+			));
+		}
+		return (int)index;
+	}
+
+	private long getKey(double[] coords, int atomIndex) {
+
+		int x = getIndex(coords[atomIndex*3]);
+		int y = getIndex(coords[atomIndex*3 + 1]);
+		int z = getIndex(coords[atomIndex*3 + 2]);
+
+		minX = Math.min(minX, x);
+		minY = Math.min(minY, y);
+		minZ = Math.min(minZ, z);
+		maxX = Math.max(maxX, x);
+		maxY = Math.max(maxY, y);
+		maxZ = Math.max(maxZ, z);
+
+		return makeKey(x, y, z);
+	}
+
+	private static long makeKey(int x, int y, int z) {
+		return ((x & IndexMask) << (IndexBits*2)) | ((y & IndexMask) << IndexBits) | (z & IndexMask);
+	}
+
+	private static int unpackIndex(long key, int shift) {
+		// sign-extend the 21-bit index
+		return (int)(key << (64 - IndexBits - shift) >> (64 - IndexBits));
+	}
+
+	private static interface CandidateVisitor {
+		void visit(int id, int atomIndex);
+	}
+
+	/**
+	 * visits every atom in the cells that overlap the cube around the point,
+	 * which includes (at least) all the atoms within the radius
+	 */
+	private void forEachCandidate(double x, double y, double z, double radius, CandidateVisitor visitor) {
+
+		if (cells.isEmpty()) {
+			return;
+		}
+
+		// pad the radius a little, so rounding can't drop atoms right on the edge
+		radius += 1e-6*(1 + radius);
+
+		// clamp the cube to the cells ever used
+		int x1 = Math.max(minX, (int)Math.max(MinIndex, Math.floor((x - radius)/cellSize)));
+		int y1 = Math.max(minY, (int)Math.max(MinIndex, Math.floor((y - radius)/cellSize)));
+		int z1 = Math.max(minZ, (int)Math.max(MinIndex, Math.floor((z - radius)/cellSize)));
+		int x2 = Math.min(maxX, (int)Math.min(MaxIndex, Math.floor((x + radius)/cellSize)));
+		int y2 = Math.min(maxY, (int)Math.min(MaxIndex, Math.floor((y + radius)/cellSize)));
+		int z2 = Math.min(maxZ, (int)Math.min(MaxIndex, Math.floor((z + radius)/cellSize)));
+		if (x1 > x2 || y1 > y2 || z1 > z2) {
+			return;
+		}
+
+		long numCubeCells = (long)(x2 - x1 + 1)*(y2 - y1 + 1)*(z2 - z1 + 1);
+		if (numCubeCells <= cells.size()) {
+
+			// look up the cells in the cube
+			for (int cx=x1; cx<=x2; cx++) {
+				for (int cy=y1; cy<=y2; cy++) {
+					for (int cz=z1; cz<=z2; cz++) {
+						Cell cell = cells.get(makeKey(cx, cy, cz));
+						if (cell != null) {
+							visitCell(cell, visitor);
+						}
+					}
+				}
+			}
+
+		} else {
+
+			// the cube is bigger than the occupied cells, so just check all the occupied cells
+			for (Map.Entry<Long,Cell> entry : cells.entrySet()) {
+				long key = entry.getKey();
+				int cx = unpackIndex(key, IndexBits*2);
+				int cy = unpackIndex(key, IndexBits);
+				int cz = unpackIndex(key, 0);
+				if (cx >= x1 && cx <= x2 && cy >= y1 && cy <= y2 && cz >= z1 && cz <= z2) {
+					visitCell(entry.getValue(), visitor);
+				}
+			}
+		}
+	}
+
+	private static void visitCell(Cell cell, CandidateVisitor visitor) {
+		for (int i=0; i<cell.size; i++) {
+			long atom = cell.atoms[i];
+			visitor.visit((int)(atom >>> 32), (int)atom);
+		}
+	}
+
+	/** visits all the atoms within the radius of the point, in no particular order */
+	public void forEachAtomWithin(double x, double y, double z, double radius, AtomVisitor visitor) {
+		double radiusSq = radius*radius;
+		forEachCandidate(x, y, z, radius, (id, atomIndex) -> {
+			Residue res = residues.get(id);
+			double distSq = distSq(res.coords, atomIndex, x, y, z);
+			if (distSq <= radiusSq) {
+				visitor.visit(res, atomIndex, distSq);
+			}
+		});
+	}
+
+	public void forEachAtomWithin(double[] point, double radius, AtomVisitor visitor) {
+		forEachAtomWithin(point[0], point[1], point[2], radius, visitor);
+	}
+
+	private static double distSq(double[] coords, int atomIndex, double x, double y, double z) {
+		double dx = coords[atomIndex*3] - x;
+		double dy = coords[atomIndex*3 + 1] - y;
+		double dz = coords[atomIndex*3 + 2] - z;
+		return dx*dx + dy*dy + dz*dz;
+	}
+
+	/** gets all the atoms within the radius of the point, in no particular order */
+	public List<Atom> getAtomsWithin(double[] point, double radius) {
+		List<Atom> atoms = new ArrayList<>();
+		forEachAtomWithin(point, radius, (res, atomIndex, distSq) -> atoms.add(res.atoms.get(atomIndex)));
+		return atoms;
+	}
+
+	/** gets the residues with any atom within the radius of the point, in the order they were added */
+	public List<Residue> getResiduesWithin(double[] point, double radius) {
+		boolean[] isNear = new boolean[residues.size()];
+		forEachAtomWithin(point, radius, (res, atomIndex, distSq) -> isNear[residueIds.get(res)] = true);
+		List<Residue> near = new ArrayList<>();
+		for (int id=0; id<isNear.length; id++) {
+			if (isNear[id]) {
+				near.add(residues.get(id));
+			}
+		}
+		return near;
+	}
+
+	/**
+	 * Returns true if any atom in the cell list is within dist of any atom in the residue.
+	 *
+	 * Distances are measured exactly like {@link Residue#distanceTo(Residue)}, so
+	 * this always agrees with checking distanceTo(other) <= dist for every residue in the list.
+	 */
+	public boolean isWithin(Residue res, double dist) {
+		for (int i=0; i<res.atoms.size(); i++) {
+			int atomIndex = i;
+			boolean[] found = { false };
+			forEachCandidate(res.coords[i*3], res.coords[i*3 + 1], res.coords[i*3 + 2], dist, (id, otherAtomIndex) -> {
+				if (!found[0] && VectorAlgebra.distance(res.coords, atomIndex, residues.get(id).coords, otherAtomIndex) <= dist) {
+					found[0] = true;
+				}
+			});
+			if (found[0]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the k atoms nearest to the point, nearest first.
+	 * Ties are broken by the order the atoms were added, so results are deterministic.
+	 */
+	public List<Atom> getNearestAtoms(double[] point, int k) {
+
+		k = Math.min(k, numAtoms);
+		if (k <= 0) {
+			return Collections.emptyList();
+		}
+
+		// the farthest any atom can be, given the cells used
+		double maxDist = 0;
+		for (int cx : new int[] { minX, maxX + 1 }) {
+			for (int cy : new int[] { minY, maxY + 1 }) {
+				for (int cz : new int[] { minZ, maxZ + 1 }) {
+					double dx = cx*cellSize - point[0];
+					double dy = cy*cellSize - point[1];
+					double dz = cz*cellSize - point[2];
+					maxDist = Math.max(maxDist, Math.sqrt(dx*dx + dy*dy + dz*dz));
+				}
+			}
+		}
+
+		// search ever bigger spheres until we find enough atoms
+		// everything inside the sphere is found, so the nearest k in the sphere are the nearest k overall
+		List<long[]> found = new ArrayList<>();
+		for (double radius = cellSize; ; radius *= 2) {
+
+			found.clear();
+			forEachAtomWithin(point, radius, (res, atomIndex, distSq) -> found.add(new long[] {
+				Double.doubleToLongBits(distSq),
+				pack(residueIds.get(res), atomIndex)
+			}));
+
+			if (found.size() >= k || radius >= maxDist) {
+				break;
+			}
+		}
+
+		// non-negative doubles sort the same as their bits
+		found.sort((a, b) -> {
+			int c = Long.compare(a[0], b[0]);
+			if (c != 0) {
+				return c;
+			}
+			return Long.compare(a[1], b[1]);
+		});
+
+		List<Atom> nearest = new ArrayList<>();
+		for (int i=0; i<Math.min(k, found.size()); i++) {
+			long atom = found.get(i)[1];
+			nearest.add(residues.get((int)(atom >>> 32)).atoms.get((int)atom));
+		}
+		return nearest;
+	}
+}
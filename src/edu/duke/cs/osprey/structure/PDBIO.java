@@ -32,10 +32,26 @@
 
 package edu.duke.cs.osprey.structure;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 
 import edu.duke.cs.osprey.confspace.RCTuple;
@@ -45,7 +61,9 @@ import edu.duke.cs.osprey.kstar.SequenceAnalyzer;
 import org.apache.commons.lang3.text.WordUtils;
 
 import edu.duke.cs.osprey.structure.Residue.SecondaryStructure;
+import edu.duke.cs.osprey.tools.ContentHasher;
 import edu.duke.cs.osprey.tools.FileTools;
+import edu.duke.cs.osprey.tools.UnpossibleError;
 
 /**
  * this is a clean PDB reader that doesn't know anything about templates or bonds
@@ -128,11 +146,71 @@ public class PDBIO {
 	}
 
 	public static Molecule readFile(String path) {
-		return read(FileTools.readFile(path));
+		return readFile(new File(path));
 	}
 
 	public static Molecule readFile(File file) {
-		return read(FileTools.readFile(file));
+		return readAll(mapFile(file)).get(0);
+	}
+
+	/**
+	 * Reads a PDB file, but saves the parsed records to a binary file in the cache directory,
+	 * so the next read of a file with the same contents can skip parsing the text.
+	 *
+	 * Cache files are named by a hash of the PDB file contents, so many PDB files can share one directory.
+	 */
+	public static Molecule readFile(File file, File cacheDir) {
+		return readAll(file, cacheDir).get(0);
+	}
+
+	public static List<Molecule> readAll(File file, File cacheDir) {
+
+		ByteBuffer pdbBuf = mapFile(file);
+		File cacheFile = new File(cacheDir, "pdb." + new ContentHasher().add(pdbBuf).toHex() + ".dat");
+
+		// try the cache first
+		if (cacheFile.exists()) {
+			try {
+				MolsBuilder builder = new MolsBuilder();
+				BinaryRecords.read(mapFile(cacheFile), builder);
+				return builder.build();
+			} catch (RuntimeException ex) {
+				System.out.println("WARNING: can't read cached PDB records, will parse the PDB file again: " + ex.getMessage());
+			}
+		}
+
+		// parse the text, and save the records too
+		MolsBuilder builder = new MolsBuilder();
+		BinaryRecords.RecordWriter records = new BinaryRecords.RecordWriter();
+		parse(pdbBuf, new RecordSink() {
+
+			@Override
+			public void model() {
+				builder.model();
+				records.model();
+			}
+
+			@Override
+			public void atom(String resName, String atomName, String elem, char alt, double x, double y, double z, double bFactor, int atomNum) {
+				builder.atom(resName, atomName, elem, alt, x, y, z, bFactor, atomNum);
+				records.atom(resName, atomName, elem, alt, x, y, z, bFactor, atomNum);
+			}
+
+			@Override
+			public void secondaryStructure(String line) {
+				builder.secondaryStructure(line);
+				records.secondaryStructure(line);
+			}
+		});
+		List<Molecule> mols = builder.build();
+
+		try {
+			records.write(cacheFile);
+		} catch (IOException ex) {
+			System.out.println("WARNING: can't write cached PDB records, will have to parse the PDB file again next time: " + ex.getMessage());
+		}
+
+		return mols;
 	}
 
 	public static Molecule readResource(String path) {
@@ -144,34 +222,124 @@ public class PDBIO {
 	}
 
 	public static List<Molecule> readAll(String pdbText) {
-		List<Molecule> mols = readMols(pdbText);
-		readSecondaryStructure(mols, pdbText);
-		return mols;
+		// PDB files are plain ASCII, and a single-byte charset keeps the columns where they are
+		return readAll(ByteBuffer.wrap(pdbText.getBytes(StandardCharsets.ISO_8859_1)));
 	}
 
-	private static List<Molecule> readMols(String pdbText) {
+	private static List<Molecule> readAll(ByteBuffer pdbBuf) {
+		MolsBuilder builder = new MolsBuilder();
+		parse(pdbBuf, builder);
+		return builder.build();
+	}
 
-		List<Molecule> mols = new ArrayList<>();
-		Molecule mol = new Molecule();
-		mols.add(mol);
-		ResInfo resInfo = new ResInfo();
+	private static ByteBuffer mapFile(File file) {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException ex) {
+			throw new RuntimeException("can't read file: " + file, ex);
+		}
+	}
 
-		for (String line : FileTools.parseLines(pdbText)) {
-			line = padLine(line);
+	/** receives the records from a PDB file, in file order */
+	private static interface RecordSink {
+		void model();
+		void atom(String resName, String atomName, String elem, char alt, double x, double y, double z, double bFactor, int atomNum);
+		void secondaryStructure(String line);
+	}
 
-			if (isLine(line, "MODEL")) {
+	/** turns PDB records into molecules */
+	private static class MolsBuilder implements RecordSink {
 
-				// is this the first model?
-				if (mol.residues.isEmpty()) {
-					// ignore
-				} else {
-					// advance to the next molecule
-					resInfo.flush(mol);
-					mol = new Molecule();
-					mols.add(mol);
-				}
+		private final List<Molecule> mols = new ArrayList<>();
+		private final List<String> secondaryStructureLines = new ArrayList<>();
+		private Molecule mol = new Molecule();
+		private final ResInfo resInfo = new ResInfo();
 
-			} else if (isLine(line, "ATOM") || isLine(line, "HETATM")) {
+		MolsBuilder() {
+			mols.add(mol);
+		}
+
+		@Override
+		public void model() {
+
+			// is this the first model?
+			if (mol.residues.isEmpty()) {
+				// ignore
+			} else {
+				// advance to the next molecule
+				resInfo.flush(mol);
+				mol = new Molecule();
+				mols.add(mol);
+			}
+		}
+
+		@Override
+		public void atom(String resName, String atomName, String elem, char alt, double x, double y, double z, double bFactor, int atomNum) {
+
+			// should we start a new residue (with alts)?
+			if (!resName.equals(resInfo.name)) {
+				resInfo.flush(mol);
+				resInfo.name = resName;
+			}
+
+			// make the atom and check the element
+			Atom atom;
+			if (elem.isEmpty()) {
+				atom = new Atom(atomName);
+			} else {
+				atom = new Atom(atomName, elem);
+			}
+			if (atom.elementType.equalsIgnoreCase("du")) {
+				System.out.println(String.format("WARNING: Can't detect atom element: residue=%s, name=%s, element=%s\n"
+								+ "\nPlease include element types in the PDB file to avoid this problem.",
+						resInfo.name, atomName, elem
+				));
+			}
+
+			// save the rest of the atom properties
+			atom.BFactor = bFactor;
+			atom.modelAtomNumber = atomNum;
+
+			// update the res info with the atom
+			resInfo.addAtom(atom, x, y, z, alt);
+		}
+
+		@Override
+		public void secondaryStructure(String line) {
+			secondaryStructureLines.add(line);
+		}
+
+		public List<Molecule> build() {
+			resInfo.flush(mol);
+			readSecondaryStructure(mols, secondaryStructureLines);
+			return mols;
+		}
+	}
+
+	/**
+	 * parses PDB text at the byte level, straight from the buffer, without making a String for each line or field
+	 */
+	private static void parse(ByteBuffer buf, RecordSink sink) {
+
+		LineParser line = new LineParser(buf);
+
+		int n = buf.limit();
+		int start = 0;
+		while (start < n) {
+
+			// find the end of the line, same as BufferedReader.readLine()
+			int end = start;
+			while (end < n && buf.get(end) != '\n' && buf.get(end) != '\r') {
+				end++;
+			}
+			line.set(start, end);
+
+			if (line.isType("MODEL")) {
+
+				sink.model();
+
+			} else if (line.isType("ATOM") || line.isType("HETATM")) {
 
 				// eg
 				//           1         2         3         4         5         6         7         8
@@ -179,50 +347,455 @@ public class PDBIO {
 				// ATOM   1146  CB APRO A  38       5.781  17.860   0.637  0.45 12.10           C
 
 				// parse the line
-				int atomNum = Integer.parseInt(line.substring(6, 11).trim());
-				String atomName = line.substring(12,16).trim();
-				char alt = line.charAt(16);
-				String resName = trimRight(line.substring(17,27));
-				double x = Double.parseDouble(line.substring(30, 38).trim());
-				double y = Double.parseDouble(line.substring(38, 46).trim());
-				double z = Double.parseDouble(line.substring(46, 54).trim());
-				double bFactor = Double.parseDouble(defaultVal("0", line.substring(60, 66).trim()));
+				int atomNum = line.getInt(6, 11);
+				String atomName = line.getString(line.atomNames, 12, 16, true);
+				char alt = line.getChar(16);
+				String resName = line.getString(line.resNames, 17, 27, false);
+				double x = line.getDouble(30, 38);
+				double y = line.getDouble(38, 46);
+				double z = line.getDouble(46, 54);
+				double bFactor = line.isBlank(60, 66) ? 0 : line.getDouble(60, 66);
 
 				// read the element, but enforce proper capitalization so we can match to the names in PeriodicTable
-				String elem = WordUtils.capitalize(line.substring(76, 78).trim().toLowerCase());
+				String elem = line.getString(line.elements, 76, 78, true);
+
+				sink.atom(resName, atomName, elem, alt, x, y, z, bFactor, atomNum);
+
+			} else if (line.isType("HELIX") || line.isType("SHEET")) {
+
+				// these are rare, so just make a string
+				sink.secondaryStructure(padLine(line.toString()));
+			}
+
+			// skip the line terminator: \n, \r, or \r\n
+			if (end < n && buf.get(end) == '\r') {
+				end++;
+				if (end < n && buf.get(end) == '\n') {
+					end++;
+				}
+			} else if (end < n) {
+				end++;
+			}
+			start = end;
+		}
+	}
+
+	/**
+	 * reads fixed columns from one line of a PDB buffer
+	 * columns past the end of the line read as spaces, like the line was padded
+	 */
+	private static class LineParser {
+
+		private static final double[] Pow10 = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+		};
+
+		private final ByteBuffer buf;
+		private int start;
+		private int length;
+
+		// atom, residue, and element names repeat a lot, so share the strings
+		final StringCache atomNames = new StringCache(false);
+		final StringCache resNames = new StringCache(false);
+		final StringCache elements = new StringCache(true);
+
+		LineParser(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		void set(int start, int end) {
+			this.start = start;
+			this.length = end - start;
+		}
+
+		byte get(int col) {
+			if (col < length) {
+				return buf.get(start + col);
+			}
+			return ' ';
+		}
+
+		char getChar(int col) {
+			return (char)(get(col) & 0xff);
+		}
+
+		boolean isType(String type) {
+			for (int i=0; i<type.length(); i++) {
+				if (Character.toUpperCase(getChar(i)) != type.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int trimStart(int from, int to) {
+			while (from < to && (get(from) & 0xff) <= ' ') {
+				from++;
+			}
+			return from;
+		}
+
+		private int trimEnd(int from, int to) {
+			while (to > from && (get(to - 1) & 0xff) <= ' ') {
+				to--;
+			}
+			return to;
+		}
+
+		boolean isBlank(int from, int to) {
+			return trimStart(from, to) == to;
+		}
+
+		/** like String.substring(from, to).trim(), or just the right-side trim */
+		String getString(StringCache cache, int from, int to, boolean trimLeft) {
+			to = trimEnd(from, to);
+			if (trimLeft) {
+				from = trimStart(from, to);
+			}
+			return cache.get(this, from, to);
+		}
+
+		/** like Integer.parseInt(substring(from, to).trim()) */
+		int getInt(int from, int to) {
+
+			to = trimEnd(from, to);
+			from = trimStart(from, to);
 
-				// should we start a new residue (with alts)?
-				if (!resName.equals(resInfo.name)) {
-					resInfo.flush(mol);
-					resInfo.name = resName;
+			boolean isNegative = false;
+			int i = from;
+			if (i < to && (get(i) == '-' || get(i) == '+')) {
+				isNegative = get(i) == '-';
+				i++;
+			}
+			if (i == to || to - i > 9) {
+				return Integer.parseInt(substring(from, to));
+			}
+
+			int val = 0;
+			for (; i<to; i++) {
+				int digit = get(i) - '0';
+				if (digit < 0 || digit > 9) {
+					return Integer.parseInt(substring(from, to));
 				}
+				val = val*10 + digit;
+			}
+			return isNegative ? -val : val;
+		}
+
+		/**
+		 * like Double.parseDouble(substring(from, to).trim())
+		 *
+		 * Plain decimals with up to 15 significant digits are parsed exactly:
+		 * the digits and the power of ten are both exact doubles, so a single division
+		 * rounds correctly and gives the same value as Double.parseDouble().
+		 * Anything else falls back to Double.parseDouble().
+		 */
+		double getDouble(int from, int to) {
+
+			to = trimEnd(from, to);
+			from = trimStart(from, to);
+
+			boolean isNegative = false;
+			int i = from;
+			if (i < to && (get(i) == '-' || get(i) == '+')) {
+				isNegative = get(i) == '-';
+				i++;
+			}
 
-				// make the atom and check the element
-				Atom atom;
-				if (elem.isEmpty()) {
-					atom = new Atom(atomName);
+			long mantissa = 0;
+			int numDigits = 0;
+			int numFractionDigits = 0;
+			boolean sawPoint = false;
+			for (; i<to; i++) {
+				byte b = get(i);
+				if (b == '.' && !sawPoint) {
+					sawPoint = true;
+				} else if (b >= '0' && b <= '9') {
+					mantissa = mantissa*10 + (b - '0');
+					numDigits++;
+					if (sawPoint) {
+						numFractionDigits++;
+					}
 				} else {
-					atom = new Atom(atomName, elem);
+					return Double.parseDouble(substring(from, to));
 				}
-				if (atom.elementType.equalsIgnoreCase("du")) {
-					System.out.println(String.format("WARNING: Can't detect atom element: residue=%s, name=%s, element=%s\n"
-									+ "\nPlease include element types in the PDB file to avoid this problem.",
-							resInfo.name, atomName, elem
-					));
+			}
+			if (numDigits == 0 || numDigits > 15 || numFractionDigits >= Pow10.length) {
+				return Double.parseDouble(substring(from, to));
+			}
+
+			double val = mantissa/Pow10[numFractionDigits];
+			return isNegative ? -val : val;
+		}
+
+		String substring(int from, int to) {
+			char[] chars = new char[to - from];
+			for (int i=from; i<to; i++) {
+				chars[i - from] = getChar(i);
+			}
+			return new String(chars);
+		}
+
+		@Override
+		public String toString() {
+			return substring(0, length);
+		}
+	}
+
+	/** maps byte ranges to strings, without allocating anything for strings it has seen before */
+	private static class StringCache {
+
+		private final boolean capitalize;
+
+		private byte[][] keys = new byte[64][];
+		private String[] vals = new String[64];
+		private int size = 0;
+
+		StringCache(boolean capitalize) {
+			this.capitalize = capitalize;
+		}
+
+		String get(LineParser line, int from, int to) {
+
+			int hash = 1;
+			for (int i=from; i<to; i++) {
+				hash = hash*31 + line.get(i);
+			}
+
+			int mask = keys.length - 1;
+			for (int slot=mix(hash) & mask; ; slot=(slot + 1) & mask) {
+
+				byte[] key = keys[slot];
+				if (key == null) {
+
+					// cache miss, make the string
+					key = new byte[to - from];
+					for (int i=from; i<to; i++) {
+						key[i - from] = line.get(i);
+					}
+					String val = line.substring(from, to);
+					if (capitalize) {
+						val = WordUtils.capitalize(val.toLowerCase());
+					}
+					keys[slot] = key;
+					vals[slot] = val;
+					size++;
+					if (size*2 > keys.length) {
+						grow();
+					}
+					return val;
 				}
 
-				// save the rest of the atom properties
-				atom.BFactor = bFactor;
-				atom.modelAtomNumber = atomNum;
+				if (matches(key, line, from, to)) {
+					return vals[slot];
+				}
+			}
+		}
 
-				// update the res info with the atom
-				resInfo.addAtom(atom, x, y, z, alt);
+		private static int mix(int hash) {
+			return hash ^ (hash >>> 16);
+		}
+
+		private static boolean matches(byte[] key, LineParser line, int from, int to) {
+			if (key.length != to - from) {
+				return false;
+			}
+			for (int i=0; i<key.length; i++) {
+				if (key[i] != line.get(from + i)) {
+					return false;
+				}
 			}
+			return true;
 		}
 
-		resInfo.flush(mol);
+		private void grow() {
+			byte[][] oldKeys = keys;
+			String[] oldVals = vals;
+			keys = new byte[oldKeys.length*2][];
+			vals = new String[oldVals.length*2];
+			int mask = keys.length - 1;
+			for (int i=0; i<oldKeys.length; i++) {
+				byte[] key = oldKeys[i];
+				if (key == null) {
+					continue;
+				}
+				int hash = 1;
+				for (byte b : key) {
+					hash = hash*31 + b;
+				}
+				int slot = mix(hash) & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				vals[slot] = oldVals[i];
+			}
+		}
+	}
 
-		return mols;
+	/**
+	 * A compact binary copy of the records in a PDB file, so they can be read back without parsing text.
+	 *
+	 * Layout (big-endian):
+	 *   "OPDB", version byte, 3 padding bytes
+	 *   then a sequence of records, each starting with a type byte:
+	 *     'T' int length, UTF-8 bytes     defines the next string id
+	 *     'M'                             a MODEL line
+	 *     'A' int resName, int atomName, int elem (string ids), byte alt,
+	 *         double x, double y, double z, double bFactor, int atomNum
+	 *     'S' int line (string id)        a HELIX or SHEET line
+	 *     'E'                             end of records
+	 */
+	private static class BinaryRecords {
+
+		static final byte Version = 1;
+
+		static class RecordWriter implements RecordSink {
+
+			private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			private final DataOutputStream out = new DataOutputStream(bytes);
+			private final Map<String,Integer> stringIds = new HashMap<>();
+
+			RecordWriter() {
+				try {
+					out.write("OPDB".getBytes(StandardCharsets.US_ASCII));
+					out.writeByte(Version);
+					out.write(new byte[3]);
+				} catch (IOException ex) {
+					throw new UnpossibleError();
+				}
+			}
+
+			private int stringId(String val)
+			throws IOException {
+				Integer id = stringIds.get(val);
+				if (id == null) {
+					id = stringIds.size();
+					stringIds.put(val, id);
+					byte[] utf8 = val.getBytes(StandardCharsets.UTF_8);
+					out.writeByte('T');
+					out.writeInt(utf8.length);
+					out.write(utf8);
+				}
+				return id;
+			}
+
+			@Override
+			public void model() {
+				try {
+					out.writeByte('M');
+				} catch (IOException ex) {
+					throw new UnpossibleError();
+				}
+			}
+
+			@Override
+			public void atom(String resName, String atomName, String elem, char alt, double x, double y, double z, double bFactor, int atomNum) {
+				try {
+					int resNameId = stringId(resName);
+					int atomNameId = stringId(atomName);
+					int elemId = stringId(elem);
+					out.writeByte('A');
+					out.writeInt(resNameId);
+					out.writeInt(atomNameId);
+					out.writeInt(elemId);
+					out.writeByte(alt);
+					out.writeDouble(x);
+					out.writeDouble(y);
+					out.writeDouble(z);
+					out.writeDouble(bFactor);
+					out.writeInt(atomNum);
+				} catch (IOException ex) {
+					throw new UnpossibleError();
+				}
+			}
+
+			@Override
+			public void secondaryStructure(String line) {
+				try {
+					int lineId = stringId(line);
+					out.writeByte('S');
+					out.writeInt(lineId);
+				} catch (IOException ex) {
+					throw new UnpossibleError();
+				}
+			}
+
+			public void write(File file)
+			throws IOException {
+
+				out.writeByte('E');
+				out.flush();
+
+				// write to a temp file first and move it into place, so other processes never see a partial file
+				file.getAbsoluteFile().getParentFile().mkdirs();
+				File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+				try {
+					try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+						bytes.writeTo(fileOut);
+					}
+					Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					tempFile.delete();
+				}
+			}
+		}
+
+		static void read(ByteBuffer buf, RecordSink sink) {
+
+			// check the magic number and version
+			byte[] magic = new byte[4];
+			buf.get(magic);
+			if (!new String(magic, StandardCharsets.US_ASCII).equals("OPDB")) {
+				throw new IllegalArgumentException("not a PDB records file");
+			}
+			byte version = buf.get();
+			if (version != Version) {
+				throw new IllegalArgumentException("unrecognized PDB records version: " + version);
+			}
+			buf.position(buf.position() + 3);
+
+			List<String> strings = new ArrayList<>();
+			while (true) {
+				byte type = buf.get();
+				switch (type) {
+
+					case 'T': {
+						byte[] utf8 = new byte[buf.getInt()];
+						buf.get(utf8);
+						strings.add(new String(utf8, StandardCharsets.UTF_8));
+					} break;
+
+					case 'M':
+						sink.model();
+					break;
+
+					case 'A': {
+						String resName = strings.get(buf.getInt());
+						String atomName = strings.get(buf.getInt());
+						String elem = strings.get(buf.getInt());
+						char alt = (char)(buf.get() & 0xff);
+						double x = buf.getDouble();
+						double y = buf.getDouble();
+						double z = buf.getDouble();
+						double bFactor = buf.getDouble();
+						int atomNum = buf.getInt();
+						sink.atom(resName, atomName, elem, alt, x, y, z, bFactor, atomNum);
+					} break;
+
+					case 'S':
+						sink.secondaryStructure(strings.get(buf.getInt()));
+					break;
+
+					case 'E':
+						return;
+
+					default:
+						throw new IllegalArgumentException("unrecognized PDB record type: " + type);
+				}
+			}
+		}
 	}
 
 	private static String padLine(String line) {
@@ -244,19 +817,12 @@ public class PDBIO {
 		return line.regionMatches(true, 0, type, 0, type.length());
 	}
 
-	private static String defaultVal(String defaultVal, String inVal) {
-		if (inVal == null || inVal.isEmpty()) {
-			return defaultVal;
-		}
-		return inVal;
-	}
-
-	private static void readSecondaryStructure(List<Molecule> mols, String pdbText) {
+	private static void readSecondaryStructure(List<Molecule> mols, List<String> lines) {
 
 		// NOTE: by default, residues are assigned LOOP secondary structure
 
 		// parse pass 2: read the helices and sheets
-		for (String line : FileTools.parseLines(pdbText)) {
+		for (String line : lines) {
 			line = padLine(line);
 
 			if (isLine(line, "HELIX")) {
@@ -314,27 +880,32 @@ public class PDBIO {
 	}
 
 	public static void writeFile(EnergyCalculator.EnergiedParametricMolecule epmol, String comment, String path) {
-		FileTools.writeFile(write(epmol, comment), path);
+		writeFile(epmol, comment, new File(path));
 	}
 
 	public static void writeFile(EnergyCalculator.EnergiedParametricMolecule epmol, String comment, File file) {
-		FileTools.writeFile(write(epmol, comment), file);
+		writeFile(epmol.pmol.mol, comment, epmol.energy, file);
 	}
 
 	public static void writeFile(Molecule mol, String path) {
-		FileTools.writeFile(write(mol), path);
+		writeFile(mol, new File(path));
 	}
 
 	public static void writeFile(Molecule mol, File file) {
-		FileTools.writeFile(write(mol), file);
+		writeFile(mol, null, null, file);
 	}
 
 	public static void writeFile(Molecule mol, String comment, Double energy, String path) {
-		FileTools.writeFile(write(mol, comment, energy, false), path);
+		writeFile(mol, comment, energy, new File(path));
 	}
 
 	public static void writeFile(Molecule mol, String comment, Double energy, File file) {
-		FileTools.writeFile(write(mol, comment, energy,false), file);
+		// stream the atoms straight to the file, rather than building the whole PDB in memory first
+		try (Writer out = new BufferedWriter(new FileWriter(file))) {
+			write(mol, comment, energy, false, out);
+		} catch (IOException ex) {
+			throw new RuntimeException("can't write file: " + file, ex);
+		}
 	}
 
 	public static String write(EnergyCalculator.EnergiedParametricMolecule epmol) {
@@ -350,8 +921,18 @@ public class PDBIO {
 	}
 
 	public static String write(Molecule mol, String comment, Double energy, boolean includeTer) {
+		StringWriter out = new StringWriter();
+		try {
+			write(mol, comment, energy, includeTer, out);
+		} catch (IOException ex) {
+			// StringWriter doesn't throw
+			throw new UnpossibleError();
+		}
+		return out.toString();
+	}
 
-		StringBuilder buf = new StringBuilder();
+	public static void write(Molecule mol, String comment, Double energy, boolean includeTer, Writer buf)
+	throws IOException {
 
 		int atomCounter = 1;
 
@@ -419,7 +1000,7 @@ public class PDBIO {
 				// write the element
 				setField(line, atom.elementType.toUpperCase(), 76, 77, Justify.Right);
 
-				buf.append(line);
+				buf.write(line);
 				buf.append("\n");
 			}
 
@@ -432,8 +1013,6 @@ public class PDBIO {
 		}
 
 		buf.append("END\n");
-
-		return buf.toString();
 	}
 
 	private static enum Justify {
@@ -484,14 +1063,6 @@ public class PDBIO {
 		field.getChars(0, size, line, start);
 	}
 
-	private static String trimRight(String str){
-		//modification of trim that only trims the right side
-		int len = str.length();
-		while( (len>0) && (str.charAt(len-1) <= ' ') )
-			len--;
-		return (len<str.length()) ? str.substring(0,len) : str;
-	}
-
 	public static void writeEnsemble(List<EnergyCalculator.EnergiedParametricMolecule> epmols, String filePattern) {
 
 		if (epmols.isEmpty()) {
@@ -254,7 +254,7 @@ public class Residue implements Serializable {
             throw new RuntimeException("ERROR: Template for "+fullName+" has the wrong number of atoms");
 
         //Within-residue bonds are exactly as in the template
-        copyIntraBondsFrom(template.templateRes);
+        copyIntraBondsFromTemplate();
         intraResBondsMarked = true;
     }
 
@@ -315,6 +315,37 @@ public class Residue implements Serializable {
         checkBonds();
     }
 
+    private void copyIntraBondsFromTemplate() {
+
+        // same as copyIntraBondsFrom(template.templateRes), but use the bond indices cached by the template
+        // rather than working out the bond matrix again for every residue
+        int[][] templateBonds = template.getIntraResBonds();
+        ArrayList<Atom> templateAtoms = template.templateRes.atoms;
+        int numAtoms = atoms.size();
+
+        // double check the residues match atoms
+        for (int i=0; i<numAtoms; i++) {
+            if (!atoms.get(i).name.equalsIgnoreCase(templateAtoms.get(i).name)) {
+                throw new Error("ERROR: Atom names don't match aross residues, can't copy bonds");
+            }
+        }
+
+        // copy the bonds
+        for (int i=0; i<numAtoms; i++) {
+            Atom atomi = atoms.get(i);
+            int[] bondedIndices = templateBonds[i];
+            if (atomi.bonds.isEmpty()) {
+                // size the list to fit, instead of the default capacity
+                atomi.bonds = new ArrayList<>(bondedIndices.length);
+            }
+            for (int j : bondedIndices) {
+                atomi.bonds.add(atoms.get(j));
+            }
+        }
+
+        checkBonds();
+    }
+
     public void checkTemplateAtomNames(){
         //check that atom names match between the residue and the template
         int numAtoms = atoms.size();
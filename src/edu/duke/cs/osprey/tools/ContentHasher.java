@@ -0,0 +1,104 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+
+package edu.duke.cs.osprey.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * Builds a SHA-256 hash of some inputs, eg to name cache files after their contents.
+ *
+ * Every value is written with a type tag and (for strings) a length,
+ * so different sequences of values can't collide by concatenation.
+ */
+public class ContentHasher {
+
+	private final MessageDigest digest;
+	private final ByteBuffer buf = ByteBuffer.allocate(9);
+
+	public ContentHasher() {
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new Error("SHA-256 should always be available", ex);
+		}
+	}
+
+	public ContentHasher add(String val) {
+		byte[] bytes = val.getBytes(StandardCharsets.UTF_8);
+		addTagged((byte)'s', bytes.length);
+		digest.update(bytes);
+		return this;
+	}
+
+	/** hashes the remaining bytes in the buffer, without moving its position */
+	public ContentHasher add(ByteBuffer val) {
+		ByteBuffer bytes = val.duplicate();
+		addTagged((byte)'B', bytes.remaining());
+		digest.update(bytes);
+		return this;
+	}
+
+	public ContentHasher add(int val) {
+		return addTagged((byte)'i', val);
+	}
+
+	public ContentHasher add(long val) {
+		return addTagged((byte)'l', val);
+	}
+
+	public ContentHasher add(boolean val) {
+		return addTagged((byte)'b', val ? 1 : 0);
+	}
+
+	private ContentHasher addTagged(byte tag, long val) {
+		buf.clear();
+		buf.put(tag);
+		buf.putLong(val);
+		digest.update(buf.array(), 0, buf.position());
+		return this;
+	}
+
+	/** finishes the hash and returns it as lower-case hex */
+	public String toHex() {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
@@ -35,6 +35,7 @@ package edu.duke.cs.osprey.tools;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public enum IntEncoding {
 
@@ -52,6 +53,16 @@ public enum IntEncoding {
 				throws IOException {
 			return in.readUnsignedByte();
 		}
+
+		@Override
+		public void write(ByteBuffer buf, int val) {
+			buf.put((byte)val);
+		}
+
+		@Override
+		public int read(ByteBuffer buf) {
+			return buf.get() & 0xff;
+		}
 	},
 	Short(2, 32767) {
 
@@ -66,6 +77,16 @@ public enum IntEncoding {
 				throws IOException {
 			return in.readUnsignedShort();
 		}
+
+		@Override
+		public void write(ByteBuffer buf, int val) {
+			buf.putShort((short)val);
+		}
+
+		@Override
+		public int read(ByteBuffer buf) {
+			return buf.getShort() & 0xffff;
+		}
 	},
 	Int(4, Integer.MAX_VALUE) {
 
@@ -80,6 +101,16 @@ public enum IntEncoding {
 				throws IOException {
 			return in.readInt();
 		}
+
+		@Override
+		public void write(ByteBuffer buf, int val) {
+			buf.putInt(val);
+		}
+
+		@Override
+		public int read(ByteBuffer buf) {
+			return buf.getInt();
+		}
 	};
 
 	public final int numBytes;
@@ -104,4 +135,6 @@ public enum IntEncoding {
 
 	public abstract void write(DataOutput out, int val) throws IOException;
 	public abstract int read(DataInput in) throws IOException;
+	public abstract void write(ByteBuffer buf, int val);
+	public abstract int read(ByteBuffer buf);
 }
@@ -116,7 +116,11 @@ public class Protractor {
     }
 
     public static double[] measureDihedralSinCos(double[] acoords, int aindex, double[] bcoords, int bindex, double[] ccoords, int cindex, double[] dcoords, int dindex) {
-        //This version returns the {sine,cosine} of the dihedral
+        return measureDihedralSinCos(acoords, aindex, bcoords, bindex, ccoords, cindex, dcoords, dindex, new double[2]);
+    }
+
+    public static double[] measureDihedralSinCos(double[] acoords, int aindex, double[] bcoords, int bindex, double[] ccoords, int cindex, double[] dcoords, int dindex, double[] out) {
+        //This version writes the {sine,cosine} of the dihedral into out, and returns it
 
         // This was not written by me, but I have checked it
         // If all 4 atoms lie in a plane and the first and fourth
@@ -191,7 +195,9 @@ public class Protractor {
             sin = -sin;
         }
 
-        return new double[] { sin, cos };
+        out[0] = sin;
+        out[1] = cos;
+        return out;
     }
 
     //return (sin(theta/2),cos(theta/2))
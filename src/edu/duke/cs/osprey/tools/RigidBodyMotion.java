@@ -45,6 +45,14 @@ public class RigidBodyMotion {
     double center2[];
 
 
+    public RigidBodyMotion() {
+        //identity motion that owns its centers and rotation,
+        //so it can be updated in place with setRotation() instead of making a new motion each time
+        center1 = new double[3];
+        rotation = RotationMatrix.identity();
+        center2 = center1;
+    }
+
     public RigidBodyMotion(double[] center1, RotationMatrix rotation, double[] center2) {
         this.center1 = center1;
         this.rotation = rotation;
@@ -87,24 +95,79 @@ public class RigidBodyMotion {
     }
 
 
+    public RigidBodyMotion setRotation(double cx, double cy, double cz, double fx, double fy, double fz, double sinAngle, double cosAngle){
+        //update this motion in place to rotate about (cx,cy,cz) with axis (fx,fy,fz)
+        //only for motions made with the no-arg constructor, since we write into the centers
+        setCenter(cx, cy, cz);
+        rotation.setAxisAngle(fx, fy, fz, sinAngle, cosAngle);
+        return this;
+    }
+
+    public RigidBodyMotion setCenter(double cx, double cy, double cz){
+        //update this motion in place to rotate about (cx,cy,cz), keeping the same rotation
+        //only for motions made with the no-arg constructor, since we write into the centers
+        center1[0] = cx;
+        center1[1] = cy;
+        center1[2] = cz;
+        if(center2 != center1)
+            System.arraycopy(center1, 0, center2, 0, 3);
+        return this;
+    }
+
+    public RotationMatrix getRotation(){
+        return rotation;
+    }
+
     public void transform(double[] concatCoords){
         //given a bunch of concatenated 3D vectors, apply the transformation to each of them, in place
-        int numVectors = concatCoords.length/3;
-
-        for(int v=0; v<numVectors; v++)
-            transform(concatCoords,v);
+        transform(concatCoords, 0, concatCoords.length/3);
     }
 
     public void transform(double[] concatCoords, int index){
         //transform only the vector in concatCoords with the specified index
+        transform(concatCoords, index, index+1);
+    }
 
-        for(int a=0; a<3; a++)
-            concatCoords[3*index+a] -= center1[a];
-
-        rotation.applyRotation(concatCoords, index);
+    public void transform(double[] concatCoords, int startIndex, int stopIndex){
+        //transform the vectors in concatCoords with indices in [startIndex,stopIndex), in place
+        //the matrix and centers are read once into locals, so the loop only touches the coords
+
+        double[][] m = rotation.matrix;
+        double m00 = m[0][0], m01 = m[0][1], m02 = m[0][2];
+        double m10 = m[1][0], m11 = m[1][1], m12 = m[1][2];
+        double m20 = m[2][0], m21 = m[2][1], m22 = m[2][2];
+        double c1x = center1[0], c1y = center1[1], c1z = center1[2];
+        double c2x = center2[0], c2y = center2[1], c2z = center2[2];
+
+        for(int i=3*startIndex; i<3*stopIndex; i+=3){
+            double x = concatCoords[i] - c1x;
+            double y = concatCoords[i+1] - c1y;
+            double z = concatCoords[i+2] - c1z;
+            concatCoords[i] = m00*x + m01*y + m02*z + c2x;
+            concatCoords[i+1] = m10*x + m11*y + m12*z + c2y;
+            concatCoords[i+2] = m20*x + m21*y + m22*z + c2z;
+        }
+    }
 
-        for(int a=0; a<3; a++)
-            concatCoords[3*index+a] += center2[a];
+    public void transform(double[] concatCoords, int[] indices){
+        //transform only the vectors in concatCoords with the specified indices, in place
+
+        double[][] m = rotation.matrix;
+        double m00 = m[0][0], m01 = m[0][1], m02 = m[0][2];
+        double m10 = m[1][0], m11 = m[1][1], m12 = m[1][2];
+        double m20 = m[2][0], m21 = m[2][1], m22 = m[2][2];
+        double c1x = center1[0], c1y = center1[1], c1z = center1[2];
+        double c2x = center2[0], c2y = center2[1], c2z = center2[2];
+
+        for(int index : indices){
+            int i = 3*index;
+            double x = concatCoords[i] - c1x;
+            double y = concatCoords[i+1] - c1y;
+            double z = concatCoords[i+2] - c1z;
+            concatCoords[i] = m00*x + m01*y + m02*z + c2x;
+            concatCoords[i+1] = m10*x + m11*y + m12*z + c2y;
+            concatCoords[i+2] = m20*x + m21*y + m22*z + c2z;
+        }
     }
 
 }
@@ -107,6 +107,14 @@ public class RotationMatrix implements Serializable {
         matrix[2][2] = 1 - 2 * (xx + yy);
         */
 
+        matrix = new double[3][3];
+        setAxisAngle(fx, fy, fz, sin, cos);
+    }
+
+    // sets this matrix in place to the rotation from axis (fx,fy,fz) angle (sin,cos) representation
+    // so callers that rotate many times (e.g. DOFs during line searches) can reuse one matrix
+    public RotationMatrix setAxisAngle(double fx, double fy, double fz, double sin, double cos) {
+
         // normalize f
         double len = Math.sqrt(fx*fx + fy*fy + fz*fz);
         double ux = fx/len;
@@ -121,8 +129,6 @@ public class RotationMatrix implements Serializable {
         double uysin = uy*sin;
         double uzsin = uz*sin;
 
-        matrix = new double[3][3];
-
         matrix[0][0] = cos + ux*ux*omcos;
         matrix[0][1] = uxyomcos - uzsin;
         matrix[0][2] = uxzomcos + uysin;
@@ -134,6 +140,60 @@ public class RotationMatrix implements Serializable {
         matrix[2][0] = uxzomcos - uysin;
         matrix[2][1] = uyzomcos + uxsin;
         matrix[2][2] = cos + uz*uz*omcos;
+
+        return this;
+    }
+
+    // sets this matrix in place to the Tait-Bryan rotation: about x by angle1, then y by angle2, then z by angle3
+    // i.e., Rz(angle3)*Ry(angle2)*Rx(angle1), without building the three intermediate matrices
+    public RotationMatrix setTaitBryan(double angle1, double angle2, double angle3, boolean anglesInRadians) {
+
+        if (!anglesInRadians) {
+            angle1 = Math.toRadians(angle1);
+            angle2 = Math.toRadians(angle2);
+            angle3 = Math.toRadians(angle3);
+        }
+
+        double s1 = Math.sin(angle1);
+        double c1 = Math.cos(angle1);
+        double s2 = Math.sin(angle2);
+        double c2 = Math.cos(angle2);
+        double s3 = Math.sin(angle3);
+        double c3 = Math.cos(angle3);
+
+        matrix[0][0] = c3*c2;
+        matrix[0][1] = c3*s2*s1 - s3*c1;
+        matrix[0][2] = c3*s2*c1 + s3*s1;
+
+        matrix[1][0] = s3*c2;
+        matrix[1][1] = s3*s2*s1 + c3*c1;
+        matrix[1][2] = s3*s2*c1 - c3*s1;
+
+        matrix[2][0] = -s2;
+        matrix[2][1] = c2*s1;
+        matrix[2][2] = c2*c1;
+
+        return this;
+    }
+
+    // sets this matrix in place to M1*transpose(M2), e.g. the change from rotation M2 to rotation M1
+    // this matrix must not be M1 or M2
+    public RotationMatrix setMultiplyTranspose(RotationMatrix rotation1, RotationMatrix rotation2) {
+        double[][] m1 = rotation1.matrix;
+        double[][] m2 = rotation2.matrix;
+        for(int a=0;a<3;a++){
+            for(int b=0;b<3;b++){
+                matrix[a][b] = m1[a][0]*m2[b][0] + m1[a][1]*m2[b][1] + m1[a][2]*m2[b][2];
+            }
+        }
+        return this;
+    }
+
+    // copies the other matrix into this one, in place
+    public RotationMatrix set(RotationMatrix other) {
+        for(int a=0;a<3;a++)
+            System.arraycopy(other.matrix[a], 0, matrix[a], 0, 3);
+        return this;
     }
 
     public RotationMatrix multiply(RotationMatrix rotation2){
@@ -173,17 +233,17 @@ public class RotationMatrix implements Serializable {
         //apply rotation to the atom with the given index
         //(in place)
 
-        double val;
-        double ans[] = new double[3];
-        for(int a=0;a<3;a++){
-            val=0;
-            for(int b=0;b<3;b++){
-                val+=matrix[a][b]*x[3*index+b];
-            }
-            ans[a]=val;
-        }
-
-        System.arraycopy(ans,0,x,3*index,3);
+        int i = 3*index;
+        double x0 = x[i];
+        double x1 = x[i+1];
+        double x2 = x[i+2];
+
+        double[] row = matrix[0];
+        x[i] = row[0]*x0 + row[1]*x1 + row[2]*x2;
+        row = matrix[1];
+        x[i+1] = row[0]*x0 + row[1]*x1 + row[2]*x2;
+        row = matrix[2];
+        x[i+2] = row[0]*x0 + row[1]*x1 + row[2]*x2;
     }
 
 
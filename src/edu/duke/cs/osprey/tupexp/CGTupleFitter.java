@@ -37,6 +37,7 @@ package edu.duke.cs.osprey.tupexp;
  * @author mhall44
  */
 
+import edu.duke.cs.osprey.lute.SparseIncidenceMatrix;
 import java.util.ArrayList;
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.ArrayRealVector;
@@ -65,21 +66,28 @@ public class CGTupleFitter {
     //(A is matrix defined by samp, b is true energies)
 
     int numSamp, numTup;
-    TupleIndexMatrix tupIndMat;
-    ArrayList<int[]> samples;
+    SparseIncidenceMatrix A;//which tuples are in each sample, computed once for all the CG iterations
 
-    ArrayList<Double> weights;//weights for samples
+    double[] weights;//weights for samples
+
+    double[] initialCoeffs = null;//starting point for CG (e.g. the previous fit), or null to start at 0
 
     public CGTupleFitter(){}//for subclassing
 
     public CGTupleFitter(TupleIndexMatrix tim, ArrayList<int[]> samp, int numTuples, double[] trueVals, ArrayList<Double> weights){
-        //We'll fit the specified (sample,trueVal) pairs to an expansion in the tuples in tim
+        this(makeIncidenceMatrix(tim, samp, numTuples), trueVals, weights);
+    }
+
+    public CGTupleFitter(SparseIncidenceMatrix A, double[] trueVals, ArrayList<Double> weights){
+        //We'll fit the specified (sample,trueVal) pairs to an expansion in the tuples in A
 
-        samples = samp;
-        numSamp = samples.size();
-        numTup = numTuples;
-        tupIndMat = tim;
-        this.weights = weights;
+        this.A = A;
+        numSamp = A.numRows;
+        numTup = A.numCols;
+
+        this.weights = new double[numSamp];
+        for(int s=0; s<numSamp; s++)
+            this.weights[s] = weights.get(s);
 
 
         AtA = new RealLinearOperator(){
@@ -97,36 +105,39 @@ public class CGTupleFitter {
             @Override
             public RealVector operate(RealVector rv) throws DimensionMismatchException {
                 //first apply A
-                double Arv[] = new double[numSamp];
-                for(int s=0; s<numSamp; s++){
-                    ArrayList<Integer> sampTup = tupIndMat.calcSampleTuples(samples.get(s));
-                    for(int t : sampTup)
-                        Arv[s] += rv.getEntry(t);
-                }
-
-                //then apply A^T to Arv
-                double ans[] = new double[numTup];
-                for(int s=0; s<numSamp; s++){
-                    ArrayList<Integer> sampTup = tupIndMat.calcSampleTuples(samples.get(s));
-                    for(int t : sampTup)
-                        ans[t] += Arv[s] * weights.get(s);
-                }
-
-                return new ArrayRealVector(ans,false);//make RealVector without copying ans
+                double Arv[] = A.multA(rv.toArray());
+
+                //then apply A^T to W*Arv
+                for(int s=0; s<numSamp; s++)
+                    Arv[s] *= CGTupleFitter.this.weights[s];
+
+                return new ArrayRealVector(A.multAt(Arv),false);//make RealVector without copying
             }
 
         };
 
 
-        double atb[] = new double[numTup];
-        //apply A^T to true vals
-        for(int s=0; s<numSamp; s++){
-            ArrayList<Integer> sampTup = tupIndMat.calcSampleTuples(samples.get(s));
-            for(int t : sampTup)
-                atb[t] += trueVals[s] * weights.get(s);
-        }
+        //apply A^T to W*true vals
+        double wb[] = new double[numSamp];
+        for(int s=0; s<numSamp; s++)
+            wb[s] = trueVals[s] * this.weights[s];
+
+        Atb = new ArrayRealVector(A.multAt(wb),false);
+    }
+
+
+    static SparseIncidenceMatrix makeIncidenceMatrix(TupleIndexMatrix tim, ArrayList<int[]> samp, int numTuples){
+        return new SparseIncidenceMatrix(samp.size(), numTuples, (s, callback) -> {
+            for(int t : tim.calcSampleTuples(samp.get(s)))
+                callback.accept(t);
+        });
+    }
+
 
-        Atb = new ArrayRealVector(atb);
+    RealVector startingPoint(){
+        if(initialCoeffs==null)
+            return new ArrayRealVector(numTup);
+        return new ArrayRealVector(initialCoeffs);
     }
 
 
@@ -137,7 +148,7 @@ public class CGTupleFitter {
         //delta is target ratio of residual norm to true vals norm
 
         long startTime = System.currentTimeMillis();
-        RealVector ans = cg.solve(AtA, Atb);
+        RealVector ans = cg.solve(AtA, Atb, startingPoint());
 
         System.out.println( "Conjugate gradient fitting time (ms): " + (System.currentTimeMillis()-startTime) );
 
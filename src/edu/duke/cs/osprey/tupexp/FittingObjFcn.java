@@ -32,6 +32,7 @@
 
 package edu.duke.cs.osprey.tupexp;
 
+import edu.duke.cs.osprey.lute.SparseIncidenceMatrix;
 import java.util.ArrayList;
 
 /**
@@ -112,6 +113,12 @@ class FittingObjFcn {
 
 
     CGTupleFitter makeTupleFitter(TupleIndexMatrix tim, ArrayList<int[]> samp, int numTuples, double[] trueVals){
+        return makeTupleFitter(CGTupleFitter.makeIncidenceMatrix(tim, samp, numTuples), trueVals);
+    }
+
+
+    CGTupleFitter makeTupleFitter(SparseIncidenceMatrix A, double[] trueVals){
+        //A says which tuples are in each sample
 
         ArrayList<Double> tv = new ArrayList<>();//trueVals as ArrayList for use by computeWeights
         for(double tvv : trueVals)
@@ -120,15 +127,15 @@ class FittingObjFcn {
 
 
         //if(thresh==Double.POSITIVE_INFINITY)//basic least squares//DEBUG!!!
-        return new CGTupleFitter(tim, samp, numTuples, trueVals, weights);
+        return new CGTupleFitter(A, trueVals, weights);
 
         //DEBUG!!!!
         /*ArrayList<double[]> goodRegionBounds = new ArrayList<>();
-        int numSamp = samp.size();
+        int numSamp = A.numRows;
         for(int s=0; s<numSamp; s++)
             goodRegionBounds.add(goodRegionBoundsForSample(trueVals[s]));
         
-        return new IterativeCGTupleFitter(tim, samp, numTuples, goodRegionBounds);*/
+        return new IterativeCGTupleFitter(A, goodRegionBounds);*/
     }
 
 
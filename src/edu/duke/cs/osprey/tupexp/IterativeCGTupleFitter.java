@@ -32,6 +32,7 @@
 
 package edu.duke.cs.osprey.tupexp;
 
+import edu.duke.cs.osprey.lute.SparseIncidenceMatrix;
 import java.util.ArrayList;
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.ArrayRealVector;
@@ -51,8 +52,7 @@ public class IterativeCGTupleFitter extends CGTupleFitter {
     /*RealLinearOperator AtA;
     RealVector Atb;
     int numSamp, numTup;
-    TupleIndexMatrix tupIndMat;
-    ArrayList<int[]> samples;*/
+    SparseIncidenceMatrix A;*/
     ArrayList<double[]> goodRegionBounds;//bounds on the "good" region of fit values
     //for each sample
 
@@ -73,12 +73,16 @@ public class IterativeCGTupleFitter extends CGTupleFitter {
 
 
     public IterativeCGTupleFitter(TupleIndexMatrix tim, ArrayList<int[]> samp, int numTuples, ArrayList<double[]> goodRegionBounds){
-        //We'll fit the specified (sample,trueVal) pairs to an expansion in the tuples in tim
+        this(makeIncidenceMatrix(tim, samp, numTuples), goodRegionBounds);
+    }
+
 
-        samples = samp;
-        numSamp = samples.size();
-        numTup = numTuples;
-        tupIndMat = tim;
+    public IterativeCGTupleFitter(SparseIncidenceMatrix A, ArrayList<double[]> goodRegionBounds){
+        //We'll fit the specified (sample,trueVal) pairs to an expansion in the tuples in A
+
+        this.A = A;
+        numSamp = A.numRows;
+        numTup = A.numCols;
 
         this.goodRegionBounds = goodRegionBounds;
 
@@ -104,16 +108,8 @@ public class IterativeCGTupleFitter extends CGTupleFitter {
 
 
     double[] calcFitVals(RealVector rv){
-        double[] fitVals = new double[numSamp];
-        for(int s=0; s<numSamp; s++){
-            //if(isSampleRestrained(s)){//we need these for validation, if not for AtA aplication
-            ArrayList<Integer> sampTup = tupIndMat.calcSampleTuples(samples.get(s));
-            for(int t : sampTup)
-                fitVals[s] += rv.getEntry(t);
-            //}
-        }
-
-        return fitVals;
+        //we need these for validation, if not for AtA aplication
+        return A.multA(rv.toArray());
     }
 
 
@@ -121,15 +117,12 @@ public class IterativeCGTupleFitter extends CGTupleFitter {
         //first apply A
         double Arv[] = calcFitVals(rv);
 
-        //then apply A^T to Arv
-        double ans[] = new double[numTup];
+        //then apply A^T to Arv, for just the restrained samples
         for(int s=0; s<numSamp; s++){
-            if(isSampleRestrained(s)){
-                ArrayList<Integer> sampTup = tupIndMat.calcSampleTuples(samples.get(s));
-                for(int t : sampTup)
-                    ans[t] += Arv[s];
-            }
+            if(!isSampleRestrained(s))
+                Arv[s] = 0;
         }
+        double ans[] = A.multAt(Arv);
 
         //damping
         if(curCoeffs!=null){//not first iteration
@@ -180,16 +173,14 @@ public class IterativeCGTupleFitter extends CGTupleFitter {
 
 
     RealVector calcRHS(){//Calculate right-hand side vector of normal equations
-        double atb[] = new double[numTup];
         //apply A^T to true vals
+        double targets[] = new double[numSamp];
         for(int s=0; s<numSamp; s++){
             double curTarget = getCurTarget(s);
-            if(!Double.isNaN(curTarget)){//restraint active for sample
-                ArrayList<Integer> sampTup = tupIndMat.calcSampleTuples(samples.get(s));
-                for(int t : sampTup)
-                    atb[t] += curTarget;
-            }
+            if(!Double.isNaN(curTarget))//restraint active for sample
+                targets[s] = curTarget;
         }
+        double atb[] = A.multAt(targets);
 
         //damping.  Slightly penalizes changes from curCoeffs
         if(curCoeffs!=null){
@@ -268,7 +259,7 @@ public class IterativeCGTupleFitter extends CGTupleFitter {
             double iterStartTime = System.currentTimeMillis();
 
             Atb = calcRHS();
-            RealVector ans = cg.solve(AtA, Atb);
+            RealVector ans = cg.solve(AtA, Atb, curCoeffs!=null ? curCoeffs : startingPoint());
             double[] newFitVals = calcFitVals(ans);
 
             System.out.println( "Conjugate gradient fitting time (ms): " + (System.currentTimeMillis()-iterStartTime) );
@@ -58,6 +58,9 @@ public class NewConfETupleExpander extends TupleExpander {
         super(confSpace.getNumPos(), confSpace.getNumResConfsByPos(), pruningInterval, luteSettings);
         this.confECalc = confECalc;
         this.pruneMat = pruneMat;
+
+        //conf energies are thread-safe, so score samples on the energy calculator's threads
+        tasks = confECalc.tasks;
     }
 
 
@@ -49,6 +49,13 @@ public class TESampleSet implements Serializable {
     ArrayList<Double> trueVals = new ArrayList<>();//corresponding true values
     ArrayList<Double> curFitVals = new ArrayList<>();//corresponding current tuple-expansion values
 
+    //indices (in te.tuples) of the tuples in each sample
+    //kept up to date as tuples are added, so we don't have to match every sample against every tuple again
+    ArrayList<int[]> sampleTuples = new ArrayList<>();
+
+    //samples drawn but not scored yet (trueVals are NaN until scoreSamples() is called)
+    ArrayList<Integer> unscoredSamples = new ArrayList<>();
+
     ArrayList<Integer> tupleNumSamples = new ArrayList<>();//number of samples for each tuple
 
     ArrayList<Double> tupleResids = new ArrayList<>();//mean-square residual for samples involving this term
@@ -86,6 +93,8 @@ public class TESampleSet implements Serializable {
 
             updateSamples(tup);
         }
+
+        scoreSamples();
     }
 
 
@@ -108,13 +117,14 @@ public class TESampleSet implements Serializable {
             if( ! isNewSampleDistinct(sample) )
                 continue;
 
-            double trueVal = te.scoreAssignmentList(sample);
+            //scoring is deferred to scoreSamples(), so the energies can be computed in parallel
+            unscoredSamples.add(samples.size());
 
 
             ArrayList<Integer> sampTuples = calcSampleTuples(sample);
-            sampTuples.trimToSize();
 
             samples.add(sample);
+            sampleTuples.add(toArray(sampTuples));
 
 
             //DEBUG!!!!
@@ -127,12 +137,38 @@ public class TESampleSet implements Serializable {
                 tupleNumSamples.set( term, tupleNumSamples.get(term)+1 );
             }
 
-            trueVals.add(trueVal);
+            trueVals.add(Double.NaN);//to be replaced by scoreSamples
             curFitVals.add(0.);//to be replaced by updateFitVal
         }
     }
 
 
+    void scoreSamples(){
+        //compute the true values for all the samples drawn since the last call
+        if(unscoredSamples.isEmpty())
+            return;
+
+        ArrayList<int[]> toScore = new ArrayList<>();
+        for(int s : unscoredSamples)
+            toScore.add(samples.get(s));
+
+        double[] scores = te.scoreAssignmentLists(toScore);
+
+        for(int i=0; i<scores.length; i++)
+            trueVals.set(unscoredSamples.get(i), scores[i]);
+
+        unscoredSamples.clear();
+    }
+
+
+    static int[] toArray(ArrayList<Integer> list){
+        int[] ans = new int[list.size()];
+        for(int i=0; i<ans.length; i++)
+            ans[i] = list.get(i);
+        return ans;
+    }
+
+
 
     boolean isNewSampleDistinct(int[] sample){
         //Is the new sample distinct from those listed?  (i.e. those that
@@ -286,7 +322,7 @@ public class TESampleSet implements Serializable {
     void updateFitVals(FittingObjFcn fof){
         for(int s=0; s<samples.size(); s++)
             //curFitVals.set( s, te.fitValueForTuples(sampleTuples.get(s)) );
-            curFitVals.set( s, te.fitValueForTuples(calcSampleTuples(samples.get(s))) );
+            curFitVals.set( s, te.fitValueForTuples(sampleTuples.get(s)) );
 
         //and update residuals accordingly
         updateAllResids(fof);
@@ -308,7 +344,7 @@ public class TESampleSet implements Serializable {
             //double sampResid = fof.computeResid(curFitVals.get(s)-te.constTerm, targetVal);
             double sampResid = sampleResids.get(s);
             totalResid += sampResid;
-            for(int tup : calcSampleTuples(samples.get(s)) )
+            for(int tup : sampleTuples.get(s) )
                 tupleResids.set( tup, tupleResids.get(tup)+sampResid );
 
             //sampleResids.add(sampResid);
@@ -336,6 +372,12 @@ public class TESampleSet implements Serializable {
 
             if(te.sampleMatchesTuple(sample,te.tuples.get(tup))){
                 tupleNumSamples.set( tup, tupleNumSamples.get(tup)+1 );
+
+                //tup is the newest tuple, so the sample's tuple indices stay sorted
+                int[] oldTuples = sampleTuples.get(s);
+                int[] newTuples = Arrays.copyOf(oldTuples, oldTuples.length+1);
+                newTuples[oldTuples.length] = tup;
+                sampleTuples.set(s, newTuples);
             }
         }
 
@@ -34,12 +34,16 @@ package edu.duke.cs.osprey.tupexp;
 
 import edu.duke.cs.osprey.confspace.RCTuple;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.lute.SparseIncidenceMatrix;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Random;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  *
@@ -80,6 +84,10 @@ public abstract class TupleExpander implements Serializable {
     //by using isPairPrunedInSample rather than checking isPruned on whole conf
     //PLUG can break this
 
+    //if set, samples are scored in parallel on these threads
+    //(subclasses should only set this if scoreAssignmentList is thread-safe)
+    transient TaskExecutor tasks = null;
+
     public TupleExpander (int numPos, int[] numAllowed/*, double constTerm*/, double pruningInterval, LUTESettings luteSettings) {
         this.numPos = numPos;
         this.numAllowed = numAllowed;
@@ -116,6 +124,7 @@ public abstract class TupleExpander implements Serializable {
             return Double.POSITIVE_INFINITY;
 
 
+        ArrayList<int[]> samples = new ArrayList<>();
         for(int iter=0; iter<50/*00*/; iter++){
             int sample[] = new int[numPos];
             boolean success;
@@ -124,10 +133,12 @@ public abstract class TupleExpander implements Serializable {
                 success = tss.finishSample(sample);
             } while (!success);
 
-            double score = scoreAssignmentList(sample);
-            ans = Math.min(ans,score);
+            samples.add(sample);
         }
 
+        for(double score : scoreAssignmentLists(samples))
+            ans = Math.min(ans,score);
+
         System.out.println("Initial GMEC estimate: "+ans);
 
         return ans;
@@ -315,6 +326,7 @@ public abstract class TupleExpander implements Serializable {
 
         ArrayList<RCTuple> tuplesToFit = tuples;
         tuples = new ArrayList<>();
+        tupleTerms = null;//tuple indices change, so the old terms can't be used as a starting point
         numSampsPerTuple = 10;
 
         setupSamples(tuplesToFit);//set up the training set (in the process, prune tuples that don't provide reasonable energies)
@@ -415,10 +427,57 @@ public abstract class TupleExpander implements Serializable {
                 CVSamples.updateSamples(t);
         }
 
+        //score all the new samples at once, so the energies can be computed in parallel
+        System.out.println("Scoring samples...");
+        trainingSamples.scoreSamples();
+        CVSamples.scoreSamples();
+
         System.out.println("CV set done.");
     }
 
 
+    double[] scoreAssignmentLists(ArrayList<int[]> assignmentLists){
+        //score many assignment lists, in parallel if we have the threads for it
+        double[] scores = new double[assignmentLists.size()];
+
+        if(tasks==null){
+            for(int i=0; i<scores.length; i++)
+                scores[i] = scoreAssignmentList(assignmentLists.get(i));
+        }
+        else {
+            //the tasks might be shared (e.g. with the conf energy calculator), so wait for just our scores
+            //the tasks write the scores themselves, so they're all in by the time the latch opens
+            CountDownLatch latch = new CountDownLatch(scores.length);
+            AtomicReference<Throwable> failure = new AtomicReference<>(null);
+            for(int i=0; i<scores.length; i++){
+                final int fi = i;
+                tasks.submit(
+                    () -> {
+                        try {
+                            scores[fi] = scoreAssignmentList(assignmentLists.get(fi));
+                        } catch(Throwable t){
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            latch.countDown();
+                        }
+                        return null;
+                    },
+                    (ignored) -> {}
+                );
+            }
+            try {
+                latch.await();
+            } catch(InterruptedException ex){
+                throw new RuntimeException(ex);
+            }
+            if(failure.get()!=null)
+                throw new RuntimeException("can't score assignment list", failure.get());
+        }
+
+        return scores;
+    }
+
+
 
 
 
@@ -436,9 +495,17 @@ public abstract class TupleExpander implements Serializable {
         /*double fitTerms[] = SeriesFitter.fitSeriesIterative(samp, trueVals, weights, lambda, false, 1,
                     bCutoffs, bCutoffs2, 1, null);*/
 
-        TupleIndexMatrix tim = getTupleIndexMatrix();
-        CGTupleFitter fitter = fof.makeTupleFitter(tim, trainingSamples.samples, tuples.size(), trueVals);
-        //CGTupleFitter fitter = new CGTupleFitter(tim, trainingSamples.samples, tuples.size(), trueVals);
+        //the training samples already know their tuples, so just pack them into the fitting matrix
+        SparseIncidenceMatrix A = new SparseIncidenceMatrix(numTrainingSamples, tuples.size(), (s, callback) -> {
+            for(int t : trainingSamples.sampleTuples.get(s))
+                callback.accept(t);
+        });
+        CGTupleFitter fitter = fof.makeTupleFitter(A, trueVals);
+
+        //tuples only get added to the end of the list, so start CG from the previous fit
+        //(new tuples start at 0)
+        if(tupleTerms!=null && tupleTerms.length<=tuples.size())
+            fitter.initialCoeffs = Arrays.copyOf(tupleTerms, tuples.size());
 
         double fitTerms[] = fitter.doFit();
         tupleTerms = fitTerms;
@@ -486,7 +553,7 @@ public abstract class TupleExpander implements Serializable {
     }
 
 
-    double fitValueForTuples(ArrayList<Integer> tuples){
+    double fitValueForTuples(int[] tuples){
         //given a list of tuples to which a term belongs
         //return the fit value
         double ans = constTerm;
@@ -824,4 +824,215 @@ public class TestConfDB {
 			assertThat(table.getConfsByLowerBound(6.0).iterator().hasNext(), is(false));
 		});
 	}
+
+	private void cleanSegmentsDB() {
+		cleanDB();
+		File dir = new File(file.getPath() + ".segments");
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		dir.delete();
+		assertThat(dir.exists(), is(false));
+	}
+
+	private void withSegmentsDBTwice(Consumer<ConfDB> block1, Consumer<ConfDB> block2) {
+		cleanSegmentsDB();
+		ConfDB db = new ConfDB(confSpace, file, ConfDB.Backend.Segments);
+		try {
+			block1.accept(db);
+		} finally {
+			db.close();
+		}
+		db = new ConfDB(confSpace, file, ConfDB.Backend.Segments);
+		try {
+			block2.accept(db);
+		} finally {
+			try {
+				db.close();
+			} catch (Throwable t2) {}
+			cleanSegmentsDB();
+		}
+	}
+
+	@Test
+	public void segmentsWriteCloseReadAFewConfs() {
+		Sequence sequence = confSpace.makeWildTypeSequence();
+		withSegmentsDBTwice((db) -> {
+
+			ConfDB.SequenceDB sdb = db.getSequence(sequence);
+			sdb.setUpperBound(new int[] { 7, 9, 8 }, 3.2, 54L);
+			sdb.setUpperBound(new int[] { 1, 2, 3 }, 7.9, 42L);
+			sdb.setUpperBound(new int[] { 4, 0, 5 }, 2.3, 69L);
+			sdb.setLowerBound(new int[] { 4, 0, 5 }, 1.1, 70L);
+
+			assertThat(sdb.size(), is(3L));
+			assertConf(sdb.get(new int[] { 4, 0, 5 }), new int[] { 4, 0, 5 }, 1.1, 70L, 2.3, 69L);
+
+		}, (db) -> {
+
+			ConfDB.SequenceDB sdb = db.getSequence(sequence);
+			assertThat(sdb.size(), is(3L));
+
+			// confs should come out in lexicographic order of the assignments
+			Iterator<ConfDB.Conf> confs = sdb.iterator();
+			assertConfUpper(confs.next(), new int[] { 1, 2, 3 }, 7.9, 42L);
+			assertConf(confs.next(), new int[] { 4, 0, 5 }, 1.1, 70L, 2.3, 69L);
+			assertConfUpper(confs.next(), new int[] { 7, 9, 8 }, 3.2, 54L);
+			assertThat(confs.hasNext(), is(false));
+		});
+	}
+
+	@Test
+	public void segmentsEnergyIndices() {
+
+		int[][] assignments = {
+				{ 0, 0, 0 },
+				{ 1, 2, 3 },
+				{ 3, 2, 1 },
+		};
+
+		String tableId = "foo";
+		Consumer<ConfDB.ConfTable> check = (table) -> {
+
+			assertThat(table.size(), is(3L));
+
+			assertThat(table.energiedConfs(ConfDB.SortOrder.Assignment), contains(
+					new ConfSearch.EnergiedConf(assignments[0], 7.0, 27.0),
+					new ConfSearch.EnergiedConf(assignments[1], 10.0, 50.0),
+					new ConfSearch.EnergiedConf(assignments[2], 5.0, 26.0)
+			));
+
+			assertThat(table.energiedConfs(ConfDB.SortOrder.Score), contains(
+					new ConfSearch.EnergiedConf(assignments[2], 5.0, 26.0),
+					new ConfSearch.EnergiedConf(assignments[0], 7.0, 27.0),
+					new ConfSearch.EnergiedConf(assignments[1], 10.0, 50.0)
+			));
+
+			assertThat(table.energiedConfs(ConfDB.SortOrder.Energy), contains(
+					new ConfSearch.EnergiedConf(assignments[2], 5.0, 26.0),
+					new ConfSearch.EnergiedConf(assignments[0], 7.0, 27.0),
+					new ConfSearch.EnergiedConf(assignments[1], 10.0, 50.0)
+			));
+
+			assertThat(table.lowerBounds(), contains(5.0, 7.0, 10.0));
+			assertThat(table.upperBounds(), contains(26.0, 27.0, 50.0));
+
+			Iterator<ConfDB.Conf> iter = table.getConfsByUpperBound(50.0).iterator();
+			assertConf(iter.next(), assignments[1], 10.0, 10L, 50.0, 10L);
+			assertThat(iter.hasNext(), is(false));
+
+			assertThat(table.getConfsByLowerBound(6.0), is(nullValue()));
+			assertThat(table.getConfsByUpperBound(25.0), is(nullValue()));
+		};
+
+		withSegmentsDBTwice((db) -> {
+
+			ConfDB.ConfTable table = db.new ConfTable(tableId);
+
+			table.setBounds(assignments[0], 7.0, 27.0, 5L);
+			table.setBounds(assignments[1], 6.0, 25.0, 6L);
+			table.setBounds(assignments[2], 5.0, 26.0, 7L);
+			table.setBounds(assignments[1], 10.0, 50.0, 10L);
+
+			check.accept(table);
+
+		}, (db) -> {
+			check.accept(db.new ConfTable(tableId));
+		});
+	}
+
+	@Test
+	public void segmentsRemove() {
+
+		int[][] assignments = {
+				{ 0, 0, 0 },
+				{ 1, 2, 3 },
+				{ 3, 2, 1 },
+		};
+
+		String tableId = "foo";
+		withSegmentsDBTwice((db) -> {
+
+			ConfDB.ConfTable table = db.new ConfTable(tableId);
+
+			table.setBounds(assignments[0], 7.0, 27.0, 5L);
+			table.setBounds(assignments[1], 6.0, 25.0, 6L);
+			table.setBounds(assignments[2], 5.0, 26.0, 7L);
+			table.remove(assignments[1]);
+			table.remove(assignments[1]);
+
+			assertThat(table.size(), is(2L));
+			assertThat(table.get(assignments[1]), is(nullValue()));
+			assertThat(table.lowerBounds(), contains(5.0, 7.0));
+
+		}, (db) -> {
+
+			ConfDB.ConfTable table = db.new ConfTable(tableId);
+
+			assertThat(table.size(), is(2L));
+			assertThat(table.get(assignments[1]), is(nullValue()));
+			assertThat(table.energiedConfs(ConfDB.SortOrder.Score), contains(
+					new ConfSearch.EnergiedConf(assignments[2], 5.0, 26.0),
+					new ConfSearch.EnergiedConf(assignments[0], 7.0, 27.0)
+			));
+
+			// put it back
+			table.setBounds(assignments[1], 6.0, 25.0, 8L);
+			assertThat(table.size(), is(3L));
+			assertThat(table.lowerBounds(), contains(5.0, 6.0, 7.0));
+		});
+	}
+
+	@Test
+	public void segmentsEnergyIndicesUpdate() {
+
+		int[][] assignments = {
+				{ 0, 0, 0 },
+				{ 1, 2, 3 },
+				{ 3, 2, 1 },
+				{ 4, 5, 6 },
+		};
+
+		String tableId = "foo";
+		withSegmentsDBTwice((db) -> {
+
+			ConfDB.ConfTable table = db.new ConfTable(tableId);
+
+			table.setBounds(assignments[0], 7.0, 27.0, 5L);
+			table.setBounds(assignments[1], 6.0, 25.0, 6L);
+			assertThat(table.lowerBounds(), contains(6.0, 7.0));
+			assertThat(table.upperBounds(), contains(25.0, 27.0));
+
+			// write between reads, so the stale indices get merged with the new records
+			table.setBounds(assignments[2], 5.0, 26.0, 7L);
+			table.setBounds(assignments[1], 10.0, 50.0, 10L);
+			assertThat(table.lowerBounds(), contains(5.0, 7.0, 10.0));
+			assertThat(table.upperBounds(), contains(26.0, 27.0, 50.0));
+
+			table.remove(assignments[0]);
+			table.setBounds(assignments[3], 7.0, 30.0, 11L);
+			table.setBounds(assignments[3], 5.0, 29.0, 12L);
+			assertThat(table.energiedConfs(ConfDB.SortOrder.Score), contains(
+					new ConfSearch.EnergiedConf(assignments[2], 5.0, 26.0),
+					new ConfSearch.EnergiedConf(assignments[3], 5.0, 29.0),
+					new ConfSearch.EnergiedConf(assignments[1], 10.0, 50.0)
+			));
+			assertThat(table.getConfsByLowerBound(7.0), is(nullValue()));
+
+		}, (db) -> {
+
+			ConfDB.ConfTable table = db.new ConfTable(tableId);
+
+			assertThat(table.size(), is(3L));
+			assertThat(table.lowerBounds(), contains(5.0, 10.0));
+			assertThat(table.upperBounds(), contains(26.0, 29.0, 50.0));
+
+			table.setBounds(assignments[0], 1.0, 20.0, 13L);
+			assertThat(table.lowerBounds(), contains(1.0, 5.0, 10.0));
+			assertThat(table.upperBounds(), contains(20.0, 26.0, 29.0, 50.0));
+		});
+	}
 }
@@ -13,6 +13,7 @@ import edu.duke.cs.osprey.TestBase;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace.Position;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace.ResidueConf;
 import edu.duke.cs.osprey.dof.FreeDihedral;
+import edu.duke.cs.osprey.parallelism.Parallelism;
 import edu.duke.cs.osprey.restypes.ResidueTemplate;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.PDBIO;
@@ -537,4 +538,43 @@ public class TestSimpleConfSpace extends TestBase {
 
 		assertThat(separateConfSpace.shellResNumbers, is(combinedConfSpace.shellResNumbers));
 	}
+
+	@Test
+	public void parallelMatchesSerial() {
+
+		SimpleConfSpace serialConfSpace = makeManyPositionsConfSpace(Parallelism.makeCpu(1));
+		SimpleConfSpace parallelConfSpace = makeManyPositionsConfSpace(Parallelism.makeCpu(4));
+
+		assertThat(parallelConfSpace.positions.size(), is(serialConfSpace.positions.size()));
+		for (int i=0; i<serialConfSpace.positions.size(); i++) {
+			Position serialPos = serialConfSpace.positions.get(i);
+			Position parallelPos = parallelConfSpace.positions.get(i);
+			assertThat(parallelPos.index, is(serialPos.index));
+			assertThat(parallelPos.resNum, is(serialPos.resNum));
+			assertThat(parallelPos.resConfs.size(), is(serialPos.resConfs.size()));
+			for (int j=0; j<serialPos.resConfs.size(); j++) {
+				ResidueConf serialRC = serialPos.resConfs.get(j);
+				ResidueConf parallelRC = parallelPos.resConfs.get(j);
+				assertThat(parallelRC.index, is(j));
+				assertThat(parallelRC.template.name, is(serialRC.template.name));
+				assertThat(parallelRC.type, is(serialRC.type));
+				assertThat(parallelRC.rotamerIndex, is(serialRC.rotamerIndex));
+			}
+		}
+		assertThat(parallelConfSpace.shellResNumbers, is(serialConfSpace.shellResNumbers));
+	}
+
+	private SimpleConfSpace makeManyPositionsConfSpace(Parallelism parallelism) {
+		Strand strand = new Strand.Builder(mol)
+			.setParallelism(parallelism)
+			.build();
+		for (String resNum : new String[] { "A2", "A3", "A5", "A11", "A12", "A20", "A42", "A60" }) {
+			strand.flexibility.get(resNum).setLibraryRotamers(Strand.WildType, "VAL", "LEU", "PHE").addWildTypeRotamers();
+		}
+		return new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.setShellDistance(9)
+			.setParallelism(parallelism)
+			.build();
+	}
 }
@@ -0,0 +1,90 @@
+package edu.duke.cs.osprey.confspace;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class TestTripleSet {
+
+	private static final int NumPos = 7;
+	private static final int MaxNumConfs = 5;
+
+	private static List<Integer> key(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		RCTuple tuple = new RCTuple(pos1, rc1, pos2, rc2, pos3, rc3).sorted();
+		List<Integer> key = new ArrayList<>();
+		for (int i=0; i<3; i++) {
+			key.add(tuple.pos.get(i));
+			key.add(tuple.RCs.get(i));
+		}
+		return key;
+	}
+
+	@Test
+	public void empty() {
+		TripleSet triples = new TripleSet(NumPos, MaxNumConfs);
+		assertThat(triples.size(), is(0));
+		assertThat(triples.isEmpty(), is(true));
+		assertThat(triples.contains(0, 0, 1, 0, 2, 0), is(false));
+		assertThat(triples.remove(0, 0, 1, 0, 2, 0), is(false));
+	}
+
+	@Test
+	public void anyPositionOrder() {
+		TripleSet triples = new TripleSet(NumPos, MaxNumConfs);
+		assertThat(triples.add(4, 1, 0, 2, 6, 3), is(true));
+		assertThat(triples.add(0, 2, 4, 1, 6, 3), is(false));
+		assertThat(triples.contains(6, 3, 4, 1, 0, 2), is(true));
+		assertThat(triples.contains(6, 3, 4, 2, 0, 1), is(false));
+		assertThat(triples.size(), is(1));
+
+		List<List<Integer>> visited = new ArrayList<>();
+		triples.forEach((pos1, rc1, pos2, rc2, pos3, rc3) -> visited.add(Arrays.asList(pos1, rc1, pos2, rc2, pos3, rc3)));
+		assertThat(visited, contains(Arrays.asList(0, 2, 4, 1, 6, 3)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void samePosition() {
+		new TripleSet(NumPos, MaxNumConfs).add(1, 0, 1, 1, 2, 0);
+	}
+
+	@Test
+	public void randomAddsAndRemoves() {
+
+		Random rand = new Random(12345);
+		TripleSet triples = new TripleSet(NumPos, MaxNumConfs);
+		Set<List<Integer>> expected = new HashSet<>();
+
+		for (int i=0; i<20000; i++) {
+
+			int pos1 = rand.nextInt(NumPos);
+			int pos2 = (pos1 + 1 + rand.nextInt(NumPos - 1)) % NumPos;
+			int pos3;
+			do {
+				pos3 = rand.nextInt(NumPos);
+			} while (pos3 == pos1 || pos3 == pos2);
+			int rc1 = rand.nextInt(MaxNumConfs);
+			int rc2 = rand.nextInt(MaxNumConfs);
+			int rc3 = rand.nextInt(MaxNumConfs);
+			List<Integer> key = key(pos1, rc1, pos2, rc2, pos3, rc3);
+
+			switch (rand.nextInt(3)) {
+				case 0:
+					assertThat(triples.add(pos1, rc1, pos2, rc2, pos3, rc3), is(expected.add(key)));
+				break;
+				case 1:
+					assertThat(triples.remove(pos1, rc1, pos2, rc2, pos3, rc3), is(expected.remove(key)));
+				break;
+				default:
+					assertThat(triples.contains(pos1, rc1, pos2, rc2, pos3, rc3), is(expected.contains(key)));
+			}
+			assertThat(triples.size(), is(expected.size()));
+		}
+
+		Set<List<Integer>> observed = new HashSet<>();
+		new TripleSet(triples).forEach((pos1, rc1, pos2, rc2, pos3, rc3) -> observed.add(Arrays.asList(pos1, rc1, pos2, rc2, pos3, rc3)));
+		assertThat(observed, is(expected));
+	}
+}
@@ -35,6 +35,8 @@ package edu.duke.cs.osprey.dof;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+
 import org.junit.Test;
 
 import edu.duke.cs.osprey.TestBase;
@@ -43,6 +45,7 @@ import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.PDBIO;
 import edu.duke.cs.osprey.structure.Residue;
 import edu.duke.cs.osprey.tools.Protractor;
+import edu.duke.cs.osprey.tools.VectorAlgebra;
 
 /**
  *
@@ -100,4 +103,36 @@ public class TestDOFs extends TestBase {
         assertThat(Protractor.measureDihedral(new double[][] {N,CA,CB,OG}), isRelatively(45));
         assertThat(Protractor.measureDihedral(new double[][] {CA,CB,OG,HG}), isRelatively(-121));
     }
+
+    @Test
+    public void testStrandRotation(){
+
+        Molecule m = new Strand.Builder(PDBIO.readFile("examples/1CC8/1CC8.ss.pdb")).build().mol;
+        ArrayList<Residue> strandRes = new ArrayList<>(m.residues.subList(36, 40));
+        MoveableStrand strand = new MoveableStrand(strandRes);
+        ArrayList<DegreeOfFreedom> dofs = strand.getDOFs();// 3 rotations, then 3 translations
+
+        double[] initCoords = strandRes.get(0).coords.clone();
+        double initDist = distance(strandRes.get(0), "CA", strandRes.get(3), "CA");
+
+        // rigid motions shouldn't change any distances within the strand
+        dofs.get(0).apply(4);
+        dofs.get(1).apply(-3);
+        dofs.get(3).apply(0.8);
+        dofs.get(2).apply(2.5);
+        dofs.get(1).apply(1);
+        assertThat(distance(strandRes.get(0), "CA", strandRes.get(3), "CA"), isAbsolutely(initDist, 1e-10));
+        assertThat(strandRes.get(0).coords[0], not(isAbsolutely(initCoords[0], 1e-3)));
+
+        // undoing all the motions should put the strand back where it started
+        dofs.get(3).apply(0);
+        dofs.get(0).apply(0);
+        dofs.get(1).apply(0);
+        dofs.get(2).apply(0);
+        assertThat(strandRes.get(0).coords, isAbsolutely(initCoords, 1e-10));
+    }
+
+    private static double distance(Residue res1, String atomName1, Residue res2, String atomName2) {
+        return VectorAlgebra.distance(res1.getCoordsByAtomName(atomName1), res2.getCoordsByAtomName(atomName2));
+    }
 }
@@ -0,0 +1,90 @@
+package edu.duke.cs.osprey.dof.deeper.perts;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.TestBase;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.structure.Molecule;
+import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.structure.Residue;
+import edu.duke.cs.osprey.tools.RigidBodyMotion;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class TestLoopClosureCache extends TestBase {
+
+	private static Molecule mol;
+
+	@BeforeClass
+	public static void beforeClass() {
+		initDefaultEnvironment();
+		mol = new Strand.Builder(PDBIO.readFile("examples/1CC8/1CC8.ss.pdb")).build().mol;
+	}
+
+	private static LoopClosureAdjustment makeLCA(Molecule mol, int firstResIndex) {
+		return new LoopClosureAdjustment(new ArrayList<>(mol.residues.subList(firstResIndex, firstResIndex + 3)));
+	}
+
+	@Test
+	public void sharedAcrossCopies() {
+
+		Molecule mol1 = new Molecule(mol);
+		LoopClosureAdjustment lca1 = makeLCA(mol1, 20);
+		assertThat(lca1.doPerturbationMotion(0), is(true));
+		assertThat(lca1.solnCache.getNumMisses(), is(1L));
+		assertThat(lca1.solnCache.getNumHits(), is(0L));
+
+		// the unperturbed state doesn't move anything, so the copy starts from the same coords
+		Molecule mol2 = new Molecule(mol);
+		LoopClosureAdjustment lca2 = (LoopClosureAdjustment)lca1.copyForNewMolecule(mol2, null);
+		assertThat(lca2.solnCache, sameInstance(lca1.solnCache));
+		assertThat(lca2.doPerturbationMotion(0), is(true));
+		assertThat(lca2.solnCache.getNumMisses(), is(1L));
+		assertThat(lca2.solnCache.getNumHits(), is(1L));
+		assertThat(lca2.solnCache.size(), is(1));
+	}
+
+	@Test
+	public void matchesUncached() {
+
+		LoopClosureAdjustment lca = makeLCA(new Molecule(mol), 20);
+		RigidBodyMotion[][] expected = lca.calcSolns();
+		RigidBodyMotion[][] observed = lca.solnCache.get(lca.resDirectlyAffected, lca::calcSolns);
+		assertThat(observed.length, is(expected.length));
+
+		// the motions should move atoms the same way
+		Residue res = lca.resDirectlyAffected.get(1);
+		for (int s=0; s<expected.length; s++) {
+			for (int m=0; m<2; m++) {
+				double[] expectedCoords = res.coords.clone();
+				double[] observedCoords = res.coords.clone();
+				expected[s][m].transform(expectedCoords);
+				observed[s][m].transform(observedCoords);
+				assertThat(observedCoords, is(expectedCoords));
+			}
+		}
+
+		// and the second lookup should be a hit
+		assertThat(lca.solnCache.get(lca.resDirectlyAffected, lca::calcSolns), sameInstance(observed));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+
+		Molecule mol = new Molecule(TestLoopClosureCache.mol);
+		LoopClosureAdjustment lca1 = makeLCA(mol, 20);
+		LoopClosureAdjustment lca2 = makeLCA(mol, 30);
+		LoopClosureCache cache = new LoopClosureCache(1);
+
+		cache.get(lca1.resDirectlyAffected, lca1::calcSolns);
+		cache.get(lca2.resDirectlyAffected, lca2::calcSolns);
+		assertThat(cache.size(), is(1));
+
+		cache.get(lca1.resDirectlyAffected, lca1::calcSolns);
+		assertThat(cache.getNumMisses(), is(3L));
+		assertThat(cache.getNumHits(), is(0L));
+	}
+}
@@ -0,0 +1,89 @@
+package edu.duke.cs.osprey.ematrix.epic;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+import edu.duke.cs.osprey.TestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class TestCompiledEPoly extends TestBase {
+
+	@Test
+	public void matchesSeriesFitter() {
+
+		Random rand = new Random(12345);
+
+		for (int order=1; order<=6; order++) {
+			for (int numDOFs=1; numDOFs<=4; numDOFs++) {
+
+				int numParams = SeriesFitter.getNumParams(numDOFs, false, order);
+				double[] coeffs = new double[numParams];
+				for (int i=0; i<numParams; i++) {
+					coeffs[i] = rand.nextDouble()*2 - 1;
+				}
+
+				CompiledEPoly compiled = new CompiledEPoly(numDOFs, order, coeffs);
+				assertThat(compiled.numMonomials, is(numParams));
+				double[] scratch = compiled.makeScratch();
+
+				for (int s=0; s<20; s++) {
+
+					double[] z = new double[numDOFs];
+					for (int d=0; d<numDOFs; d++) {
+						z[d] = rand.nextDouble()*2 - 1;
+					}
+					DoubleMatrix1D zm = DoubleFactory1D.dense.make(z);
+
+					double expected = SeriesFitter.evalSeries(coeffs, zm, numDOFs, false, order);
+					assertThat(compiled.evaluate(z, scratch), isAbsolutely(expected, 1e-12));
+
+					// SeriesFitter's gradient always includes the quadratic terms, so check linear series directly
+					DoubleMatrix1D expectedGrad = order == 1
+						? DoubleFactory1D.dense.make(coeffs)
+						: SeriesFitter.evalSeriesGradient(coeffs, zm, numDOFs, false, order, order, null);
+					double[] grad = new double[numDOFs];
+					assertThat(compiled.gradient(z, grad, scratch), isAbsolutely(expected, 1e-12));
+					for (int d=0; d<numDOFs; d++) {
+						assertThat(grad[d], isAbsolutely(expectedGrad.get(d), 1e-10));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void noDOFs() {
+		CompiledEPoly compiled = new CompiledEPoly(0, 2, null);
+		assertThat(compiled.numMonomials, is(0));
+		assertThat(compiled.evaluate(new double[0]), is(0.0));
+	}
+
+	@Test
+	public void recompileNewCoeffs() {
+
+		int numDOFs = 2;
+		int order = 2;
+		int numParams = SeriesFitter.getNumParams(numDOFs, false, order);
+		DoubleMatrix1D zeros = DoubleFactory1D.dense.make(numDOFs);
+		EPoly poly = new EPoly(numDOFs, zeros, zeros, zeros, 0.0, new double[numParams], order, new ArrayList<>());
+
+		double[] z = { 0.5, -0.25 };
+		assertThat(poly.compile().evaluate(z), is(0.0));
+
+		// eg, a refit
+		double[] coeffs = new double[numParams];
+		for (int i=0; i<numParams; i++) {
+			coeffs[i] = i + 1;
+		}
+		poly.coeffs = coeffs;
+
+		double expected = SeriesFitter.evalSeries(coeffs, DoubleFactory1D.dense.make(z), numDOFs, false, order);
+		assertThat(expected, is(not(0.0)));
+		assertThat(poly.compile().evaluate(z), isAbsolutely(expected, 1e-12));
+	}
+}
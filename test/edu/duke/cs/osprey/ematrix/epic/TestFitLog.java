@@ -0,0 +1,70 @@
+package edu.duke.cs.osprey.ematrix.epic;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TestFitLog {
+
+	@Test
+	public void defaultsToStdout() {
+		assertThat(FitLog.out(), sameInstance(System.out));
+	}
+
+	@Test
+	public void capture() {
+
+		FitLog.Captured<Integer> captured = FitLog.capture(() -> {
+			FitLog.out().println("fitting");
+			FitLog.out().print("done");
+			return 5;
+		});
+
+		assertThat(captured.result, is(5));
+		assertThat(captured.log, is("fitting" + System.lineSeparator() + "done"));
+
+		// capturing is over, so back to stdout
+		assertThat(FitLog.out(), sameInstance(System.out));
+	}
+
+	@Test
+	public void captureParallel() {
+
+		List<String> logs = Collections.synchronizedList(new ArrayList<>());
+		try (TaskExecutor tasks = Parallelism.makeCpu(4).makeTaskExecutor()) {
+			for (int i=0; i<100; i++) {
+				final int fi = i;
+				tasks.submit(
+					() -> FitLog.capture(() -> {
+						for (int j=0; j<10; j++) {
+							FitLog.out().print(fi);
+							Thread.yield();
+						}
+						return null;
+					}),
+					(captured) -> logs.add(captured.log)
+				);
+			}
+			tasks.waitForFinish();
+		}
+
+		// each fit's log should only have its own output
+		assertThat(logs.size(), is(100));
+		for (String log : logs) {
+			assertThat(log.length(), greaterThanOrEqualTo(10));
+			String prefix = log.substring(0, log.length()/10);
+			StringBuilder expected = new StringBuilder();
+			for (int j=0; j<10; j++) {
+				expected.append(prefix);
+			}
+			assertThat(log, is(expected.toString()));
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package edu.duke.cs.osprey.energy;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.confspace.ParametricMolecule;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.structure.Residue;
+import org.junit.Test;
+
+public class TestClashScreen {
+
+	private static ParametricMolecule makeMolecule() {
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A2").setLibraryRotamers(Strand.WildType);
+		strand.flexibility.get("A42").setLibraryRotamers(Strand.WildType);
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+		return confSpace.makeMolecule(new int[] { 0, 0 });
+	}
+
+	@Test
+	public void wildType() {
+		ParametricMolecule pmol = makeMolecule();
+		ResidueInteractions inters = new ResidueInteractions();
+		inters.addComplete(pmol.mol.residues);
+		assertThat(new ClashScreen(1.0).isClashing(pmol.mol, inters), is(false));
+	}
+
+	@Test
+	public void overlappingResidues() {
+		ParametricMolecule pmol = makeMolecule();
+
+		// move A42 on top of A2
+		Residue res1 = pmol.mol.residues.getOrThrow("A2");
+		Residue res2 = pmol.mol.residues.getOrThrow("A42");
+		int ca1 = res1.getAtomIndexByName("CA");
+		int ca2 = res2.getAtomIndexByName("CA");
+		double[] offset = new double[3];
+		for (int d=0; d<3; d++) {
+			offset[d] = res1.coords[ca1*3 + d] - res2.coords[ca2*3 + d];
+		}
+		for (int i=0; i<res2.atoms.size(); i++) {
+			for (int d=0; d<3; d++) {
+				res2.coords[i*3 + d] += offset[d];
+			}
+		}
+
+		ClashScreen screen = new ClashScreen(1.0);
+
+		ResidueInteractions inters = new ResidueInteractions();
+		inters.addPair("A2", "A42");
+		assertThat(screen.isClashing(pmol.mol, inters), is(true));
+
+		// the clash doesn't count if the residues don't interact
+		inters = new ResidueInteractions();
+		inters.addSingle("A2");
+		inters.addSingle("A42");
+		assertThat(screen.isClashing(pmol.mol, inters), is(false));
+	}
+}
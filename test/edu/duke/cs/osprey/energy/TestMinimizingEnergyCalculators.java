@@ -129,6 +129,17 @@ public class TestMinimizingEnergyCalculators extends TestBase {
 				.setParallelism(Parallelism.makeCpu(2)));
 	}
 
+	@Test
+	public void energyCpuTwoGroups() {
+		assertEnergies(new EnergyCalculator.Builder(confSpace, ffparams)
+				.setType(EnergyCalculator.Type.Cpu)
+				.setParallelism(new Parallelism.Builder()
+					.setNumCpus(4)
+					.setNumSockets(2)
+					.build()
+				));
+	}
+
 	@Test
 	public void energyOpenclOneStream() {
 		assertEnergies(new EnergyCalculator.Builder(confSpace, ffparams)
@@ -0,0 +1,280 @@
+/*
+ ** This file is part of OSPREY 3.0
+ **
+ ** OSPREY Protein Redesign Software Version 3.0
+ ** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+ **
+ ** OSPREY is free software: you can redistribute it and/or modify
+ ** it under the terms of the GNU General Public License version 2
+ ** as published by the Free Software Foundation.
+ **
+ ** You should have received a copy of the GNU General Public License
+ ** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+ **
+ ** OSPREY relies on grants for its development, and since visibility
+ ** in the scientific literature is essential for our success, we
+ ** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+ ** document in this distribution for more information.
+ **
+ ** Contact Info:
+ **    Bruce Donald
+ **    Duke University
+ **    Department of Computer Science
+ **    Levine Science Research Center (LSRC)
+ **    Durham
+ **    NC 27708-0129
+ **    USA
+ **    e-mail: www.cs.duke.edu/brd/
+ **
+ ** <signature of Bruce Donald>, Mar 1, 2018
+ ** Bruce Donald, Professor of Computer Science
+ */
+
+package edu.duke.cs.osprey.energy;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.confspace.ConfSearch;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.structure.PDBIO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+
+public class TestSharedEnergyCache {
+
+	private static final File dir = new File("energyCache");
+
+	private static void deleteDir() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Before
+	public void before() {
+		deleteDir();
+	}
+
+	@After
+	public void after() {
+		deleteDir();
+	}
+
+	@Test
+	public void putGet() {
+
+		SharedEnergyCache cache = new SharedEnergyCache(dir, "context", 3, 4);
+
+		assertThat(cache.get(new int[] { 0, 1, 2 }), is(nullValue()));
+
+		cache.put(new int[] { 0, 1, 2 }, 4.2);
+		cache.put(new int[] { 2, 1, -1 }, -7.5);
+
+		assertThat(cache.get(new int[] { 0, 1, 2 }), is(4.2));
+		assertThat(cache.get(new int[] { 2, 1, -1 }), is(-7.5));
+		assertThat(cache.get(new int[] { 2, 1, 0 }), is(nullValue()));
+		assertThat(cache.size(), is(2L));
+	}
+
+	@Test
+	public void shareBetweenInstances() {
+
+		// two instances act like two processes, since they write to different log files
+		SharedEnergyCache cache1 = new SharedEnergyCache(dir, "context", 3, 4);
+		SharedEnergyCache cache2 = new SharedEnergyCache(dir, "context", 3, 4);
+
+		cache1.put(new int[] { 0, 1, 2 }, 4.2);
+		assertThat(cache2.get(new int[] { 0, 1, 2 }), is(4.2));
+
+		cache2.put(new int[] { 5, 5, 5 }, 1.0);
+		assertThat(cache1.get(new int[] { 5, 5, 5 }), is(1.0));
+
+		// a later run should see everything
+		SharedEnergyCache cache3 = new SharedEnergyCache(dir, "context", 3, 4);
+		cache3.refresh();
+		assertThat(cache3.size(), is(2L));
+		assertThat(cache3.get(new int[] { 0, 1, 2 }), is(4.2));
+		assertThat(cache3.get(new int[] { 5, 5, 5 }), is(1.0));
+	}
+
+	@Test
+	public void differentContextsDontShare() {
+
+		SharedEnergyCache cache1 = new SharedEnergyCache(dir, "context A", 3, 4);
+		SharedEnergyCache cache2 = new SharedEnergyCache(dir, "context B", 3, 4);
+
+		cache1.put(new int[] { 0, 1, 2 }, 4.2);
+		assertThat(cache2.get(new int[] { 0, 1, 2 }), is(nullValue()));
+	}
+
+	@Test
+	public void ignorePartialRecords()
+	throws IOException {
+
+		SharedEnergyCache cache1 = new SharedEnergyCache(dir, "context", 3, 1);
+		cache1.put(new int[] { 0, 1, 2 }, 4.2);
+
+		// simulate a write still in progress
+		File[] logs = dir.listFiles((d, name) -> name.endsWith(".log"));
+		assertThat(logs.length, is(1));
+		try (RandomAccessFile f = new RandomAccessFile(logs[0], "rw")) {
+			f.seek(f.length());
+			f.write(new byte[] { 1, 2, 3 });
+		}
+
+		SharedEnergyCache cache2 = new SharedEnergyCache(dir, "context", 3, 1);
+		cache2.refresh();
+		assertThat(cache2.size(), is(1L));
+		assertThat(cache2.get(new int[] { 0, 1, 2 }), is(4.2));
+	}
+
+	@Test
+	public void retryIncompleteRecords()
+	throws IOException {
+
+		SharedEnergyCache cache1 = new SharedEnergyCache(dir, "context", 3, 1);
+		cache1.put(new int[] { 0, 1, 2 }, 4.2);
+		cache1.put(new int[] { 5, 5, 5 }, 1.0);
+
+		// simulate a record whose bytes haven't all landed yet
+		File[] logs = dir.listFiles((d, name) -> name.endsWith(".log"));
+		assertThat(logs.length, is(1));
+		byte lastByte;
+		try (RandomAccessFile f = new RandomAccessFile(logs[0], "rw")) {
+			f.seek(f.length() - 1);
+			lastByte = f.readByte();
+			f.seek(f.length() - 1);
+			f.write(~lastByte);
+		}
+
+		SharedEnergyCache cache2 = new SharedEnergyCache(dir, "context", 3, 1);
+		cache2.refresh();
+		assertThat(cache2.size(), is(1L));
+
+		// once the record is complete, the next refresh should pick it up
+		try (RandomAccessFile f = new RandomAccessFile(logs[0], "rw")) {
+			f.seek(f.length() - 1);
+			f.write(lastByte);
+		}
+		cache2.refresh();
+		assertThat(cache2.size(), is(2L));
+		assertThat(cache2.get(new int[] { 5, 5, 5 }), is(1.0));
+	}
+
+	@Test
+	public void mergeAbandonedLogs() {
+
+		SharedEnergyCache cache1 = new SharedEnergyCache(dir, "context", 3, 1);
+		cache1.put(new int[] { 0, 1, 2 }, 4.2);
+		SharedEnergyCache cache2 = new SharedEnergyCache(dir, "context", 3, 1);
+		cache2.put(new int[] { 5, 5, 5 }, 1.0);
+		cache1.close();
+
+		// the next cache should merge the closed log into its own, but leave the open one alone
+		SharedEnergyCache cache3 = new SharedEnergyCache(dir, "context", 3, 1);
+		assertThat(cache3.get(new int[] { 0, 1, 2 }), is(4.2));
+		assertThat(dir.listFiles((d, name) -> name.endsWith(".log")).length, is(2));
+
+		// readers of the removed log should find its entries in the merged log
+		cache2.refresh();
+		assertThat(cache2.get(new int[] { 0, 1, 2 }), is(4.2));
+
+		// and later runs should still see everything, without the logs piling up
+		cache2.close();
+		cache3.close();
+		for (int i=0; i<3; i++) {
+			SharedEnergyCache cache = new SharedEnergyCache(dir, "context", 3, 1);
+			cache.refresh();
+			assertThat(cache.size(), is(2L));
+			assertThat(cache.get(new int[] { 0, 1, 2 }), is(4.2));
+			assertThat(cache.get(new int[] { 5, 5, 5 }), is(1.0));
+			cache.close();
+			assertThat(dir.listFiles((d, name) -> name.endsWith(".log")).length, is(1));
+		}
+
+		// writing after a close should still work, even if another cache merged our log away
+		cache3.put(new int[] { 7, 7, 7 }, 2.0);
+		SharedEnergyCache cache4 = new SharedEnergyCache(dir, "context", 3, 1);
+		cache4.refresh();
+		assertThat(cache4.get(new int[] { 7, 7, 7 }), is(2.0));
+	}
+
+	@Test
+	public void throttleRefreshOnMiss() {
+
+		SharedEnergyCache cache1 = new SharedEnergyCache(dir, "context", 3, 1);
+		SharedEnergyCache cache2 = new SharedEnergyCache(dir, "context", 3, 1);
+
+		// the first miss looks for other writers' entries, but the next one right after shouldn't
+		assertThat(cache2.get(new int[] { 0, 1, 2 }), is(nullValue()));
+		cache1.put(new int[] { 0, 1, 2 }, 4.2);
+		assertThat(cache2.get(new int[] { 0, 1, 2 }), is(nullValue()));
+
+		// an explicit refresh always looks
+		cache2.refresh();
+		assertThat(cache2.get(new int[] { 0, 1, 2 }), is(4.2));
+	}
+
+	@Test
+	public void confEnergyCalculator() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A5").setLibraryRotamers(Strand.WildType, "ALA").addWildTypeRotamers();
+		strand.flexibility.get("A7").setLibraryRotamers(Strand.WildType, "ALA").addWildTypeRotamers();
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		ConfSearch.ScoredConf conf = new ConfSearch.ScoredConf(new int[] { 0, 0 }, 0.0);
+
+		new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(1))
+			.setIsMinimizing(false)
+			.use((ecalc) -> {
+
+				ConfEnergyCalculator confEcalc1 = new ConfEnergyCalculator.Builder(confSpace, ecalc)
+					.setEnergyCache(dir)
+					.build();
+				double energy = confEcalc1.calcEnergy(conf).getEnergy();
+				assertThat(confEcalc1.getNumCalculations(), is(1L));
+				assertThat(confEcalc1.getNumEnergyCacheReads(), is(0L));
+
+				// another calculator with the same setup should read the energy from the cache
+				ConfEnergyCalculator confEcalc2 = new ConfEnergyCalculator.Builder(confSpace, ecalc)
+					.setEnergyCache(dir)
+					.build();
+				assertThat(confEcalc2.calcEnergy(conf).getEnergy(), is(energy));
+				assertThat(confEcalc2.getNumCalculations(), is(0L));
+				assertThat(confEcalc2.getNumEnergyCacheReads(), is(1L));
+
+				// but a calculator with different energy settings should not
+				ConfEnergyCalculator confEcalc3 = new ConfEnergyCalculator.Builder(confSpace, ecalc)
+					.setEnergyCache(dir)
+					.addResEntropy(true)
+					.build();
+				confEcalc3.calcEnergy(conf);
+				assertThat(confEcalc3.getNumCalculations(), is(1L));
+				assertThat(confEcalc3.getNumEnergyCacheReads(), is(0L));
+
+				// copies should keep using the same cache
+				ConfEnergyCalculator confEcalc4 = new ConfEnergyCalculator(confEcalc1, ecalc);
+				assertThat(confEcalc4.energyCache, is(sameInstance(confEcalc1.energyCache)));
+				assertThat(confEcalc4.calcEnergy(conf).getEnergy(), is(energy));
+				assertThat(confEcalc4.getNumEnergyCacheReads(), is(1L));
+			});
+	}
+}
@@ -0,0 +1,142 @@
+package edu.duke.cs.osprey.lute;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import edu.duke.cs.osprey.TestBase;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.ThreadPoolTaskExecutor;
+import edu.duke.cs.osprey.pruning.PruningMatrix;
+import edu.duke.cs.osprey.pruning.SimpleDEE;
+import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.tools.Stopwatch;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.ConjugateGradient;
+import org.apache.commons.math3.linear.RealLinearOperator;
+import org.apache.commons.math3.linear.RealVector;
+
+public class BenchmarkLUTE extends TestBase {
+
+	public static void main(String[] args) {
+
+		initDefaultEnvironment();
+
+		String flexibleResNumbers = "3 4 5 6 7 8 9 10";
+		int[] numThreadsList = { 1, 2, 4 };
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : flexibleResNumbers.split(" ")) {
+			strand.flexibility.get("A" + resNum).setLibraryRotamers(Strand.WildType, "ARG", "LEU");
+		}
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		LUTE lute = null;
+		for (int numThreads : numThreadsList) {
+
+			EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+				.setParallelism(Parallelism.makeCpu(numThreads))
+				.build();
+			ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(confSpace, ecalc).build();
+			EnergyMatrix emat = new SimplerEnergyMatrixCalculator.Builder(confEcalc)
+				.build()
+				.calcEnergyMatrix();
+			PruningMatrix pmat = new SimpleDEE.Runner()
+				.setGoldsteinDiffThreshold(10.0)
+				.run(confSpace, emat);
+
+			// benchmark the whole sample-and-fit loop
+			lute = new LUTE(confSpace);
+			Stopwatch stopwatch = new Stopwatch().start();
+			lute.sampleTuplesAndFit(confEcalc, emat, pmat, null, new UniformConfSampler(confSpace, pmat, 12345), LUTE.Fitter.OLSCG, 1.5, 0.01);
+			stopwatch.stop();
+			log("sampleTuplesAndFit with %d threads: %s", numThreads, stopwatch.getTime(2));
+
+			ecalc.clean();
+		}
+
+		// benchmark just the fitting on the last training set
+		LUTE.LinearSystem system = lute.getTrainingSystem();
+		log("training system: %d confs, %d tuples, %d non-zeros", system.confs.size(), system.tuples.size(), system.A.getNumNonZeros());
+
+		Stopwatch refStopwatch = new Stopwatch().start();
+		double[] expected = null;
+		final int numRuns = 10;
+		for (int i=0; i<numRuns; i++) {
+			expected = fitReference(system);
+		}
+		refStopwatch.stop();
+		log("reference CG on A^tA:   %s", refStopwatch.getTime(2));
+
+		for (int numThreads : numThreadsList) {
+			try (ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor()) {
+				tasks.start(numThreads);
+
+				Stopwatch stopwatch = new Stopwatch().start();
+				double[] observed = null;
+				for (int i=0; i<numRuns; i++) {
+					observed = new CGLS(system.A, 100000, 1e-6).solve(system.confEnergies, tasks);
+				}
+				stopwatch.stop();
+
+				double maxDiff = 0.0;
+				for (int t=0; t<expected.length; t++) {
+					maxDiff = Math.max(maxDiff, Math.abs(expected[t] - observed[t]));
+				}
+				log("CGLS with %d threads:    %s   speedup %.2fx   max tuple energy diff %.2e",
+					numThreads, stopwatch.getTime(2), (double)refStopwatch.getTimeNs()/stopwatch.getTimeNs(), maxDiff
+				);
+			}
+		}
+	}
+
+	/** the original fitter: commons-math conjugate gradient on A^tA, with A rebuilt from the tuples index every multiply */
+	private static double[] fitReference(LUTE.LinearSystem system) {
+
+		int numConfs = system.confs.size();
+		int numTuples = system.tuples.size();
+
+		RealLinearOperator AtA = new RealLinearOperator() {
+
+			@Override
+			public int getRowDimension() {
+				return numTuples;
+			}
+
+			@Override
+			public int getColumnDimension() {
+				return numTuples;
+			}
+
+			@Override
+			public RealVector operate(RealVector vx) {
+				double[] x = ((ArrayRealVector)vx).getDataRef();
+				double[] Ax = new double[numConfs];
+				for (int c=0; c<numConfs; c++) {
+					final int fc = c;
+					system.tuples.forEachIn(system.confs.get(c), false, true, (t) -> Ax[fc] += x[t]);
+				}
+				return new ArrayRealVector(multAt(system, Ax), false);
+			}
+		};
+
+		RealVector Atb = new ArrayRealVector(multAt(system, system.confEnergies), false);
+		return ((ArrayRealVector)new ConjugateGradient(100000, 1e-6, false).solve(AtA, Atb)).getDataRef();
+	}
+
+	private static double[] multAt(LUTE.LinearSystem system, double[] x) {
+		double[] out = new double[system.tuples.size()];
+		for (int c=0; c<system.confs.size(); c++) {
+			double xc = x[c];
+			system.tuples.forEachIn(system.confs.get(c), false, true, (t) -> out[t] += xc);
+		}
+		return out;
+	}
+}
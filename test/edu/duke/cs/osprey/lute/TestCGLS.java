@@ -0,0 +1,124 @@
+package edu.duke.cs.osprey.lute;
+
+import static edu.duke.cs.osprey.TestBase.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.ConjugateGradient;
+import org.apache.commons.math3.linear.RealLinearOperator;
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TestCGLS {
+
+	/** a small overdetermined fit, like LUTE's: each row (conf) has one column (tuple) from each group (position) */
+	private static SparseIncidenceMatrix makeA(Random rand, int numRows, int numGroups, int groupSize) {
+		int[][] rows = new int[numRows][numGroups];
+		for (int r=0; r<numRows; r++) {
+			for (int g=0; g<numGroups; g++) {
+				rows[r][g] = g*groupSize + rand.nextInt(groupSize);
+			}
+		}
+		return new SparseIncidenceMatrix(numRows, numGroups*groupSize, (r, callback) -> {
+			for (int c : rows[r]) {
+				callback.accept(c);
+			}
+		});
+	}
+
+	private static double[] makeB(Random rand, SparseIncidenceMatrix A) {
+
+		// a linear model plus some noise, so the fit isn't exact
+		double[] trueX = new double[A.numCols];
+		for (int c=0; c<A.numCols; c++) {
+			trueX[c] = rand.nextDouble()*10 - 5;
+		}
+		double[] b = A.multA(trueX);
+		for (int r=0; r<b.length; r++) {
+			b[r] += rand.nextGaussian()*0.1;
+		}
+		return b;
+	}
+
+	/** the fitter LUTE used before CGLS: commons-math conjugate gradient on A^tA */
+	private static double[] solveReference(SparseIncidenceMatrix A, double[] b) {
+
+		RealLinearOperator AtA = new RealLinearOperator() {
+
+			@Override
+			public int getRowDimension() {
+				return A.numCols;
+			}
+
+			@Override
+			public int getColumnDimension() {
+				return A.numCols;
+			}
+
+			@Override
+			public RealVector operate(RealVector vx) {
+				double[] x = ((ArrayRealVector)vx).getDataRef();
+				return new ArrayRealVector(A.multAt(A.multA(x)), false);
+			}
+		};
+
+		RealVector Atb = new ArrayRealVector(A.multAt(b), false);
+		return ((ArrayRealVector)new ConjugateGradient(100000, 1e-6, false).solve(AtA, Atb)).getDataRef();
+	}
+
+	private static void assertSameFit(SparseIncidenceMatrix A, double[] observed, double[] expected) {
+
+		// one column per group is redundant (any constant can move between groups),
+		// so compare the fitted values rather than the coefficients themselves
+		double[] observedFit = A.multA(observed);
+		double[] expectedFit = A.multA(expected);
+		for (int r=0; r<A.numRows; r++) {
+			assertThat(observedFit[r], isAbsolutely(expectedFit[r], 1e-4));
+		}
+	}
+
+	@Test
+	public void matchesReference() {
+
+		Random rand = new Random(12345);
+		SparseIncidenceMatrix A = makeA(rand, 500, 4, 6);
+		double[] b = makeB(rand, A);
+		double[] expected = solveReference(A, b);
+
+		CGLS cgls = new CGLS(A, 100000, 1e-6);
+		assertSameFit(A, cgls.solve(b, new TaskExecutor()), expected);
+		assertThat(cgls.getNumIterations(), greaterThan(0));
+
+		try (TaskExecutor tasks = Parallelism.makeCpu(4).makeTaskExecutor()) {
+			assertSameFit(A, cgls.solve(b, tasks), expected);
+		}
+	}
+
+	@Test
+	public void warmStart() {
+
+		Random rand = new Random(12345);
+		SparseIncidenceMatrix A = makeA(rand, 500, 4, 6);
+		double[] b = makeB(rand, A);
+		double[] expected = solveReference(A, b);
+
+		// starting from the answer should stop right away
+		CGLS cgls = new CGLS(A, 100000, 1e-6);
+		double[] x = cgls.solve(b, new TaskExecutor());
+		int numColdIterations = cgls.getNumIterations();
+		assertSameFit(A, cgls.solve(b, x, new TaskExecutor()), expected);
+		assertThat(cgls.getNumIterations(), lessThan(numColdIterations));
+
+		// starting from somewhere else should still get to the same fit
+		double[] x0 = new double[A.numCols];
+		for (int c=0; c<x0.length; c++) {
+			x0[c] = rand.nextDouble()*100;
+		}
+		assertSameFit(A, cgls.solve(b, x0, new TaskExecutor()), expected);
+	}
+}
@@ -0,0 +1,74 @@
+package edu.duke.cs.osprey.lute;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.TestBase;
+import edu.duke.cs.osprey.confspace.Conf;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.pruning.PruningMatrix;
+import edu.duke.cs.osprey.pruning.SimpleDEE;
+import edu.duke.cs.osprey.structure.PDBIO;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class TestLUTE extends TestBase {
+
+	@Test
+	public void streamedFitMatchesInMemoryFit() {
+
+		Strand strand = new Strand.Builder(PDBIO.readFile("examples/1CC8/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A3").setLibraryRotamers(Strand.WildType, "ARG");
+		strand.flexibility.get("A4").setLibraryRotamers(Strand.WildType);
+		strand.flexibility.get("A5").setLibraryRotamers(Strand.WildType, "VAL");
+		strand.flexibility.get("A6").setLibraryRotamers(Strand.WildType);
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		LUTE lute = new LUTE(confSpace);
+		new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(2))
+			.use((ecalc) -> {
+
+				ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(confSpace, ecalc).build();
+				EnergyMatrix emat = new SimplerEnergyMatrixCalculator.Builder(confEcalc)
+					.build()
+					.calcEnergyMatrix();
+				PruningMatrix pmat = new SimpleDEE.Runner()
+					.setThreshold(100.0)
+					.run(confSpace, emat);
+
+				lute.addTuples(lute.getUnprunedPairTuples(pmat));
+				lute.fit(confEcalc, null, new UniformConfSampler(confSpace, pmat, 12345), LUTE.Fitter.OLSCG, 1.5);
+			});
+
+		// the streamed fit grew the training system a few confs at a time, and warm-started each round
+		LUTE.LinearSystem streamed = lute.getTrainingSystem();
+		assertThat(lute.calcOverfittingScore(), lessThanOrEqualTo(1.5));
+
+		// fit all the same confs at once, from scratch, like before streaming
+		Map<int[],Double> energies = new Conf.Map<>();
+		for (int c=0; c<streamed.confs.size(); c++) {
+			energies.put(streamed.confs.get(c), streamed.confEnergies[c]);
+		}
+		LUTE.LinearSystem inMemory = new LUTE.LinearSystem(streamed.tuples, streamed.confs, energies, null);
+		inMemory.fit(LUTE.Fitter.OLSCG, new TaskExecutor());
+
+		// compare the fitted conf energies, since the tuple energies needn't be unique
+		// (CG stops at slightly different points from a warm start, so they only match to within the fit error)
+		for (int c=0; c<streamed.confs.size(); c++) {
+			assertThat(streamed.errors.residual[c], isAbsolutely(inMemory.errors.residual[c], 1e-2));
+		}
+		assertThat(streamed.errors.rms, isAbsolutely(inMemory.errors.rms, 1e-4));
+	}
+}
@@ -0,0 +1,162 @@
+package edu.duke.cs.osprey.lute;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.TestBase;
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.confspace.TuplesIndex;
+import edu.duke.cs.osprey.structure.PDBIO;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TestLUTEModel extends TestBase {
+
+	private static SimpleConfSpace confSpace;
+	private static LUTEState state;
+
+	@BeforeClass
+	public static void beforeClass() {
+
+		Strand strand = new Strand.Builder(PDBIO.readFile("examples/1CC8/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A3").setLibraryRotamers(Strand.WildType, "ARG");
+		strand.flexibility.get("A4").setLibraryRotamers(Strand.WildType);
+		strand.flexibility.get("A5").setLibraryRotamers(Strand.WildType, "VAL");
+		strand.flexibility.get("A6").setLibraryRotamers(Strand.WildType);
+		confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		// make a model with all pairs, some triples, and random energies, like LUTE would
+		Random rand = new Random(12345);
+		List<RCTuple> tuples = new ArrayList<>();
+		int numPos = confSpace.positions.size();
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int rc1=0; rc1<confSpace.positions.get(pos1).resConfs.size(); rc1++) {
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<confSpace.positions.get(pos2).resConfs.size(); rc2++) {
+						tuples.add(new RCTuple(pos2, rc2, pos1, rc1));
+						for (int pos3=0; pos3<pos2; pos3++) {
+							for (int rc3=0; rc3<confSpace.positions.get(pos3).resConfs.size(); rc3++) {
+								if (rand.nextInt(4) == 0) {
+									tuples.add(new RCTuple(pos3, rc3, pos2, rc2, pos1, rc1));
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		state = new LUTEState(tuples.size());
+		for (int i=0; i<tuples.size(); i++) {
+			state.tuples[i] = tuples.get(i);
+			state.tupleEnergies[i] = rand.nextDouble()*10 - 5;
+		}
+		state.tupleEnergyOffset = -3.5;
+	}
+
+	private static void assertModel(LUTEModel model) {
+
+		assertThat(model.toState(), is(state));
+
+		// check conf energies against the tuples index
+		TuplesIndex tuples = new TuplesIndex(confSpace, state.tuples);
+		Random rand = new Random(54321);
+		for (int i=0; i<1000; i++) {
+
+			int[] conf = new int[confSpace.positions.size()];
+			for (int pos=0; pos<conf.length; pos++) {
+				conf[pos] = rand.nextInt(confSpace.positions.get(pos).resConfs.size());
+			}
+
+			double[] expected = { state.tupleEnergyOffset };
+			tuples.forEachIn(conf, false, true, (t) -> expected[0] += state.tupleEnergies[t]);
+
+			assertThat(model.calcEnergy(conf), isAbsolutely(expected[0], 1e-12));
+		}
+
+		// check tuple lookups, in any position order
+		for (int t=0; t<state.tuples.length; t++) {
+			RCTuple tuple = state.tuples[t];
+			if (tuple.size() == 2) {
+				assertThat(model.getEnergy(tuple.pos.get(1), tuple.RCs.get(1), tuple.pos.get(0), tuple.RCs.get(0)), is(state.tupleEnergies[t]));
+			} else {
+				assertThat(model.getEnergy(
+					tuple.pos.get(1), tuple.RCs.get(1),
+					tuple.pos.get(2), tuple.RCs.get(2),
+					tuple.pos.get(0), tuple.RCs.get(0)
+				), is(state.tupleEnergies[t]));
+			}
+		}
+	}
+
+	@Test
+	public void fromState() {
+		assertModel(LUTEModel.fromState(confSpace, state));
+	}
+
+	@Test
+	public void bytes() {
+		assertModel(LUTEModel.read(LUTEModel.fromState(confSpace, state).toBytes()));
+	}
+
+	@Test
+	public void mapFile() {
+		File file = new File("lute.model");
+		try {
+			LUTEModel.fromState(confSpace, state).write(file);
+			LUTEModel model = LUTEModel.map(file);
+			assertThat(model.matches(confSpace), is(true));
+			assertModel(model);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void missingTuples() {
+		LUTEModel model = LUTEModel.fromState(confSpace, state);
+		assertThat(model.hasTuple(0, 0), is(false));
+		assertThat(model.getEnergy(0, 0), is(0.0));
+		assertThat(model.hasTuple(1, 0, 0, 0), is(true));
+	}
+
+	@Test
+	public void truncated() {
+		byte[] bytes = LUTEModel.fromState(confSpace, state).toBytes();
+		try {
+			LUTEModel.read(Arrays.copyOf(bytes, bytes.length - 1));
+			fail("should have thrown");
+		} catch (IllegalArgumentException ex) {
+			assertThat(ex.getMessage(), containsString("truncated"));
+		}
+	}
+
+	@Test
+	public void tooBig() {
+
+		// a header for two positions with enough RCs that the pair table alone needs more than 2 GiB
+		ByteBuffer buf = ByteBuffer.allocate(64);
+		buf.put("LUTE".getBytes(StandardCharsets.US_ASCII));
+		buf.put(LUTEModel.Version);
+		buf.putInt(8, 2);
+		buf.putInt(32, 30000);
+		buf.putInt(36, 30000);
+		try {
+			LUTEModel.read(buf.array());
+			fail("should have thrown");
+		} catch (IllegalArgumentException ex) {
+			assertThat(ex.getMessage(), containsString("too big"));
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package edu.duke.cs.osprey.lute;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TestSparseIncidenceMatrix {
+
+	private static boolean[][] makeDense(Random rand, int numRows, int numCols, double density) {
+		boolean[][] dense = new boolean[numRows][numCols];
+		for (int r=0; r<numRows; r++) {
+			for (int c=0; c<numCols; c++) {
+				dense[r][c] = rand.nextDouble() < density;
+			}
+		}
+		return dense;
+	}
+
+	private static SparseIncidenceMatrix makeSparse(SparseIncidenceMatrix prefix, boolean[][] dense, int numRows) {
+		int numCols = dense[0].length;
+		return new SparseIncidenceMatrix(prefix, numRows, numCols, (r, callback) -> {
+			for (int c=0; c<numCols; c++) {
+				if (dense[r][c]) {
+					callback.accept(c);
+				}
+			}
+		});
+	}
+
+	private static double[] multA(boolean[][] dense, double[] x) {
+		double[] out = new double[dense.length];
+		for (int r=0; r<dense.length; r++) {
+			for (int c=0; c<x.length; c++) {
+				if (dense[r][c]) {
+					out[r] += x[c];
+				}
+			}
+		}
+		return out;
+	}
+
+	private static double[] multAt(boolean[][] dense, double[] x) {
+		double[] out = new double[dense[0].length];
+		for (int c=0; c<out.length; c++) {
+			for (int r=0; r<dense.length; r++) {
+				if (dense[r][c]) {
+					out[c] += x[r];
+				}
+			}
+		}
+		return out;
+	}
+
+	private static double[] makeVector(Random rand, int size) {
+		double[] x = new double[size];
+		for (int i=0; i<size; i++) {
+			x[i] = rand.nextDouble()*20 - 10;
+		}
+		return x;
+	}
+
+	private static List<Integer> getCols(SparseIncidenceMatrix A, int row) {
+		List<Integer> cols = new ArrayList<>();
+		A.forEachColIn(row, (c) -> cols.add(c));
+		return cols;
+	}
+
+	@Test
+	public void serial() {
+
+		Random rand = new Random(12345);
+		boolean[][] dense = makeDense(rand, 200, 30, 0.2);
+		SparseIncidenceMatrix A = makeSparse(null, dense, dense.length);
+
+		for (int i=0; i<10; i++) {
+			double[] x = makeVector(rand, A.numCols);
+			double[] y = makeVector(rand, A.numRows);
+
+			// both forms sum each output in the same order as the dense reference, so the results match exactly
+			assertThat(A.multA(x), is(multA(dense, x)));
+			assertThat(A.multAt(y), is(multAt(dense, y)));
+
+			// small matrices aren't partitioned, but should still give the same answers
+			try (TaskExecutor tasks = Parallelism.makeCpu(4).makeTaskExecutor()) {
+				assertThat(A.multA(x, tasks), is(multA(dense, x)));
+				assertThat(A.multAt(y, tasks), is(multAt(dense, y)));
+			}
+		}
+	}
+
+	@Test
+	public void partitioned() {
+
+		// big enough to split among all the threads
+		Random rand = new Random(12345);
+		boolean[][] dense = makeDense(rand, 20000, 200, 0.08);
+		SparseIncidenceMatrix A = makeSparse(null, dense, dense.length);
+		assertThat(A.getNumNonZeros(), greaterThanOrEqualTo(4*SparseIncidenceMatrix.MinNonZerosPerPartition));
+
+		double[] x = makeVector(rand, A.numCols);
+		double[] y = makeVector(rand, A.numRows);
+		double[] expectedAx = multA(dense, x);
+		double[] expectedAty = multAt(dense, y);
+
+		// the results shouldn't depend on the number of threads
+		for (int numThreads : new int[] { 1, 2, 3, 4 }) {
+			try (TaskExecutor tasks = Parallelism.makeCpu(numThreads).makeTaskExecutor()) {
+				assertThat(A.multA(x, tasks), is(expectedAx));
+				assertThat(A.multAt(y, tasks), is(expectedAty));
+			}
+		}
+	}
+
+	@Test
+	public void prefix() {
+
+		Random rand = new Random(12345);
+		boolean[][] dense = makeDense(rand, 200, 30, 0.2);
+
+		// grow the matrix a few rows at a time, like LUTE does with more samples
+		SparseIncidenceMatrix A = null;
+		for (int numRows : new int[] { 0, 1, 50, 50, 120, 200 }) {
+			A = makeSparse(A, dense, numRows);
+
+			SparseIncidenceMatrix expected = makeSparse(null, dense, numRows);
+			assertThat(A.numRows, is(numRows));
+			assertThat(A.getNumNonZeros(), is(expected.getNumNonZeros()));
+			for (int r=0; r<numRows; r++) {
+				assertThat(getCols(A, r), is(getCols(expected, r)));
+			}
+
+			double[] x = makeVector(rand, A.numCols);
+			double[] y = makeVector(rand, A.numRows);
+			assertThat(A.multA(x), is(expected.multA(x)));
+			assertThat(A.multAt(y), is(expected.multAt(y)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void prefixTooBig() {
+		boolean[][] dense = makeDense(new Random(12345), 20, 5, 0.5);
+		makeSparse(makeSparse(null, dense, 20), dense, 10);
+	}
+}
@@ -44,6 +44,9 @@ import edu.duke.cs.osprey.confspace.ConfSearch.ScoredConf;
 import edu.duke.cs.osprey.confspace.SearchProblem;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
 import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.dof.DegreeOfFreedom;
+import edu.duke.cs.osprey.dof.DihedralRotation;
+import edu.duke.cs.osprey.dof.FreeDihedral;
 import edu.duke.cs.osprey.dof.deeper.DEEPerSettings;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
 import edu.duke.cs.osprey.ematrix.SimpleEnergyMatrixCalculator;
@@ -62,8 +65,11 @@ import edu.duke.cs.osprey.pruning.PruningMatrix;
 import edu.duke.cs.osprey.structure.AtomConnectivity;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.structure.Residue;
 import edu.duke.cs.osprey.tools.Factory;
 import edu.duke.cs.osprey.tools.ObjectIO;
+import edu.duke.cs.osprey.tools.Protractor;
+import edu.duke.cs.osprey.tools.RigidBodyMotion;
 import edu.duke.cs.osprey.tools.Stopwatch;
 import edu.duke.cs.osprey.tools.TimeFormatter;
 import edu.duke.cs.osprey.tupexp.LUTESettings;
@@ -167,6 +173,8 @@ public class BenchmarkMinimization extends TestBase {
 		//benchmarkParallel(search, simpleConfSpace, confs);
 		//compareOneConf(search, confs);
 
+		benchmarkDOFs(simpleConfSpace, confs);
+
 		benchmarkOps(search, simpleConfSpace, allConfs);
 	}
 
@@ -374,6 +382,79 @@ public class BenchmarkMinimization extends TestBase {
 		return stopwatch;
 	}
 
+	private static void benchmarkDOFs(SimpleConfSpace confSpace, List<ScoredConf> confs) {
+
+		System.out.println("\nbenchmarking dihedral DOF applications...");
+
+		// collect the dihedral DOFs for a bunch of confs, like the minimizer would see them
+		List<FreeDihedral> dofs = new ArrayList<>();
+		for (ScoredConf conf : confs.subList(0, Math.min(confs.size(), 64))) {
+			for (DegreeOfFreedom dof : confSpace.makeMolecule(conf).dofs) {
+				if (dof instanceof FreeDihedral) {
+					dofs.add((FreeDihedral)dof);
+				}
+			}
+		}
+
+		final int numRounds = 2000;
+		final double[] angles = { -60, 62.5, 180, -178.25, 59, 1.5 };
+
+		// reference: the previous implementation, which copied coords and allocated a rotation for every application
+		Runnable reference = () -> {
+			for (int r=0; r<numRounds; r++) {
+				double angleDegrees = angles[r % angles.length];
+				double angleRadians = Math.toRadians(angleDegrees);
+				double sin = Math.sin(angleRadians);
+				double cos = Math.cos(angleRadians);
+				for (FreeDihedral dof : dofs) {
+					double[][] dihedralCoords = dof.updateDihedralCoords();
+					double[] measuredSinCos = Protractor.measureDihedralSinCos(dihedralCoords);
+					double dsin = sin*measuredSinCos[1] - cos*measuredSinCos[0];
+					double dcos = cos*measuredSinCos[1] + sin*measuredSinCos[0];
+					RigidBodyMotion dihRotation = new DihedralRotation(dihedralCoords[1], dihedralCoords[2], dsin, dcos);
+					Residue res = dof.getResidue();
+					for (int index : res.template.getDihedralRotatedAtoms(dof.getDihedralNumber())) {
+						dihRotation.transform(res.coords, index);
+					}
+				}
+			}
+		};
+
+		Runnable current = () -> {
+			for (int r=0; r<numRounds; r++) {
+				double angleDegrees = angles[r % angles.length];
+				for (FreeDihedral dof : dofs) {
+					dof.apply(angleDegrees);
+				}
+			}
+		};
+
+		// warmup
+		reference.run();
+		current.run();
+
+		long numApplications = (long)numRounds*dofs.size();
+
+		Stopwatch referenceStopwatch = new Stopwatch().start();
+		reference.run();
+		referenceStopwatch.stop();
+		System.out.println(String.format("%12s: precise timing: %9s, ns per application: %6.1f",
+				"reference",
+				referenceStopwatch.getTime(TimeUnit.MILLISECONDS),
+				(double)referenceStopwatch.getTimeNs()/numApplications
+		));
+
+		Stopwatch stopwatch = new Stopwatch().start();
+		current.run();
+		stopwatch.stop();
+		System.out.println(String.format("%12s: precise timing: %9s, ns per application: %6.1f, speedup: %6.2fx",
+				"in place",
+				stopwatch.getTime(TimeUnit.MILLISECONDS),
+				(double)stopwatch.getTimeNs()/numApplications,
+				(double)referenceStopwatch.getTimeNs()/stopwatch.getTimeNs()
+		));
+	}
+
 	private static void compareOneConf(SearchProblem search, List<ScoredConf> confs)
 			throws Exception {
 
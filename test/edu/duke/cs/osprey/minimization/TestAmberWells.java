@@ -39,6 +39,12 @@ public class TestAmberWells {
 
 		double corrected = calcEnergy(confSpace, frag, (b) -> b.setInfiniteWellEnergy(InfiniteWellEnergy));
 		assertThat(corrected, greaterThan(InfiniteWellEnergy));
+
+		double screened = calcEnergy(confSpace, frag, (b) -> b
+			.setInfiniteWellEnergy(InfiniteWellEnergy)
+			.setClashScreenOverlap(1.0)
+		);
+		assertThat(screened, greaterThan(InfiniteWellEnergy));
 	}
 
 	// these are two known cases where protein minimization falls into one of AMBER's infinitely deep energy wells
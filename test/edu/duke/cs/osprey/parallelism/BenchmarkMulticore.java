@@ -34,6 +34,8 @@ package edu.duke.cs.osprey.parallelism;
 
 import edu.duke.cs.osprey.tools.Stopwatch;
 
+import java.util.concurrent.atomic.AtomicLongArray;
+
 public class BenchmarkMulticore {
 
 	public static void main(String[] args)
@@ -51,6 +53,13 @@ public class BenchmarkMulticore {
 		for (int numThreads : numThreadsList) {
 			go(numThreads, baseNs);
 		}
+
+		// then try worker groups, eg one per socket
+		int numSockets = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		int numThreadsPerSocket = Math.max(1, Parallelism.getMaxNumCPUs()/numSockets);
+		for (int numGroups=1; numGroups<=numSockets; numGroups++) {
+			goGrouped(numThreadsPerSocket*numGroups, numGroups, baseNs);
+		}
 	}
 
 	private static void doWork() {
@@ -112,4 +121,51 @@ public class BenchmarkMulticore {
 				(float)baseNs*numThreads/stopwatch.getTimeNs()
 		));
 	}
+
+	private static void goGrouped(int numThreads, int numGroups, long baseNs) {
+
+		System.out.println(String.format("Benchmarking %d threads in %d groups...", numThreads, numGroups));
+
+		GroupedTaskExecutor tasks = new GroupedTaskExecutor();
+		tasks.queueSize = numThreads;
+		tasks.start(numThreads, numGroups);
+
+		// split the spin into smaller tasks, so there's something to route and steal
+		int numTasksPerThread = 100;
+		long[] groupTasks = new long[numGroups];
+		AtomicLongArray groupNs = new AtomicLongArray(numGroups);
+
+		Stopwatch stopwatch = new Stopwatch().start();
+
+		for (int i=0; i<numThreads*numTasksPerThread; i++) {
+			tasks.submit(
+				() -> {
+					long startNs = System.nanoTime();
+					for (long j=0; j<1e9/numTasksPerThread; j++);
+					int group = GroupedTaskExecutor.getCurrentGroup();
+					groupNs.addAndGet(group, System.nanoTime() - startNs);
+					return group;
+				},
+				(Integer group) -> groupTasks[group]++
+			);
+		}
+		tasks.waitForFinish();
+
+		stopwatch.stop();
+
+		for (int g=0; g<numGroups; g++) {
+			System.out.println(String.format("\tgroup %d ran %d tasks, speed: %.1f%%",
+				g,
+				groupTasks[g],
+				100f*baseNs*groupTasks[g]/numTasksPerThread/groupNs.get(g)
+			));
+		}
+		System.out.println(String.format("Finished in %s, speedup: %.2fx, stolen tasks: %d",
+			stopwatch.getTime(2),
+			(float)baseNs*numThreads/stopwatch.getTimeNs(),
+			tasks.getNumTasksStolen()
+		));
+
+		tasks.stopAndWait(10000);
+	}
 }
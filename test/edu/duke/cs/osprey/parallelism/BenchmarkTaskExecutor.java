@@ -36,6 +36,8 @@ import edu.duke.cs.osprey.parallelism.TaskExecutor.Task;
 import edu.duke.cs.osprey.tools.Stopwatch;
 import edu.duke.cs.osprey.tools.TimeFormatter;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 @SuppressWarnings("unused")
 public class BenchmarkTaskExecutor {
 
@@ -97,49 +99,93 @@ public class BenchmarkTaskExecutor {
 			System.out.print(String.format("Benchmarking main thread...  "));
 
 			TaskExecutor tasks = new TaskExecutor();
-			Stopwatch stopwatch = benchmark(factory, tasks, 0);
+			Result result = benchmark(factory, tasks);
 
-			baseNs = Math.min(baseNs, stopwatch.getTimeNs());
+			baseNs = Math.min(baseNs, result.stopwatch.getTimeNs());
 			if (i >= numTrials/2) {
-				totalNs += stopwatch.getTimeNs();
+				totalNs += result.stopwatch.getTimeNs();
 			}
-			System.out.println("Finished in " + stopwatch.getTime(2));
+			System.out.println("Finished in " + result.stopwatch.getTime(2));
 		}
 		System.out.println("\tLast half avg time " + TimeFormatter.format(totalNs*2/numTrials, 2));
 
-		for (int numThreads : numThreadsList) {
-			totalNs = 0;
-			for (int i=0; i<numTrials; i++) {
+		for (Parallelism.ExecutorType type : Parallelism.ExecutorType.values()) {
+			for (int numThreads : numThreadsList) {
+				totalNs = 0;
+				long totalLatencyNs = 0;
+				for (int i=0; i<numTrials; i++) {
 
-				System.out.print(String.format("Benchmarking %2d threads...  ", numThreads));
+					System.out.print(String.format("Benchmarking %12s %2d threads...  ", type, numThreads));
 
-				ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor();
-				tasks.queueSize = factory.numRuns;
-				tasks.start(numThreads);
+					TaskExecutor tasks = makeTaskExecutor(type, numThreads, factory.numRuns);
 
-				Stopwatch stopwatch = benchmark(factory, tasks, baseNs);
+					Result result = benchmark(factory, tasks);
 
-				System.out.println(String.format("Finished in %s, speedup: %.2fx",
-						stopwatch.getTime(2),
-						(float)baseNs*numThreads/stopwatch.getTimeNs()
-				));
+					System.out.println(String.format("Finished in %s, speedup: %.2fx, %.0f tasks/s, avg latency: %s",
+						result.stopwatch.getTime(2),
+						(float)baseNs*numThreads/result.stopwatch.getTimeNs(),
+						result.getTasksPerSecond(),
+						TimeFormatter.format(result.getAvgLatencyNs(), 2)
+					));
 
-				if (i >= numTrials/2) {
-					totalNs += stopwatch.getTimeNs();
+					if (i >= numTrials/2) {
+						totalNs += result.stopwatch.getTimeNs();
+						totalLatencyNs += result.getAvgLatencyNs();
+					}
+
+					// cleanup
+					tasks.clean();
 				}
+				long avgNs = totalNs*2/numTrials;
+				System.out.println(String.format("\tLast half avg time %s, speedup: %.2fx, avg latency: %s",
+					TimeFormatter.format(avgNs, 2),
+					(float)baseNs*numThreads/avgNs,
+					TimeFormatter.format(totalLatencyNs*2/numTrials, 2)
+				));
+			}
+		}
+	}
 
-				// cleanup
-				tasks.stopAndWait(10000);
+	private static TaskExecutor makeTaskExecutor(Parallelism.ExecutorType type, int numThreads, int queueSize) {
+		switch (type) {
+			case WorkStealing: {
+				WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+				tasks.queueSize = queueSize;
+				tasks.start(numThreads);
+				return tasks;
 			}
-			long avgNs = totalNs*2/numTrials;
-			System.out.println(String.format("\tLast half avg time %s, speedup: %.2fx",
-					TimeFormatter.format(avgNs, 2),
-					(float)baseNs*numThreads/avgNs
-			));
+			default: {
+				ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor();
+				tasks.queueSize = queueSize;
+				tasks.start(numThreads);
+				return tasks;
+			}
+		}
+	}
+
+	private static class Result {
+
+		public final Stopwatch stopwatch;
+		public final int numTasks;
+		public final long totalLatencyNs;
+
+		public Result(Stopwatch stopwatch, int numTasks, long totalLatencyNs) {
+			this.stopwatch = stopwatch;
+			this.numTasks = numTasks;
+			this.totalLatencyNs = totalLatencyNs;
+		}
+
+		public double getTasksPerSecond() {
+			return numTasks/stopwatch.getTimeS();
+		}
+
+		/** average time between submitting a task and its listener getting called */
+		public long getAvgLatencyNs() {
+			return totalLatencyNs/numTasks;
 		}
 	}
 
-	private static Stopwatch benchmark(TaskFactory factory, TaskExecutor tasks, long baseNs) {
+	private static Result benchmark(TaskFactory factory, TaskExecutor tasks) {
 
 		// do the warmup
 		for (int j=0; j<tasks.getParallelism(); j++) {
@@ -149,13 +195,17 @@ public class BenchmarkTaskExecutor {
 
 		// time the tasks
 		int numTasks = tasks.getParallelism()*factory.numRuns;
+		AtomicLong totalLatencyNs = new AtomicLong(0);
 		Stopwatch stopwatch = new Stopwatch().start();
 		for (int j=0; j<numTasks; j++) {
-			tasks.submit(factory.makeTask(), (task) -> {});
+			long submitNs = System.nanoTime();
+			tasks.submit(factory.makeTask(), (task) -> {
+				totalLatencyNs.addAndGet(System.nanoTime() - submitNs);
+			});
 		}
 		tasks.waitForFinish();
 		stopwatch.stop();
 
-		return stopwatch;
+		return new Result(stopwatch, numTasks, totalLatencyNs.get());
 	}
 }
@@ -0,0 +1,144 @@
+package edu.duke.cs.osprey.parallelism;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestFutureTaskExecutor {
+
+	@Test
+	public void futures() {
+
+		FutureTaskExecutor tasks = new FutureTaskExecutor();
+		tasks.start(4);
+
+		List<CompletableFuture<Integer>> futures = new ArrayList<>();
+		for (int i=0; i<1000; i++) {
+			final int fi = i;
+			futures.add(tasks.submitFuture(() -> fi*2));
+		}
+
+		int sum = 0;
+		for (CompletableFuture<Integer> future : futures) {
+			sum += future.join();
+		}
+		assertThat(sum, is(999*1000));
+
+		tasks.stop();
+	}
+
+	@Test
+	public void defaultFutures() {
+
+		// the synchronous executor should support futures too
+		TaskExecutor tasks = new TaskExecutor();
+		assertThat(tasks.submitFuture(() -> 5).join(), is(5));
+	}
+
+	@Test
+	public void ioPipeline() {
+
+		FutureTaskExecutor tasks = new FutureTaskExecutor();
+		tasks.maxIOTasks = 8;
+		tasks.start(2);
+
+		AtomicInteger count = new AtomicInteger(0);
+		for (int i=0; i<100; i++) {
+			final int fi = i;
+			tasks.submitIO(() -> {
+				// "read" on the io thread, compute on the cpu pool, "write" on the io thread
+				int result = tasks.submitFuture(() -> fi + 1).join();
+				count.addAndGet(result);
+				return null;
+			});
+		}
+		tasks.waitForFinish();
+
+		assertThat(count.get(), is(100*101/2));
+		assertThat(tasks.isWorking(), is(false));
+
+		tasks.stop();
+	}
+
+	@Test
+	public void handleExceptions() {
+
+		FutureTaskExecutor tasks = new FutureTaskExecutor();
+		tasks.start(2);
+
+		CompletableFuture<Void> cpu = tasks.submitFuture(() -> {
+			throw new Error("Oh No! a Bad Thing has happened");
+		});
+		CompletableFuture<Void> io = tasks.submitIO(() -> {
+			throw new Error("Oh No! another Bad Thing has happened");
+		});
+
+		// failures go to the futures, not to waitForFinish
+		tasks.waitForFinish();
+
+		for (CompletableFuture<Void> future : new CompletableFuture[] { cpu, io }) {
+			try {
+				future.join();
+				fail("should have thrown");
+			} catch (CompletionException ex) {
+				assertThat(ex.getCause(), instanceOf(Error.class));
+			}
+		}
+
+		tasks.stop();
+	}
+
+	@Test
+	public void handleExceptionsListenerExecutors() {
+
+		// executors that complete futures via listeners should still fail the futures
+		ThreadPoolTaskExecutor threadTasks = new ThreadPoolTaskExecutor();
+		threadTasks.start(2);
+		try {
+			for (TaskExecutor tasks : new TaskExecutor[] { new TaskExecutor(), threadTasks }) {
+
+				CompletableFuture<Void> future = tasks.submitFuture(() -> {
+					throw new Error("Oh No! a Bad Thing has happened");
+				});
+				tasks.waitForFinish();
+
+				try {
+					future.join();
+					fail("should have thrown");
+				} catch (CompletionException ex) {
+					assertThat(ex.getCause(), instanceOf(Error.class));
+				}
+			}
+		} finally {
+			threadTasks.stop();
+		}
+	}
+
+	@Test
+	public void chainedIOStages() {
+
+		FutureTaskExecutor tasks = new FutureTaskExecutor();
+		tasks.start(2);
+
+		// stages chained onto the io executor should count as work too
+		AtomicInteger count = new AtomicInteger(0);
+		for (int i=0; i<100; i++) {
+			final int fi = i;
+			tasks.submitFuture(() -> fi + 1)
+				.thenApplyAsync((result) -> count.addAndGet(result), tasks.io());
+		}
+		tasks.waitForFinish();
+
+		assertThat(count.get(), is(100*101/2));
+		assertThat(tasks.isWorking(), is(false));
+
+		tasks.stop();
+	}
+}
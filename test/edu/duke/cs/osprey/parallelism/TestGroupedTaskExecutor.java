@@ -0,0 +1,285 @@
+package edu.duke.cs.osprey.parallelism;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.duke.cs.osprey.parallelism.TaskExecutor.TaskException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestGroupedTaskExecutor {
+
+	@Test
+	public void countLotsOfTimes() {
+
+		GroupedTaskExecutor tasks = new GroupedTaskExecutor();
+		tasks.start(4, 2);
+
+		for (int r=0; r<1000; r++) {
+
+			int[] count = { 0 };
+
+			for (int i=0; i<4; i++) {
+				tasks.submit(
+					() -> null,
+					(Void ignore) -> {
+						// serialized listener: no need to synchronize
+						count[0]++;
+					}
+				);
+			}
+			tasks.waitForFinish();
+
+			assertThat(count[0], is(4));
+		}
+
+		tasks.stop();
+	}
+
+	@Test
+	public void routeToGroups() {
+
+		GroupedTaskExecutor tasks = new GroupedTaskExecutor();
+		tasks.start(4, 2);
+
+		assertThat(tasks.getNumGroups(), is(2));
+
+		// explicitly routed tasks run in their group, unless another group steals them
+		int[] numInGroup = { 0 };
+		for (int i=0; i<100; i++) {
+			final int group = i % 2;
+			tasks.submit(
+				group,
+				() -> GroupedTaskExecutor.getCurrentGroup() == group,
+				(Boolean isInGroup) -> {
+					if (isInGroup) {
+						numInGroup[0]++;
+					}
+				}
+			);
+		}
+		tasks.waitForFinish();
+
+		assertThat((long)numInGroup[0] + tasks.getNumTasksStolen(), greaterThanOrEqualTo(100L));
+
+		tasks.stop();
+	}
+
+	@Test
+	public void routeFuturesToGroups() {
+
+		GroupedTaskExecutor tasks = new GroupedTaskExecutor();
+		tasks.start(4, 2);
+
+		// explicitly routed futures run in their group too, unless another group steals them
+		List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+		for (int i=0; i<100; i++) {
+			final int group = i % 2;
+			futures.add(tasks.submitFuture(group, () -> GroupedTaskExecutor.getCurrentGroup() == group));
+		}
+		int numInGroup = 0;
+		for (CompletableFuture<Boolean> future : futures) {
+			if (future.join()) {
+				numInGroup++;
+			}
+		}
+		tasks.waitForFinish();
+
+		assertThat((long)numInGroup + tasks.getNumTasksStolen(), greaterThanOrEqualTo(100L));
+		assertThat(tasks.getNumRunningTasks(), is(0L));
+
+		// failures go to the futures, not to waitForFinish
+		CompletableFuture<Void> failed = tasks.submitFuture(() -> {
+			throw new Error("Oh No! a Bad Thing has happened");
+		});
+		tasks.waitForFinish();
+		try {
+			failed.join();
+			fail("should have thrown");
+		} catch (CompletionException ex) {
+			assertThat(ex.getCause(), instanceOf(Error.class));
+		}
+
+		tasks.stop();
+	}
+
+	@Test
+	public void stealFromBusyGroup()
+	throws InterruptedException {
+
+		GroupedTaskExecutor tasks = new GroupedTaskExecutor();
+		tasks.queueSize = 10;
+		tasks.start(2, 2);
+
+		// block group 0's only thread, then queue work for group 0
+		// NOTE: group 1 could steal the blocking task too, so keep trying until group 0 gets it
+		CountDownLatch latch = new CountDownLatch(1);
+		CountDownLatch isBlocked = new CountDownLatch(1);
+		while (isBlocked.getCount() > 0) {
+			tasks.submit(0,
+				() -> {
+					if (GroupedTaskExecutor.getCurrentGroup() == 0) {
+						isBlocked.countDown();
+						try {
+							latch.await();
+						} catch (InterruptedException ex) {
+							throw new Error(ex);
+						}
+					}
+					return null;
+				},
+				(Void ignore) -> {}
+			);
+			while (isBlocked.getCount() > 0 && tasks.isWorking()) {
+				Thread.sleep(1);
+			}
+		}
+		long numStolenBefore = tasks.getNumTasksStolen();
+
+		AtomicInteger numRunInGroup1 = new AtomicInteger(0);
+		for (int i=0; i<10; i++) {
+			tasks.submit(0,
+				() -> {
+					if (GroupedTaskExecutor.getCurrentGroup() == 1) {
+						numRunInGroup1.incrementAndGet();
+					}
+					return null;
+				},
+				(Void ignore) -> {}
+			);
+		}
+
+		// group 1 should steal everything while group 0 is stuck
+		while (numRunInGroup1.get() < 10) {
+			Thread.sleep(1);
+		}
+		latch.countDown();
+		tasks.waitForFinish();
+
+		assertThat(tasks.getNumTasksStolen() - numStolenBefore, is(10L));
+
+		tasks.stop();
+	}
+
+	@Test
+	public void groupLocal() {
+
+		GroupedTaskExecutor tasks = new GroupedTaskExecutor();
+		tasks.start(4, 2);
+
+		AtomicInteger numMade = new AtomicInteger(0);
+		GroupLocal<int[]> local = new GroupLocal<>(2, () -> {
+			numMade.incrementAndGet();
+			return new int[] { GroupedTaskExecutor.getCurrentGroup() };
+		});
+
+		int[] numMatches = { 0 };
+		for (int i=0; i<100; i++) {
+			tasks.submit(
+				i % 2,
+				() -> local.get()[0] == GroupedTaskExecutor.getCurrentGroup(),
+				(Boolean matches) -> {
+					if (matches) {
+						numMatches[0]++;
+					}
+				}
+			);
+		}
+		tasks.waitForFinish();
+
+		// each replica is made by a thread in its own group
+		assertThat(numMatches[0], is(100));
+		assertThat(numMade.get(), lessThanOrEqualTo(2));
+
+		tasks.stop();
+	}
+
+	@Test
+	public void groupLocalRace() {
+
+		AtomicInteger numMade = new AtomicInteger(0);
+		GroupLocal<int[]> local = new GroupLocal<>(1, () -> {
+			numMade.incrementAndGet();
+			try {
+				// take long enough for the other threads to pile up
+				Thread.sleep(100);
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+			return new int[] { 5 };
+		});
+
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[8];
+		int[][] observed = new int[threads.length][];
+		for (int i=0; i<threads.length; i++) {
+			final int fi = i;
+			threads[i] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException ex) {
+					throw new RuntimeException(ex);
+				}
+				observed[fi] = local.get(0);
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+
+		// only one value should ever be made, and everyone should share it
+		assertThat(numMade.get(), is(1));
+		for (int[] value : observed) {
+			assertThat(value, sameInstance(observed[0]));
+		}
+	}
+
+	@Test
+	public void handleTaskExceptionsGracefully() {
+
+		GroupedTaskExecutor tasks = new GroupedTaskExecutor();
+		tasks.start(2, 2);
+
+		for (int r=0; r<100; r++) {
+
+			try {
+				for (int i=0; i<10; i++) {
+					tasks.submit(
+						() -> {
+							// crash in the task
+							throw new Error("Oh No! a Bad Thing has happened");
+						},
+						(Void ignore) -> {
+							fail("task should not finish");
+						}
+					);
+				}
+				tasks.waitForFinish();
+
+				fail("should have thrown Error");
+
+			} catch (TaskException ex) {
+
+				assertThat(tasks.getNumRunningTasks(), is(0L));
+
+				// all is well
+				continue;
+			}
+		}
+
+		tasks.stop();
+	}
+}
@@ -0,0 +1,275 @@
+package edu.duke.cs.osprey.parallelism;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.duke.cs.osprey.parallelism.TaskExecutor.Task;
+import edu.duke.cs.osprey.parallelism.TaskExecutor.TaskException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestWorkStealingTaskExecutor {
+
+	@Test
+	public void countToTen() {
+
+		WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+		tasks.start(1);
+
+		int[] count = { 0 };
+
+		for (int i=0; i<10; i++) {
+			tasks.submit(
+				() -> {
+					// no work to do
+					return null;
+				},
+				(Void ignore) -> {
+					// increment the counter in the listener
+					count[0]++;
+				}
+			);
+		}
+		tasks.waitForFinish();
+
+		assertThat(count[0], is(10));
+
+		tasks.stop();
+	}
+
+	@Test
+	public void countLotsOfTimes() {
+
+		WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+		tasks.start(4);
+
+		for (int r=0; r<1000; r++) {
+
+			int[] count = { 0 };
+
+			for (int i=0; i<4; i++) {
+				tasks.submit(
+					() -> {
+						// on worker thread: no work to do
+						return null;
+					},
+					(Void ignore) -> {
+						// serialized listener: no need to synchronize
+						count[0]++;
+					}
+				);
+			}
+			tasks.waitForFinish();
+
+			assertThat(count[0], is(4));
+		}
+
+		tasks.stop();
+	}
+
+	@Test
+	public void countWithQueue() {
+
+		WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+		tasks.queueSize = 16;
+		tasks.start(4);
+
+		int[] count = { 0 };
+
+		for (int i=0; i<10000; i++) {
+			tasks.submit(
+				() -> null,
+				(Void ignore) -> count[0]++
+			);
+		}
+		tasks.waitForFinish();
+
+		assertThat(count[0], is(10000));
+
+		tasks.stop();
+	}
+
+	@Test
+	public void countInThread() {
+
+		WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+		tasks.listenerMode = WorkStealingTaskExecutor.ListenerMode.InThread;
+		tasks.start(4);
+
+		AtomicInteger count = new AtomicInteger(0);
+
+		for (int i=0; i<10000; i++) {
+			tasks.submit(
+				() -> null,
+				(Void ignore) -> count.incrementAndGet()
+			);
+		}
+		tasks.waitForFinish();
+
+		assertThat(count.get(), is(10000));
+
+		tasks.stop();
+	}
+
+	@Test
+	public void submitAll() {
+
+		WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+		tasks.queueSize = 8;
+		tasks.start(4);
+
+		List<Task<Integer>> batch = new ArrayList<>();
+		for (int i=0; i<1000; i++) {
+			final int fi = i;
+			batch.add(() -> fi);
+		}
+
+		long[] sum = { 0 };
+		int[] count = { 0 };
+		tasks.submitAll(batch, (Integer i) -> {
+			sum[0] += i;
+			count[0]++;
+		});
+		tasks.waitForFinish();
+
+		assertThat(count[0], is(1000));
+		assertThat(sum[0], is(999L*1000L/2));
+		assertThat(tasks.getNumRunningTasks(), is(0L));
+
+		tasks.stop();
+	}
+
+	@Test
+	public void handleTaskExceptionsGracefully() {
+
+		WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+		tasks.start(2);
+
+		for (int r=0; r<100; r++) {
+
+			try {
+				for (int i=0; i<10; i++) {
+					tasks.submit(
+						() -> {
+							// crash in the task
+							throw new Error("Oh No! a Bad Thing has happened");
+						},
+						(Void ignore) -> {
+							fail("task should not finish");
+						}
+					);
+				}
+				tasks.waitForFinish();
+
+				fail("should have thrown Error");
+
+			} catch (TaskException ex) {
+
+				assertThat(tasks.getNumRunningTasks(), is(0L));
+
+				// all is well
+				continue;
+			}
+		}
+
+		tasks.stop();
+	}
+
+	@Test
+	public void handleListenerExceptionsGracefully() {
+
+		WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+		tasks.start(2);
+
+		for (int r=0; r<100; r++) {
+
+			try {
+				for (int i=0; i<10; i++) {
+					tasks.submit(
+						() -> {
+							// easiest task ever!
+							return null;
+						},
+						(Void ignore) -> {
+							// crash in the listener
+							throw new Error("Oh No! a Bad Thing has happened");
+						}
+					);
+				}
+				tasks.waitForFinish();
+
+				fail("should have thrown error");
+
+			} catch (TaskException ex) {
+
+				assertThat(tasks.getNumRunningTasks(), is(0L));
+
+				// all is well
+				continue;
+			}
+		}
+
+		tasks.stop();
+	}
+
+	@Test(timeout = 10000)
+	public void waitInListenerThrows() {
+
+		for (WorkStealingTaskExecutor.ListenerMode mode : WorkStealingTaskExecutor.ListenerMode.values()) {
+
+			WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+			tasks.listenerMode = mode;
+			tasks.start(2);
+
+			// waiting from a listener would wait for the listener itself, so it should throw instead of deadlocking
+			tasks.submit(
+				() -> null,
+				(Void ignore) -> tasks.waitForFinish()
+			);
+			try {
+				tasks.waitForFinish();
+				fail("should have thrown");
+			} catch (TaskException ex) {
+				assertThat(ex.getCause(), instanceOf(IllegalStateException.class));
+			}
+			assertThat(tasks.getNumRunningTasks(), is(0L));
+
+			tasks.stop();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void submitFromListeners() {
+
+		// with one thread and no queue, the listener has to block for room to submit more than one task,
+		// and nothing else is left to run them
+		WorkStealingTaskExecutor tasks = new WorkStealingTaskExecutor();
+		tasks.queueSize = 0;
+		tasks.start(1);
+
+		AtomicInteger count = new AtomicInteger(0);
+		for (int i=0; i<10; i++) {
+			tasks.submit(
+				() -> null,
+				(Void ignore) -> {
+					for (int j=0; j<4; j++) {
+						tasks.submit(
+							() -> null,
+							(Void ignore2) -> count.incrementAndGet()
+						);
+					}
+				}
+			);
+		}
+		tasks.waitForFinish();
+
+		assertThat(count.get(), is(40));
+		assertThat(tasks.getNumRunningTasks(), is(0L));
+
+		tasks.stop();
+	}
+}
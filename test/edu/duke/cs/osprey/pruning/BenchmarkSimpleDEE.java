@@ -117,13 +117,14 @@ public class BenchmarkSimpleDEE extends TestBase {
 			log("Percent conformations pruned (by singles and pairs, bounds):           [%.6f,%.6f]", percentPrunedLower, percentPrunedUpper);
 			*/
 
-			// run SimpleDEE
+			// run SimpleDEE, with the original implementation
 			SimpleDEE.Runner runner = new SimpleDEE.Runner()
 					.setThreshold(pruningSettings.stericThresh)
 					.setSinglesGoldsteinDiffThreshold(pruningInterval)
 					.setPairsGoldsteinDiffThreshold(pruningInterval)
 					.setTriplesGoldsteinDiffThreshold(pruningInterval)
 					.setParallelism(Parallelism.makeCpu(8))
+					.setUseDenseEngine(false)
 					.setShowProgress(true);
 			Stopwatch newStopwatch = new Stopwatch().start();
 			PruningMatrix pmat = runner.run(confSpace, emat);
@@ -131,6 +132,17 @@ public class BenchmarkSimpleDEE extends TestBase {
 			System.out.print("simple DEE finished in " + newStopwatch.getTime(2));
 			System.out.println(String.format(" speedup over precomputed matrices: %.2fx", matsStopwatch.getTimeMs()/newStopwatch.getTimeMs()));
 
+			// run SimpleDEE again, with the dense engine
+			runner.setUseDenseEngine(true);
+			Stopwatch denseStopwatch = new Stopwatch().start();
+			PruningMatrix densePmat = runner.run(confSpace, emat);
+			denseStopwatch.stop();
+			System.out.print("dense DEE finished in " + denseStopwatch.getTime(2));
+			System.out.println(String.format(" speedup over simple DEE: %.2fx", newStopwatch.getTimeMs()/denseStopwatch.getTimeMs()));
+
+			// NOTE: the original implementation isn't deterministic on multiple threads, so the matrices can differ slightly
+			System.out.println("pruning matrices are " + (densePmat.equals(pmat) ? "identical" : "different"));
+
 			// TEMP
 			//assertThat(pmat, is(mats.getPruneMat()));
 			//System.out.println("pruning matrices are identical");
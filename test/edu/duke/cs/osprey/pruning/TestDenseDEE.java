@@ -0,0 +1,118 @@
+package edu.duke.cs.osprey.pruning;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.TestBase;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.structure.PDBIO;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.function.Consumer;
+
+public class TestDenseDEE extends TestBase {
+
+	private static SimpleConfSpace confSpace;
+	private static EnergyMatrix emat;
+
+	@BeforeClass
+	public static void beforeClass() {
+
+		Strand strand = new Strand.Builder(PDBIO.readFile("examples/1CC8/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A3").setLibraryRotamers(Strand.WildType, "ARG", "LYS");
+		strand.flexibility.get("A4").setLibraryRotamers(Strand.WildType, "VAL");
+		strand.flexibility.get("A5").setLibraryRotamers(Strand.WildType);
+		strand.flexibility.get("A6").setLibraryRotamers(Strand.WildType, "LEU");
+		strand.flexibility.get("A7").setLibraryRotamers(Strand.WildType);
+		confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(4))
+			.use((ecalc) -> {
+				emat = new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+					.build()
+					.calcEnergyMatrix();
+			});
+	}
+
+	private static PruningMatrix run(boolean useDenseEngine, Parallelism parallelism, Consumer<SimpleDEE.Runner> config) {
+		SimpleDEE.Runner runner = new SimpleDEE.Runner()
+			.setUseDenseEngine(useDenseEngine)
+			.setParallelism(parallelism);
+		config.accept(runner);
+		return runner.run(confSpace, emat);
+	}
+
+	private static void assertSamePruning(Consumer<SimpleDEE.Runner> config) {
+
+		// NOTE: the original implementation is only deterministic on one thread
+		PruningMatrix expected = run(false, Parallelism.makeCpu(1), config);
+
+		assertThat(run(true, Parallelism.makeCpu(1), config), is(expected));
+		assertThat(run(true, Parallelism.makeCpu(4), config), is(expected));
+	}
+
+	@Test
+	public void singles() {
+		assertSamePruning((runner) -> runner
+			.setSinglesGoldsteinDiffThreshold(5.0)
+			// show progress, otherwise the runner only does one iteration
+			.setShowProgress(true)
+		);
+	}
+
+	@Test
+	public void pairs() {
+		assertSamePruning((runner) -> runner
+			.setSinglesGoldsteinDiffThreshold(5.0)
+			.setPairsGoldsteinDiffThreshold(5.0)
+			.setShowProgress(true)
+		);
+	}
+
+	@Test
+	public void triples() {
+		assertSamePruning((runner) -> runner
+			.setGoldsteinDiffThreshold(5.0)
+			.setShowProgress(true)
+		);
+	}
+
+	@Test
+	public void typeDependent() {
+		assertSamePruning((runner) -> runner
+			.setGoldsteinDiffThreshold(2.0)
+			.setTypeDependent(true)
+			.setShowProgress(true)
+		);
+	}
+
+	@Test
+	public void inPlace() {
+
+		// competitors == pmat, so candidates compete against each other
+		PruningMatrix expected = new PruningMatrix(confSpace);
+		SimpleDEE simple = new SimpleDEE(confSpace, emat, expected);
+		simple.pruneSinglesGoldstein(0, false);
+		simple.prunePairsGoldstein(0, false);
+		simple.pruneTriplesGoldstein(0, false);
+
+		PruningMatrix observed = new PruningMatrix(confSpace);
+		DenseDEE dense = new DenseDEE(confSpace, emat, observed);
+		dense.pruneSinglesGoldstein(0, false);
+		dense.prunePairsGoldstein(0, false, Parallelism.makeCpu(4));
+		dense.pruneTriplesGoldstein(0, false, Parallelism.makeCpu(4));
+
+		assertThat(observed, is(expected));
+		assertThat(observed.countPrunedTriples(), is(expected.countPrunedTriples()));
+	}
+}
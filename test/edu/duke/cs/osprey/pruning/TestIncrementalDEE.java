@@ -0,0 +1,141 @@
+package edu.duke.cs.osprey.pruning;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.TestBase;
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.structure.PDBIO;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.function.Consumer;
+
+public class TestIncrementalDEE extends TestBase {
+
+	private static SimpleConfSpace confSpace;
+	private static EnergyMatrix emat;
+
+	@BeforeClass
+	public static void beforeClass() {
+
+		Strand strand = new Strand.Builder(PDBIO.readFile("examples/1CC8/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A3").setLibraryRotamers(Strand.WildType, "ARG", "LYS");
+		strand.flexibility.get("A4").setLibraryRotamers(Strand.WildType, "VAL");
+		strand.flexibility.get("A5").setLibraryRotamers(Strand.WildType);
+		strand.flexibility.get("A6").setLibraryRotamers(Strand.WildType, "LEU");
+		strand.flexibility.get("A7").setLibraryRotamers(Strand.WildType);
+		confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(4))
+			.use((ecalc) -> {
+				emat = new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+					.build()
+					.calcEnergyMatrix();
+			});
+	}
+
+	private static void assertSamePruning(Consumer<SimpleDEE.Runner> config) {
+
+		SimpleDEE.Runner full = new SimpleDEE.Runner()
+			// show progress, otherwise the full runner only does one iteration
+			.setShowProgress(true);
+		config.accept(full);
+		PruningMatrix expected = full.run(confSpace, emat);
+
+		for (int numThreads : new int[] { 1, 4 }) {
+			SimpleDEE.Runner incremental = new SimpleDEE.Runner()
+				.setUseDenseEngine(true)
+				.setIncremental(true)
+				.setParallelism(Parallelism.makeCpu(numThreads));
+			config.accept(incremental);
+			assertThat(incremental.run(confSpace, emat), is(expected));
+		}
+	}
+
+	@Test
+	public void singles() {
+		assertSamePruning((runner) -> runner
+			.setSinglesGoldsteinDiffThreshold(5.0)
+		);
+	}
+
+	@Test
+	public void pairs() {
+		assertSamePruning((runner) -> runner
+			.setSinglesGoldsteinDiffThreshold(5.0)
+			.setPairsGoldsteinDiffThreshold(5.0)
+		);
+	}
+
+	@Test
+	public void triples() {
+		assertSamePruning((runner) -> runner
+			.setGoldsteinDiffThreshold(5.0)
+		);
+	}
+
+	@Test
+	public void typeDependent() {
+		assertSamePruning((runner) -> runner
+			.setGoldsteinDiffThreshold(2.0)
+			.setTypeDependent(true)
+		);
+	}
+
+	@Test
+	public void energyUpdate() {
+
+		final double threshold = 5.0;
+		Parallelism parallelism = Parallelism.makeCpu(1);
+
+		// prune to convergence with a copy of the energy matrix
+		EnergyMatrix updatedEmat = new EnergyMatrix(emat);
+		PruningMatrix competitors = new PruningMatrix(confSpace);
+		new DenseDEE(confSpace, updatedEmat, competitors).pruneSinglesGoldstein(0, false);
+		PruningMatrix pmat = new PruningMatrix(confSpace);
+		IncrementalDEE dee = new IncrementalDEE(confSpace, updatedEmat, pmat, competitors);
+		dee.prune(threshold, threshold, null, false, parallelism, Integer.MAX_VALUE);
+		assertThat(dee.hasWork(), is(false));
+		long numCheckedFull = dee.getNumCandidatesChecked();
+
+		// find an unpruned single, and make it really bad
+		int pos = 0;
+		int rc = 0;
+		while (pmat.getOneBody(pos, rc)) {
+			rc++;
+		}
+		updatedEmat.setOneBody(pos, rc, updatedEmat.getOneBody(pos, rc) + 1000.0);
+		dee.onEnergyChanged(new RCTuple(pos, rc));
+		assertThat(dee.hasWork(), is(true));
+
+		// re-pruning should only check the affected candidates
+		PruningMatrix before = new PruningMatrix(pmat);
+		dee.prune(threshold, threshold, null, false, parallelism, Integer.MAX_VALUE);
+		long numCheckedIncremental = dee.getNumCandidatesChecked() - numCheckedFull;
+		assertThat(pmat.getOneBody(pos, rc), is(true));
+		assertThat(numCheckedIncremental, lessThan(numCheckedFull));
+
+		// and should match checking everything again
+		PruningMatrix expected = new PruningMatrix(before);
+		new IncrementalDEE(confSpace, updatedEmat, expected, competitors)
+			.prune(threshold, threshold, null, false, parallelism, Integer.MAX_VALUE);
+		assertThat(pmat, is(expected));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void inPlace() {
+		PruningMatrix pmat = new PruningMatrix(confSpace);
+		new IncrementalDEE(confSpace, emat, pmat, pmat);
+	}
+}
@@ -0,0 +1,165 @@
+package edu.duke.cs.osprey.pruning;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+public class TestUnprunedTuples {
+
+	private static PruningMatrix makeRandomPmat(Random rand) {
+
+		int numPos = rand.nextInt(6);
+		int[] numRCsAtPos = new int[numPos];
+		for (int pos=0; pos<numPos; pos++) {
+			numRCsAtPos[pos] = rand.nextInt(6);
+		}
+		PruningMatrix pmat = new PruningMatrix(numPos, numRCsAtPos, 0);
+
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int rc1=0; rc1<numRCsAtPos[pos1]; rc1++) {
+				if (rand.nextInt(3) == 0) {
+					pmat.setOneBody(pos1, rc1, true);
+				}
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCsAtPos[pos2]; rc2++) {
+						if (rand.nextInt(4) == 0) {
+							pmat.setPairwise(pos1, rc1, pos2, rc2, true);
+						}
+					}
+				}
+			}
+		}
+
+		return pmat;
+	}
+
+	private static List<String> collectPairs(PruningMatrix pmat) {
+		List<String> pairs = new ArrayList<>();
+		pmat.forEachUnprunedPair((pos1, rc1, pos2, rc2) -> {
+			pairs.add(pos1 + " " + rc1 + " " + pos2 + " " + rc2);
+			return PruningMatrix.IteratorCommand.Continue;
+		});
+		return pairs;
+	}
+
+	@Test
+	public void singles() {
+		Random rand = new Random(12345);
+		for (int i=0; i<100; i++) {
+			PruningMatrix pmat = makeRandomPmat(rand);
+			UnprunedTuples unpruned = new UnprunedTuples(pmat);
+
+			List<String> expected = new ArrayList<>();
+			pmat.forEachUnprunedSingle((pos, rc) -> {
+				expected.add(pos + " " + rc);
+				return PruningMatrix.IteratorCommand.Continue;
+			});
+
+			List<String> observed = new ArrayList<>();
+			unpruned.forEachUnprunedSingle((pos, rc) -> observed.add(pos + " " + rc));
+			assertThat(observed, is(expected));
+			assertThat(unpruned.countUnprunedSingles(), is(expected.size()));
+
+			for (int pos=0; pos<pmat.getNumPos(); pos++) {
+				int[] expectedRCs = pmat.unprunedRCsAtPos(pos).stream().mapToInt((rc) -> rc).toArray();
+				assertThat(unpruned.unprunedRCsAt(pos), is(expectedRCs));
+			}
+		}
+	}
+
+	@Test
+	public void pairs() {
+		Random rand = new Random(12345);
+		for (int i=0; i<100; i++) {
+			PruningMatrix pmat = makeRandomPmat(rand);
+			UnprunedTuples unpruned = new UnprunedTuples(pmat);
+			List<String> expected = collectPairs(pmat);
+
+			List<String> observed = new ArrayList<>();
+			unpruned.forEachUnprunedPair((pos1, rc1, pos2, rc2) -> observed.add(pos1 + " " + rc1 + " " + pos2 + " " + rc2));
+			assertThat(observed, is(expected));
+			assertThat(unpruned.countUnprunedPairs(), is(expected.size()));
+		}
+	}
+
+	@Test
+	public void splitPairs() {
+		Random rand = new Random(12345);
+		for (int i=0; i<100; i++) {
+			PruningMatrix pmat = makeRandomPmat(rand);
+			UnprunedTuples unpruned = new UnprunedTuples(pmat);
+
+			// split the range a few times, then visit the pieces in order
+			List<UnprunedTuples.PairRange> ranges = new ArrayList<>();
+			UnprunedTuples.PairRange rest = unpruned.pairs();
+			for (int j=rand.nextInt(4); j>0; j--) {
+				UnprunedTuples.PairRange prefix = rest.trySplit();
+				if (prefix == null) {
+					break;
+				}
+				ranges.add(prefix);
+			}
+			ranges.add(rest);
+
+			List<String> observed = new ArrayList<>();
+			for (UnprunedTuples.PairRange range : ranges) {
+				if (rand.nextBoolean()) {
+					range.forEachRemaining((pos1, rc1, pos2, rc2) -> observed.add(pos1 + " " + rc1 + " " + pos2 + " " + rc2));
+				} else {
+					while (range.tryAdvance((pos1, rc1, pos2, rc2) -> observed.add(pos1 + " " + rc1 + " " + pos2 + " " + rc2)));
+				}
+			}
+			assertThat(observed, is(collectPairs(pmat)));
+		}
+	}
+
+	@Test
+	public void parallelPairs() {
+		Random rand = new Random(12345);
+		try (TaskExecutor tasks = Parallelism.makeCpu(4).makeTaskExecutor()) {
+			for (int i=0; i<100; i++) {
+				PruningMatrix pmat = makeRandomPmat(rand);
+				UnprunedTuples unpruned = new UnprunedTuples(pmat);
+
+				Set<String> observed = Collections.synchronizedSet(new HashSet<>());
+				unpruned.forEachUnprunedPair(tasks, (pos1, rc1, pos2, rc2) -> observed.add(pos1 + " " + rc1 + " " + pos2 + " " + rc2));
+				assertThat(observed, is(new HashSet<>(collectPairs(pmat))));
+			}
+		}
+	}
+
+	@Test(timeout=10000)
+	public void parallelPairsWithOtherTasks() {
+		Random rand = new Random(12345);
+		try (TaskExecutor tasks = Parallelism.makeCpu(4).makeTaskExecutor()) {
+
+			// keep an unrelated task running until we're done visiting the pairs
+			CountDownLatch done = new CountDownLatch(1);
+			tasks.submit(
+				() -> {
+					try {
+						done.await();
+					} catch (InterruptedException ex) {
+						throw new RuntimeException(ex);
+					}
+					return null;
+				},
+				(ignored) -> {}
+			);
+
+			PruningMatrix pmat = makeRandomPmat(rand);
+			UnprunedTuples unpruned = new UnprunedTuples(pmat);
+			Set<String> observed = Collections.synchronizedSet(new HashSet<>());
+			unpruned.forEachUnprunedPair(tasks, (pos1, rc1, pos2, rc2) -> observed.add(pos1 + " " + rc1 + " " + pos2 + " " + rc2));
+			assertThat(observed, is(new HashSet<>(collectPairs(pmat))));
+
+			done.countDown();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package edu.duke.cs.osprey.restypes;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class TestBackboneDependentRotamerLibrary {
+
+	private static void put(char[] line, int start, String val) {
+		val.getChars(0, val.length(), line, start);
+	}
+
+	/** makes a line in the Dunbrack library format */
+	private static String makeLine(String aa, int phi, int psi, double probability, double ... chis) {
+		char[] line = new char[80];
+		Arrays.fill(line, ' ');
+		put(line, 0, aa);
+		put(line, 5, String.format("%4d", phi));
+		put(line, 10, String.format("%4d", psi));
+		for (int i=0; i<4; i++) {
+			put(line, 24 + 3*i, String.format("%2d", i < chis.length ? 1 : 0));
+		}
+		put(line, 37, String.format("%8.6f", probability));
+		for (int i=0; i<chis.length; i++) {
+			put(line, 47 + 8*i, String.format("%6.1f", chis[i]));
+		}
+		return new String(line);
+	}
+
+	private static BackboneDependentRotamerLibrary makeLibrary() {
+		return BackboneDependentRotamerLibrary.parseDunbrack(String.join("\n",
+			"# a comment",
+			makeLine("SER", -60, -40, 0.5, 62.0),
+			makeLine("SER", -60, -40, 0.4, -65.0),
+			makeLine("SER", -60, -40, 0.0001, 180.0),
+			makeLine("SER", 60, 40, 0.9, 175.0),
+			makeLine("PHE", -180, 180, 0.8, -60.0, 90.0)
+		), 0.001);
+	}
+
+	private static void checkLibrary(BackboneDependentRotamerLibrary library) {
+
+		BackboneDependentRotamerLibrary.Table ser = library.get("SER");
+		assertThat(ser.numBins, is(BackboneDependentRotamerLibrary.DunbrackNumBins));
+		assertThat(ser.numDihedrals, is(1));
+		assertThat(ser.getNumRotamers(), is(3));
+
+		// the improbable rotamer was dropped, and nearby backbones share bins
+		int bin = ser.getBin(-58, -43);
+		assertThat(ser.getNumRotamers(bin), is(2));
+		assertThat(ser.getDihedral(bin, 0, 0), is(62.0));
+		assertThat(ser.getDihedrals(bin, 1), is(new double[] { -65.0 }));
+		assertThat(ser.getNumRotamers(ser.getBin(60, 40)), is(1));
+		assertThat(ser.getNumRotamers(ser.getBin(0, 0)), is(0));
+
+		BackboneDependentRotamerLibrary.Table phe = library.get("PHE");
+		assertThat(phe.numDihedrals, is(2));
+		assertThat(phe.getDihedrals(phe.getBin(-180, 180), 0), is(new double[] { -60.0, 90.0 }));
+
+		assertThat(library.get("GLY"), is(nullValue()));
+		assertThat(library.getOrEmpty("GLY").getNumRotamers(), is(0));
+	}
+
+	@Test
+	public void parse() {
+		checkLibrary(makeLibrary());
+	}
+
+	@Test
+	public void writeRead()
+	throws IOException {
+		File file = File.createTempFile("rotamers", ".dat");
+		try {
+			makeLibrary().write(file);
+			checkLibrary(BackboneDependentRotamerLibrary.read(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void backboneIndependent() {
+		BackboneDependentRotamerLibrary.Table table = BackboneDependentRotamerLibrary.Table.of(new double[][] {
+			{ 1, 2 },
+			{ 3, 4 }
+		}, 2);
+		assertThat(table.isBackboneDependent(), is(false));
+		for (double phi : new double[] { -180, 0, 180 }) {
+			int bin = table.getBin(phi, -phi);
+			assertThat(table.getNumRotamers(bin), is(2));
+			assertThat(table.getDihedral(bin, 1, 0), is(3.0));
+		}
+		assertThat(table.negate().getDihedrals(0, 1), is(new double[] { -3, -4 }));
+	}
+
+	@Test
+	public void templates() {
+		ResidueTemplateLibrary templateLib = new ResidueTemplateLibrary.Builder().build();
+
+		// L and D amino acids should have mirrored rotamers
+		ResidueTemplate arg = templateLib.getTemplateOrThrow("ARG");
+		ResidueTemplate darg = templateLib.getTemplateOrThrow(DAminoAcidHandler.getDName("ARG"));
+		assertThat(arg.getNumRotamers(), greaterThan(0));
+		assertThat(darg.getNumRotamers(), is(arg.getNumRotamers()));
+		for (int rot=0; rot<arg.getNumRotamers(); rot++) {
+			for (int d=0; d<arg.numDihedrals; d++) {
+				assertThat(darg.getRotamericDihedrals(rot, d), closeTo(-arg.getRotamericDihedrals(rot, d), 1e-9));
+			}
+		}
+	}
+
+	@Test
+	public void snapshotCutoff()
+	throws IOException {
+
+		String text = String.join("\n",
+			makeLine("SER", -60, -40, 0.5, 62.0),
+			makeLine("SER", -60, -40, 0.0001, 180.0)
+		);
+
+		File dir = File.createTempFile("templates", "");
+		dir.delete();
+		try {
+
+			// changing the cutoff should miss the snapshot built with the old cutoff
+			for (double cutoff : new double[] { 0.001, 0.00001, 0.001 }) {
+				ResidueTemplateLibrary templateLib = new ResidueTemplateLibrary.Builder()
+					.addBackboneDependentRotamers(text)
+					.setDunbrackProbabilityCutoff(cutoff)
+					.setSnapshotDir(dir)
+					.build();
+				assertThat(templateLib.getTemplateOrThrow("SER").getNumRotamers(-60, -40), is(cutoff > 0.0001 ? 1 : 2));
+			}
+
+		} finally {
+			File[] files = dir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			dir.delete();
+		}
+	}
+}
@@ -3,6 +3,9 @@ package edu.duke.cs.osprey.structure;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
 
@@ -120,7 +123,69 @@ public class TestAtomConnectivity {
 		}
 	}
 	
+	@Test
+	public void eager() {
+
+		AtomConnectivity eagerConnectivity = new AtomConnectivity.Builder()
+			.addTemplates(confSpace)
+			.setParallelism(Parallelism.makeCpu(2))
+			.setLazy(false)
+			.build();
+		assertThat(eagerConnectivity.isLazy, is(false));
+
+		for (int i=0; i<strand.mol.residues.size(); i++) {
+			Residue res1 = strand.mol.residues.get(i);
+			assertResiduePair(eagerConnectivity, res1, res1);
+			if (i > 0) {
+				Residue res2 = strand.mol.residues.get(i - 1);
+				assertResiduePair(eagerConnectivity, res2, res1);
+				assertResiduePair(eagerConnectivity, res1, res2);
+			}
+		}
+		assertResiduePair(eagerConnectivity, strand.mol.residues.get(2), strand.mol.residues.get(9));
+	}
+
+	@Test
+	public void snapshot()
+	throws IOException {
+
+		File dir = Files.createTempDirectory("connectivity").toFile();
+		try {
+
+			// the first build writes the snapshot, the second one reads it
+			for (int i=0; i<2; i++) {
+				AtomConnectivity snapshotConnectivity = new AtomConnectivity.Builder()
+					.addTemplates(confSpace)
+					.setSnapshotDir(dir)
+					.build();
+				assertThat(snapshotConnectivity.isLazy, is(false));
+				assertThat(dir.listFiles().length, is(1));
+
+				for (int j=0; j<strand.mol.residues.size(); j++) {
+					Residue res1 = strand.mol.residues.get(j);
+					assertResiduePair(snapshotConnectivity, res1, res1);
+					if (j > 0) {
+						Residue res2 = strand.mol.residues.get(j - 1);
+						assertResiduePair(snapshotConnectivity, res2, res1);
+						assertResiduePair(snapshotConnectivity, res1, res2);
+					}
+				}
+				assertResiduePair(snapshotConnectivity, strand.mol.residues.get(2), strand.mol.residues.get(9));
+			}
+
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
 	private void assertResiduePair(Residue res1, Residue res2) {
+		assertResiduePair(connectivity, res1, res2);
+	}
+
+	private void assertResiduePair(AtomConnectivity connectivity, Residue res1, Residue res2) {
 		
 		AtomPairs pairs = connectivity.getAtomPairs(res1, res2);
 		
@@ -0,0 +1,118 @@
+package edu.duke.cs.osprey.structure;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class TestCellList {
+
+	private static Residue makeRandomResidue(Random rand, double spread) {
+		int numAtoms = 1 + rand.nextInt(10);
+		ArrayList<Atom> atoms = new ArrayList<>();
+		double[] coords = new double[numAtoms*3];
+		for (int i=0; i<numAtoms; i++) {
+			atoms.add(new Atom("C", "C"));
+		}
+		for (int i=0; i<coords.length; i++) {
+			coords[i] = (rand.nextDouble() - 0.5)*spread;
+		}
+		return new Residue(atoms, coords, "ALA A   1", null);
+	}
+
+	private static double distSq(Atom atom, double[] point) {
+		double[] coords = atom.getCoords();
+		double dx = coords[0] - point[0];
+		double dy = coords[1] - point[1];
+		double dz = coords[2] - point[2];
+		return dx*dx + dy*dy + dz*dz;
+	}
+
+	@Test
+	public void queries() {
+
+		Random rand = new Random(12345);
+		for (int i=0; i<100; i++) {
+
+			List<Residue> residues = new ArrayList<>();
+			for (int j=1 + rand.nextInt(20); j>0; j--) {
+				residues.add(makeRandomResidue(rand, 40));
+			}
+			CellList cells = new CellList(0.5 + rand.nextDouble()*8, residues);
+
+			// move some residues around
+			for (int j=0; j<5; j++) {
+				Residue res = residues.get(rand.nextInt(residues.size()));
+				for (int k=0; k<res.coords.length; k++) {
+					res.coords[k] += (rand.nextDouble() - 0.5)*10;
+				}
+				cells.update(res);
+			}
+
+			// and drop one
+			cells.remove(residues.remove(rand.nextInt(residues.size())));
+
+			List<Atom> allAtoms = new ArrayList<>();
+			for (Residue res : residues) {
+				allAtoms.addAll(res.atoms);
+			}
+			assertThat(cells.getNumResidues(), is(residues.size()));
+			assertThat(cells.getNumAtoms(), is(allAtoms.size()));
+
+			for (int j=0; j<20; j++) {
+
+				double[] point = {
+					(rand.nextDouble() - 0.5)*60,
+					(rand.nextDouble() - 0.5)*60,
+					(rand.nextDouble() - 0.5)*60
+				};
+
+				// radius queries
+				double radius = rand.nextDouble()*15;
+				Set<Atom> expectedAtoms = new HashSet<>();
+				for (Atom atom : allAtoms) {
+					if (distSq(atom, point) <= radius*radius) {
+						expectedAtoms.add(atom);
+					}
+				}
+				assertThat(new HashSet<>(cells.getAtomsWithin(point, radius)), is(expectedAtoms));
+
+				// nearest atoms
+				int k = rand.nextInt(allAtoms.size() + 3);
+				List<Atom> sortedAtoms = new ArrayList<>(allAtoms);
+				sortedAtoms.sort(Comparator.comparingDouble((atom) -> distSq(atom, point)));
+				assertThat(cells.getNearestAtoms(point, k), is(sortedAtoms.subList(0, Math.min(k, sortedAtoms.size()))));
+
+				// residue distances
+				Residue probe = makeRandomResidue(rand, 60);
+				double dist = rand.nextDouble()*10;
+				boolean expectedWithin = false;
+				for (Residue res : residues) {
+					if (probe.distanceTo(res) <= dist) {
+						expectedWithin = true;
+					}
+				}
+				assertThat(cells.isWithin(probe, dist), is(expectedWithin));
+			}
+		}
+	}
+
+	@Test
+	public void mutatedResidue() {
+
+		Random rand = new Random(12345);
+		Residue res = makeRandomResidue(rand, 20);
+		CellList cells = new CellList(4, Arrays.asList(res));
+
+		// swap in a different number of atoms, like a mutation would
+		Residue other = makeRandomResidue(rand, 20);
+		res.atoms = other.atoms;
+		res.coords = other.coords;
+		cells.update(res);
+
+		assertThat(cells.getNumAtoms(), is(res.atoms.size()));
+		assertThat(cells.getNearestAtoms(new double[] { 0, 0, 0 }, res.atoms.size()).size(), is(res.atoms.size()));
+	}
+}
@@ -35,6 +35,7 @@ package edu.duke.cs.osprey.structure;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.util.Iterator;
 
 import org.junit.Test;
@@ -180,6 +181,74 @@ public class TestPDBIO {
 		assertReadWrite(FileTools.readFile("examples/1CC8/1CC8.copy.pdb"));
 	}
 
+	@Test
+	public void readFileMatchesRead() {
+		for (String path : new String[] { "examples/1CC8/1CC8.ss.pdb", "examples/4NPD/4NPD.pdb" }) {
+			assertSameMols(PDBIO.readFile(path), PDBIO.read(FileTools.readFile(path)));
+		}
+	}
+
+	@Test
+	public void readCached4NPD() {
+
+		File dir = new File("pdbcache");
+		dir.mkdirs();
+		try {
+
+			File file = new File("examples/4NPD/4NPD.pdb");
+			Molecule expected = PDBIO.readFile(file);
+
+			// the first read parses the text and writes the cache
+			assertSameMols(PDBIO.readFile(file, dir), expected);
+			assertThat(dir.listFiles().length, is(1));
+
+			// the second read uses the cache
+			assertSameMols(PDBIO.readFile(file, dir), expected);
+			assertThat(dir.listFiles().length, is(1));
+
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void writeFile1CC8() {
+		Molecule mol = PDBIO.readFile("examples/1CC8/1CC8.copy.pdb");
+		File file = new File("1CC8.written.pdb");
+		try {
+			PDBIO.writeFile(mol, "comment", 5.0, file);
+			assertThat(FileTools.readFile(file), is(PDBIO.write(mol, "comment", 5.0, false)));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private void assertSameMols(Molecule observed, Molecule expected) {
+		assertThat(observed.residues.size(), is(expected.residues.size()));
+		for (int i=0; i<expected.residues.size(); i++) {
+			assertSameRes(observed.residues.get(i), expected.residues.get(i));
+			assertThat(observed.getAlternates(i).size(), is(expected.getAlternates(i).size()));
+			for (int j=0; j<expected.getAlternates(i).size(); j++) {
+				assertSameRes(observed.getAlternates(i).get(j), expected.getAlternates(i).get(j));
+			}
+		}
+	}
+
+	private void assertSameRes(Residue observed, Residue expected) {
+		assertRes(observed, expected.fullName, expected.indexInMolecule, expected.getPDBResNumber());
+		assertThat(observed.secondaryStruct, is(expected.secondaryStruct));
+		assertThat(observed.atoms.size(), is(expected.atoms.size()));
+		for (int i=0; i<expected.atoms.size(); i++) {
+			Atom atom = expected.atoms.get(i);
+			double[] coords = atom.getCoords();
+			assertAtom(observed.atoms.get(i), atom.name, atom.elementType, coords[0], coords[1], coords[2], atom.BFactor);
+			assertThat(observed.atoms.get(i).modelAtomNumber, is(atom.modelAtomNumber));
+		}
+	}
+
 	private void assertRes(Residue res, String name, int index, String resNum) {
 		assertThat(res.fullName, is(name));
 		assertThat(res.indexInMolecule, is(index));
@@ -75,6 +75,30 @@ public class TestStrand {
 		}
 	}
 	
+	@Test
+	public void copiedIntraResBonds() {
+
+		Strand strand = new Strand.Builder(mol).build();
+		Molecule copy = new Molecule(strand.mol);
+
+		// copied residues should have the same intra-res bonds as the template, but on their own atoms
+		for (Residue res : copy.residues) {
+			assertThat(res.intraResBondsMarked, is(true));
+			assertThat(res.getIntraResBondMatrix(), is(res.template.templateRes.getIntraResBondMatrix()));
+			for (Atom atom : res.atoms) {
+				assertThat(atom.res, sameInstance(res));
+				Atom original = strand.mol.residues.get(res.indexInMolecule).atoms.get(atom.indexInRes);
+				assertThat(atom, not(sameInstance(original)));
+				assertThat(atom.name, is(original.name));
+				assertThat(atom.elementType, is(original.elementType));
+				assertThat(atom.elementNumber, is(original.elementNumber));
+				assertThat(atom.radius, is(original.radius));
+				assertThat(atom.mass, is(original.mass));
+				assertThat(atom.charge, is(original.charge));
+			}
+		}
+	}
+	
 	@Test
 	public void defaultFlexibilty() {
 		
@@ -0,0 +1,163 @@
+package edu.duke.cs.osprey.tupexp;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.lute.SparseIncidenceMatrix;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+public class TestTupleExpander {
+
+	private static final int NumPos = 4;
+	private static final int[] NumAllowed = { 3, 2, 4, 3 };
+
+	/** a made-up pairwise function of the assignments, with nothing pruned */
+	private static class PairwiseExpander extends TupleExpander {
+
+		public PairwiseExpander() {
+			super(NumPos, NumAllowed, 100, new LUTESettings());
+			for (int pos=0; pos<NumPos; pos++) {
+				for (int rc=0; rc<NumAllowed[pos]; rc++) {
+					tuples.add(new RCTuple(pos, rc));
+				}
+			}
+		}
+
+		@Override
+		double scoreAssignmentList(int[] assignmentList) {
+			double score = 0;
+			for (int pos1=0; pos1<NumPos; pos1++) {
+				score += Math.sin(pos1 + 3*assignmentList[pos1]);
+				for (int pos2=0; pos2<pos1; pos2++) {
+					score += 0.1*Math.cos(pos1*assignmentList[pos1] - pos2*assignmentList[pos2]);
+				}
+			}
+			return score;
+		}
+
+		@Override
+		boolean isPruned(RCTuple tup) {
+			return false;
+		}
+
+		@Override
+		void pruneTuple(RCTuple tup) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		ArrayList<RCTuple> higherOrderPrunedTuples(RCTuple tup) {
+			return new ArrayList<>();
+		}
+	}
+
+	private static ArrayList<int[]> makeSamples(Random rand, int numSamples) {
+		ArrayList<int[]> samples = new ArrayList<>();
+		for (int s=0; s<numSamples; s++) {
+			int[] sample = new int[NumPos];
+			for (int pos=0; pos<NumPos; pos++) {
+				sample[pos] = rand.nextInt(NumAllowed[pos]);
+			}
+			samples.add(sample);
+		}
+		return samples;
+	}
+
+	@Test
+	public void parallelScoresMatchSerial() {
+
+		PairwiseExpander te = new PairwiseExpander();
+		ArrayList<int[]> samples = makeSamples(new Random(12345), 200);
+		double[] serialScores = te.scoreAssignmentLists(samples);
+
+		try (TaskExecutor tasks = Parallelism.makeCpu(4).makeTaskExecutor()) {
+			te.tasks = tasks;
+
+			assertThat(te.scoreAssignmentLists(samples), is(serialScores));
+
+			// samples drawn for a sample set are scored later, in one parallel batch
+			TESampleSet sampleSet = new TESampleSet(te);
+			assertThat(sampleSet.unscoredSamples, is(empty()));
+			assertThat(sampleSet.samples.size(), greaterThan(0));
+			for (int s=0; s<sampleSet.samples.size(); s++) {
+				assertThat(sampleSet.trueVals.get(s), is(te.scoreAssignmentList(sampleSet.samples.get(s))));
+			}
+		}
+	}
+
+	@Test
+	public void parallelScoresSurviveBusyTasks() {
+
+		PairwiseExpander te = new PairwiseExpander();
+		ArrayList<int[]> samples = makeSamples(new Random(12345), 20);
+		double[] serialScores = te.scoreAssignmentLists(samples);
+
+		try (TaskExecutor tasks = Parallelism.makeCpu(4).makeTaskExecutor()) {
+			te.tasks = tasks;
+
+			// scoring should only wait for its own tasks, not for this one
+			CountDownLatch done = new CountDownLatch(1);
+			tasks.submit(
+				() -> {
+					try {
+						done.await();
+					} catch (InterruptedException ex) {
+						throw new RuntimeException(ex);
+					}
+					return null;
+				},
+				(ignored) -> {}
+			);
+
+			assertThat(te.scoreAssignmentLists(samples), is(serialScores));
+			done.countDown();
+		}
+	}
+
+	private static SparseIncidenceMatrix makeIncidence(PairwiseExpander te, ArrayList<int[]> samples, int numTuples) {
+		return new SparseIncidenceMatrix(samples.size(), numTuples, (s, callback) -> {
+			for (int t=0; t<numTuples; t++) {
+				if (te.sampleMatchesTuple(samples.get(s), te.tuples.get(t))) {
+					callback.accept(t);
+				}
+			}
+		});
+	}
+
+	@Test
+	public void warmStartMatchesColdStart() {
+
+		PairwiseExpander te = new PairwiseExpander();
+		ArrayList<int[]> samples = makeSamples(new Random(12345), 100);
+		double[] trueVals = te.scoreAssignmentLists(samples);
+		ArrayList<Double> weights = new ArrayList<>(Collections.nCopies(samples.size(), 1.0));
+
+		int numTuples = te.tuples.size();
+		SparseIncidenceMatrix A = makeIncidence(te, samples, numTuples);
+
+		// fit from scratch
+		double[] coldCoeffs = new CGTupleFitter(A, trueVals, weights).doFit();
+
+		// fit with fewer tuples, then add the rest and start from the smaller fit
+		double[] smallCoeffs = new CGTupleFitter(makeIncidence(te, samples, numTuples - 3), trueVals, weights).doFit();
+		CGTupleFitter warmFitter = new CGTupleFitter(A, trueVals, weights);
+		warmFitter.initialCoeffs = Arrays.copyOf(smallCoeffs, numTuples);
+		double[] warmCoeffs = warmFitter.doFit();
+
+		// the singles are redundant, so compare the fitted values rather than the coefficients
+		double[] coldFit = A.multA(coldCoeffs);
+		double[] warmFit = A.multA(warmCoeffs);
+		for (int s=0; s<samples.size(); s++) {
+			assertThat(warmFit[s], closeTo(coldFit[s], 1e-4));
+		}
+	}
+}